@@ -1,5 +1,6 @@
 package com.kostbot.zoodirector.config;
 
+import com.kostbot.zoodirector.ui.WatchRefresher;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.ConversionException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
@@ -35,6 +36,16 @@ public class ZooDirectorConfig {
     private static final String CONNECTION_NAME = "name";
     private static final String CONNECTION_VALUE = "value";
 
+    // Watches
+    private static final String WATCHES = "watches";
+    private static final String WATCHES_MAX_REFRESH_RATE = WATCHES + ".maxRefreshRate";
+
+    protected static final int DEFAULT_WATCHES_MAX_REFRESH_RATE = WatchRefresher.DEFAULT_MAX_REFRESH_RATE;
+
+    private static final String SNAPSHOT_PREFIX = "zoodirector-";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+    private final File configFile;
     private XMLConfiguration config;
 
     /**
@@ -44,7 +55,7 @@ public class ZooDirectorConfig {
      * @param configFilePath
      */
     public ZooDirectorConfig(String configFilePath) {
-        File configFile = new File(configFilePath);
+        configFile = new File(configFilePath);
 
         if (!configFile.exists()) {
             config = new XMLConfiguration();
@@ -189,4 +200,33 @@ public class ZooDirectorConfig {
     public void setConnectionRetryPeriod(int connectionRetryPeriod) {
         config.setProperty(CONNECTIONS_RETRY_PERIOD, connectionRetryPeriod);
     }
+
+    /**
+     * Get the maximum number of times per second a watched node is reloaded, however often it is updated.
+     *
+     * @return refresh rate, 0 for no limit
+     */
+    public int getWatchMaxRefreshRate() {
+        return getIntProperty(WATCHES_MAX_REFRESH_RATE, DEFAULT_WATCHES_MAX_REFRESH_RATE);
+    }
+
+    /**
+     * Set the maximum refresh rate of watched nodes
+     *
+     * @param maxRefreshRate
+     */
+    public void setWatchMaxRefreshRate(int maxRefreshRate) {
+        config.setProperty(WATCHES_MAX_REFRESH_RATE, maxRefreshRate);
+    }
+
+    /**
+     * Get the file used to persist the tree snapshot of a connection. Snapshots are kept next to the configuration file.
+     *
+     * @param connectionName connection alias or connection string
+     * @return snapshot file
+     */
+    public File getSnapshotFile(String connectionName) {
+        String name = connectionName.replaceAll("[^A-Za-z0-9._-]", "_");
+        return new File(configFile.getAbsoluteFile().getParentFile(), SNAPSHOT_PREFIX + name + SNAPSHOT_SUFFIX);
+    }
 }
@@ -0,0 +1,183 @@
+package com.kostbot.zoodirector.ui;
+
+import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
+
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Queues tree changes from sync threads and applies them on the EDT at most once per frame, however fast they arrive.
+ * Queued changes are coalesced by path, a path first added and then deleted within a frame is skipped altogether.
+ * Updates to node data do not change the tree and are ignored.
+ * <p/>
+ * Thread safe.
+ */
+public class TreeUpdateQueue {
+    public static final int FRAME_MILLIS = 16;
+
+    /**
+     * Applies the changes of a frame.
+     */
+    public static interface Callback {
+        /**
+         * Called on the EDT.
+         *
+         * @param paths    paths added or deleted since the last frame
+         * @param selected added paths to be selected once applied
+         */
+        public void apply(Collection<String> paths, Collection<String> selected);
+    }
+
+    private final Callback callback;
+    private final Timer timer;
+
+    // First change of each path not yet applied, in order. An add first means the path was not in the tree before the
+    // frame. Guarded by this.
+    private LinkedHashMap<String, ZookeeperSync.Event.Type> queue;
+    private Set<String> selected;
+    private int maxQueueDepth;
+    private long skipped;
+    private long applied;
+    private long frames;
+
+    public TreeUpdateQueue(Callback callback) {
+        this.callback = callback;
+        queue = new LinkedHashMap<String, ZookeeperSync.Event.Type>();
+        selected = new HashSet<String>();
+        timer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                drain();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Queue a change, applied with the next frame.
+     *
+     * @param event
+     * @param select if true the added path is selected once applied
+     */
+    public void offer(ZookeeperSync.Event event, boolean select) {
+        synchronized (this) {
+            if (!queue(event, select)) {
+                return;
+            }
+        }
+        timer.start();
+    }
+
+    /**
+     * Queue changes, applied with the next frame.
+     *
+     * @param events
+     * @param select for each event, if true the added path is selected once applied
+     */
+    public void offer(List<ZookeeperSync.Event> events, boolean[] select) {
+        boolean queued = false;
+        synchronized (this) {
+            for (int i = 0; i < events.size(); ++i) {
+                queued |= queue(events.get(i), select[i]);
+            }
+        }
+        if (queued) {
+            timer.start();
+        }
+    }
+
+    /**
+     * @return true if a change was queued
+     */
+    private boolean queue(ZookeeperSync.Event event, boolean select) {
+        if (event.type == ZookeeperSync.Event.Type.update) {
+            return false;
+        }
+        ZookeeperSync.Event.Type queued = queue.get(event.path);
+        if (queued == ZookeeperSync.Event.Type.add && event.type == ZookeeperSync.Event.Type.delete) {
+            // The path never made it to the tree.
+            queue.remove(event.path);
+            selected.remove(event.path);
+            skipped += 2;
+            return false;
+        }
+        if (queued != null) {
+            // Deleted then added again, the tree is brought in line with the sync either way. The first change is
+            // kept so a following delete is still applied to the tree.
+            skipped++;
+        } else {
+            queue.put(event.path, event.type);
+        }
+        if (select) {
+            selected.add(event.path);
+        }
+        maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+        return true;
+    }
+
+    private void drain() {
+        Collection<String> paths;
+        Collection<String> select;
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                return;
+            }
+            paths = queue.keySet();
+            select = selected;
+            queue = new LinkedHashMap<String, ZookeeperSync.Event.Type>();
+            selected = new HashSet<String>();
+            applied += paths.size();
+            frames++;
+        }
+        callback.apply(paths, select);
+    }
+
+    /**
+     * Drop all queued changes.
+     */
+    public synchronized void clear() {
+        queue.clear();
+        selected.clear();
+    }
+
+    /**
+     * @return number of paths with changes waiting for the next frame
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return highest number of paths with changes waiting for a frame
+     */
+    public synchronized int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return number of changes which were coalesced or cancelled out rather than applied
+     */
+    public synchronized long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * @return number of path changes applied
+     */
+    public synchronized long getAppliedCount() {
+        return applied;
+    }
+
+    /**
+     * @return number of frames which applied changes
+     */
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+}
@@ -0,0 +1,279 @@
+package com.kostbot.zoodirector.ui;
+
+import org.apache.zookeeper.data.Stat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Recent changes of watched nodes. Each path gets a slot of a fixed number of entries in shared primitive arrays, used
+ * as a ring buffer, so memory grows with the number of watched paths only. An entry holds the version, mtime and a
+ * digest of the data, and optionally the data itself cut to a size limit.
+ * <p/>
+ * Not thread safe, used on the EDT.
+ */
+public class WatchHistory {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * Version of entries recording a delete, their mtime is the local time the delete was seen.
+     */
+    public static final int DELETED = -1;
+
+    /**
+     * A recorded change, newest first.
+     */
+    public static class Entry {
+        public final int version;
+        public final long mtime;
+        public final int digest;
+        /**
+         * Data cut to the data limit, null if data was not recorded.
+         */
+        public final byte[] data;
+
+        private Entry(int version, long mtime, int digest, byte[] data) {
+            this.version = version;
+            this.mtime = mtime;
+            this.digest = digest;
+            this.data = data;
+        }
+
+        public boolean isDeleted() {
+            return version == DELETED;
+        }
+    }
+
+    private final int capacity;
+    private int dataLimit;
+
+    private final Map<String, Integer> slots;
+    private int slotCount;
+    private int[] freeSlots;
+    private int freeCount;
+
+    // Per slot.
+    private int[] heads;
+    private int[] sizes;
+    private long[] lastMzxids;
+
+    // Per entry, slot * capacity + index.
+    private int[] versions;
+    private long[] mtimes;
+    private int[] digests;
+    private byte[][] data;
+
+    private final CRC32 crc;
+
+    /**
+     * @param capacity  number of entries kept per path
+     * @param dataLimit bytes of data kept per entry, 0 to keep digests only
+     */
+    public WatchHistory(int capacity, int dataLimit) {
+        this.capacity = capacity;
+        slots = new HashMap<String, Integer>();
+        freeSlots = new int[0];
+        crc = new CRC32();
+        allocate(16);
+        setDataLimit(dataLimit);
+    }
+
+    private void allocate(int slotCapacity) {
+        heads = heads == null ? new int[slotCapacity] : Arrays.copyOf(heads, slotCapacity);
+        sizes = sizes == null ? new int[slotCapacity] : Arrays.copyOf(sizes, slotCapacity);
+        lastMzxids = lastMzxids == null ? new long[slotCapacity] : Arrays.copyOf(lastMzxids, slotCapacity);
+        int entries = slotCapacity * capacity;
+        versions = versions == null ? new int[entries] : Arrays.copyOf(versions, entries);
+        mtimes = mtimes == null ? new long[entries] : Arrays.copyOf(mtimes, entries);
+        digests = digests == null ? new int[entries] : Arrays.copyOf(digests, entries);
+        if (data != null) {
+            data = Arrays.copyOf(data, entries);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getDataLimit() {
+        return dataLimit;
+    }
+
+    /**
+     * Set the bytes of data kept per entry from now on. Setting 0 drops all data kept.
+     *
+     * @param dataLimit
+     */
+    public void setDataLimit(int dataLimit) {
+        this.dataLimit = Math.max(0, dataLimit);
+        if (this.dataLimit == 0) {
+            data = null;
+        } else if (data == null) {
+            data = new byte[heads.length * capacity][];
+        }
+    }
+
+    /**
+     * Record a change of the path. A stat already recorded, or a delete following a delete, is not recorded again.
+     *
+     * @param path
+     * @param stat null if the node was deleted
+     * @param data
+     */
+    public void record(String path, Stat stat, byte[] data) {
+        Integer slot = slots.get(path);
+        if (slot == null) {
+            if (stat == null) {
+                return;
+            }
+            slot = newSlot();
+            slots.put(path, slot);
+        }
+
+        int last = slot * capacity + (heads[slot] + capacity - 1) % capacity;
+        if (sizes[slot] > 0) {
+            if (stat == null ? versions[last] == DELETED :
+                    stat.getMzxid() != 0 && stat.getMzxid() == lastMzxids[slot] && versions[last] != DELETED) {
+                return;
+            }
+        }
+
+        int entry = slot * capacity + heads[slot];
+        if (stat == null) {
+            versions[entry] = DELETED;
+            mtimes[entry] = System.currentTimeMillis();
+            digests[entry] = 0;
+        } else {
+            versions[entry] = stat.getVersion();
+            mtimes[entry] = stat.getMtime();
+            digests[entry] = digest(data);
+            lastMzxids[slot] = stat.getMzxid();
+        }
+        if (this.data != null) {
+            this.data[entry] = stat == null || data == null ? null :
+                    Arrays.copyOf(data, Math.min(data.length, dataLimit));
+        }
+        heads[slot] = (heads[slot] + 1) % capacity;
+        sizes[slot] = Math.min(capacity, sizes[slot] + 1);
+    }
+
+    private int digest(byte[] data) {
+        if (data == null) {
+            return 0;
+        }
+        crc.reset();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private int newSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == heads.length) {
+            allocate(slotCount * 2);
+        }
+        return slotCount++;
+    }
+
+    /**
+     * Forget the history of the path, its slot is reused.
+     *
+     * @param path
+     */
+    public void remove(String path) {
+        Integer slot = slots.remove(path);
+        if (slot == null) {
+            return;
+        }
+        heads[slot] = 0;
+        sizes[slot] = 0;
+        lastMzxids[slot] = 0;
+        if (data != null) {
+            Arrays.fill(data, slot * capacity, (slot + 1) * capacity, null);
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(16, freeCount * 2));
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * @param path
+     * @return number of entries recorded for the path, at most the capacity
+     */
+    public int size(String path) {
+        Integer slot = slots.get(path);
+        return slot == null ? 0 : sizes[slot];
+    }
+
+    /**
+     * @param path
+     * @return entries of the path, newest first
+     */
+    public List<Entry> getEntries(String path) {
+        Integer slot = slots.get(path);
+        if (slot == null) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<Entry>(sizes[slot]);
+        for (int i = 0; i < sizes[slot]; ++i) {
+            int entry = getEntry(slot, i);
+            entries.add(new Entry(versions[entry], mtimes[entry], digests[entry], data == null ? null : data[entry]));
+        }
+        return entries;
+    }
+
+    /**
+     * @return array index of the i'th newest entry of the slot
+     */
+    private int getEntry(int slot, int i) {
+        return slot * capacity + (heads[slot] + capacity - 1 - i) % capacity;
+    }
+
+    /**
+     * Count the changes of the path in each interval of time up to now, by mtime. Changes coalesced into one entry
+     * are counted from the version difference to the entry before.
+     *
+     * @param path
+     * @param now          end of the newest interval, in millis
+     * @param bucketMillis length of each interval
+     * @param buckets      number of intervals
+     * @return change counts, oldest interval first
+     */
+    public int[] getChangeCounts(String path, long now, long bucketMillis, int buckets) {
+        int[] counts = new int[buckets];
+        Integer slot = slots.get(path);
+        if (slot == null) {
+            return counts;
+        }
+        for (int i = 0; i < sizes[slot]; ++i) {
+            int entry = getEntry(slot, i);
+            long bucket = Math.max(0, (now - mtimes[entry]) / bucketMillis);
+            if (bucket >= buckets) {
+                break;
+            }
+            int changes = 1;
+            if (i + 1 < sizes[slot] && versions[entry] != DELETED) {
+                int previous = versions[getEntry(slot, i + 1)];
+                if (previous != DELETED && versions[entry] > previous) {
+                    changes = versions[entry] - previous;
+                }
+            }
+            counts[buckets - 1 - (int) bucket] += changes;
+        }
+        return counts;
+    }
+
+    /**
+     * @return bytes held by the primitive arrays, not counting kept data
+     */
+    public long getAllocatedBytes() {
+        return heads.length * (4L + 4 + 8) + (long) versions.length * (4 + 8 + 4);
+    }
+}
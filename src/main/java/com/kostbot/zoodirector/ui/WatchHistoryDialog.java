@@ -0,0 +1,48 @@
+package com.kostbot.zoodirector.ui;
+
+import org.jdesktop.swingx.JXTable;
+import org.joda.time.LocalDateTime;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.List;
+
+/**
+ * Shows the recorded history of a watched node, newest change first.
+ */
+public class WatchHistoryDialog extends JDialog {
+
+    /**
+     * @param owner
+     * @param path
+     * @param entries history entries of the path, newest first
+     */
+    public WatchHistoryDialog(Window owner, String path, List<WatchHistory.Entry> entries) {
+        super(owner, "History: " + path);
+
+        DefaultTableModel tableModel = new DefaultTableModel(new String[]{"modified", "version", "digest", "data"}, 0);
+        for (WatchHistory.Entry entry : entries) {
+            tableModel.addRow(new Object[]{
+                    new LocalDateTime(entry.mtime),
+                    entry.isDeleted() ? "deleted" : entry.version,
+                    entry.isDeleted() ? null : String.format("%08x", entry.digest),
+                    entry.data == null ? null : new String(entry.data)
+            });
+        }
+
+        JXTable table = new JXTable(tableModel) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        table.setFont(ZooDirectorFrame.FONT_MONOSPACED);
+        table.setHorizontalScrollEnabled(true);
+        table.packAll();
+
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        pack();
+        setLocationRelativeTo(owner);
+    }
+}
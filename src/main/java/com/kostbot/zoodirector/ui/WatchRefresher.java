@@ -0,0 +1,206 @@
+package com.kostbot.zoodirector.ui;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh policy of watched nodes. At most one load is in flight per path, updates arriving meanwhile are coalesced
+ * into a single trailing load, and each path is loaded at most the maximum refresh rate times per second. Updates of
+ * each path are counted so their rate can be shown.
+ * <p/>
+ * Thread safe.
+ */
+public class WatchRefresher {
+    public static final int DEFAULT_MAX_REFRESH_RATE = 10;
+
+    /**
+     * Loads watched nodes.
+     */
+    public static interface Loader {
+        /**
+         * Start loading the path, {@link WatchRefresher#loaded(String)} must be called once done.
+         *
+         * @param path
+         */
+        public void load(String path);
+    }
+
+    private static class Watch {
+        private boolean loading;
+        // Updated while loading, loaded again once done.
+        private boolean dirty;
+        // Waiting for the refresh interval to pass.
+        private boolean scheduled;
+        private long lastLoad;
+        private int updates;
+        private int rate;
+    }
+
+    private final Loader loader;
+    private final ScheduledExecutorService scheduler;
+
+    // Guarded by this.
+    private final Map<String, Watch> watches;
+    private long minInterval;
+    private long lastSample;
+    private long loads;
+    private long coalesced;
+
+    /**
+     * @param loader
+     * @param maxRefreshRate loads per second of each path, 0 for no limit
+     */
+    public WatchRefresher(Loader loader, int maxRefreshRate) {
+        this.loader = loader;
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("watch-refresher").build());
+        watches = new HashMap<String, Watch>();
+        lastSample = System.currentTimeMillis();
+        setMaxRefreshRate(maxRefreshRate);
+    }
+
+    /**
+     * @param maxRefreshRate loads per second of each path, 0 for no limit
+     */
+    public synchronized void setMaxRefreshRate(int maxRefreshRate) {
+        minInterval = maxRefreshRate <= 0 ? 0 : 1000L / maxRefreshRate;
+    }
+
+    /**
+     * Refresh the path following an update, loading it now if allowed.
+     *
+     * @param path
+     */
+    public void refresh(String path) {
+        synchronized (this) {
+            Watch watch = watches.get(path);
+            if (watch == null) {
+                watch = new Watch();
+                watches.put(path, watch);
+            }
+            watch.updates++;
+            if (watch.scheduled || watch.dirty) {
+                coalesced++;
+                return;
+            }
+            if (watch.loading) {
+                watch.dirty = true;
+                return;
+            }
+            if (!start(path, watch)) {
+                return;
+            }
+        }
+        loader.load(path);
+    }
+
+    /**
+     * Called once a load of the path is done, starting the trailing load if the path was updated meanwhile.
+     *
+     * @param path
+     */
+    public void loaded(String path) {
+        synchronized (this) {
+            Watch watch = watches.get(path);
+            if (watch == null || !watch.loading) {
+                return;
+            }
+            watch.loading = false;
+            if (!watch.dirty) {
+                return;
+            }
+            watch.dirty = false;
+            if (!start(path, watch)) {
+                return;
+            }
+        }
+        loader.load(path);
+    }
+
+    /**
+     * Mark the watch as loading if the refresh interval has passed, otherwise schedule the load for when it has.
+     *
+     * @return true if the load should start now
+     */
+    private boolean start(final String path, Watch watch) {
+        long delay = watch.lastLoad + minInterval - System.currentTimeMillis();
+        if (delay > 0) {
+            watch.scheduled = true;
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (WatchRefresher.this) {
+                        Watch watch = watches.get(path);
+                        if (watch == null || !watch.scheduled) {
+                            return;
+                        }
+                        watch.scheduled = false;
+                        watch.loading = true;
+                        watch.lastLoad = System.currentTimeMillis();
+                        loads++;
+                    }
+                    loader.load(path);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            return false;
+        }
+        watch.loading = true;
+        watch.lastLoad = System.currentTimeMillis();
+        loads++;
+        return true;
+    }
+
+    /**
+     * Stop refreshing the path, a load in flight is left to finish.
+     *
+     * @param path
+     */
+    public synchronized void remove(String path) {
+        watches.remove(path);
+    }
+
+    /**
+     * Sample the update rate of each path since the last sample.
+     *
+     * @return updates per second of the paths whose rate changed since the last sample
+     */
+    public synchronized Map<String, Integer> sampleRates() {
+        long now = System.currentTimeMillis();
+        long elapsed = Math.max(1, now - lastSample);
+        lastSample = now;
+        Map<String, Integer> rates = new HashMap<String, Integer>();
+        for (Map.Entry<String, Watch> entry : watches.entrySet()) {
+            Watch watch = entry.getValue();
+            int rate = (int) Math.round(watch.updates * 1000.0 / elapsed);
+            watch.updates = 0;
+            if (rate != watch.rate) {
+                watch.rate = rate;
+                rates.put(entry.getKey(), rate);
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * @return number of loads started
+     */
+    public synchronized long getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * @return number of updates folded into a load already pending
+     */
+    public synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
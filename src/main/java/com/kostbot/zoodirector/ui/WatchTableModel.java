@@ -0,0 +1,450 @@
+package com.kostbot.zoodirector.ui;
+
+import org.apache.zookeeper.data.Stat;
+import org.joda.time.LocalDateTime;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Table model of watched nodes. Rows are found by path through an index, and stat fields are held in primitive arrays
+ * per column. Node data is kept as bytes and only decoded once a row is displayed.
+ * <p/>
+ * Rows are added and removed on the EDT. Data updates may come from any thread, they are coalesced by path and applied
+ * at most once per frame with as few row update events as possible. Loads finishing out of order are told apart by
+ * their mzxid, so an older stat never replaces a newer one. Changes applied are recorded in the watch history, whose
+ * change counts over the last minute are the value of the history column.
+ */
+public class WatchTableModel extends AbstractTableModel {
+    public static final int PATH_COLUMN = 0;
+    public static final int EPHEMERAL_COLUMN = 1;
+    public static final int CREATED_COLUMN = 2;
+    public static final int MODIFIED_COLUMN = 3;
+    public static final int VERSION_COLUMN = 4;
+    public static final int UPDATE_RATE_COLUMN = 5;
+    public static final int HISTORY_COLUMN = 6;
+    public static final int DATA_COLUMN = 7;
+
+    public static final int HISTORY_BUCKETS = 20;
+    public static final long HISTORY_BUCKET_MILLIS = 3000;
+
+    private static final String[] COLUMN_NAMES = {
+            "path", "ephemeral", "created", "modified", "version", "updates/sec", "history", "data"};
+    private static final Class<?>[] COLUMN_CLASSES = {
+            String.class, Object.class, LocalDateTime.class, LocalDateTime.class, Integer.class, Integer.class,
+            int[].class, String.class};
+
+    // Row updates spread over more runs than this are sent as one event spanning them all.
+    private static final int MAX_UPDATE_EVENTS = 16;
+
+    private static final byte NO_STAT = 0;
+    private static final byte PERSISTENT = 1;
+    private static final byte EPHEMERAL = 2;
+
+    /**
+     * Stat and data of a node waiting to be applied, null stat if the node is gone.
+     */
+    private static class Update {
+        private final Stat stat;
+        private final byte[] data;
+
+        private Update(Stat stat, byte[] data) {
+            this.stat = stat;
+            this.data = data;
+        }
+
+        private boolean isNewerThan(Update update) {
+            return stat != null && update.stat != null && stat.getMzxid() > update.stat.getMzxid();
+        }
+    }
+
+    private final Map<String, Integer> index;
+    private int rowCount;
+    private String[] paths;
+    private byte[] states;
+    private long[] ctimes;
+    private long[] mtimes;
+    private int[] versions;
+    private long[] mzxids;
+    private int[] updateRates;
+    private byte[][] data;
+    // Decoded data, filled in as rows are displayed.
+    private String[] text;
+
+    private final WatchHistory history;
+
+    private final Timer timer;
+    // Guarded by this.
+    private Map<String, Update> pending;
+    private long applied;
+    private long events;
+
+    public WatchTableModel() {
+        index = new HashMap<String, Integer>();
+        allocate(16);
+        history = new WatchHistory(WatchHistory.DEFAULT_CAPACITY, 0);
+        pending = new LinkedHashMap<String, Update>();
+        timer = new Timer(TreeUpdateQueue.FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                applyUpdates();
+            }
+        });
+        timer.setRepeats(false);
+    }
+
+    private void allocate(int capacity) {
+        paths = new String[capacity];
+        states = new byte[capacity];
+        ctimes = new long[capacity];
+        mtimes = new long[capacity];
+        versions = new int[capacity];
+        mzxids = new long[capacity];
+        updateRates = new int[capacity];
+        data = new byte[capacity][];
+        text = new String[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= paths.length) {
+            return;
+        }
+        capacity = Math.max(capacity, paths.length * 2);
+        paths = Arrays.copyOf(paths, capacity);
+        states = Arrays.copyOf(states, capacity);
+        ctimes = Arrays.copyOf(ctimes, capacity);
+        mtimes = Arrays.copyOf(mtimes, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        mzxids = Arrays.copyOf(mzxids, capacity);
+        updateRates = Arrays.copyOf(updateRates, capacity);
+        data = Arrays.copyOf(data, capacity);
+        text = Arrays.copyOf(text, capacity);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return COLUMN_CLASSES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == PATH_COLUMN) {
+            return paths[row];
+        }
+        if (column == DATA_COLUMN) {
+            if (text[row] == null && data[row] != null) {
+                text[row] = new String(data[row]);
+            }
+            return text[row];
+        }
+        if (column == UPDATE_RATE_COLUMN) {
+            return updateRates[row];
+        }
+        if (column == HISTORY_COLUMN) {
+            return history.getChangeCounts(paths[row], System.currentTimeMillis(), HISTORY_BUCKET_MILLIS,
+                    HISTORY_BUCKETS);
+        }
+        if (states[row] == NO_STAT) {
+            return null;
+        }
+        switch (column) {
+            case EPHEMERAL_COLUMN:
+                return states[row] == EPHEMERAL;
+            case CREATED_COLUMN:
+                return new LocalDateTime(ctimes[row]);
+            case MODIFIED_COLUMN:
+                return new LocalDateTime(mtimes[row]);
+            case VERSION_COLUMN:
+                return versions[row];
+            default:
+                throw new IndexOutOfBoundsException("column " + column);
+        }
+    }
+
+    /**
+     * @param row
+     * @return path of the row
+     */
+    public String getPath(int row) {
+        return paths[row];
+    }
+
+    /**
+     * @param path
+     * @return row of the path, -1 if not in the table
+     */
+    public int getRow(String path) {
+        Integer row = index.get(path);
+        return row == null ? -1 : row;
+    }
+
+    public boolean contains(String path) {
+        return index.containsKey(path);
+    }
+
+    /**
+     * @return history of the watched nodes, to be used on the EDT
+     */
+    public WatchHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Add rows without data for the paths not already in the table. Must be called on the EDT.
+     *
+     * @param paths
+     * @return number of rows added
+     */
+    public int addPaths(Collection<String> paths) {
+        int first = rowCount;
+        ensureCapacity(rowCount + paths.size());
+        for (String path : paths) {
+            if (!index.containsKey(path)) {
+                index.put(path, rowCount);
+                this.paths[rowCount++] = path;
+            }
+        }
+        if (rowCount > first) {
+            fireTableRowsInserted(first, rowCount - 1);
+        }
+        return rowCount - first;
+    }
+
+    /**
+     * Remove the given rows. Must be called on the EDT.
+     *
+     * @param rows
+     * @return paths of the removed rows
+     */
+    public List<String> removeRows(int[] rows) {
+        rows = rows.clone();
+        Arrays.sort(rows);
+        List<String> removed = new ArrayList<String>(rows.length);
+        // Remove runs of consecutive rows from the bottom up, so rows yet to be removed keep their place.
+        int end = rows.length - 1;
+        while (end >= 0) {
+            int start = end;
+            while (start > 0 && rows[start - 1] >= rows[start] - 1) {
+                --start;
+            }
+            int first = rows[start];
+            int last = rows[end];
+            for (int row = first; row <= last; ++row) {
+                removed.add(paths[row]);
+            }
+            removeRange(first, last);
+            end = start - 1;
+        }
+        return removed;
+    }
+
+    /**
+     * Remove the row of the path. Must be called on the EDT.
+     *
+     * @param path
+     * @return true if the path was in the table
+     */
+    public boolean remove(String path) {
+        int row = getRow(path);
+        if (row < 0) {
+            return false;
+        }
+        removeRange(row, row);
+        return true;
+    }
+
+    private void removeRange(int first, int last) {
+        for (int row = first; row <= last; ++row) {
+            index.remove(paths[row]);
+            history.remove(paths[row]);
+        }
+        int count = last - first + 1;
+        int moved = rowCount - last - 1;
+        System.arraycopy(paths, last + 1, paths, first, moved);
+        System.arraycopy(states, last + 1, states, first, moved);
+        System.arraycopy(ctimes, last + 1, ctimes, first, moved);
+        System.arraycopy(mtimes, last + 1, mtimes, first, moved);
+        System.arraycopy(versions, last + 1, versions, first, moved);
+        System.arraycopy(mzxids, last + 1, mzxids, first, moved);
+        System.arraycopy(updateRates, last + 1, updateRates, first, moved);
+        System.arraycopy(data, last + 1, data, first, moved);
+        System.arraycopy(text, last + 1, text, first, moved);
+        rowCount -= count;
+        // Let go of removed references and clear the slots for rows added later.
+        Arrays.fill(states, rowCount, rowCount + count, NO_STAT);
+        Arrays.fill(mzxids, rowCount, rowCount + count, 0L);
+        Arrays.fill(updateRates, rowCount, rowCount + count, 0);
+        Arrays.fill(paths, rowCount, rowCount + count, null);
+        Arrays.fill(data, rowCount, rowCount + count, null);
+        Arrays.fill(text, rowCount, rowCount + count, null);
+        for (int row = first; row < rowCount; ++row) {
+            index.put(paths[row], row);
+        }
+        fireTableRowsDeleted(first, last);
+    }
+
+    /**
+     * Queue the stat and data of a watched node, applied with the next frame. Only the latest update of a path is
+     * applied. Thread safe.
+     *
+     * @param path
+     * @param stat null if the node does not exist
+     * @param data
+     */
+    public void update(String path, Stat stat, byte[] data) {
+        Update update = new Update(stat, stat == null ? null : data);
+        synchronized (this) {
+            Update queued = pending.get(path);
+            if (queued == null || !queued.isNewerThan(update)) {
+                pending.put(path, update);
+            }
+        }
+        timer.start();
+    }
+
+    /**
+     * Apply the queued updates of paths still in the table, then fire events for the updated rows.
+     */
+    void applyUpdates() {
+        Map<String, Update> updates;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            updates = pending;
+            pending = new LinkedHashMap<String, Update>();
+        }
+
+        int[] rows = new int[updates.size()];
+        int count = 0;
+        for (Map.Entry<String, Update> entry : updates.entrySet()) {
+            Integer row = index.get(entry.getKey());
+            if (row != null && set(row, entry.getValue())) {
+                rows[count++] = row;
+            }
+        }
+        int events = fireRowsUpdated(rows, count);
+        synchronized (this) {
+            applied += count;
+            this.events += events;
+        }
+    }
+
+    /**
+     * Set the update rates shown. Must be called on the EDT.
+     *
+     * @param rates updates per second by path
+     */
+    public void setUpdateRates(Map<String, Integer> rates) {
+        int[] rows = new int[rates.size()];
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : rates.entrySet()) {
+            Integer row = index.get(entry.getKey());
+            if (row != null) {
+                updateRates[row] = entry.getValue();
+                rows[count++] = row;
+            }
+        }
+        fireRowsUpdated(rows, count);
+    }
+
+    /**
+     * Fire one event per run of consecutive rows, or a single event spanning them all if there are too many runs.
+     *
+     * @param rows  updated rows, in any order
+     * @param count number of rows
+     * @return number of events fired
+     */
+    private int fireRowsUpdated(int[] rows, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        Arrays.sort(rows, 0, count);
+
+        int runs = 1;
+        for (int i = 1; i < count; ++i) {
+            if (rows[i] != rows[i - 1] + 1) {
+                ++runs;
+            }
+        }
+
+        if (runs > MAX_UPDATE_EVENTS) {
+            fireTableRowsUpdated(rows[0], rows[count - 1]);
+            return 1;
+        }
+        int start = 0;
+        for (int i = 1; i <= count; ++i) {
+            if (i == count || rows[i] != rows[i - 1] + 1) {
+                fireTableRowsUpdated(rows[start], rows[i - 1]);
+                start = i;
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * @return true if the row changed, false if the update is older than what the row shows
+     */
+    private boolean set(int row, Update update) {
+        Stat stat = update.stat;
+        if (stat == null) {
+            // The mzxid is kept so loads of the node from before its delete are still turned away.
+            if (states[row] != NO_STAT) {
+                history.record(paths[row], null, null);
+            }
+            states[row] = NO_STAT;
+        } else {
+            long mzxid = stat.getMzxid();
+            if (mzxid < mzxids[row] || (mzxid == mzxids[row] && mzxid != 0 && states[row] == NO_STAT)) {
+                return false;
+            }
+            states[row] = stat.getEphemeralOwner() != 0 ? EPHEMERAL : PERSISTENT;
+            ctimes[row] = stat.getCtime();
+            mtimes[row] = stat.getMtime();
+            versions[row] = stat.getVersion();
+            mzxids[row] = mzxid;
+            history.record(paths[row], stat, update.data);
+        }
+        data[row] = update.data;
+        text[row] = null;
+        return true;
+    }
+
+    /**
+     * @return number of row updates applied
+     */
+    public synchronized long getAppliedCount() {
+        return applied;
+    }
+
+    /**
+     * @return number of row update events fired
+     */
+    public synchronized long getEventCount() {
+        return events;
+    }
+}
@@ -10,6 +10,7 @@ import javax.swing.*;
 import javax.swing.event.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Map;
@@ -22,6 +23,9 @@ public class ZooDirectorFrame extends JFrame {
     public static final Font FONT_MONOSPACED = new Font("Monospaced", Font.PLAIN, 11);
     public static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
 
+    // How long an exit waits for the snapshot of the open connection to be saved.
+    private static final int EXIT_SNAPSHOT_TIMEOUT_MILLIS = 10000;
+
     private JMenuBar menuBar;
 
     private final ZooDirectorConfig config;
@@ -35,13 +39,31 @@ public class ZooDirectorFrame extends JFrame {
 
         setupMenuBar();
 
-        this.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+        // Exit once the open connection's snapshot is saved, the save runs in the background.
+        this.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
         this.addWindowListener(new WindowAdapter() {
             @Override
-            public void windowClosed(WindowEvent e) {
-                if (zooDirectorPanel != null) {
-                    zooDirectorPanel.close();
+            public void windowClosing(WindowEvent e) {
+                setVisible(false);
+                if (zooDirectorPanel == null) {
+                    exit();
+                    return;
                 }
+                Timer timeout = new Timer(EXIT_SNAPSHOT_TIMEOUT_MILLIS, new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        logger.warn("snapshot not saved within {}ms", EXIT_SNAPSHOT_TIMEOUT_MILLIS);
+                        exit();
+                    }
+                });
+                timeout.setRepeats(false);
+                timeout.start();
+                zooDirectorPanel.close(new Runnable() {
+                    @Override
+                    public void run() {
+                        exit();
+                    }
+                });
             }
         });
 
@@ -49,6 +71,11 @@ public class ZooDirectorFrame extends JFrame {
         this.pack();
     }
 
+    private void exit() {
+        dispose();
+        System.exit(0);
+    }
+
     private class HtmlInfoDialog extends JFrame {
         HtmlInfoDialog(String title, String htmlResourcePath, int width, int height) {
             super(title);
@@ -92,20 +119,39 @@ public class ZooDirectorFrame extends JFrame {
     /**
      * Establish a new connection to a zookeeper cluster.
      *
+     * @param connectionName        connection alias, or the connection string for quick connections
      * @param connectionString
      * @param connectionRetryPeriod
      */
-    private void connect(String connectionString, int connectionRetryPeriod) {
+    private void connect(String connectionName, String connectionString, int connectionRetryPeriod) {
         getContentPane().removeAll();
         if (zooDirectorPanel != null) {
             zooDirectorPanel.close();
         }
-        zooDirectorPanel = new ZooDirectorPanel(connectionString, connectionRetryPeriod);
+        zooDirectorPanel = new ZooDirectorPanel(connectionString, connectionRetryPeriod,
+                config.getSnapshotFile(connectionName));
+        zooDirectorPanel.setWatchMaxRefreshRate(config.getWatchMaxRefreshRate());
         setTitle(TITLE + " (" + connectionString + ")");
         getContentPane().add(zooDirectorPanel);
         zooDirectorPanel.connect();
     }
 
+    /**
+     * Browse the snapshot and transaction logs of a zookeeper data directory, no cluster is needed.
+     *
+     * @param dataDir
+     */
+    private void open(File dataDir) {
+        getContentPane().removeAll();
+        if (zooDirectorPanel != null) {
+            zooDirectorPanel.close();
+        }
+        zooDirectorPanel = new ZooDirectorPanel(dataDir);
+        setTitle(TITLE + " (" + dataDir.getPath() + ", read only)");
+        getContentPane().add(zooDirectorPanel);
+        zooDirectorPanel.connect();
+    }
+
     private void loadConnectionMenu() {
         connectMenu.removeAll();
 
@@ -125,13 +171,29 @@ public class ZooDirectorFrame extends JFrame {
                         "localhost:2181");
 
                 if (connectionString != null) {
-                    connect(connectionString, config.getConnectionRetryPeriod());
+                    connect(connectionString, connectionString, config.getConnectionRetryPeriod());
                 }
             }
         });
         quickConnect.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_N, InputEvent.CTRL_DOWN_MASK));
         quickConnect.setMnemonic(KeyEvent.VK_Q);
 
+        JMenuItem openDataDir = new JMenuItem("Open Data Directory");
+        connectMenu.add(openDataDir);
+        openDataDir.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser fileChooser = new JFileChooser();
+                fileChooser.setDialogTitle("Open zookeeper data directory");
+                fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                if (fileChooser.showOpenDialog(SwingUtilities.getRoot(menuBar)) == JFileChooser.APPROVE_OPTION) {
+                    open(fileChooser.getSelectedFile());
+                }
+            }
+        });
+        openDataDir.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.CTRL_DOWN_MASK));
+        openDataDir.setMnemonic(KeyEvent.VK_O);
+
         final Map<String, String> connectionAliases = config.getConnectionAliases();
 
         if (connectionAliases.size() > 0) {
@@ -143,7 +205,7 @@ public class ZooDirectorFrame extends JFrame {
                 menuItem.addActionListener(new ActionListener() {
                     @Override
                     public void actionPerformed(ActionEvent e) {
-                        connect(connectionString, config.getConnectionRetryPeriod());
+                        connect(connectionAlias, connectionString, config.getConnectionRetryPeriod());
                     }
                 });
                 menuItem.setToolTipText(connectionString);
@@ -1,22 +1,32 @@
 package com.kostbot.zoodirector.ui;
 
 import com.kostbot.zoodirector.ui.helpers.UIUtils;
+import com.kostbot.zoodirector.ui.workers.DeleteWorker;
+import com.kostbot.zoodirector.ui.workers.ExportWorker;
+import com.kostbot.zoodirector.ui.workers.ImportWorker;
+import com.kostbot.zoodirector.zookeepersync.PathStore;
 import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
 import org.apache.zookeeper.CreateMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.Enumeration;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 public class ZooDirectorNavPanel extends JPanel {
@@ -24,14 +34,25 @@ public class ZooDirectorNavPanel extends JPanel {
 
     private final ZooDirectorPanel zooDirectorPanel;
 
-    protected final DefaultTreeModel treeModel;
+    protected final ZookeeperTreeModel treeModel;
     protected final JTree tree;
-    protected final DefaultMutableTreeNode rootNode;
+    private final JLabel queueDepthLabel;
+
+    private static final int FILTER_DELAY = 250;
+
+    private final JPanel filterPanel;
+    private final JLabel filterLabel;
+    private final JTextField filterTextField;
+    private final Timer filterTimer;
+    private ZookeeperTreeModel.Node filterNode;
+    private boolean updatingFilter;
 
     private final JMenuItem createNodeMenuItem;
     private final JMenuItem deleteNodeMenuItem;
     private final JMenuItem trimNodeMenuItem;
     private final JMenuItem pruneNodeMenuItem;
+    private final JMenuItem importMenuItem;
+    private final JMenuItem exportMenuItem;
 
     private final JMenuItem addWatchMenuItem;
     private final JMenuItem removeWatchMenuItem;
@@ -43,17 +64,92 @@ public class ZooDirectorNavPanel extends JPanel {
 
         this.zooDirectorPanel = zooDirectorPanel;
 
-        rootNode = new DefaultMutableTreeNode(ZookeeperNode.root);
-        treeModel = new DefaultTreeModel(rootNode);
+        treeModel = new ZookeeperTreeModel(new PathStore());
 
         tree = new JTree(treeModel);
         tree.setShowsRootHandles(true);
         tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
         tree.setBorder(BorderFactory.createEmptyBorder(2, 0, 4, 0));
 
+        tree.addTreeExpansionListener(new TreeExpansionListener() {
+            @Override
+            public void treeExpanded(TreeExpansionEvent event) {
+            }
+
+            @Override
+            public void treeCollapsed(TreeExpansionEvent event) {
+                // Release the children of collapsed nodes once the tree is done collapsing, they are read from the
+                // store again when next expanded.
+                final TreePath path = event.getPath();
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        ZookeeperTreeModel.Node node = (ZookeeperTreeModel.Node) path.getLastPathComponent();
+                        if (!node.isRoot() && !tree.isExpanded(path)) {
+                            treeModel.unload(node);
+                        }
+                    }
+                });
+            }
+        });
+
         JScrollPane scrollPane = new JScrollPane(tree);
         this.add(scrollPane, BorderLayout.CENTER);
 
+        queueDepthLabel = new JLabel();
+        queueDepthLabel.setVisible(false);
+        this.add(queueDepthLabel, BorderLayout.SOUTH);
+
+        // Filters the children of one node, applied once typing pauses.
+        filterPanel = new JPanel(new BorderLayout(5, 0));
+        filterLabel = new JLabel();
+        filterPanel.add(filterLabel, BorderLayout.WEST);
+
+        filterTimer = new Timer(FILTER_DELAY, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (filterNode != null) {
+                    treeModel.setFilter(filterNode, filterTextField.getText());
+                }
+            }
+        });
+        filterTimer.setRepeats(false);
+
+        filterTextField = new JTextField();
+        filterTextField.setToolTipText("only show children whose name contains this text");
+        filterTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                changedUpdate(e);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                changedUpdate(e);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                if (!updatingFilter) {
+                    filterTimer.restart();
+                }
+            }
+        });
+        filterPanel.add(filterTextField, BorderLayout.CENTER);
+
+        JButton closeFilterButton = new JButton("x");
+        closeFilterButton.setToolTipText("show all children");
+        closeFilterButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                hideFilter(true);
+            }
+        });
+        filterPanel.add(closeFilterButton, BorderLayout.EAST);
+
+        filterPanel.setVisible(false);
+        this.add(filterPanel, BorderLayout.NORTH);
+
         final JPopupMenu popupMenu = new JPopupMenu();
 
         createNodeMenuItem = new JMenuItem("create");
@@ -92,6 +188,24 @@ public class ZooDirectorNavPanel extends JPanel {
         });
         popupMenu.add(trimNodeMenuItem);
 
+        importMenuItem = new JMenuItem("import");
+        importMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                importNodes(getSelectedNode());
+            }
+        });
+        popupMenu.add(importMenuItem);
+
+        exportMenuItem = new JMenuItem("export");
+        exportMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportNodes(getSelectedNode());
+            }
+        });
+        popupMenu.add(exportMenuItem);
+
         popupMenu.addSeparator();
 
         JMenuItem expandPathMenuItem = new JMenuItem("expand all");
@@ -112,6 +226,25 @@ public class ZooDirectorNavPanel extends JPanel {
         });
         popupMenu.add(collapsePathMenuItem);
 
+        final JMenuItem filterMenuItem = new JMenuItem("filter children");
+        filterMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showFilter(getSelectedNode());
+                filterTextField.requestFocusInWindow();
+            }
+        });
+        popupMenu.add(filterMenuItem);
+
+        final JCheckBoxMenuItem groupSequentialMenuItem = new JCheckBoxMenuItem("group sequential nodes");
+        groupSequentialMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setGroupSequential(groupSequentialMenuItem.isSelected());
+            }
+        });
+        popupMenu.add(groupSequentialMenuItem);
+
         popupMenu.addSeparator();
 
         addWatchMenuItem = new JMenuItem("add watch");
@@ -139,15 +272,26 @@ public class ZooDirectorNavPanel extends JPanel {
                 // Select if row is clicked not just text
                 int row = tree.getClosestRowForLocation(e.getX(), e.getY());
                 tree.setSelectionRow(row);
+                ZookeeperTreeModel.Node selectedNode = getSelectedNode();
+                if (selectedNode != null && !selectedNode.isZookeeperNode()) {
+                    if (selectedNode instanceof ZookeeperTreeModel.Placeholder && SwingUtilities.isLeftMouseButton(e)) {
+                        showPage((ZookeeperTreeModel.Placeholder) selectedNode);
+                    }
+                    return;
+                }
                 if (SwingUtilities.isRightMouseButton(e)) {
-                    DefaultMutableTreeNode selectedNode = getSelectedNode();
 
                     boolean isOnline = ZooDirectorNavPanel.this.zooDirectorPanel.isOnline();
+                    boolean isWritable = isWritable();
 
-                    createNodeMenuItem.setEnabled(isOnline);
-                    deleteNodeMenuItem.setEnabled(isOnline && !selectedNode.isRoot());
-                    pruneNodeMenuItem.setEnabled(isOnline && !selectedNode.isRoot());
-                    trimNodeMenuItem.setEnabled(isOnline && selectedNode.getChildCount() > 0);
+                    createNodeMenuItem.setEnabled(isWritable);
+                    deleteNodeMenuItem.setEnabled(isWritable && !selectedNode.isRoot());
+                    pruneNodeMenuItem.setEnabled(isWritable && !selectedNode.isRoot());
+                    trimNodeMenuItem.setEnabled(isWritable && treeModel.hasChildren(selectedNode));
+                    importMenuItem.setEnabled(isWritable);
+                    exportMenuItem.setEnabled(isOnline);
+                    filterMenuItem.setEnabled(treeModel.hasChildren(selectedNode));
+                    groupSequentialMenuItem.setSelected(treeModel.isGroupSequential());
 
                     boolean hasWatch = ZooDirectorNavPanel.this.zooDirectorPanel.hasWatch(getZookeeperNodePath(selectedNode));
                     addWatchMenuItem.setEnabled(isOnline && !hasWatch);
@@ -162,8 +306,19 @@ public class ZooDirectorNavPanel extends JPanel {
         tree.addTreeSelectionListener(new TreeSelectionListener() {
             @Override
             public void valueChanged(TreeSelectionEvent event) {
+                ZookeeperTreeModel.Node node = getSelectedNode();
+                if (node instanceof ZookeeperTreeModel.Placeholder) {
+                    showFilter(node.getParent());
+                    return;
+                }
+                if (node != null && treeModel.isPaged(node)) {
+                    showFilter(node);
+                }
+                if (node != null && !node.isZookeeperNode()) {
+                    return;
+                }
                 if (ZooDirectorNavPanel.this.zooDirectorPanel.isOnline()) {
-                    String path = getZookeeperNodePath(getSelectedNode());
+                    String path = getZookeeperNodePath(node);
                     ZooDirectorNavPanel.this.zooDirectorPanel.viewEditTreeNode(path);
                 }
             }
@@ -172,18 +327,29 @@ public class ZooDirectorNavPanel extends JPanel {
         tree.addKeyListener(new KeyAdapter() {
             @Override
             public void keyReleased(KeyEvent e) {
-                DefaultMutableTreeNode node = getSelectedNode();
+                ZookeeperTreeModel.Node node = getSelectedNode();
 
                 if (node == null) {
                     return;
                 }
 
+                if (!node.isZookeeperNode()) {
+                    if (node instanceof ZookeeperTreeModel.Placeholder && e.getKeyCode() == KeyEvent.VK_ENTER) {
+                        showPage((ZookeeperTreeModel.Placeholder) node);
+                    }
+                    return;
+                }
+
                 switch (e.getKeyCode()) {
                     case KeyEvent.VK_DELETE:
-                        deleteNode(node, e.isControlDown());
+                        if (isWritable()) {
+                            deleteNode(node, e.isControlDown());
+                        }
                         break;
                     case KeyEvent.VK_INSERT:
-                        createNode(node);
+                        if (isWritable()) {
+                            createNode(node);
+                        }
                         break;
                     case KeyEvent.VK_MULTIPLY:
                         expandAll(node);
@@ -194,13 +360,13 @@ public class ZooDirectorNavPanel extends JPanel {
                     case KeyEvent.VK_W:
                         // Ctrl + (Shift) + W
                         if (e.isControlDown()) {
-                            addWatch(node, e.isShiftDown());
+                            addWatch(node.getPath(), e.isShiftDown());
                         }
                         break;
                     case KeyEvent.VK_R:
                         // Ctrl + (Shift) + R
                         if (e.isControlDown()) {
-                            removeWatch(node, e.isShiftDown());
+                            removeWatch(node.getPath(), e.isShiftDown());
                         }
                         break;
                 }
@@ -219,66 +385,31 @@ public class ZooDirectorNavPanel extends JPanel {
     /**
      * Get the selected tree node.
      *
-     * @return selected tree node containing helpful ZookeeperNode object
+     * @return selected tree node
      */
-    private DefaultMutableTreeNode getSelectedNode() {
+    private ZookeeperTreeModel.Node getSelectedNode() {
         TreePath currentSelection = tree.getSelectionPath();
 
         if (currentSelection == null)
             return null;
 
-        return (DefaultMutableTreeNode) currentSelection.getLastPathComponent();
-    }
-
-    protected DefaultMutableTreeNode getNodeFromPath(String path) {
-        DefaultMutableTreeNode parent = rootNode;
-
-        if (path == null || path.equals("/")) {
-            return parent;
-        }
-
-        if (!path.startsWith("/")) {
-            return null;
-        }
-
-        String[] segments = path.substring(1).split("/");
-
-        boolean foundParent = true;
-
-        for (int i = 0; foundParent && i < segments.length; ++i) {
-
-            String segment = segments[i];
-
-            foundParent = false;
-
-            for (int j = 0; j < parent.getChildCount(); ++j) {
-                DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(j);
-                if (segment.equals(child.toString())) {
-
-                    // If we have found the path, remove it.
-                    if (i == segments.length - 1) {
-                        return child;
-                    }
-
-                    // Keep searching down path.
-                    foundParent = true;
-                    parent = child;
-                    break;
-                }
-            }
-        }
-
-        return null;
+        return (ZookeeperTreeModel.Node) currentSelection.getLastPathComponent();
     }
 
-    private void selectTreeNode(DefaultMutableTreeNode node) {
-        TreePath treePath = getTreePath(node);
+    private void selectTreeNode(ZookeeperTreeModel.Node node) {
+        TreePath treePath = node.getTreePath();
         tree.setSelectionPath(treePath);
         tree.scrollPathToVisible(treePath);
     }
 
-    public DefaultMutableTreeNode selectTreeNode(String path) {
-        DefaultMutableTreeNode target = getNodeFromPath(path);
+    /**
+     * Select the node of the given path, loading the tree down to it.
+     *
+     * @param path
+     * @return the selected node, null if the path does not exist
+     */
+    public ZookeeperTreeModel.Node selectTreeNode(String path) {
+        ZookeeperTreeModel.Node target = treeModel.loadNode(path);
         if (target != null) {
             selectTreeNode(target);
         }
@@ -286,62 +417,119 @@ public class ZooDirectorNavPanel extends JPanel {
     }
 
     /**
-     * Add the given path as a node on the tree in sorted order.
+     * Read the tree from the given store, the sync's set of paths.
      *
-     * @param path
+     * @param paths
      */
-    public void addNodeToTree(String path, boolean select) {
-        // Ignore root
-        if ("/".equals(path)) {
+    public void setPathStore(PathStore paths) {
+        hideFilter(false);
+        treeModel.setPathStore(paths);
+    }
+
+    /**
+     * Show the page a placeholder leads to, selecting its first row.
+     *
+     * @param placeholder
+     */
+    private void showPage(ZookeeperTreeModel.Placeholder placeholder) {
+        ZookeeperTreeModel.Node parent = placeholder.getParent();
+        if (!treeModel.showPage(placeholder)) {
             return;
         }
+        int count = treeModel.getChildCount(parent);
+        int index = placeholder.isNext() ? Math.min(1, count - 1) : Math.max(0, count - 2);
+        selectTreeNode((ZookeeperTreeModel.Node) treeModel.getChild(parent, index));
+    }
 
-        DefaultMutableTreeNode parent = rootNode;
-
-        String[] segments = path.substring(1).split("/");
-
-        // Ensure a node exists for all segments of the path.
-        for (int i = 0; i < segments.length; ++i) {
-
-            String segment = segments[i];
-
-            DefaultMutableTreeNode node = null;
-
-            int insertAt = 0;
-
-            // Add to tree in sorted order.
-            for (int j = 0; j < parent.getChildCount(); ++j) {
-                DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(j);
-                if (segment.compareTo(child.toString()) > 0) {
-                    insertAt = j + 1;
-                } else if (segment.equals(child.toString())) {
-                    node = (DefaultMutableTreeNode) parent.getChildAt(j);
-                    break;
-                }
-            }
+    /**
+     * Group sequential children sharing a prefix in range rows, keeping the selected node selected.
+     *
+     * @param groupSequential
+     */
+    private void setGroupSequential(boolean groupSequential) {
+        String path = getZookeeperNodePath(getSelectedNode());
+        hideFilter(false);
+        treeModel.setGroupSequential(groupSequential);
+        if (path != null) {
+            selectTreeNode(path);
+        }
+    }
 
-            if (node == null) {
-                node = new DefaultMutableTreeNode(ZookeeperNode.create(getZookeeperNodePath(parent), segment));
-                treeModel.insertNodeInto(node, parent, insertAt);
-            }
+    /**
+     * Show the filter of the children of the given node.
+     *
+     * @param node
+     */
+    private void showFilter(ZookeeperTreeModel.Node node) {
+        if (node == filterNode) {
+            return;
+        }
+        filterTimer.stop();
+        filterNode = node;
+        filterLabel.setText("filter " + node.getPath() + (node.isZookeeperNode() ? "" : " " + node));
+        updatingFilter = true;
+        filterTextField.setText(treeModel.getFilter(node));
+        updatingFilter = false;
+        filterPanel.setVisible(true);
+        revalidate();
+    }
 
-            parent = node;
+    /**
+     * @param clear if true the children of the filtered node are shown unfiltered again
+     */
+    private void hideFilter(boolean clear) {
+        filterTimer.stop();
+        if (clear && filterNode != null) {
+            treeModel.setFilter(filterNode, "");
         }
+        filterNode = null;
+        filterPanel.setVisible(false);
+        revalidate();
+    }
 
+    /**
+     * Update the tree for a path added to the store, the node is only created if its parent has been expanded.
+     *
+     * @param path
+     * @param select if true the node is selected, loading the tree down to it
+     */
+    public void addNodeToTree(String path, boolean select) {
+        treeModel.pathChanged(path);
         if (select) {
-            selectTreeNode(parent);
+            selectTreeNode(path);
         }
     }
 
     /**
-     * Remove the given path from the tree if it exists.
+     * Update the tree for a path removed from the store.
      *
      * @param path
      */
     public void removeNodeFromTree(String path) {
-        DefaultMutableTreeNode target = getNodeFromPath(path);
-        if (target != null && target != rootNode)
-            treeModel.removeNodeFromParent(target);
+        treeModel.pathChanged(path);
+    }
+
+    /**
+     * Update the tree for paths added to or removed from the store, firing one event per changed parent.
+     *
+     * @param paths
+     * @param selected added paths to select, loading the tree down to them
+     */
+    public void updateTree(Collection<String> paths, Collection<String> selected) {
+        treeModel.pathsChanged(paths);
+        for (String path : selected) {
+            selectTreeNode(path);
+        }
+    }
+
+    /**
+     * Show the number of tree updates waiting to be applied, hidden when there are none.
+     *
+     * @param queueDepth
+     */
+    public void setQueueDepth(int queueDepth) {
+        queueDepthLabel.setText(queueDepth + " tree updates queued");
+        queueDepthLabel.setVisible(queueDepth > 0);
     }
 
     /**
@@ -350,7 +538,7 @@ public class ZooDirectorNavPanel extends JPanel {
      * @param node
      * @throws Exception
      */
-    private void pruneNode(DefaultMutableTreeNode node) {
+    private void pruneNode(ZookeeperTreeModel.Node node) {
         String path = getZookeeperNodePath(node);
 
         int option = showYesNoDialog(
@@ -361,12 +549,7 @@ public class ZooDirectorNavPanel extends JPanel {
             return;
         }
 
-        try {
-            // TODO run on SwingWorker or use ZK Background
-            selectTreeNode(zooDirectorPanel.getZookeeperSync().prune(path));
-        } catch (Exception e) {
-            logger.error("prune {} failed [{}]", path, e);
-        }
+        runDelete(path, DeleteWorker.Mode.prune);
     }
 
     /**
@@ -374,23 +557,27 @@ public class ZooDirectorNavPanel extends JPanel {
      *
      * @param node node to have children delete for
      */
-    private void trimNode(DefaultMutableTreeNode node) {
+    private void trimNode(ZookeeperTreeModel.Node node) {
         String path = getZookeeperNodePath(node);
 
         int option = showYesNoDialog(
                 "Delete Children: " + path,
-                "Are you sure you want to delete this nodes children and all its lovely descendants?");
+                node.isRoot() ?
+                        "Are you sure you want to delete ALL nodes except " + ZookeeperSync.ZOOKEEPER_PATH + "?" :
+                        "Are you sure you want to delete this nodes children and all its lovely descendants?");
 
         if (option != JOptionPane.YES_OPTION) {
             return;
         }
 
-        try {
-            // TODO run on SwingWorker or use ZK Background
-            zooDirectorPanel.getZookeeperSync().trim(path);
-        } catch (Exception e) {
-            logger.error("trim {} failed [{}]", path, e);
-        }
+        runDelete(path, DeleteWorker.Mode.trim);
+    }
+
+    /**
+     * @return true if connected to a cluster, data files opened offline can only be browsed
+     */
+    private boolean isWritable() {
+        return zooDirectorPanel.isOnline() && !zooDirectorPanel.isReadOnly();
     }
 
     /**
@@ -399,7 +586,7 @@ public class ZooDirectorNavPanel extends JPanel {
      * @param node             node to be deleted
      * @param skipConfirmation if true user confirmation is bypassed
      */
-    private void deleteNode(DefaultMutableTreeNode node, boolean skipConfirmation) {
+    private void deleteNode(ZookeeperTreeModel.Node node, boolean skipConfirmation) {
         if (node.isRoot())
             return;
 
@@ -408,20 +595,156 @@ public class ZooDirectorNavPanel extends JPanel {
         if (!skipConfirmation) {
             int option = showYesNoDialog(
                     "Delete: " + node,
-                    "Are you sure you want to delete this node" + (node.getChildCount() > 0 ? " and all of its lovely children?" : "?"));
+                    "Are you sure you want to delete this node" + (treeModel.hasChildren(node) ? " and all of its lovely children?" : "?"));
 
             if (option != JOptionPane.YES_OPTION) {
                 return;
             }
         }
 
-        try {
-            // TODO run on SwingWorker or use ZK Background
-            zooDirectorPanel.getZookeeperSync().delete(path);
-            selectTreeNode((DefaultMutableTreeNode) node.getParent());
-        } catch (Exception e) {
-            logger.error("delete {} failed [{}]", path, e);
+        runDelete(path, DeleteWorker.Mode.delete);
+    }
+
+    /**
+     * Create the nodes of a user selected JSON lines file under the input node, in the background showing progress in
+     * a dialog which allows the import to be cancelled.
+     *
+     * @param node node the root of the file is imported to
+     */
+    private void importNodes(ZookeeperTreeModel.Node node) {
+        final String path = getZookeeperNodePath(node);
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Import to " + path);
+        if (fileChooser.showOpenDialog(SwingUtilities.getRoot(this)) != JFileChooser.APPROVE_OPTION) {
+            return;
         }
+
+        final ProgressMonitor progressMonitor = new ProgressMonitor(
+                SwingUtilities.getRoot(this), "import " + fileChooser.getSelectedFile().getName() + " to " + path,
+                "reading nodes", 0, 1);
+
+        final ImportWorker[] worker = new ImportWorker[1];
+        worker[0] = new ImportWorker(zooDirectorPanel.getZookeeperSync(), fileChooser.getSelectedFile(), path,
+                new ImportWorker.Callback() {
+                    @Override
+                    public void onProgress(int done, int total) {
+                        if (progressMonitor.isCanceled()) {
+                            worker[0].cancel(true);
+                            return;
+                        }
+                        progressMonitor.setMaximum(Math.max(1, total));
+                        progressMonitor.setNote(done + " of " + total + " nodes created");
+                        progressMonitor.setProgress(done);
+                    }
+
+                    @Override
+                    public void onComplete(Integer created) {
+                        progressMonitor.close();
+                        if (created != null) {
+                            selectTreeNode(path);
+                        }
+                    }
+                });
+        worker[0].execute();
+    }
+
+    private static final FileNameExtensionFilter JSON_LINES_FILTER =
+            new FileNameExtensionFilter("gzip JSON lines (*.jsonl.gz)", "gz");
+    private static final FileNameExtensionFilter BINARY_FILTER =
+            new FileNameExtensionFilter("zoodirector binary export (*.zdex)", "zdex");
+
+    /**
+     * Write the input node and its descendants to a user selected file, in the background showing progress in a
+     * dialog which allows the export to be cancelled.
+     *
+     * @param node root node of the export
+     */
+    private void exportNodes(ZookeeperTreeModel.Node node) {
+        final String path = getZookeeperNodePath(node);
+
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Export " + path);
+        fileChooser.setAcceptAllFileFilterUsed(false);
+        fileChooser.addChoosableFileFilter(JSON_LINES_FILTER);
+        fileChooser.addChoosableFileFilter(BINARY_FILTER);
+        fileChooser.setFileFilter(JSON_LINES_FILTER);
+        if (fileChooser.showSaveDialog(SwingUtilities.getRoot(this)) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        ZookeeperSync.ExportFormat format;
+        String extension;
+        if (fileChooser.getFileFilter() == BINARY_FILTER) {
+            format = ZookeeperSync.ExportFormat.binary;
+            extension = ".zdex";
+        } else {
+            format = ZookeeperSync.ExportFormat.jsonLines;
+            extension = ".jsonl.gz";
+        }
+        File file = fileChooser.getSelectedFile();
+        if (!file.getName().endsWith(extension)) {
+            file = new File(file.getPath() + extension);
+        }
+
+        final ProgressMonitor progressMonitor = new ProgressMonitor(
+                SwingUtilities.getRoot(this), "export " + path + " to " + file.getName(), "reading nodes", 0, 1);
+
+        final ExportWorker[] worker = new ExportWorker[1];
+        worker[0] = new ExportWorker(zooDirectorPanel.getZookeeperSync(), path, file, format,
+                new ExportWorker.Callback() {
+                    @Override
+                    public void onProgress(int exported, int total) {
+                        if (progressMonitor.isCanceled()) {
+                            worker[0].cancel(true);
+                            return;
+                        }
+                        progressMonitor.setMaximum(Math.max(1, total));
+                        progressMonitor.setNote(exported + " of " + total + " nodes exported");
+                        progressMonitor.setProgress(exported);
+                    }
+
+                    @Override
+                    public void onComplete(Integer exported) {
+                        progressMonitor.close();
+                    }
+                });
+        worker[0].execute();
+    }
+
+    /**
+     * Delete in the background, showing progress in a dialog which allows the delete to be cancelled. The dialog only
+     * pops up if the delete takes a while. The nearest remaining node is selected once done.
+     *
+     * @param path
+     * @param mode
+     */
+    private void runDelete(String path, DeleteWorker.Mode mode) {
+        final ProgressMonitor progressMonitor = new ProgressMonitor(
+                SwingUtilities.getRoot(this), mode + " " + path, "listing nodes", 0, 1);
+
+        final DeleteWorker[] worker = new DeleteWorker[1];
+        worker[0] = new DeleteWorker(zooDirectorPanel.getZookeeperSync(), path, mode, new DeleteWorker.Callback() {
+            @Override
+            public void onProgress(int deleted, int total) {
+                if (progressMonitor.isCanceled()) {
+                    worker[0].cancel(true);
+                    return;
+                }
+                progressMonitor.setMaximum(Math.max(1, total));
+                progressMonitor.setNote(deleted + " of " + total + " nodes deleted");
+                progressMonitor.setProgress(deleted);
+            }
+
+            @Override
+            public void onComplete(String path) {
+                progressMonitor.close();
+                if (path != null) {
+                    selectTreeNode(path);
+                }
+            }
+        });
+        worker[0].execute();
     }
 
     private static final CreateMode[] CREATE_MODES = new CreateMode[]{CreateMode.PERSISTENT, CreateMode.EPHEMERAL};
@@ -431,7 +754,7 @@ public class ZooDirectorNavPanel extends JPanel {
      *
      * @param parent parent node to add child to
      */
-    private void createNode(DefaultMutableTreeNode parent) {
+    private void createNode(ZookeeperTreeModel.Node parent) {
 
         JPanel inputPanel = new JPanel(new BorderLayout());
 
@@ -491,57 +814,74 @@ public class ZooDirectorNavPanel extends JPanel {
     }
 
     /**
-     * Add watch for the given node's zookeeper path.
+     * Add watch for the given zookeeper path.
      *
-     * @param node      node to add watch to
+     * @param path      path to add watch to
      * @param recursive if set watches for all descendant nodes will be created (if they do not already exist)
      */
-    private void addWatch(DefaultMutableTreeNode node, boolean recursive) {
-        zooDirectorPanel.addWatch(getZookeeperNodePath(node));
+    private void addWatch(String path, boolean recursive) {
         if (recursive) {
-            for (int i = 0; i < node.getChildCount(); ++i) {
-                addWatch((DefaultMutableTreeNode) node.getChildAt(i), true);
-            }
+            zooDirectorPanel.addWatches(getSubtreePaths(path));
+        } else {
+            zooDirectorPanel.addWatch(path);
         }
     }
 
     /**
-     * Remove watch for the given node's zookeeper path.
+     * Remove watch for the given zookeeper path.
      *
-     * @param node      node to remove watch from
+     * @param path      path to remove watch from
      * @param recursive if true watches for all descendant nodes will be removed (if they exist)
      */
-    private void removeWatch(DefaultMutableTreeNode node, boolean recursive) {
-        zooDirectorPanel.removeWatch(getZookeeperNodePath(node));
+    private void removeWatch(String path, boolean recursive) {
         if (recursive) {
-            for (int i = 0; i < node.getChildCount(); ++i) {
-                removeWatch((DefaultMutableTreeNode) node.getChildAt(i), true);
-            }
+            zooDirectorPanel.removeWatches(getSubtreePaths(path));
+        } else {
+            zooDirectorPanel.removeWatch(path);
+        }
+    }
+
+    /**
+     * @param path
+     * @return the path followed by the paths of its descendants in tree order
+     */
+    private List<String> getSubtreePaths(String path) {
+        List<String> paths = new ArrayList<String>();
+        addSubtreePaths(zooDirectorPanel.getZookeeperSync().getPathStore(), path, paths);
+        return paths;
+    }
+
+    private static void addSubtreePaths(PathStore pathStore, String path, List<String> paths) {
+        paths.add(path);
+        for (String child : pathStore.getChildren(path)) {
+            addSubtreePaths(pathStore, ZookeeperSync.getChildPath(path, child), paths);
         }
     }
 
     /**
-     * Expand all nodes under node
+     * Expand all nodes under node, loading the whole subtree.
      *
      * @param node
      */
-    private void expandAll(DefaultMutableTreeNode node) {
-        Enumeration<DefaultMutableTreeNode> childNodes = node.breadthFirstEnumeration();
-        while (childNodes.hasMoreElements()) {
-            tree.expandPath(getTreePath(childNodes.nextElement()));
+    private void expandAll(ZookeeperTreeModel.Node node) {
+        tree.expandPath(node.getTreePath());
+        for (int i = 0; i < treeModel.getChildCount(node); ++i) {
+            expandAll((ZookeeperTreeModel.Node) treeModel.getChild(node, i));
         }
     }
 
     /**
-     * Collapse all nodes under node
+     * Collapse all nodes under node. Only loaded nodes can be expanded.
      *
      * @param node
      */
-    private void collapseAll(DefaultMutableTreeNode node) {
-        Enumeration<DefaultMutableTreeNode> childNodes = node.depthFirstEnumeration();
-        while (childNodes.hasMoreElements()) {
-            tree.collapsePath(getTreePath(childNodes.nextElement()));
+    private void collapseAll(ZookeeperTreeModel.Node node) {
+        if (node.isLoaded()) {
+            for (int i = 0; i < treeModel.getChildCount(node); ++i) {
+                collapseAll((ZookeeperTreeModel.Node) treeModel.getChild(node, i));
+            }
         }
+        tree.collapsePath(node.getTreePath());
     }
 
     @Override
@@ -550,63 +890,18 @@ public class ZooDirectorNavPanel extends JPanel {
     }
 
     public void removeAll() {
-        rootNode.removeAllChildren();
+        hideFilter(false);
         treeModel.reload();
     }
 
     /**
-     * Helper method for getting tree path of node
-     *
-     * @param node node to get TreePath for
-     * @return TreePath of given node
-     */
-    private static TreePath getTreePath(DefaultMutableTreeNode node) {
-        return new TreePath(node.getPath());
-    }
-
-    /**
-     * Helper method for extracting the Zookeeper path from tree node's user object.
+     * Helper method for getting the Zookeeper path of a tree node.
      *
-     * @param node tree node to extract ZookeeperNode instance from
+     * @param node tree node to get the path for
      * @return zookeeper path of node
      */
-    protected static String getZookeeperNodePath(DefaultMutableTreeNode node) {
-        if (node == null)
-            return null;
-        return ((ZookeeperNode) node.getUserObject()).path;
-    }
-
-    /**
-     * Simple class to represent zookeeper node path/name
-     */
-    public static class ZookeeperNode {
-        public final static ZookeeperNode root = new ZookeeperNode("/");
-
-        private final String name;
-        public final String path;
-
-        private ZookeeperNode(String path) {
-            super();
-            this.path = path;
-            String[] subPaths = path.split("/");
-            if (subPaths.length > 1) {
-                name = subPaths[subPaths.length - 1];
-            } else {
-                name = "";
-            }
-        }
-
-        public static ZookeeperNode create(String parent, String name) {
-            if ("/".equals(parent)) {
-                return new ZookeeperNode('/' + name);
-            }
-            return new ZookeeperNode(parent + '/' + name);
-        }
-
-        @Override
-        public String toString() {
-            return name;
-        }
+    protected static String getZookeeperNodePath(ZookeeperTreeModel.Node node) {
+        return node == null ? null : node.getPath();
     }
 
     private static final String YES = "Yes";
@@ -4,6 +4,7 @@ import com.google.common.base.Strings;
 import com.kostbot.zoodirector.ui.helpers.UIUtils;
 import com.kostbot.zoodirector.ui.workers.LoadDataWorker;
 import com.kostbot.zoodirector.ui.workers.SaveDataWorker;
+import com.kostbot.zoodirector.zookeepersync.NodeData;
 import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
 import org.apache.zookeeper.data.Stat;
 import org.joda.time.DateTime;
@@ -212,8 +213,8 @@ public class ZooDirectorNodeEditPanel extends JPanel {
 
         dataSizeLabel.setText(UIUtils.humanReadableByteCount(currentData.getBytes().length));
 
-        clearButton.setEnabled(!Strings.isNullOrEmpty(currentData));
-        if (initData != null) {
+        clearButton.setEnabled(isWritable() && !Strings.isNullOrEmpty(currentData));
+        if (initData != null && isWritable()) {
             if (!initData.equals(currentData)) {
                 saveButton.setEnabled(true);
                 return true;
@@ -230,10 +231,10 @@ public class ZooDirectorNodeEditPanel extends JPanel {
         if (isDataUpdated()) {
             executeSwingWorker(new SaveDataWorker(zookeeperSync, path, Integer.parseInt(versionTextField.getText()), dataTextArea.getText().getBytes(), new SaveDataWorker.Callback() {
                 @Override
-                public void onComplete(String path) {
+                public void onComplete(String path, NodeData saved) {
                     if (ZooDirectorNodeEditPanel.this.path != null &&
                             ZooDirectorNodeEditPanel.this.path.equals(path)) {
-                        reload();
+                        setData(path, saved.stat, saved.data);
                     }
                 }
 
@@ -330,7 +331,7 @@ public class ZooDirectorNodeEditPanel extends JPanel {
             saveButton.setEnabled(false);
         } else {
             dataTextArea.setEnabled(true);
-            dataTextArea.setEditable(true);
+            dataTextArea.setEditable(isWritable());
             reloadButton.setEnabled(true);
 
             pathLabel.setText(stat.getEphemeralOwner() == 0 ? PATH : PATH_EPHEMERAL);
@@ -360,6 +361,22 @@ public class ZooDirectorNodeEditPanel extends JPanel {
         reloadButton.setEnabled(false);
     }
 
+    /**
+     * Reload the current node, enabling editing again if it still exists.
+     */
+    public void setOnline() {
+        if (path != null) {
+            setZookeeperPath(path, false);
+        }
+    }
+
+    /**
+     * @return false if browsing data files, which can only be viewed
+     */
+    private boolean isWritable() {
+        return zookeeperSync != null && !zookeeperSync.isReadOnly();
+    }
+
     public void setZookeeperSync(ZookeeperSync zookeeperSync) {
         this.zookeeperSync = zookeeperSync;
     }
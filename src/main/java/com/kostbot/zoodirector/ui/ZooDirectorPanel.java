@@ -1,5 +1,6 @@
 package com.kostbot.zoodirector.ui;
 
+import com.kostbot.zoodirector.zookeepersync.OfflineTree;
 import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
 import com.netflix.curator.framework.CuratorFramework;
 import com.netflix.curator.framework.CuratorFrameworkFactory;
@@ -10,18 +11,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.*;
-import javax.swing.tree.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 
 public class ZooDirectorPanel extends JPanel {
     private static final Logger logger = LoggerFactory.getLogger(ZooDirectorPanel.class);
 
+    // Sync events are handed to the tree update queue in batches, it applies them once per frame.
+    private static final int TREE_UPDATE_MAX_BATCH = 5000;
+
     private ZookeeperSync zookeeperSync;
     private CuratorFramework client;
 
     private final String connectionString;
     private final int connectionRetryPeriod;
+    private final File snapshotFile;
+    private final File dataDir; // data files browsed instead of a cluster, null if connecting
+    private boolean restoreSnapshot; // only from the first load, accessed on the EDT
+    private boolean loaded; // accessed on the EDT
 
     private volatile boolean online; // prevent operations if offline.
 
@@ -32,11 +43,13 @@ public class ZooDirectorPanel extends JPanel {
     private final JSplitPane splitPane;
 
     private final ZooDirectorNavPanel zooDirectorNavPanel;
+    private final TreeUpdateQueue treeUpdateQueue;
     private final ZooDirectorAddressPanel zooDirectorAddressPanel;
 
     private final JTabbedPane tabbedPane;
     private final ZooDirectorNodeEditPanel nodeEditPanel;
     private final ZooDirectorWatchPanel watchPanel;
+    private final ZooDirectorWriteRatePanel writeRatePanel;
 
     private final SwingWorker<Void, Void> connectionWorker;
 
@@ -60,8 +73,36 @@ public class ZooDirectorPanel extends JPanel {
      * @param connectionRetryPeriod time to sleep between retries
      */
     public ZooDirectorPanel(String connectionString, int connectionRetryPeriod) {
+        this(connectionString, connectionRetryPeriod, null);
+    }
+
+    /**
+     * Panel used for editing specified zookeeper node
+     *
+     * @param connectionString      zookeeper connection string
+     * @param connectionRetryPeriod time to sleep between retries
+     * @param snapshotFile          file used to persist the tree between sessions, null to always crawl the cluster
+     */
+    public ZooDirectorPanel(String connectionString, int connectionRetryPeriod, File snapshotFile) {
+        this(connectionString, connectionRetryPeriod, snapshotFile, null);
+    }
+
+    /**
+     * Panel used for browsing the snapshot and transaction logs of a zookeeper data directory, no cluster is needed.
+     * Nodes can only be viewed.
+     *
+     * @param dataDir zookeeper data directory
+     */
+    public ZooDirectorPanel(File dataDir) {
+        this(dataDir.getPath(), 0, null, dataDir);
+    }
+
+    private ZooDirectorPanel(String connectionString, int connectionRetryPeriod, File snapshotFile, File dataDir) {
         this.connectionString = connectionString;
         this.connectionRetryPeriod = connectionRetryPeriod;
+        this.snapshotFile = snapshotFile;
+        this.dataDir = dataDir;
+        this.restoreSnapshot = snapshotFile != null && snapshotFile.exists();
 
         this.setLayout(new BorderLayout());
 
@@ -76,6 +117,14 @@ public class ZooDirectorPanel extends JPanel {
         // Zookeeper View UI Setup
         zooDirectorAddressPanel = new ZooDirectorAddressPanel(this);
         zooDirectorNavPanel = new ZooDirectorNavPanel(this);
+        treeUpdateQueue = new TreeUpdateQueue(new TreeUpdateQueue.Callback() {
+            @Override
+            public void apply(Collection<String> paths, Collection<String> selected) {
+                zooDirectorNavPanel.updateTree(paths, selected);
+                // Changes queued while applying have their own frame scheduled, which updates the count again.
+                zooDirectorNavPanel.setQueueDepth(treeUpdateQueue.getQueueDepth());
+            }
+        });
 
         tabbedPane = new JTabbedPane();
         nodeEditPanel = new ZooDirectorNodeEditPanel();
@@ -84,6 +133,12 @@ public class ZooDirectorPanel extends JPanel {
         watchPanel = new ZooDirectorWatchPanel(this);
         tabbedPane.add(watchPanel, "Watches");
 
+        writeRatePanel = new ZooDirectorWriteRatePanel();
+        if (dataDir != null) {
+            writeRatePanel.setDataDir(dataDir);
+        }
+        tabbedPane.add(writeRatePanel, "Write Rate");
+
         splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, zooDirectorNavPanel, tabbedPane);
         splitPane.setOneTouchExpandable(true);
         splitPane.setDividerLocation(200);
@@ -91,6 +146,10 @@ public class ZooDirectorPanel extends JPanel {
         connectionWorker = new SwingWorker<Void, Void>() {
             @Override
             protected Void doInBackground() {
+                if (ZooDirectorPanel.this.dataDir != null) {
+                    openDataDir();
+                    return null;
+                }
                 client = CuratorFrameworkFactory.newClient(
                         ZooDirectorPanel.this.connectionString,
                         new RetryOneTime(ZooDirectorPanel.this.connectionRetryPeriod)
@@ -108,6 +167,18 @@ public class ZooDirectorPanel extends JPanel {
                                 break;
                             case RECONNECTED:
                                 logger.info("connection to {} has been reestablished", ZooDirectorPanel.this.connectionString);
+                                online = true;
+                                SwingUtilities.invokeLater(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        if (loaded) {
+                                            resync();
+                                        } else {
+                                            load();
+                                        }
+                                    }
+                                });
+                                break;
                             default:
                                 online = true;
                                 SwingUtilities.invokeLater(new Runnable() {
@@ -121,30 +192,7 @@ public class ZooDirectorPanel extends JPanel {
                 });
 
                 // Responsible for managing all tree additions and removals.
-                zookeeperSync = new ZookeeperSync(client);
-                zookeeperSync.addListener(new ZookeeperSync.Listener() {
-                    @Override
-                    public void process(final ZookeeperSync.Event e) {
-                        final boolean created = zooDirectorNavPanel.wasCreated(e.path);
-
-                        SwingUtilities.invokeLater(new Runnable() {
-                            @Override
-                            public void run() {
-                                switch (e.type) {
-                                    case add:
-                                        zooDirectorNavPanel.addNodeToTree(e.path, created);
-                                        break;
-                                    case delete:
-                                        zooDirectorNavPanel.removeNodeFromTree(e.path);
-                                        break;
-                                }
-                            }
-                        });
-                    }
-                });
-
-                watchPanel.setZookeeperSync(zookeeperSync);
-                nodeEditPanel.setZookeeperSync(zookeeperSync);
+                setZookeeperSync(new ZookeeperSync(client));
                 logger.info("connecting to cluster {}", ZooDirectorPanel.this.connectionString);
                 client.start();
                 return null;
@@ -165,6 +213,63 @@ public class ZooDirectorPanel extends JPanel {
         return online;
     }
 
+    /**
+     * @return true if browsing data files, which can only be viewed
+     */
+    public boolean isReadOnly() {
+        return dataDir != null;
+    }
+
+    /**
+     * Load the data files from the background, the tree is then shown as for a cluster.
+     */
+    private void openDataDir() {
+        logger.info("opening data directory {}", dataDir);
+        try {
+            setZookeeperSync(new ZookeeperSync(new OfflineTree(dataDir)));
+        } catch (IOException e) {
+            logger.error("failed to open data directory {} [{}]", dataDir, e.getMessage());
+            return;
+        }
+        online = true;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Use the given sync, applying its events to the tree.
+     *
+     * @param zookeeperSync
+     */
+    private void setZookeeperSync(ZookeeperSync zookeeperSync) {
+        this.zookeeperSync = zookeeperSync;
+        zookeeperSync.addBatchListener(new ZookeeperSync.BatchListener() {
+            @Override
+            public void process(List<ZookeeperSync.Event> events) {
+                boolean[] created = new boolean[events.size()];
+                for (int i = 0; i < created.length; ++i) {
+                    created[i] = zooDirectorNavPanel.wasCreated(events.get(i).path);
+                }
+                treeUpdateQueue.offer(events, created);
+            }
+        }, TreeUpdateQueue.FRAME_MILLIS, TREE_UPDATE_MAX_BATCH);
+
+        zooDirectorNavPanel.setPathStore(zookeeperSync.getPathStore());
+        watchPanel.setZookeeperSync(zookeeperSync);
+        nodeEditPanel.setZookeeperSync(zookeeperSync);
+    }
+
+    /**
+     * @param maxRefreshRate loads per second of each watched node, 0 for no limit
+     */
+    public void setWatchMaxRefreshRate(int maxRefreshRate) {
+        watchPanel.setMaxRefreshRate(maxRefreshRate);
+    }
+
     public boolean hasWatch(String path) {
         return watchPanel.hasWatch(path);
     }
@@ -177,8 +282,16 @@ public class ZooDirectorPanel extends JPanel {
         watchPanel.removeWatch(path);
     }
 
+    public void addWatches(Collection<String> paths) {
+        watchPanel.addWatches(paths);
+    }
+
+    public void removeWatches(Collection<String> paths) {
+        watchPanel.removeWatches(paths);
+    }
+
     public void viewEditTreeNode(String path) {
-        DefaultMutableTreeNode target = zooDirectorNavPanel.selectTreeNode(path);
+        ZookeeperTreeModel.Node target = zooDirectorNavPanel.selectTreeNode(path);
         if (target == null) {
             logger.error("view/edit {} failed [path does not exist]", path);
         } else {
@@ -197,11 +310,25 @@ public class ZooDirectorPanel extends JPanel {
             logger.info("loading zookeeper nodes");
             mainPanel.removeAll();
             zooDirectorNavPanel.removeAll();
+            final boolean restore = restoreSnapshot;
+            restoreSnapshot = false;
+            loaded = true;
             SwingWorker<Void, Void> swingWorker = new SwingWorker<Void, Void>() {
                 @Override
                 protected Void doInBackground() {
                     try {
-                        zookeeperSync.watch();
+                        if (restore) {
+                            // Show the last known tree right away, then only apply what changed since.
+                            try {
+                                zookeeperSync.loadSnapshot(snapshotFile);
+                            } catch (IOException e) {
+                                logger.warn("failed to load snapshot {} [{}]", snapshotFile, e.getMessage());
+                            }
+                            zookeeperSync.reconcile();
+                        } else {
+                            zookeeperSync.watch();
+                        }
+                        saveSnapshot();
                     } catch (Exception e) {
                         logger.error("Failed to execute ZookeeperSync watch [{}]", e);
                     }
@@ -211,6 +338,9 @@ public class ZooDirectorPanel extends JPanel {
                 @Override
                 protected void done() {
                     logger.info("loading zookeeper nodes complete");
+                    logger.debug("tree updates: {} applied in {} frames, {} skipped, max queue depth {}",
+                            treeUpdateQueue.getAppliedCount(), treeUpdateQueue.getFrameCount(),
+                            treeUpdateQueue.getSkippedCount(), treeUpdateQueue.getMaxQueueDepth());
                 }
             };
             swingWorker.execute();
@@ -221,6 +351,35 @@ public class ZooDirectorPanel extends JPanel {
         }
     }
 
+    /**
+     * Bring the loaded tree up to date after a reconnect. Unlike {@link #load()} the tree is kept, along with its
+     * expansion and selection, and only the nodes added and deleted while disconnected are applied to it.
+     */
+    private void resync() {
+        if (online) {
+            logger.info("resyncing zookeeper nodes");
+            SwingWorker<Void, Void> swingWorker = new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() {
+                    try {
+                        zookeeperSync.resync();
+                        saveSnapshot();
+                    } catch (Exception e) {
+                        logger.error("Failed to execute ZookeeperSync resync [{}]", e);
+                    }
+                    return null;
+                }
+
+                @Override
+                protected void done() {
+                    logger.info("resyncing zookeeper nodes complete");
+                    nodeEditPanel.setOnline();
+                }
+            };
+            swingWorker.execute();
+        }
+    }
+
     /**
      * Refresh UI
      */
@@ -241,7 +400,8 @@ public class ZooDirectorPanel extends JPanel {
         c.gridwidth = 1;
         c.insets.top = c.insets.bottom = 5;
         c.gridy = 0;
-        loadingPanel.add(new JLabel("Establishing connection to zookeeper @ " + connectionString), c);
+        loadingPanel.add(new JLabel(dataDir != null ? "Loading zookeeper data files @ " + connectionString
+                : "Establishing connection to zookeeper @ " + connectionString), c);
 
         c.gridy += 1;
         JButton cancelConnectionButton = new JButton("Cancel");
@@ -261,11 +421,57 @@ public class ZooDirectorPanel extends JPanel {
     }
 
     /**
-     * Close curator client
+     * Persist the synced tree for the next session, if a snapshot file is set. Nothing is saved before the first load,
+     * so closing early never replaces a previous snapshot with an empty one.
+     */
+    private void saveSnapshot() {
+        if (snapshotFile != null && zookeeperSync != null && zookeeperSync.getPathStore().size() > 0) {
+            try {
+                zookeeperSync.saveSnapshot(snapshotFile);
+            } catch (IOException e) {
+                logger.warn("failed to save snapshot {} [{}]", snapshotFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Close curator client. The snapshot is saved in the background.
      */
     public void close() {
+        close(null);
+    }
+
+    /**
+     * Close curator client. The snapshot is saved in the background.
+     *
+     * @param onSaved run on the EDT once the snapshot is saved, or right away if there is nothing to save, may be null
+     */
+    public void close(final Runnable onSaved) {
         connectionWorker.cancel(true);
-        client.close();
+        if (client != null) {
+            client.close();
+        }
+        if (zookeeperSync != null) {
+            zookeeperSync.close();
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() {
+                    saveSnapshot();
+                    return null;
+                }
+
+                @Override
+                protected void done() {
+                    if (onSaved != null) {
+                        onSaved.run();
+                    }
+                }
+            }.execute();
+        } else if (onSaved != null) {
+            onSaved.run();
+        }
+        treeUpdateQueue.clear();
+        watchPanel.close();
         mainPanel.removeAll();
         refresh();
     }
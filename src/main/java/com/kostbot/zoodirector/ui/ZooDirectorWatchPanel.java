@@ -1,12 +1,16 @@
 package com.kostbot.zoodirector.ui;
 
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.kostbot.zoodirector.ui.helpers.DynamicTable;
+import com.kostbot.zoodirector.ui.helpers.SparklineRenderer;
+import com.kostbot.zoodirector.ui.workers.BulkLoadDataWorker;
 import com.kostbot.zoodirector.ui.workers.LoadDataWorker;
+import com.kostbot.zoodirector.zookeepersync.NodeData;
+import com.kostbot.zoodirector.zookeepersync.PathPatterns;
 import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
 import org.apache.zookeeper.data.Stat;
 import org.jdesktop.swingx.JXTable;
-import org.joda.time.LocalDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,28 +18,51 @@ import javax.swing.*;
 import javax.swing.table.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.PatternSyntaxException;
 
 public class ZooDirectorWatchPanel extends JPanel {
     private static final Logger logger = LoggerFactory.getLogger(ZooDirectorWatchPanel.class);
 
+    // Match counts and update rates are refreshed this often.
+    private static final int STATS_REFRESH_MILLIS = 1000;
+
+    // Bytes of data kept per history entry when recording data.
+    private static final int HISTORY_DATA_LIMIT = 1024;
+
     private ZookeeperSync zookeeperSync;
 
     private final JTextField pathTextField;
     private final DefaultTableModel patternTableModel;
     private final JXTable patternWatchTable;
 
+    // Compiled from the pattern table on the EDT, matched against on the pattern executor.
+    private volatile PathPatterns patterns;
+    private final ExecutorService patternExecutor;
+
+    // Watched paths, rows follow on the EDT.
     private final Set<String> watches;
-    private final DefaultTableModel tableModel;
+    private final WatchTableModel tableModel;
+    private final WatchRefresher refresher;
+    private final Timer statsTimer;
     private final JXTable watchTable;
 
     private int clickedRow = -1;
 
     public ZooDirectorWatchPanel(final ZooDirectorPanel parent) {
         watches = new HashSet<String>(10);
+        patterns = new PathPatterns();
+        patternExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("watch-pattern-matcher").build());
 
         setLayout(new BorderLayout());
 
@@ -51,6 +78,8 @@ public class ZooDirectorWatchPanel extends JPanel {
         c.fill = GridBagConstraints.HORIZONTAL;
 
         pathTextField = new JTextField();
+        pathTextField.setToolTipText("regular expression, or glob:/path/* where * and ? match within a segment and ** " +
+                "across segments");
         pathTextField.addKeyListener(new KeyAdapter() {
             @Override
             public void keyReleased(KeyEvent e) {
@@ -78,7 +107,12 @@ public class ZooDirectorWatchPanel extends JPanel {
         c.gridwidth = 2;
         c.weighty = 0.25;
 
-        patternTableModel = new DefaultTableModel(new String[]{"pattern"}, 0);
+        patternTableModel = new DefaultTableModel(new String[]{"pattern", "matches"}, 0) {
+            @Override
+            public Class<?> getColumnClass(int columnIndex) {
+                return columnIndex == 1 ? Long.class : Object.class;
+            }
+        };
 
         patternWatchTable = new JXTable(patternTableModel) {
             @Override
@@ -95,9 +129,8 @@ public class ZooDirectorWatchPanel extends JPanel {
         removePatternWatchMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                synchronized (patternTableModel) {
-                    DynamicTable.removeSelectedRows(patternWatchTable);
-                }
+                DynamicTable.removeSelectedRows(patternWatchTable);
+                compilePatterns();
             }
         });
 
@@ -117,7 +150,23 @@ public class ZooDirectorWatchPanel extends JPanel {
 
         patternWatchPanel.add(new JScrollPane(patternWatchTable), c);
 
-        tableModel = new DefaultTableModel(new String[]{"path", "ephemeral", "created", "modified", "version", "data"}, 0);
+        tableModel = new WatchTableModel();
+        refresher = new WatchRefresher(new WatchRefresher.Loader() {
+            @Override
+            public void load(String path) {
+                loadData(path);
+            }
+        }, WatchRefresher.DEFAULT_MAX_REFRESH_RATE);
+
+        statsTimer = new Timer(STATS_REFRESH_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateMatchCounts();
+                tableModel.setUpdateRates(refresher.sampleRates());
+                repaintHistory();
+            }
+        });
+        statsTimer.start();
 
         watchTable = new JXTable(tableModel) {
             @Override
@@ -127,6 +176,9 @@ public class ZooDirectorWatchPanel extends JPanel {
         };
         watchTable.setFont(ZooDirectorFrame.FONT_MONOSPACED);
         watchTable.setHorizontalScrollEnabled(true);
+        watchTable.getColumnExt(WatchTableModel.HISTORY_COLUMN).setCellRenderer(new SparklineRenderer());
+        watchTable.getColumnExt(WatchTableModel.HISTORY_COLUMN).setSortable(false);
+        watchTable.getColumnExt(WatchTableModel.HISTORY_COLUMN).setToolTipText("changes over the last minute");
 
         final JPopupMenu tableMenu = new JPopupMenu();
 
@@ -140,18 +192,33 @@ public class ZooDirectorWatchPanel extends JPanel {
         });
         tableMenu.add(viewEditWatchMenuItem);
 
+        JMenuItem historyMenuItem = new JMenuItem("history");
+        historyMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showHistory(clickedRow);
+            }
+        });
+        tableMenu.add(historyMenuItem);
+
+        final JCheckBoxMenuItem recordDataMenuItem = new JCheckBoxMenuItem("record data in history");
+        recordDataMenuItem.setToolTipText("keep up to " + HISTORY_DATA_LIMIT + " bytes of data for each of the last " +
+                WatchHistory.DEFAULT_CAPACITY + " changes of each watched node");
+        recordDataMenuItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                tableModel.getHistory().setDataLimit(recordDataMenuItem.isSelected() ? HISTORY_DATA_LIMIT : 0);
+            }
+        });
+        tableMenu.add(recordDataMenuItem);
+
         tableMenu.addSeparator();
 
         JMenuItem removeWatchMenuItem = new JMenuItem("remove watch");
         removeWatchMenuItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                DynamicTable.removeSelectedRows(watchTable, new DynamicTable.Callback() {
-                    @Override
-                    public void execute(int row) {
-                        watches.remove(tableModel.getValueAt(row, 0));
-                    }
-                });
+                removeSelectedWatches();
             }
         });
 
@@ -166,6 +233,11 @@ public class ZooDirectorWatchPanel extends JPanel {
                     if (watchTable.isRowSelected(clickedRow)) {
                         tableMenu.show(watchTable, e.getX(), e.getY());
                     }
+                } else if (e.getButton() == MouseEvent.BUTTON1 && e.getClickCount() == 2) {
+                    int row = watchTable.rowAtPoint(e.getPoint());
+                    if (row >= 0) {
+                        showHistory(row);
+                    }
                 }
             }
         });
@@ -176,86 +248,272 @@ public class ZooDirectorWatchPanel extends JPanel {
         add(splitPane, BorderLayout.CENTER);
     }
 
-    synchronized private void setData(int row, Stat stat, byte[] data) {
-        tableModel.setValueAt(stat == null ? null : (stat.getEphemeralOwner() != 0), row, 1);
-        tableModel.setValueAt(stat == null ? null : new LocalDateTime(stat.getCtime()), row, 2);
-        tableModel.setValueAt(stat == null ? null : new LocalDateTime(stat.getMtime()), row, 3);
-        tableModel.setValueAt(stat == null ? null : stat.getVersion(), row, 4);
-        tableModel.setValueAt(data == null ? null : new String(data), row, 5);
-        tableModel.fireTableRowsUpdated(row, row);
+    private static void invokeOnEdt(Runnable runnable) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            runnable.run();
+        } else {
+            SwingUtilities.invokeLater(runnable);
+        }
     }
 
     private String getPath(int row) {
-        return (String) tableModel.getValueAt(watchTable.convertRowIndexToModel(row), 0);
+        return tableModel.getPath(watchTable.convertRowIndexToModel(row));
     }
 
-    private int getRow(String path) {
-        for (int i = 0; i < tableModel.getRowCount(); ++i) {
-            if (tableModel.getValueAt(i, 0).equals(path)) {
-                return i;
-            }
-        }
+    private void showHistory(int row) {
+        String path = getPath(row);
+        new WatchHistoryDialog(SwingUtilities.getWindowAncestor(this), path,
+                tableModel.getHistory().getEntries(path)).setVisible(true);
+    }
 
-        // Should never get here
-        logger.error("could not determine row for {}", path);
-        return -1;
+    /**
+     * Repaint the sparklines, which move with time.
+     */
+    private void repaintHistory() {
+        int column = watchTable.convertColumnIndexToView(WatchTableModel.HISTORY_COLUMN);
+        if (column >= 0 && watchTable.getRowCount() > 0) {
+            Rectangle cell = watchTable.getCellRect(0, column, true);
+            watchTable.repaint(cell.x, 0, cell.width, watchTable.getHeight());
+        }
     }
 
-    synchronized private void updateData(String path, boolean deleted) {
-        if (watches.contains(path)) {
-            final int row = getRow(path);
+    /**
+     * Add table rows for the paths still watched once on the EDT.
+     *
+     * @param paths
+     */
+    private void addRows(final Collection<String> paths) {
+        invokeOnEdt(new Runnable() {
+            @Override
+            public void run() {
+                List<String> watched = new ArrayList<String>(paths.size());
+                synchronized (ZooDirectorWatchPanel.this) {
+                    for (String path : paths) {
+                        if (watches.contains(path)) {
+                            watched.add(path);
+                        }
+                    }
+                }
+                tableModel.addPaths(watched);
+            }
+        });
+    }
 
-            if (row < 0) {
-                return;
+    /**
+     * Load the path, only ever called by the refresher.
+     *
+     * @param path
+     */
+    private void loadData(String path) {
+        new LoadDataWorker(zookeeperSync, path, new LoadDataWorker.Callback() {
+            @Override
+            public void onComplete(String path, Stat stat, byte[] data) {
+                refresher.loaded(path);
+                if (stat == null) {
+                    logger.error("[watch] {} update failed", path);
+                }
+                tableModel.update(path, stat, data);
             }
+        }).execute();
+    }
 
-            if (deleted) {
-                logger.info("[watch] {} deleted", path);
-                setData(row, null, null);
-            } else {
-                logger.info("[watch] {} updated", path);
-                new LoadDataWorker(zookeeperSync, path, new LoadDataWorker.Callback() {
-                    @Override
-                    public void onComplete(String path, final Stat stat, final byte[] data) {
-                        if (stat == null) {
-                            logger.error("[watch] {} update failed", path);
-                        }
-                        setData(row, stat, data);
-                    }
-                }).execute();
+    /**
+     * @return true if the path is watched
+     */
+    private boolean updateData(String path, boolean deleted) {
+        synchronized (this) {
+            if (!watches.contains(path)) {
+                return false;
             }
-        } else if (!deleted) {
-            synchronized (patternTableModel) {
-                for (int i = 0; i < patternTableModel.getRowCount(); ++i) {
-                    Pattern pattern = (Pattern) patternTableModel.getValueAt(i, 0);
-                    if (pattern.matcher(path).matches()) {
-                        addWatch(path);
-                    }
+        }
+
+        if (deleted) {
+            logger.info("[watch] {} deleted", path);
+            tableModel.update(path, null, null);
+        } else {
+            logger.info("[watch] {} updated", path);
+            refresher.refresh(path);
+        }
+        return true;
+    }
+
+    /**
+     * Watch the path if it matches any watch pattern, matching on the pattern executor.
+     *
+     * @param path
+     */
+    private void matchPatterns(final String path) {
+        if (patterns.isEmpty()) {
+            return;
+        }
+        patternExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!patterns.match(path).isEmpty()) {
+                    addWatch(path);
                 }
             }
+        });
+    }
+
+    /**
+     * Compile the patterns of the pattern table, which are matched from then on.
+     */
+    private void compilePatterns() {
+        List<PathPatterns.PathPattern> compiled = new ArrayList<PathPatterns.PathPattern>();
+        for (int i = 0; i < patternTableModel.getRowCount(); ++i) {
+            compiled.add((PathPatterns.PathPattern) patternTableModel.getValueAt(i, 0));
+        }
+        patterns = new PathPatterns(compiled);
+    }
+
+    private void updateMatchCounts() {
+        for (int i = 0; i < patternTableModel.getRowCount(); ++i) {
+            Long matchCount = ((PathPatterns.PathPattern) patternTableModel.getValueAt(i, 0)).getMatchCount();
+            if (!matchCount.equals(patternTableModel.getValueAt(i, 1))) {
+                patternTableModel.setValueAt(matchCount, i, 1);
+            }
         }
     }
 
-    synchronized public boolean removeWatch(String path) {
+    synchronized public boolean removeWatch(final String path) {
         if (watches.remove(path)) {
-            tableModel.removeRow(getRow(path));
+            refresher.remove(path);
+            invokeOnEdt(new Runnable() {
+                @Override
+                public void run() {
+                    tableModel.remove(path);
+                }
+            });
             logger.debug("{} watch removed", path);
             return true;
         }
         return false;
     }
 
+    private void removeSelectedWatches() {
+        int[] rows = watchTable.getSelectedRows();
+        for (int i = 0; i < rows.length; ++i) {
+            rows[i] = watchTable.convertRowIndexToModel(rows[i]);
+        }
+        List<String> removed = tableModel.removeRows(rows);
+        synchronized (this) {
+            watches.removeAll(removed);
+        }
+        for (String path : removed) {
+            refresher.remove(path);
+        }
+        logger.debug("{} watches removed", removed.size());
+    }
+
     synchronized public boolean hasWatch(String path) {
         return watches.contains(path);
     }
 
     synchronized public void addWatch(String path) {
-        if (!watches.contains(path)) {
+        if (watches.add(path)) {
             logger.debug("{} watch added", path);
-            watches.add(path);
-            tableModel.addRow(new Object[]{path, null, null, null, null, null});
-            updateData(path, false);
+            addRows(Collections.singletonList(path));
+            refresher.refresh(path);
+        }
+    }
+
+    /**
+     * Add watches for all given paths. Their data is loaded in pipelined chunks, filling the table a chunk at a time
+     * while progress is shown.
+     *
+     * @param paths
+     */
+    public void addWatches(Collection<String> paths) {
+        final List<String> added = new ArrayList<String>();
+        synchronized (this) {
+            for (String path : paths) {
+                if (watches.add(path)) {
+                    added.add(path);
+                }
+            }
+        }
+        if (added.isEmpty()) {
+            return;
         }
+        logger.debug("{} watches added", added.size());
+        addRows(added);
+        invokeOnEdt(new Runnable() {
+            @Override
+            public void run() {
+                loadWatches(added);
+            }
+        });
+    }
+
+    private void loadWatches(final List<String> paths) {
+        final ProgressMonitor progressMonitor = new ProgressMonitor(
+                SwingUtilities.getRoot(this), "watch " + paths.size() + " nodes", "loading data", 0, paths.size());
+
+        final BulkLoadDataWorker[] worker = new BulkLoadDataWorker[1];
+        worker[0] = new BulkLoadDataWorker(zookeeperSync, paths, new BulkLoadDataWorker.Callback() {
+            @Override
+            public void onProgress(Map<String, NodeData> nodeData, int loaded, int total) {
+                for (Map.Entry<String, NodeData> entry : nodeData.entrySet()) {
+                    NodeData data = entry.getValue();
+                    tableModel.update(entry.getKey(), data == null ? null : data.stat,
+                            data == null ? null : data.data);
+                }
+                if (progressMonitor.isCanceled()) {
+                    worker[0].cancel(true);
+                    return;
+                }
+                progressMonitor.setNote(loaded + " of " + total + " nodes loaded");
+                progressMonitor.setProgress(loaded);
+            }
+
+            @Override
+            public void onComplete(int loaded) {
+                progressMonitor.close();
+                if (loaded < paths.size()) {
+                    logger.info("[watch] {} of {} nodes loaded, the rest are loaded on their next update", loaded,
+                            paths.size());
+                }
+            }
+        });
+        worker[0].execute();
+    }
+
+    /**
+     * Remove watches for all given paths.
+     *
+     * @param paths
+     */
+    public void removeWatches(Collection<String> paths) {
+        final List<String> removed = new ArrayList<String>();
+        synchronized (this) {
+            for (String path : paths) {
+                if (watches.remove(path)) {
+                    removed.add(path);
+                }
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+        for (String path : removed) {
+            refresher.remove(path);
+        }
+        invokeOnEdt(new Runnable() {
+            @Override
+            public void run() {
+                int[] rows = new int[removed.size()];
+                int count = 0;
+                for (String path : removed) {
+                    int row = tableModel.getRow(path);
+                    if (row >= 0) {
+                        rows[count++] = row;
+                    }
+                }
+                tableModel.removeRows(Arrays.copyOf(rows, count));
+            }
+        });
+        logger.debug("{} watches removed", removed.size());
     }
 
     private void addPatternWatch() {
@@ -264,32 +522,54 @@ public class ZooDirectorWatchPanel extends JPanel {
             return;
         }
 
-        Pattern pattern;
+        // Scan to see if pattern already exists
+        for (int i = 0; i < patternTableModel.getRowCount(); ++i) {
+            if (((PathPatterns.PathPattern) patternTableModel.getValueAt(i, 0)).getText().equals(watchPattern)) {
+                logger.debug("watch pattern {} already exists", watchPattern);
+                return;
+            }
+        }
+
+        final PathPatterns.PathPattern pattern;
         try {
-            pattern = Pattern.compile(watchPattern);
+            pattern = PathPatterns.compile(watchPattern);
         } catch (PatternSyntaxException e) {
-            logger.error("bad wild card pattern [{}]", e.getMessage());
+            logger.error("bad watch pattern [{}]", e.getMessage());
             return;
         }
 
-        synchronized (patternTableModel) {
-            // Scan to see if pattern already exists
-            for (int i = 0; i < patternTableModel.getRowCount(); ++i) {
-                if (((Pattern) patternTableModel.getValueAt(i, 0)).pattern().equals(watchPattern)) {
-                    logger.debug("watch pattern {} already exists", watchPattern);
-                    return;
-                }
-            }
-            logger.debug("{} watch pattern added", watchPattern);
-            patternTableModel.addRow(new Object[]{pattern});
-            patternWatchTable.packAll();
-            for (String node : zookeeperSync.getNodes()) {
-                if (pattern.matcher(node).matches()) {
-                    addWatch(node);
+        logger.debug("{} watch pattern added", watchPattern);
+        patternTableModel.addRow(new Object[]{pattern, 0L});
+        patternWatchTable.packAll();
+        compilePatterns();
+        pathTextField.setText("");
+
+        // Existing nodes are matched against the new pattern in the background.
+        patternExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<String> matched = new ArrayList<String>();
+                for (String node : zookeeperSync.getNodes()) {
+                    if (pattern.matches(node)) {
+                        matched.add(node);
+                    }
                 }
+                addWatches(matched);
             }
-        }
-        pathTextField.setText("");
+        });
+    }
+
+    /**
+     * @param maxRefreshRate loads per second of each watched node, 0 for no limit
+     */
+    public void setMaxRefreshRate(int maxRefreshRate) {
+        refresher.setMaxRefreshRate(maxRefreshRate);
+    }
+
+    public void close() {
+        statsTimer.stop();
+        refresher.close();
+        patternExecutor.shutdownNow();
     }
 
     public void setZookeeperSync(ZookeeperSync zookeeperSync) {
@@ -297,7 +577,10 @@ public class ZooDirectorWatchPanel extends JPanel {
         zookeeperSync.addListener(new ZookeeperSync.Listener() {
             @Override
             public void process(ZookeeperSync.Event e) {
-                updateData(e.path, e.type == ZookeeperSync.Event.Type.delete);
+                boolean deleted = e.type == ZookeeperSync.Event.Type.delete;
+                if (!updateData(e.path, deleted) && !deleted) {
+                    matchPatterns(e.path);
+                }
             }
         });
     }
@@ -0,0 +1,263 @@
+package com.kostbot.zoodirector.ui;
+
+import com.kostbot.zoodirector.ui.helpers.UIUtils;
+import com.kostbot.zoodirector.ui.workers.AnalyzeLogWorker;
+import com.kostbot.zoodirector.zookeepersync.TxnLogAnalyzer;
+import org.jdesktop.swingx.JXTable;
+import org.joda.time.LocalDateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.table.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows which path prefixes write the most to an ensemble, read from the transaction logs of a data directory.
+ */
+public class ZooDirectorWriteRatePanel extends JPanel {
+    private static final Logger logger = LoggerFactory.getLogger(ZooDirectorWriteRatePanel.class);
+
+    private static final int TOP_WRITERS = 1000;
+
+    private final JTextField logsTextField;
+    private final JSpinner depthSpinner;
+    private final JSpinner bucketSpinner;
+    private final JButton analyzeButton;
+    private final JLabel summaryLabel;
+
+    private final DefaultTableModel writerTableModel;
+    private final JXTable writerTable;
+    private final DefaultTableModel bucketTableModel;
+    private final JXTable bucketTable;
+
+    private File[] selectedFiles;
+
+    public ZooDirectorWriteRatePanel() {
+        setLayout(new BorderLayout());
+
+        JPanel controlPanel = new JPanel(new GridBagLayout());
+
+        GridBagConstraints c = new GridBagConstraints();
+        c.gridx = c.gridy = 0;
+        c.insets.top = 5;
+        c.insets.bottom = 2;
+        c.insets.right = 5;
+        c.fill = GridBagConstraints.HORIZONTAL;
+
+        controlPanel.add(new JLabel("logs"), c);
+
+        logsTextField = new JTextField();
+        logsTextField.setToolTipText("data directory or transaction log files");
+        logsTextField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyTyped(KeyEvent e) {
+                selectedFiles = null;
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) {
+                    analyze();
+                }
+            }
+        });
+        c.gridx++;
+        c.weightx = 1;
+        controlPanel.add(logsTextField, c);
+
+        JButton browseButton = new JButton("...");
+        browseButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                browse();
+            }
+        });
+        c.gridx++;
+        c.weightx = 0;
+        controlPanel.add(browseButton, c);
+
+        c.gridx++;
+        controlPanel.add(new JLabel("depth"), c);
+
+        depthSpinner = new JSpinner(new SpinnerNumberModel(TxnLogAnalyzer.DEFAULT_PREFIX_DEPTH, 1, 100, 1));
+        depthSpinner.setToolTipText("number of leading path segments writes are grouped by");
+        c.gridx++;
+        controlPanel.add(depthSpinner, c);
+
+        c.gridx++;
+        controlPanel.add(new JLabel("bucket (s)"), c);
+
+        bucketSpinner = new JSpinner(new SpinnerNumberModel(
+                (int) (TxnLogAnalyzer.DEFAULT_BUCKET_MILLIS / 1000), 1, 24 * 60 * 60, 1));
+        bucketSpinner.setToolTipText("seconds of writes per time bucket");
+        c.gridx++;
+        controlPanel.add(bucketSpinner, c);
+
+        analyzeButton = new JButton("Analyze");
+        analyzeButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                analyze();
+            }
+        });
+        c.gridx++;
+        c.insets.right = 0;
+        controlPanel.add(analyzeButton, c);
+
+        summaryLabel = new JLabel(" ");
+        c.gridx = 0;
+        c.gridy++;
+        c.gridwidth = GridBagConstraints.REMAINDER;
+        controlPanel.add(summaryLabel, c);
+
+        add(controlPanel, BorderLayout.NORTH);
+
+        writerTableModel = new DefaultTableModel(
+                new String[]{"prefix", "writes", "creates", "sets", "deletes", "bytes", "peak/s"}, 0) {
+            @Override
+            public Class<?> getColumnClass(int columnIndex) {
+                return columnIndex == 0 ? String.class : columnIndex == 6 ? Double.class : Long.class;
+            }
+        };
+        writerTable = newTable(writerTableModel);
+
+        bucketTableModel = new DefaultTableModel(new String[]{"start", "writes", "bytes", "writes/s"}, 0) {
+            @Override
+            public Class<?> getColumnClass(int columnIndex) {
+                return columnIndex == 0 ? LocalDateTime.class : columnIndex == 3 ? Double.class : Long.class;
+            }
+        };
+        bucketTable = newTable(bucketTableModel);
+
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
+                new JScrollPane(writerTable), new JScrollPane(bucketTable));
+        splitPane.setOneTouchExpandable(true);
+        splitPane.setDividerLocation(300);
+        add(splitPane, BorderLayout.CENTER);
+    }
+
+    private static JXTable newTable(TableModel tableModel) {
+        JXTable table = new JXTable(tableModel) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        table.setFont(ZooDirectorFrame.FONT_MONOSPACED);
+        table.setHorizontalScrollEnabled(true);
+        return table;
+    }
+
+    /**
+     * Set the data directory whose logs are analyzed by default.
+     *
+     * @param dataDir
+     */
+    public void setDataDir(File dataDir) {
+        selectedFiles = null;
+        logsTextField.setText(dataDir.getPath());
+    }
+
+    private void browse() {
+        JFileChooser fileChooser = new JFileChooser(logsTextField.getText());
+        fileChooser.setDialogTitle("Select a data directory or transaction logs");
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        fileChooser.setMultiSelectionEnabled(true);
+        if (fileChooser.showOpenDialog(SwingUtilities.getRoot(this)) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File[] files = fileChooser.getSelectedFiles();
+        if (files.length == 0) {
+            return;
+        }
+        selectedFiles = files;
+        logsTextField.setText(files.length == 1 ? files[0].getPath() : files.length + " files in " +
+                files[0].getParent());
+    }
+
+    /**
+     * @return logs of the selected directory or the selected logs
+     */
+    private List<File> getLogFiles() {
+        File[] files = selectedFiles != null ? selectedFiles : new File[]{new File(logsTextField.getText())};
+        List<File> logFiles = new ArrayList<File>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                logFiles.addAll(TxnLogAnalyzer.getLogFiles(file));
+            } else if (file.isFile()) {
+                logFiles.add(file);
+            }
+        }
+        return logFiles;
+    }
+
+    private void analyze() {
+        final List<File> logFiles = getLogFiles();
+        if (logFiles.isEmpty()) {
+            logger.error("no transaction logs found in {}", logsTextField.getText());
+            return;
+        }
+
+        TxnLogAnalyzer analyzer = new TxnLogAnalyzer((Integer) depthSpinner.getValue(),
+                (Integer) bucketSpinner.getValue() * 1000L, TxnLogAnalyzer.DEFAULT_MAX_PREFIXES);
+
+        // Log sizes exceed the int range of the monitor, progress is shown in tenths of a percent.
+        final ProgressMonitor progressMonitor = new ProgressMonitor(
+                SwingUtilities.getRoot(this), "analyze " + logFiles.size() + " transaction logs", "reading logs",
+                0, 1000);
+
+        analyzeButton.setEnabled(false);
+
+        final AnalyzeLogWorker[] worker = new AnalyzeLogWorker[1];
+        worker[0] = new AnalyzeLogWorker(analyzer, logFiles, new AnalyzeLogWorker.Callback() {
+            @Override
+            public void onProgress(long read, long total) {
+                if (progressMonitor.isCanceled()) {
+                    worker[0].cancel(true);
+                    return;
+                }
+                progressMonitor.setNote(UIUtils.humanReadableByteCount(read) + " of " +
+                        UIUtils.humanReadableByteCount(total) + " read");
+                progressMonitor.setProgress(total == 0 ? 1000 : (int) (read * 1000 / total));
+            }
+
+            @Override
+            public void onComplete(TxnLogAnalyzer analyzer) {
+                progressMonitor.close();
+                analyzeButton.setEnabled(true);
+                if (analyzer != null) {
+                    show(analyzer, logFiles.size());
+                }
+            }
+        });
+        worker[0].execute();
+    }
+
+    private void show(TxnLogAnalyzer analyzer, int logCount) {
+        writerTableModel.setRowCount(0);
+        for (TxnLogAnalyzer.PrefixCounts counts : analyzer.getTopWriters(TOP_WRITERS)) {
+            writerTableModel.addRow(new Object[]{counts.getPrefix(), counts.getWrites(), counts.getCreates(),
+                    counts.getSets(), counts.getDeletes(), counts.getBytes(), counts.getPeakRate()});
+        }
+        writerTable.packAll();
+
+        long bucketMillis = analyzer.getBucketMillis();
+        bucketTableModel.setRowCount(0);
+        for (TxnLogAnalyzer.BucketCounts counts : analyzer.getBuckets()) {
+            bucketTableModel.addRow(new Object[]{new LocalDateTime(counts.getStart()), counts.getWrites(),
+                    counts.getBytes(), counts.getWrites() * 1000.0 / bucketMillis});
+        }
+        bucketTable.packAll();
+
+        TxnLogAnalyzer.Counts totals = analyzer.getTotals();
+        summaryLabel.setText(String.format("%d transactions in %d logs, %d writes, %s, %ds buckets%s",
+                analyzer.getTransactionCount(), logCount, totals.getWrites(),
+                UIUtils.humanReadableByteCount(totals.getBytes()), bucketMillis / 1000,
+                analyzer.getCorruptLogCount() > 0 ? ", " + analyzer.getCorruptLogCount() + " logs truncated" : ""));
+    }
+}
@@ -0,0 +1,1140 @@
+package com.kostbot.zoodirector.ui;
+
+import com.kostbot.zoodirector.zookeepersync.PathStore;
+import com.kostbot.zoodirector.zookeepersync.SequentialNames;
+
+import javax.swing.event.EventListenerList;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tree of zookeeper nodes read straight from a {@link PathStore}. The children of a tree node are only created once
+ * the tree asks for them, which it does when the node is expanded, so the size of the tree follows what has been
+ * viewed rather than the number of znodes.
+ * <p/>
+ * Changes to the store are applied with {@link #pathsChanged(Collection)}. Insert and remove events are only fired for
+ * parents whose children are loaded. A parent whose children are not loaded only has a change event fired, so its
+ * expand handle is updated.
+ * <p/>
+ * Nodes with more children than the page size, or whose children are filtered, show them a page at a time between two
+ * {@link Placeholder} rows. Only the nodes of the page are created, the store still holds all children.
+ * <p/>
+ * Sequential children sharing a prefix can be grouped in a {@link Range} row, which lists them in sequence order.
+ * <p/>
+ * Not thread safe, use from the EDT.
+ */
+public class ZookeeperTreeModel implements TreeModel {
+
+    /**
+     * Tree node of a zookeeper path. The full path is derived from the parents to avoid holding a copy of every path.
+     */
+    public static class Node {
+        private final Node parent;
+        private final String name;
+        private Children children; // null until loaded
+        private Page page; // null unless children are shown a page at a time
+
+        private Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        public Node getParent() {
+            return parent;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isRoot() {
+            return parent == null;
+        }
+
+        /**
+         * @return false for rows which only group or page the nodes of their parent
+         */
+        public boolean isZookeeperNode() {
+            return true;
+        }
+
+        /**
+         * @return true if the children of the node have been read from the store
+         */
+        public boolean isLoaded() {
+            return children != null;
+        }
+
+        /**
+         * @return zookeeper path of the node
+         */
+        public String getPath() {
+            if (parent == null) {
+                return "/";
+            }
+            StringBuilder path = new StringBuilder();
+            appendPath(path);
+            return path.toString();
+        }
+
+        void appendPath(StringBuilder path) {
+            if (parent != null) {
+                parent.appendPath(path);
+                path.append('/').append(name);
+            }
+        }
+
+        public TreePath getTreePath() {
+            return parent == null ? new TreePath(this) : parent.getTreePath().pathByAddingChild(this);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * Row before and after the children of a paged node, showing where the page is among the children. It moves to
+     * the previous or next page with {@link #showPage(Placeholder)}. It is not a zookeeper node.
+     */
+    public static class Placeholder extends Node {
+        private final boolean next;
+
+        private Placeholder(Node parent, boolean next) {
+            super(parent, "");
+            this.next = next;
+            ((Node) this).children = new Children(Collections.<Node>emptyList(), NAME_ORDER);
+        }
+
+        /**
+         * @return true if this row follows the page, false if it leads it
+         */
+        public boolean isNext() {
+            return next;
+        }
+
+        @Override
+        public String getPath() {
+            return getParent().getPath();
+        }
+
+        @Override
+        public boolean isZookeeperNode() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            Page page = getParent().page;
+            if (page == null) {
+                return "";
+            }
+            int shown = getParent().children == null ? 0 : getParent().children.size();
+            if (next) {
+                return page.after > 0 ? String.format("next %,d of %,d more", Math.min(page.size, page.after),
+                        page.after) : "end";
+            }
+            String text = String.format("%s of %,d children",
+                    shown == 0 ? "none" : String.format("%,d-%,d", page.before + 1, page.before + shown),
+                    page.before + shown + page.after);
+            if (!page.filter.isEmpty()) {
+                text += " matching \"" + page.filter + "\"";
+            }
+            return page.before > 0 ? String.format("previous %,d | %s", Math.min(page.size, page.before), text) : text;
+        }
+    }
+
+    /**
+     * Row grouping the sequential children of a node which share a prefix, such as the nodes of a lock or a queue. Its
+     * children are the sequential nodes in sequence order. It is not a zookeeper node, its path is that of its parent.
+     */
+    public static class Range extends Node {
+        private final String prefix;
+        private int first;
+        private int last;
+        private int count;
+
+        private Range(Node parent, String key) {
+            super(parent, key);
+            prefix = key.substring(0, key.length() - RANGE_SUFFIX.length());
+        }
+
+        /**
+         * @return prefix the grouped nodes share, without Curator protection ids
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * @return number of grouped nodes
+         */
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String getPath() {
+            return getParent().getPath();
+        }
+
+        @Override
+        void appendPath(StringBuilder path) {
+            getParent().appendPath(path);
+        }
+
+        @Override
+        public boolean isZookeeperNode() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return prefix + "[" + SequentialNames.format("", first) + ".." + SequentialNames.format("", last) + "] (" +
+                    count + ")";
+        }
+    }
+
+    /**
+     * Which of the children of a node are shown. Only the nodes of the page are created, the children before and after
+     * it are only counted.
+     */
+    private static class Page {
+        private final int size;
+        private final Comparator<String> order;
+        private final Placeholder previous;
+        private final Placeholder next;
+
+        private String filter;
+        private int start; // index of the first shown child among the matching children
+
+        // Names of the first and last shown child when loaded, null if none are shown. Children added between them are
+        // inserted, children added outside them are counted.
+        private String low;
+        private String high;
+        private int before;
+        private int after;
+
+        private Page(Node node, int size, Comparator<String> order) {
+            this.size = size;
+            this.order = order;
+            previous = new Placeholder(node, false);
+            next = new Placeholder(node, true);
+            filter = "";
+        }
+
+        private boolean matches(String name) {
+            return filter.isEmpty() || name.contains(filter);
+        }
+
+        private List<String> filter(List<String> names) {
+            if (filter.isEmpty()) {
+                return names;
+            }
+            List<String> matching = new ArrayList<String>();
+            for (String name : names) {
+                if (matches(name)) {
+                    matching.add(name);
+                }
+            }
+            return matching;
+        }
+
+        private boolean isShown(String name) {
+            return low != null && order.compare(low, name) <= 0 && order.compare(high, name) >= 0;
+        }
+
+        /**
+         * @param names rows of all children of the node
+         * @return sorted names of the page
+         */
+        private List<String> load(List<String> names) {
+            List<String> matching = filter(names);
+            Collections.sort(matching, order);
+            if (start >= matching.size()) {
+                start = Math.max(0, matching.size() - size);
+            }
+            int end = Math.min(matching.size(), start + size);
+            List<String> shown = matching.subList(start, end);
+            low = shown.isEmpty() ? null : shown.get(0);
+            high = shown.isEmpty() ? null : shown.get(shown.size() - 1);
+            before = start;
+            after = matching.size() - end;
+            return shown;
+        }
+
+        /**
+         * Count the matching children before and after the page again.
+         *
+         * @param names rows of all children of the node
+         */
+        private void count(List<String> names) {
+            before = 0;
+            after = 0;
+            for (String name : names) {
+                if (!matches(name)) {
+                    continue;
+                }
+                if (low == null || order.compare(high, name) < 0) {
+                    after++;
+                } else if (order.compare(low, name) > 0) {
+                    before++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Children sorted by name, in the order of their parent, which serve as the index from child name to node. They are held in blocks of bounded
+     * size so inserting or removing one of many siblings only shifts the nodes of one block.
+     */
+    private static class Children {
+        private static final int MAX_BLOCK_SIZE = 1024;
+
+        private final List<List<Node>> blocks;
+        private final Comparator<String> order;
+        private int size;
+
+        private Children(List<Node> sorted, Comparator<String> order) {
+            this.order = order;
+            blocks = new ArrayList<List<Node>>(sorted.size() / (MAX_BLOCK_SIZE / 2) + 1);
+            for (int i = 0; i < sorted.size(); i += MAX_BLOCK_SIZE / 2) {
+                blocks.add(new ArrayList<Node>(sorted.subList(i, Math.min(sorted.size(), i + MAX_BLOCK_SIZE / 2))));
+            }
+            size = sorted.size();
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private Node get(int index) {
+            for (List<Node> block : blocks) {
+                if (index < block.size()) {
+                    return block.get(index);
+                }
+                index -= block.size();
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        /**
+         * Binary search the blocks by their first name, then the block the name falls in.
+         *
+         * @param name
+         * @return index of the named child, or (-(insertion point) - 1) if there is none
+         */
+        private int indexOf(String name) {
+            int block = 0;
+            int low = 1;
+            int high = blocks.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (order.compare(blocks.get(mid).get(0).name, name) <= 0) {
+                    block = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int offset = 0;
+            for (int i = 0; i < block; ++i) {
+                offset += blocks.get(i).size();
+            }
+            if (blocks.isEmpty()) {
+                return -1;
+            }
+
+            List<Node> nodes = blocks.get(block);
+            low = 0;
+            high = nodes.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int compare = order.compare(nodes.get(mid).name, name);
+                if (compare < 0) {
+                    low = mid + 1;
+                } else if (compare > 0) {
+                    high = mid - 1;
+                } else {
+                    return offset + mid;
+                }
+            }
+            return -(offset + low + 1);
+        }
+
+        private void add(int index, Node node) {
+            if (blocks.isEmpty()) {
+                blocks.add(new ArrayList<Node>());
+            }
+            int block = 0;
+            while (block < blocks.size() - 1 && index > blocks.get(block).size()) {
+                index -= blocks.get(block).size();
+                block++;
+            }
+            List<Node> nodes = blocks.get(block);
+            nodes.add(index, node);
+            if (nodes.size() > MAX_BLOCK_SIZE) {
+                List<Node> split = nodes.subList(nodes.size() / 2, nodes.size());
+                blocks.add(block + 1, new ArrayList<Node>(split));
+                split.clear();
+            }
+            size++;
+        }
+
+        private Node remove(int index) {
+            int block = 0;
+            while (index >= blocks.get(block).size()) {
+                index -= blocks.get(block).size();
+                block++;
+            }
+            Node node = blocks.get(block).remove(index);
+            if (blocks.get(block).isEmpty()) {
+                blocks.remove(block);
+            }
+            size--;
+            return node;
+        }
+    }
+
+    public static final int PAGE_SIZE = 1000;
+
+    // Ends the name of range rows, zookeeper names cannot contain it.
+    private static final String RANGE_SUFFIX = "\u0000";
+
+    private static final Comparator<String> NAME_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            return a.compareTo(b);
+        }
+    };
+
+    private final Node root;
+    private final EventListenerList listeners;
+    private final int pageSize;
+    private PathStore paths;
+    private boolean groupSequential;
+
+    public ZookeeperTreeModel(PathStore paths) {
+        this(paths, PAGE_SIZE);
+    }
+
+    /**
+     * @param paths
+     * @param pageSize most children of a node shown at once
+     */
+    public ZookeeperTreeModel(PathStore paths, int pageSize) {
+        this.paths = paths;
+        this.pageSize = pageSize;
+        root = new Node(null, "");
+        listeners = new EventListenerList();
+    }
+
+    /**
+     * Read the tree from the given store instead, dropping all loaded nodes.
+     *
+     * @param paths
+     */
+    public void setPathStore(PathStore paths) {
+        this.paths = paths;
+        root.page = null;
+        reload();
+    }
+
+    /**
+     * Drop all loaded nodes, they are read again from the store as the tree asks for them.
+     */
+    public void reload() {
+        root.children = null;
+        fireTreeStructureChanged(root);
+    }
+
+    /**
+     * Drop the loaded descendants of the given node, they are read again from the store when it is next expanded.
+     *
+     * @param node
+     */
+    public void unload(Node node) {
+        if (node.children != null) {
+            node.children = null;
+            fireTreeStructureChanged(node);
+        }
+    }
+
+    /**
+     * Group sequential children sharing a prefix in range rows, or show them as they are.
+     *
+     * @param groupSequential
+     */
+    public void setGroupSequential(boolean groupSequential) {
+        if (this.groupSequential != groupSequential) {
+            this.groupSequential = groupSequential;
+            reload();
+        }
+    }
+
+    public boolean isGroupSequential() {
+        return groupSequential;
+    }
+
+    private static Comparator<String> getOrder(Node node) {
+        return node instanceof Range ? SequentialNames.ORDER : NAME_ORDER;
+    }
+
+    /**
+     * @param node
+     * @param name name of a child of the node
+     * @return name of the range row the child is grouped in, null if it is not grouped
+     */
+    private String getRangeKey(Node node, String name) {
+        if (!groupSequential || node instanceof Range || !SequentialNames.isSequential(name)) {
+            return null;
+        }
+        return SequentialNames.getRunPrefix(name) + RANGE_SUFFIX;
+    }
+
+    /**
+     * @param node
+     * @return names of the rows of the children of the node, a range row stands for all the children it groups
+     */
+    private List<String> getRowNames(Node node) {
+        List<String> names = paths.getChildren(node.getPath());
+        if (node instanceof Range) {
+            List<String> grouped = new ArrayList<String>();
+            for (String name : names) {
+                if (node.name.equals(getRangeKey(node.parent, name))) {
+                    grouped.add(name);
+                }
+            }
+            return grouped;
+        }
+        if (!groupSequential) {
+            return names;
+        }
+        List<String> rows = new ArrayList<String>(names.size());
+        Set<String> ranges = new HashSet<String>();
+        for (String name : names) {
+            String key = getRangeKey(node, name);
+            if (key == null) {
+                rows.add(name);
+            } else if (ranges.add(key)) {
+                rows.add(key);
+            }
+        }
+        return rows;
+    }
+
+    private Node newChild(Node node, String name) {
+        if (name.endsWith(RANGE_SUFFIX)) {
+            return new Range(node, name);
+        }
+        return new Node(node, paths.intern(name));
+    }
+
+    /**
+     * Count the sequential children grouped in the given range rows.
+     *
+     * @param node   parent of the ranges
+     * @param ranges
+     */
+    private void countRanges(Node node, Collection<Range> ranges) {
+        Map<String, Range> rangesByKey = new HashMap<String, Range>();
+        for (Range range : ranges) {
+            range.count = 0;
+            range.first = Integer.MAX_VALUE;
+            range.last = 0;
+            rangesByKey.put(range.getName(), range);
+        }
+        for (String name : paths.getChildren(node.getPath())) {
+            String key = getRangeKey(node, name);
+            Range range = key == null ? null : rangesByKey.get(key);
+            if (range != null) {
+                int sequence = SequentialNames.getSequence(name);
+                range.count++;
+                range.first = Math.min(range.first, sequence);
+                range.last = Math.max(range.last, sequence);
+            }
+        }
+    }
+
+    private Children getChildren(Node node) {
+        if (node.children == null) {
+            List<String> names = getRowNames(node);
+            Comparator<String> order = getOrder(node);
+            if (node.page == null && names.size() > pageSize) {
+                node.page = new Page(node, pageSize, order);
+            } else if (node.page != null && node.page.filter.isEmpty() && names.size() <= pageSize) {
+                node.page = null;
+            }
+            if (node.page == null) {
+                Collections.sort(names, order);
+            } else {
+                names = node.page.load(names);
+            }
+            List<Node> children = new ArrayList<Node>(names.size());
+            List<Range> ranges = new ArrayList<Range>();
+            for (String name : names) {
+                Node child = newChild(node, name);
+                if (child instanceof Range) {
+                    ranges.add((Range) child);
+                }
+                children.add(child);
+            }
+            node.children = new Children(children, order);
+            if (!ranges.isEmpty()) {
+                countRanges(node, ranges);
+            }
+        }
+        return node.children;
+    }
+
+    @Override
+    public Node getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        Node node = (Node) parent;
+        Children children = getChildren(node);
+        if (node.page == null) {
+            return children.get(index);
+        }
+        if (index == 0) {
+            return node.page.previous;
+        }
+        if (index == children.size() + 1) {
+            return node.page.next;
+        }
+        return children.get(index - 1);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        Node node = (Node) parent;
+        Children children = getChildren(node);
+        return node.page == null ? children.size() : children.size() + 2;
+    }
+
+    /**
+     * @param node
+     * @return index of the first child of the node among its rows, 1 if a placeholder leads the children
+     */
+    private static int getOffset(Node node) {
+        return node.page == null ? 0 : 1;
+    }
+
+    /**
+     * @param node
+     * @return true if the children of the node are shown a page at a time
+     */
+    public boolean isPaged(Node node) {
+        return node.page != null;
+    }
+
+    /**
+     * @param node
+     * @return filter of the children of the node, empty if none
+     */
+    public String getFilter(Node node) {
+        return node.page == null ? "" : node.page.filter;
+    }
+
+    /**
+     * Only show the children of the node whose name contains the filter, a page at a time.
+     *
+     * @param node
+     * @param filter empty to show all children
+     */
+    public void setFilter(Node node, String filter) {
+        if (node instanceof Placeholder) {
+            return;
+        }
+        if (filter == null) {
+            filter = "";
+        }
+        if (node.page == null) {
+            if (filter.isEmpty()) {
+                return;
+            }
+            node.page = new Page(node, pageSize, getOrder(node));
+        } else if (filter.equals(node.page.filter)) {
+            return;
+        }
+        node.page.filter = filter;
+        node.page.start = 0;
+        node.children = null;
+        fireTreeStructureChanged(node);
+    }
+
+    /**
+     * Show the page the placeholder leads to.
+     *
+     * @param placeholder
+     * @return true if the page changed
+     */
+    public boolean showPage(Placeholder placeholder) {
+        Node node = placeholder.getParent();
+        Page page = node.page;
+        if (page == null || node.children == null) {
+            return false;
+        }
+        if (placeholder.isNext()) {
+            if (page.after == 0) {
+                return false;
+            }
+            page.start = page.before + node.children.size();
+        } else {
+            if (page.before == 0) {
+                return false;
+            }
+            page.start = Math.max(0, page.before - pageSize);
+        }
+        node.children = null;
+        fireTreeStructureChanged(node);
+        return true;
+    }
+
+    /**
+     * Show the page of a paged node which holds the named child, dropping the filter if it does not match.
+     *
+     * @param node
+     * @param name
+     * @return true if the child exists
+     */
+    private boolean showPageOf(Node node, String name) {
+        List<String> names = getRowNames(node);
+        if (!names.contains(name)) {
+            return false;
+        }
+        if (!node.page.matches(name)) {
+            node.page.filter = "";
+        }
+        names = node.page.filter(names);
+        Collections.sort(names, node.page.order);
+        int index = Collections.binarySearch(names, name, node.page.order);
+        node.page.start = Math.max(0, index) / pageSize * pageSize;
+        node.children = null;
+        fireTreeStructureChanged(node);
+        return true;
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        // The root can always be expanded, so it is shown expanded while the tree is still being loaded.
+        return !((Node) node).isRoot() && !hasChildren((Node) node);
+    }
+
+    /**
+     * @param node
+     * @return true if the node has children, without loading them
+     */
+    public boolean hasChildren(Node node) {
+        if (node.children == null) {
+            return node instanceof Range ? ((Range) node).count > 0 : paths.hasChildren(node.getPath());
+        }
+        return node.children.size() > 0;
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // Nodes are not editable
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        Node node = (Node) parent;
+        if (node == null || child == null || node.children == null) {
+            return -1;
+        }
+        if (node.page != null && child == node.page.previous) {
+            return 0;
+        }
+        if (node.page != null && child == node.page.next) {
+            return node.children.size() + 1;
+        }
+        int index = node.children.indexOf(((Node) child).name);
+        return index >= 0 && node.children.get(index) == child ? index + getOffset(node) : -1;
+    }
+
+    /**
+     * Get the loaded node of the given path.
+     *
+     * @param path zookeeper path
+     * @return the node, null if it does not exist or its parent's children are not loaded
+     */
+    public Node getNode(String path) {
+        return findNode(path, false);
+    }
+
+    /**
+     * Get the node of the given path, loading the children of its ancestors as needed. Paged ancestors are moved to the
+     * page holding the path.
+     *
+     * @param path zookeeper path
+     * @return the node, null if it does not exist
+     */
+    public Node loadNode(String path) {
+        return findNode(path, true);
+    }
+
+    private Node findNode(String path, boolean load) {
+        if (path == null || !path.startsWith("/")) {
+            return null;
+        }
+        Node node = root;
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            String name = path.substring(start, end);
+            String key = getRangeKey(node, name);
+            if (key != null) {
+                node = findChild(node, key, load);
+                if (node == null) {
+                    return null;
+                }
+            }
+            node = findChild(node, name, load);
+            if (node == null) {
+                return null;
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * @param node
+     * @param name
+     * @param load if true the children of the node are loaded, and a paged node is moved to the page of the child
+     * @return the named child, null if it does not exist or is not loaded
+     */
+    private Node findChild(Node node, String name, boolean load) {
+        if (node.children == null && !load) {
+            return null;
+        }
+        int index = getChildren(node).indexOf(name);
+        if (index < 0) {
+            if (!load || node.page == null || !showPageOf(node, name)) {
+                return null;
+            }
+            index = getChildren(node).indexOf(name);
+            if (index < 0) {
+                return null;
+            }
+        }
+        return node.children.get(index);
+    }
+
+    /**
+     * Update the tree for a path added to or removed from the store, see {@link #pathsChanged(Collection)}.
+     *
+     * @param path zookeeper path
+     */
+    public void pathChanged(String path) {
+        pathsChanged(Collections.singleton(path));
+    }
+
+    /**
+     * Update the tree for paths added to or removed from the store. Each path is brought in line with the store,
+     * so the order of the changes does not matter and a path added and removed again changes nothing.
+     * <p/>
+     * Each parent whose children are loaded gets one remove and one insert event covering all of its changed children.
+     * Each node whose children are not loaded, but whose direct children changed, gets one change event so its expand
+     * handle is updated.
+     *
+     * @param changed zookeeper paths
+     */
+    public void pathsChanged(Collection<String> changed) {
+        // Removals first, so the indices of the removal events are those listeners have seen.
+        Map<Node, List<Node>> removed = new LinkedHashMap<Node, List<Node>>();
+        for (String path : changed) {
+            Node node = getNode(path);
+            if (node != null && !node.isRoot() && !paths.contains(path)) {
+                getList(removed, node.parent).add(node);
+            }
+        }
+        for (Map.Entry<Node, List<Node>> entry : removed.entrySet()) {
+            // A parent removed along with its children takes them out of the tree.
+            if (isAttached(entry.getKey())) {
+                removeChildren(entry.getKey(), entry.getValue());
+            }
+        }
+
+        Map<Node, List<Node>> inserted = new LinkedHashMap<Node, List<Node>>();
+        Set<Node> refreshed = new LinkedHashSet<Node>();
+        Set<Node> counted = new LinkedHashSet<Node>();
+        Set<Range> ranges = new LinkedHashSet<Range>();
+        for (String path : changed) {
+            addPath(path, inserted, refreshed, counted, ranges);
+        }
+        for (Map.Entry<Node, List<Node>> entry : inserted.entrySet()) {
+            Node parent = entry.getKey();
+            for (Node child : entry.getValue()) {
+                if (child instanceof Range) {
+                    ranges.add((Range) child);
+                }
+            }
+            if (parent.page == null && parent.children.size() > pageSize) {
+                // Too many children to show at once, they are loaded again a page at a time.
+                parent.children = null;
+                counted.remove(parent);
+                fireTreeStructureChanged(parent);
+            } else {
+                insertChildren(parent, entry.getValue());
+            }
+            refreshed.removeAll(entry.getValue());
+        }
+
+        // Range rows show the sequence numbers they group, the last one removed takes the row with it.
+        Map<Node, List<Range>> rangesByParent = new LinkedHashMap<Node, List<Range>>();
+        for (Range range : ranges) {
+            if (isAttached(range)) {
+                List<Range> list = rangesByParent.get(range.getParent());
+                if (list == null) {
+                    list = new ArrayList<Range>();
+                    rangesByParent.put(range.getParent(), list);
+                }
+                list.add(range);
+            }
+        }
+        for (Map.Entry<Node, List<Range>> entry : rangesByParent.entrySet()) {
+            countRanges(entry.getKey(), entry.getValue());
+            List<Node> empty = new ArrayList<Node>();
+            List<Node> counts = new ArrayList<Node>();
+            for (Range range : entry.getValue()) {
+                (range.count == 0 ? empty : counts).add(range);
+            }
+            if (!empty.isEmpty()) {
+                removeChildren(entry.getKey(), empty);
+            }
+            if (!counts.isEmpty()) {
+                fireTreeNodesChanged(entry.getKey(), counts);
+            }
+        }
+
+        // Children added or removed outside of a page only change its placeholders.
+        for (Node node : counted) {
+            if (node.page != null && node.children != null && isAttached(node)) {
+                node.page.count(getRowNames(node));
+                firePlaceholdersChanged(node);
+            }
+        }
+
+        Map<Node, List<Node>> refreshedByParent = new LinkedHashMap<Node, List<Node>>();
+        for (Node node : refreshed) {
+            if (!isAttached(node)) {
+                continue;
+            }
+            if (node.isRoot()) {
+                fireTreeNodesChanged(node, null);
+            } else {
+                getList(refreshedByParent, node.parent).add(node);
+            }
+        }
+        for (Map.Entry<Node, List<Node>> entry : refreshedByParent.entrySet()) {
+            fireTreeNodesChanged(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private boolean isAttached(Node node) {
+        for (; !node.isRoot(); node = node.parent) {
+            if (getIndexOfChild(node.parent, node) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Node> getList(Map<Node, List<Node>> lists, Node key) {
+        List<Node> list = lists.get(key);
+        if (list == null) {
+            list = new ArrayList<Node>();
+            lists.put(key, list);
+        }
+        return list;
+    }
+
+    /**
+     * Walk the loaded nodes down to the given path, creating the first missing node if it is in the store. The
+     * children of a new node are loaded along with it when expanded, so the walk stops there.
+     *
+     * @param path
+     * @param inserted  receives new nodes by parent
+     * @param refreshed receives nodes whose children are not loaded but changed
+     * @param counted   receives paged nodes whose children changed outside of the page
+     * @param ranges    receives range rows whose grouped nodes changed
+     */
+    private void addPath(String path, Map<Node, List<Node>> inserted, Set<Node> refreshed, Set<Node> counted,
+                         Set<Range> ranges) {
+        Node node = root;
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            if (node.children == null) {
+                if (end == path.length()) {
+                    // A first child may have been added or a last child removed.
+                    refreshed.add(node);
+                }
+                return;
+            }
+            String name = path.substring(start, end);
+            String key = getRangeKey(node, name);
+            if (key != null) {
+                node = addChild(node, key, path, end, inserted, counted);
+                if (node == null) {
+                    return;
+                }
+                if (end == path.length()) {
+                    ranges.add((Range) node);
+                }
+                if (node.children == null) {
+                    return;
+                }
+            }
+            node = addChild(node, name, path, end, inserted, counted);
+            if (node == null) {
+                return;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Get the named child of a loaded node, creating it if it is in the store and would be shown.
+     *
+     * @param node
+     * @param name     name of the child or its range row
+     * @param path     zookeeper path being added
+     * @param end      end of the child's segment in path
+     * @param inserted receives new nodes by parent
+     * @param counted  receives paged nodes whose children changed outside of the page
+     * @return the child if it was already loaded, null otherwise
+     */
+    private Node addChild(Node node, String name, String path, int end, Map<Node, List<Node>> inserted,
+                          Set<Node> counted) {
+        int index = node.children.indexOf(name);
+        if (index >= 0) {
+            return node.children.get(index);
+        }
+        if (node.page != null && !node.page.isShown(name)) {
+            if (end == path.length()) {
+                counted.add(node);
+            }
+        } else if ((node.page == null || node.page.matches(name)) && paths.contains(path.substring(0, end))) {
+            Node child = newChild(node, name);
+            node.children.add(-(index + 1), child);
+            getList(inserted, node).add(child);
+        }
+        return null;
+    }
+
+    private void removeChildren(Node parent, List<Node> children) {
+        sortByName(parent, children);
+        int[] indices = new int[children.size()];
+        for (int i = 0; i < indices.length; ++i) {
+            indices[i] = parent.children.indexOf(children.get(i).name);
+        }
+        for (int i = indices.length - 1; i >= 0; --i) {
+            parent.children.remove(indices[i]);
+            indices[i] += getOffset(parent);
+        }
+        TreeModelEvent event = new TreeModelEvent(this, parent.getTreePath(), indices, children.toArray());
+        for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+            listener.treeNodesRemoved(event);
+        }
+    }
+
+    private void insertChildren(Node parent, List<Node> children) {
+        sortByName(parent, children);
+        int[] indices = new int[children.size()];
+        for (int i = 0; i < indices.length; ++i) {
+            indices[i] = parent.children.indexOf(children.get(i).name) + getOffset(parent);
+        }
+        TreeModelEvent event = new TreeModelEvent(this, parent.getTreePath(), indices, children.toArray());
+        for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+            listener.treeNodesInserted(event);
+        }
+    }
+
+    /**
+     * Sort siblings by name in the order of their parent, which orders them by their index.
+     *
+     * @param parent
+     * @param nodes
+     */
+    private static void sortByName(Node parent, List<Node> nodes) {
+        final Comparator<String> order = getOrder(parent);
+        Collections.sort(nodes, new Comparator<Node>() {
+            @Override
+            public int compare(Node a, Node b) {
+                return order.compare(a.name, b.name);
+            }
+        });
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener listener) {
+        listeners.add(TreeModelListener.class, listener);
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener listener) {
+        listeners.remove(TreeModelListener.class, listener);
+    }
+
+    /**
+     * @param parent
+     * @param children changed children of parent, null if parent itself changed
+     */
+    private void fireTreeNodesChanged(Node parent, List<Node> children) {
+        TreeModelEvent event;
+        if (children == null) {
+            event = new TreeModelEvent(this, parent.getTreePath(), null, null);
+        } else {
+            sortByName(parent, children);
+            int[] indices = new int[children.size()];
+            for (int i = 0; i < indices.length; ++i) {
+                indices[i] = parent.children.indexOf(children.get(i).name) + getOffset(parent);
+            }
+            event = new TreeModelEvent(this, parent.getTreePath(), indices, children.toArray());
+        }
+        for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+            listener.treeNodesChanged(event);
+        }
+    }
+
+    private void firePlaceholdersChanged(Node parent) {
+        TreeModelEvent event = new TreeModelEvent(this, parent.getTreePath(),
+                new int[]{0, parent.children.size() + 1}, new Object[]{parent.page.previous, parent.page.next});
+        for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+            listener.treeNodesChanged(event);
+        }
+    }
+
+    private void fireTreeStructureChanged(Node node) {
+        TreeModelEvent event = new TreeModelEvent(this, node.getTreePath());
+        for (TreeModelListener listener : listeners.getListeners(TreeModelListener.class)) {
+            listener.treeStructureChanged(event);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.kostbot.zoodirector.ui.helpers;
+
+import javax.swing.*;
+import javax.swing.table.TableCellRenderer;
+import java.awt.*;
+
+/**
+ * Renders an int[] of counts as a bar sparkline, scaled to the largest count of the cell.
+ */
+public class SparklineRenderer extends JComponent implements TableCellRenderer {
+    private int[] values = new int[0];
+    private Color barColor;
+
+    public SparklineRenderer() {
+        setOpaque(true);
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus,
+                                                   int row, int column) {
+        values = value instanceof int[] ? (int[]) value : new int[0];
+        setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+        barColor = isSelected ? table.getSelectionForeground() : table.getForeground();
+
+        int total = 0;
+        for (int count : values) {
+            total += count;
+        }
+        setToolTipText(total + " changes");
+        return this;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        int max = 0;
+        for (int count : values) {
+            max = Math.max(max, count);
+        }
+        if (max == 0) {
+            return;
+        }
+
+        int height = getHeight() - 2;
+        float barWidth = (float) getWidth() / values.length;
+        g.setColor(barColor);
+        for (int i = 0; i < values.length; ++i) {
+            if (values[i] == 0) {
+                continue;
+            }
+            int barHeight = Math.max(1, Math.round((float) values[i] * height / max));
+            int x = Math.round(i * barWidth);
+            int width = Math.max(1, Math.round((i + 1) * barWidth) - x - 1);
+            g.fillRect(x, getHeight() - 1 - barHeight, width, barHeight);
+        }
+    }
+}
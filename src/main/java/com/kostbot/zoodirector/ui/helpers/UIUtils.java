@@ -46,7 +46,7 @@ public class UIUtils {
     private static final int UNIT_SIZE = 1024;
     private static final String UNIT_PREFIXES = "KMGTPE";
 
-    public static String humanReadableByteCount(int numberOfBytes) {
+    public static String humanReadableByteCount(long numberOfBytes) {
         if (numberOfBytes < UNIT_SIZE) {
             return numberOfBytes + " bytes";
         }
@@ -0,0 +1,84 @@
+package com.kostbot.zoodirector.ui.workers;
+
+import com.kostbot.zoodirector.zookeepersync.TxnLogAnalyzer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.List;
+
+public class AnalyzeLogWorker extends SwingWorker<TxnLogAnalyzer, long[]> {
+    private static final Logger logger = LoggerFactory.getLogger(AnalyzeLogWorker.class);
+
+    private final TxnLogAnalyzer analyzer;
+    private final List<File> logFiles;
+
+    private final Callback callback;
+
+    public interface Callback {
+        /**
+         * @param read  bytes of the logs read so far
+         * @param total total size of the logs in bytes
+         */
+        void onProgress(long read, long total);
+
+        /**
+         * @param analyzer analyzer holding the counts, null if the analysis failed or was cancelled
+         */
+        void onComplete(TxnLogAnalyzer analyzer);
+    }
+
+    /**
+     * Create an AnalyzeLogWorker for reading the given transaction logs into the analyzer. Progress and completion
+     * are reported to the callback on the EDT. Cancelling the worker interrupts the analysis.
+     *
+     * @param analyzer
+     * @param logFiles
+     * @param callback
+     */
+    public AnalyzeLogWorker(TxnLogAnalyzer analyzer, List<File> logFiles, Callback callback) {
+        this.analyzer = analyzer;
+        this.logFiles = logFiles;
+        this.callback = callback;
+    }
+
+    @Override
+    protected TxnLogAnalyzer doInBackground() throws Exception {
+        logger.debug("analysis of {} logs requested", logFiles.size());
+
+        analyzer.analyze(logFiles, new TxnLogAnalyzer.ProgressMonitor() {
+            @Override
+            public void progress(long read, long total) {
+                publish(new long[]{read, total});
+            }
+        });
+        return analyzer;
+    }
+
+    @Override
+    protected void process(List<long[]> chunks) {
+        if (callback != null) {
+            long[] progress = chunks.get(chunks.size() - 1);
+            callback.onProgress(progress[0], progress[1]);
+        }
+    }
+
+    @Override
+    protected void done() {
+        TxnLogAnalyzer result = null;
+        if (isCancelled()) {
+            logger.info("analysis of {} logs cancelled", logFiles.size());
+        } else {
+            try {
+                result = get();
+            } catch (Exception e) {
+                logger.error("analysis of {} logs failed [{}]", logFiles.size(),
+                        e.getCause() != null ? e.getCause().getMessage() : e);
+            }
+        }
+        if (callback != null) {
+            callback.onComplete(result);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.kostbot.zoodirector.ui.workers;
+
+import com.kostbot.zoodirector.zookeepersync.NodeData;
+import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public class BulkLoadDataWorker extends SwingWorker<Void, Void> {
+    private static final Logger logger = LoggerFactory.getLogger(BulkLoadDataWorker.class);
+
+    /**
+     * Number of paths loaded and handed to the callback at a time.
+     */
+    public static final int CHUNK_SIZE = 1000;
+
+    private final ZookeeperSync zookeeperSync;
+
+    private final Callback callback;
+    private final List<String> paths;
+
+    // Touched on the EDT only.
+    private int loaded;
+
+    public interface Callback {
+        /**
+         * @param nodeData node data of the chunk just loaded by path, null for nodes which could not be loaded
+         * @param loaded   number of paths loaded so far
+         * @param total    number of paths to load
+         */
+        void onProgress(Map<String, NodeData> nodeData, int loaded, int total);
+
+        /**
+         * @param loaded number of paths loaded, less than requested if the worker was cancelled or failed
+         */
+        void onComplete(int loaded);
+    }
+
+    /**
+     * Create a BulkLoadDataWorker for fetching data/stat of many paths from zookeeper. Paths are loaded a chunk at a
+     * time, each chunk in pipelined requests with the crawl concurrency of the sync in flight. Each loaded chunk and
+     * completion are reported to the callback on the EDT. Cancelling the worker stops loading, chunks already loaded
+     * have been reported.
+     *
+     * @param zookeeperSync
+     * @param paths
+     * @param callback
+     */
+    public BulkLoadDataWorker(ZookeeperSync zookeeperSync, Collection<String> paths, Callback callback) {
+        this.zookeeperSync = zookeeperSync;
+        this.paths = new ArrayList<String>(paths);
+        this.callback = callback;
+    }
+
+    @Override
+    protected Void doInBackground() throws InterruptedException {
+        logger.debug("load {} paths requested", paths.size());
+
+        for (int start = 0; start < paths.size() && !isCancelled(); start += CHUNK_SIZE) {
+            List<String> chunk = paths.subList(start, Math.min(paths.size(), start + CHUNK_SIZE));
+            final Map<String, NodeData> nodeData = zookeeperSync.getNodeData(chunk);
+            // Not published, which may deliver chunks after done().
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    loaded += nodeData.size();
+                    if (callback != null) {
+                        callback.onProgress(nodeData, loaded, paths.size());
+                    }
+                }
+            });
+        }
+        return null;
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            logger.debug("load {} paths cancelled", paths.size());
+        } else {
+            try {
+                get();
+                logger.debug("load {} paths complete", paths.size());
+            } catch (Exception e) {
+                logger.error("load {} paths failed [{}]", paths.size(),
+                        e.getCause() != null ? e.getCause().getMessage() : e);
+            }
+        }
+        if (callback != null) {
+            callback.onComplete(loaded);
+        }
+    }
+}
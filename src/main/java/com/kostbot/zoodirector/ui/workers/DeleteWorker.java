@@ -0,0 +1,112 @@
+package com.kostbot.zoodirector.ui.workers;
+
+import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.util.List;
+
+public class DeleteWorker extends SwingWorker<String, int[]> {
+    private static final Logger logger = LoggerFactory.getLogger(DeleteWorker.class);
+
+    public static enum Mode {
+        /**
+         * Delete the node and its descendants.
+         */
+        delete,
+        /**
+         * Delete the node's descendants only.
+         */
+        trim,
+        /**
+         * Delete the node, its descendants and its ancestors with only a single child.
+         */
+        prune
+    }
+
+    private final ZookeeperSync zookeeperSync;
+
+    private final Callback callback;
+    private final String path;
+    private final Mode mode;
+
+    public interface Callback {
+        /**
+         * @param deleted number of nodes deleted so far
+         * @param total   number of nodes to delete
+         */
+        void onProgress(int deleted, int total);
+
+        /**
+         * @param path nearest node left standing, null if the delete failed or was cancelled
+         */
+        void onComplete(String path);
+    }
+
+    /**
+     * Create a DeleteWorker for deleting a subtree from zookeeper. Progress and completion are reported to the
+     * callback on the EDT. Cancelling the worker interrupts the delete, nodes already deleted stay deleted.
+     *
+     * @param zookeeperSync
+     * @param path
+     * @param mode
+     * @param callback
+     */
+    public DeleteWorker(ZookeeperSync zookeeperSync, String path, Mode mode, Callback callback) {
+        this.zookeeperSync = zookeeperSync;
+        this.path = path;
+        this.mode = mode;
+        this.callback = callback;
+    }
+
+    @Override
+    protected String doInBackground() throws Exception {
+        logger.debug("{} {} requested", mode, path);
+
+        ZookeeperSync.DeleteMonitor monitor = new ZookeeperSync.DeleteMonitor() {
+            @Override
+            public void progress(int deleted, int total) {
+                publish(new int[]{deleted, total});
+            }
+        };
+
+        switch (mode) {
+            case delete:
+                zookeeperSync.delete(path, monitor);
+                return ZookeeperSync.getParent(path);
+            case trim:
+                zookeeperSync.trim(path, monitor);
+                return path;
+            case prune:
+                return zookeeperSync.prune(path, monitor);
+        }
+        return null;
+    }
+
+    @Override
+    protected void process(List<int[]> chunks) {
+        if (callback != null) {
+            int[] progress = chunks.get(chunks.size() - 1);
+            callback.onProgress(progress[0], progress[1]);
+        }
+    }
+
+    @Override
+    protected void done() {
+        String result = null;
+        if (isCancelled()) {
+            logger.info("{} {} cancelled", mode, path);
+        } else {
+            try {
+                result = get();
+                logger.debug("{} {} complete", mode, path);
+            } catch (Exception e) {
+                logger.error("{} {} failed [{}]", mode, path, e.getCause() != null ? e.getCause().getMessage() : e);
+            }
+        }
+        if (callback != null) {
+            callback.onComplete(result);
+        }
+    }
+}
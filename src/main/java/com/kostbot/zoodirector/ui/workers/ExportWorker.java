@@ -0,0 +1,90 @@
+package com.kostbot.zoodirector.ui.workers;
+
+import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.List;
+
+public class ExportWorker extends SwingWorker<Integer, int[]> {
+    private static final Logger logger = LoggerFactory.getLogger(ExportWorker.class);
+
+    private final ZookeeperSync zookeeperSync;
+
+    private final Callback callback;
+    private final String path;
+    private final File file;
+    private final ZookeeperSync.ExportFormat format;
+
+    public interface Callback {
+        /**
+         * @param exported number of nodes written so far
+         * @param total    number of nodes to export
+         */
+        void onProgress(int exported, int total);
+
+        /**
+         * @param exported number of nodes exported, null if the export failed or was cancelled
+         */
+        void onComplete(Integer exported);
+    }
+
+    /**
+     * Create an ExportWorker for writing the subtree of the given path to a file. Progress and completion are
+     * reported to the callback on the EDT. Cancelling the worker interrupts the export and removes the file.
+     *
+     * @param zookeeperSync
+     * @param path
+     * @param file
+     * @param format
+     * @param callback
+     */
+    public ExportWorker(ZookeeperSync zookeeperSync, String path, File file, ZookeeperSync.ExportFormat format,
+                        Callback callback) {
+        this.zookeeperSync = zookeeperSync;
+        this.path = path;
+        this.file = file;
+        this.format = format;
+        this.callback = callback;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        logger.debug("export {} to {} requested", path, file);
+
+        return zookeeperSync.export(path, file, format, new ZookeeperSync.ExportMonitor() {
+            @Override
+            public void progress(int exported, int total) {
+                publish(new int[]{exported, total});
+            }
+        });
+    }
+
+    @Override
+    protected void process(List<int[]> chunks) {
+        if (callback != null) {
+            int[] progress = chunks.get(chunks.size() - 1);
+            callback.onProgress(progress[0], progress[1]);
+        }
+    }
+
+    @Override
+    protected void done() {
+        Integer exported = null;
+        if (isCancelled()) {
+            logger.info("export {} to {} cancelled", path, file);
+        } else {
+            try {
+                exported = get();
+            } catch (Exception e) {
+                logger.error("export {} to {} failed [{}]", path, file,
+                        e.getCause() != null ? e.getCause().getMessage() : e);
+            }
+        }
+        if (callback != null) {
+            callback.onComplete(exported);
+        }
+    }
+}
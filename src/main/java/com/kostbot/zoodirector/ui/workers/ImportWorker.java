@@ -0,0 +1,95 @@
+package com.kostbot.zoodirector.ui.workers;
+
+import com.kostbot.zoodirector.zookeepersync.JsonLinesFile;
+import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.List;
+
+public class ImportWorker extends SwingWorker<Integer, int[]> {
+    private static final Logger logger = LoggerFactory.getLogger(ImportWorker.class);
+
+    private final ZookeeperSync zookeeperSync;
+
+    private final Callback callback;
+    private final File file;
+    private final String path;
+
+    public interface Callback {
+        /**
+         * @param done  number of nodes created or found to exist so far
+         * @param total number of nodes to create
+         */
+        void onProgress(int done, int total);
+
+        /**
+         * @param created number of nodes created, null if the import failed or was cancelled
+         */
+        void onComplete(Integer created);
+    }
+
+    /**
+     * Create an ImportWorker for creating the nodes of a JSON lines file under the given path. Progress and
+     * completion are reported to the callback on the EDT. Cancelling the worker interrupts the import, nodes already
+     * created stay created.
+     *
+     * @param zookeeperSync
+     * @param file
+     * @param path
+     * @param callback
+     */
+    public ImportWorker(ZookeeperSync zookeeperSync, File file, String path, Callback callback) {
+        this.zookeeperSync = zookeeperSync;
+        this.file = file;
+        this.path = path;
+        this.callback = callback;
+    }
+
+    @Override
+    protected Integer doInBackground() throws Exception {
+        logger.debug("import {} to {} requested", file, path);
+
+        JsonLinesFile.Reader reader = new JsonLinesFile.Reader(file, path);
+        try {
+            return zookeeperSync.createAll(reader, ZookeeperSync.DEFAULT_CREATE_BATCH_SIZE,
+                    new ZookeeperSync.CreateMonitor() {
+                        @Override
+                        public void progress(int created, int existing, int total) {
+                            publish(new int[]{created + existing, total});
+                        }
+                    });
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    protected void process(List<int[]> chunks) {
+        if (callback != null) {
+            int[] progress = chunks.get(chunks.size() - 1);
+            callback.onProgress(progress[0], progress[1]);
+        }
+    }
+
+    @Override
+    protected void done() {
+        Integer created = null;
+        if (isCancelled()) {
+            logger.info("import {} to {} cancelled", file, path);
+        } else {
+            try {
+                created = get();
+                logger.info("import {} to {} complete: {} nodes created", file, path, created);
+            } catch (Exception e) {
+                logger.error("import {} to {} failed [{}]", file, path,
+                        e.getCause() != null ? e.getCause().getMessage() : e);
+            }
+        }
+        if (callback != null) {
+            callback.onComplete(created);
+        }
+    }
+}
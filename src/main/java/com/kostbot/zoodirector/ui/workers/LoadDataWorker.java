@@ -1,5 +1,6 @@
 package com.kostbot.zoodirector.ui.workers;
 
+import com.kostbot.zoodirector.zookeepersync.NodeData;
 import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
@@ -48,8 +49,11 @@ public class LoadDataWorker extends SwingWorker<Void, Void> {
         logger.debug("load {} requested", path);
 
         try {
-            stat = zookeeperSync.getStat(path);
-            data = zookeeperSync.getData(path);
+            NodeData nodeData = zookeeperSync.getNodeData(path);
+            if (nodeData != null) {
+                stat = nodeData.stat;
+                data = nodeData.data;
+            }
         } catch (Exception e) {
             logger.error("load {} failed [{}]", path, e.getMessage());
             stat = null;
@@ -1,5 +1,6 @@
 package com.kostbot.zoodirector.ui.workers;
 
+import com.kostbot.zoodirector.zookeepersync.NodeData;
 import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,7 +16,7 @@ public class SaveDataWorker extends SwingWorker<Void, Void> {
     private final byte[] data;
     private final Callback callback;
 
-    private boolean success;
+    private NodeData saved;
 
     /**
      * Create a SaveDataWorker for saving data to zookeeper. On completion callback.execute() is called on the EDT. If
@@ -35,7 +36,11 @@ public class SaveDataWorker extends SwingWorker<Void, Void> {
     }
 
     public interface Callback {
-        void onComplete(String path);
+        /**
+         * @param path
+         * @param saved saved data with the Stat returned by the update, no need to read the node back
+         */
+        void onComplete(String path, NodeData saved);
 
         void onFailure(String path);
     }
@@ -45,8 +50,7 @@ public class SaveDataWorker extends SwingWorker<Void, Void> {
         logger.debug("save {} requested", path);
 
         try {
-            zookeeperSync.setData(path, version, data);
-            success = true;
+            saved = new NodeData(path, zookeeperSync.setData(path, version, data), data);
         } catch (Exception e) {
             logger.error("save {} failed [{}]", path, e.getMessage());
         }
@@ -60,8 +64,8 @@ public class SaveDataWorker extends SwingWorker<Void, Void> {
         } else {
             logger.debug("save {} complete", path);
             if (callback != null) {
-                if (success) {
-                    callback.onComplete(path);
+                if (saved != null) {
+                    callback.onComplete(path, saved);
                 } else {
                     callback.onFailure(path);
                 }
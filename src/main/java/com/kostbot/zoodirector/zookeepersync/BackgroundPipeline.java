@@ -0,0 +1,161 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Keeps a bounded number of Curator background operations in flight. Operations submitted beyond the limit are queued
+ * and started, in submission order, as earlier operations complete. Submission never blocks so it is safe to submit
+ * follow up operations from within a completion callback.
+ */
+class BackgroundPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundPipeline.class);
+
+    /**
+     * A single background request. Implementations must issue exactly one Curator background operation using the
+     * provided callback.
+     */
+    static interface Operation {
+        void start(BackgroundCallback callback) throws Exception;
+
+        void complete(CuratorEvent event) throws Exception;
+    }
+
+    private int maxInFlight; // Need to synchronize access
+
+    private final Queue<Operation> pending; // Need to synchronize access
+
+    private int inFlight;
+    private int outstanding;
+    private long completed;
+    private volatile boolean cancelled;
+
+    BackgroundPipeline(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+        this.pending = new LinkedList<Operation>();
+    }
+
+    /**
+     * Change the in flight limit, starting queued operations if it was raised. Operations already in flight are not
+     * affected when it is lowered.
+     *
+     * @param maxInFlight
+     */
+    synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.maxInFlight = maxInFlight;
+        Operation next;
+        while (inFlight < this.maxInFlight && !cancelled && (next = pending.poll()) != null) {
+            start(next);
+        }
+    }
+
+    /**
+     * Submit an operation. It is started immediately if the in flight limit allows, otherwise queued.
+     *
+     * @param operation
+     */
+    synchronized void submit(Operation operation) {
+        if (cancelled) {
+            return;
+        }
+        outstanding++;
+        if (inFlight < maxInFlight) {
+            start(operation);
+        } else {
+            pending.add(operation);
+        }
+    }
+
+    /**
+     * Start the operation. Holding the pipeline lock while starting keeps requests on the wire in submission order.
+     */
+    private void start(final Operation operation) {
+        inFlight++;
+        try {
+            operation.start(new BackgroundCallback() {
+                @Override
+                public void processResult(CuratorFramework client, CuratorEvent event) throws Exception {
+                    try {
+                        operation.complete(event);
+                    } catch (Exception e) {
+                        logger.error("background {} {} failed [{}]", event.getType(), event.getPath(), e.getMessage());
+                    } finally {
+                        done();
+                    }
+                }
+            });
+        } catch (Exception e) {
+            logger.error("failed to start background operation [{}]", e.getMessage());
+            done();
+        }
+    }
+
+    private synchronized void done() {
+        inFlight--;
+        outstanding--;
+        completed++;
+
+        Operation next;
+        while (inFlight < maxInFlight && !cancelled && (next = pending.poll()) != null) {
+            start(next);
+        }
+
+        if (outstanding == 0 || cancelled) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drop all queued operations. Operations already in flight are allowed to complete.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        outstanding -= pending.size();
+        pending.clear();
+        notifyAll();
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    synchronized int getOutstandingCount() {
+        return outstanding;
+    }
+
+    /**
+     * Wait until all submitted operations, including those submitted by completion callbacks, have completed or the
+     * pipeline has been cancelled.
+     *
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if the pipeline is idle, false if the timeout elapsed first
+     * @throws InterruptedException
+     */
+    synchronized boolean await(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (outstanding > 0 && !cancelled) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,161 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Delivers events to a single batch listener on its own thread. A batch opens with the first event queued and is
+ * delivered once it has been open for the window or holds the maximum number of events, whichever comes first. Events
+ * not yet delivered are coalesced by path so the listener sees the net change:
+ * <ul>
+ * <li>add then delete cancel out</li>
+ * <li>delete then add become an update, the node existed before and after the batch</li>
+ * <li>updates fold into a queued add or update</li>
+ * <li>update then delete become a delete</li>
+ * </ul>
+ */
+class BatchDispatcher implements EventDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(BatchDispatcher.class);
+
+    private final ZookeeperSync.BatchListener listener;
+    private final long window;
+    private final int maxBatchSize;
+
+    // Net event for each path not yet delivered, in order. Guarded by this.
+    private final LinkedHashMap<String, ZookeeperSync.Event> batch;
+    private long opened;
+
+    private long delivered;
+    private long merged;
+    private int maxLag;
+    private boolean closed;
+
+    private final Thread thread;
+
+    BatchDispatcher(ZookeeperSync.BatchListener listener, long window, int maxBatchSize, String name) {
+        if (window < 0) {
+            throw new IllegalArgumentException("window must not be negative");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.listener = listener;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.batch = new LinkedHashMap<String, ZookeeperSync.Event>();
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public ZookeeperSync.BatchListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public synchronized void offer(ZookeeperSync.Event event) {
+        if (closed) {
+            return;
+        }
+        if (batch.isEmpty()) {
+            opened = System.currentTimeMillis();
+            // Wake the dispatcher to start timing the window.
+            notifyAll();
+        }
+
+        ZookeeperSync.Event queued = batch.get(event.path);
+        if (queued == null) {
+            batch.put(event.path, event);
+        } else {
+            merged++;
+            switch (event.type) {
+                case add:
+                    // Only follows a delete.
+                    batch.put(event.path, ZookeeperSync.Event.Update(event.path));
+                    break;
+                case update:
+                    break;
+                case delete:
+                    batch.remove(event.path);
+                    if (queued.type != ZookeeperSync.Event.Type.add) {
+                        // Deletes go to the back to follow the deletes of any children.
+                        batch.put(event.path, event);
+                    } else {
+                        merged++;
+                    }
+                    break;
+            }
+        }
+
+        maxLag = Math.max(maxLag, batch.size());
+        if (batch.size() >= maxBatchSize) {
+            notifyAll();
+        }
+    }
+
+    private synchronized List<ZookeeperSync.Event> take() throws InterruptedException {
+        while (!closed) {
+            if (batch.isEmpty()) {
+                wait();
+                continue;
+            }
+            long remaining = opened + window - System.currentTimeMillis();
+            if (remaining <= 0 || batch.size() >= maxBatchSize) {
+                // Events left over from a full batch are already due and go out with the next batch.
+                List<ZookeeperSync.Event> events =
+                        new ArrayList<ZookeeperSync.Event>(Math.min(batch.size(), maxBatchSize));
+                Iterator<ZookeeperSync.Event> iterator = batch.values().iterator();
+                while (iterator.hasNext() && events.size() < maxBatchSize) {
+                    events.add(iterator.next());
+                    iterator.remove();
+                }
+                return events;
+            }
+            wait(remaining);
+        }
+        return null;
+    }
+
+    private void dispatch() {
+        try {
+            List<ZookeeperSync.Event> events;
+            while ((events = take()) != null) {
+                try {
+                    listener.process(events);
+                } catch (RuntimeException e) {
+                    logger.error("batch listener failed to process {} events [{}]", events.size(), e.getMessage());
+                }
+                synchronized (this) {
+                    delivered += events.size();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    @Override
+    public synchronized ZookeeperSync.ListenerStats getStats() {
+        return new ZookeeperSync.ListenerStats(ZookeeperSync.Backpressure.coalesce, batch.size(), maxLag, delivered, 0,
+                merged);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        batch.clear();
+        notifyAll();
+    }
+}
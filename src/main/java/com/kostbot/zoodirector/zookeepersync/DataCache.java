@@ -0,0 +1,131 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of node data, bounded by the total size of the cached data. Entries are only dropped on
+ * eviction or when invalidated by the owner, so the owner must invalidate an entry whenever its node changes.
+ * <p/>
+ * A read racing with an invalidation could otherwise cache data older than the invalidation. Readers take a
+ * generation before reading and pass it along when caching, entries read before the latest invalidation are not
+ * cached.
+ * <p/>
+ * Thread safe, all access is synchronized on the cache.
+ */
+class DataCache {
+    // Approximate heap cost of an entry besides its data and path.
+    private static final int ENTRY_OVERHEAD = 160;
+
+    private final LinkedHashMap<String, NodeData> entries;
+    private long maxBytes;
+    private long bytes;
+
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    DataCache(long maxBytes) {
+        this.entries = new LinkedHashMap<String, NodeData>(16, 0.75f, true);
+        this.maxBytes = maxBytes;
+    }
+
+    private static long weigh(NodeData nodeData) {
+        return ENTRY_OVERHEAD + nodeData.path.length() * 2 + nodeData.getDataLength();
+    }
+
+    /**
+     * @param path
+     * @return cached node data, null on a miss
+     */
+    synchronized NodeData get(String path) {
+        NodeData nodeData = entries.get(path);
+        if (nodeData == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return nodeData;
+    }
+
+    /**
+     * @return generation to pass to {@link #put(NodeData, long)} for data read after this call
+     */
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache node data unless an invalidation happened since the given generation was taken.
+     *
+     * @param nodeData
+     * @param readGeneration generation taken before the data was read
+     * @return true if cached
+     */
+    synchronized boolean put(NodeData nodeData, long readGeneration) {
+        if (readGeneration != generation) {
+            return false;
+        }
+        long weight = weigh(nodeData);
+        if (weight > maxBytes) {
+            return false;
+        }
+        NodeData previous = entries.put(nodeData.path, nodeData);
+        if (previous != null) {
+            bytes -= weigh(previous);
+        }
+        bytes += weight;
+        evict();
+        return true;
+    }
+
+    synchronized void invalidate(String path) {
+        generation++;
+        NodeData previous = entries.remove(path);
+        if (previous != null) {
+            bytes -= weigh(previous);
+        }
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+        bytes = 0;
+    }
+
+    synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, NodeData>> iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= weigh(iterator.next().getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    synchronized long getHitCount() {
+        return hits;
+    }
+
+    synchronized long getMissCount() {
+        return misses;
+    }
+
+    synchronized long getEvictionCount() {
+        return evictions;
+    }
+}
@@ -0,0 +1,25 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+/**
+ * Queues sync events for delivery to a single registered listener.
+ */
+interface EventDispatcher {
+    /**
+     * @return the registered listener events are delivered to
+     */
+    Object getListener();
+
+    /**
+     * Queue the event for delivery.
+     *
+     * @param event
+     */
+    void offer(ZookeeperSync.Event event);
+
+    ZookeeperSync.ListenerStats getStats();
+
+    /**
+     * Stop delivery, dropping any queued events.
+     */
+    void close();
+}
@@ -0,0 +1,159 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.zookeeper.data.Stat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Compact binary export of a subtree. Paths are relative to the exported root and written in walk order, each as the
+ * number of leading characters shared with the previous path followed by the UTF-8 encoded remainder:
+ * <pre>
+ * header : int magic, int version
+ * record : byte 1, short shared, short length, byte[length] suffix,
+ *          long czxid, long mzxid, long pzxid, long ctime, long mtime, int version, int cversion, int aversion,
+ *          long ephemeralOwner, int numChildren, int dataLength, byte[dataLength] data
+ * end    : byte 0, int count
+ * </pre>
+ */
+class ExportFile {
+    private static final int MAGIC = 0x5A444558; // ZDEX
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ExportFile() {
+    }
+
+    /**
+     * Receives the nodes of an export in the order they were written.
+     */
+    static interface Visitor {
+        void visit(NodeData nodeData);
+    }
+
+    /**
+     * Streams records to a file.
+     */
+    static class Writer implements TreeExport.Writer {
+        private final DataOutputStream out;
+        private String previous = "";
+        private int count;
+
+        Writer(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        @Override
+        public void write(String path, NodeData nodeData) throws IOException {
+            int shared = 0;
+            int max = Math.min(Math.min(path.length(), previous.length()), 0xFFFF);
+            while (shared < max && path.charAt(shared) == previous.charAt(shared)) {
+                shared++;
+            }
+            byte[] suffix = path.substring(shared).getBytes(UTF8);
+            if (suffix.length > 0xFFFF) {
+                throw new IOException("path too long " + path);
+            }
+            Stat stat = nodeData.stat;
+            out.writeByte(1);
+            out.writeShort(shared);
+            out.writeShort(suffix.length);
+            out.write(suffix);
+            out.writeLong(stat.getCzxid());
+            out.writeLong(stat.getMzxid());
+            out.writeLong(stat.getPzxid());
+            out.writeLong(stat.getCtime());
+            out.writeLong(stat.getMtime());
+            out.writeInt(stat.getVersion());
+            out.writeInt(stat.getCversion());
+            out.writeInt(stat.getAversion());
+            out.writeLong(stat.getEphemeralOwner());
+            out.writeInt(stat.getNumChildren());
+            out.writeInt(nodeData.getDataLength());
+            if (nodeData.data != null) {
+                out.write(nodeData.data);
+            }
+            previous = path;
+            count++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeByte(0);
+                out.writeInt(count);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Read the nodes of the given file in the order they were written, paths relative to the exported root.
+     *
+     * @param file
+     * @param visitor
+     * @return number of nodes read
+     * @throws IOException if the file is missing, unreadable or not a valid export
+     */
+    static int read(File file, Visitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not an export");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported export version " + version);
+            }
+
+            String path = "";
+            int count = 0;
+            while (in.readByte() != 0) {
+                int shared = in.readUnsignedShort();
+                byte[] suffix = new byte[in.readUnsignedShort()];
+                if (shared > path.length()) {
+                    throw new IOException("corrupt export record " + count);
+                }
+                in.readFully(suffix);
+                path = path.substring(0, shared) + new String(suffix, UTF8);
+
+                long czxid = in.readLong();
+                long mzxid = in.readLong();
+                long pzxid = in.readLong();
+                long ctime = in.readLong();
+                long mtime = in.readLong();
+                int dataVersion = in.readInt();
+                int cversion = in.readInt();
+                int aversion = in.readInt();
+                long ephemeralOwner = in.readLong();
+                int numChildren = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+
+                visitor.visit(new NodeData(path, new Stat(czxid, mzxid, ctime, mtime, dataVersion, cversion, aversion,
+                        ephemeralOwner, data.length, numChildren, pzxid), data));
+                count++;
+            }
+            if (in.readInt() != count) {
+                throw new IOException("corrupt export " + file);
+            }
+            return count;
+        } catch (EOFException e) {
+            throw new IOException("truncated export " + file);
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Nodes stored as JSON lines, one flat object per node, optionally gzip compressed:
+ * <pre>
+ * {"path":"/config/name","data":"text","mode":"PERSISTENT"}
+ * {"path":"/config/blob","dataHex":"00ff"}
+ * </pre>
+ * Data is given as text if it is valid UTF-8, otherwise as hex. The mode defaults to persistent. Paths are relative to
+ * the root of the file, "/" being the root itself. Exports add the Stat fields, which are ignored when reading, and leave
+ * out the mode so ephemeral nodes are imported as persistent ones.
+ */
+public class JsonLinesFile {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private JsonLinesFile() {
+    }
+
+    /**
+     * Reads the entries of a file one line at a time, placing them under a base path. The root entry is skipped as
+     * it is the base path itself.
+     */
+    public static class Reader implements Iterator<NodeEntry>, Closeable {
+        private final BufferedReader reader;
+        private final String basePath;
+        private NodeEntry next;
+        private int lineNumber;
+
+        /**
+         * @param file     plain or gzip compressed JSON lines file
+         * @param basePath path the root of the file is placed at
+         * @throws IOException
+         */
+        public Reader(File file, String basePath) throws IOException {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                in.mark(2);
+                boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+                in.reset();
+                if (gzip) {
+                    in = new GZIPInputStream(in);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            this.reader = new BufferedReader(new InputStreamReader(in, UTF8));
+            this.basePath = basePath;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the next line is not a valid entry
+         * @throws IllegalStateException    if the file could not be read
+         */
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                String line;
+                try {
+                    line = reader.readLine();
+                } catch (IOException e) {
+                    throw new IllegalStateException("failed to read line " + (lineNumber + 1), e);
+                }
+                if (line == null) {
+                    return false;
+                }
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                NodeEntry entry = parseEntry(line);
+                if (!"/".equals(entry.path)) {
+                    next = "/".equals(basePath) ? entry : new NodeEntry(basePath + entry.path, entry.data, entry.mode);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public NodeEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            NodeEntry entry = next;
+            next = null;
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private NodeEntry parseEntry(String line) {
+            try {
+                Map<String, Object> fields = parseObject(line);
+                Object path = fields.get("path");
+                if (!(path instanceof String) || !ZookeeperSync.isValidPath((String) path)) {
+                    throw new IllegalArgumentException("invalid path " + path);
+                }
+                byte[] data = null;
+                if (fields.get("data") instanceof String) {
+                    data = ((String) fields.get("data")).getBytes(UTF8);
+                } else if (fields.get("dataHex") instanceof String) {
+                    data = parseHex((String) fields.get("dataHex"));
+                }
+                CreateMode mode = CreateMode.PERSISTENT;
+                if (fields.get("mode") instanceof String) {
+                    mode = CreateMode.valueOf(((String) fields.get("mode")).toUpperCase());
+                }
+                return new NodeEntry((String) path, data, mode);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes nodes as gzip compressed JSON lines.
+     */
+    static class Writer implements TreeExport.Writer {
+        private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+        private final java.io.Writer writer;
+        private final StringBuilder line;
+
+        Writer(File file) throws IOException {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                writer = new OutputStreamWriter(new GZIPOutputStream(new BufferedOutputStream(out, 64 * 1024)), UTF8);
+            } catch (IOException e) {
+                out.close();
+                throw e;
+            }
+            line = new StringBuilder();
+        }
+
+        @Override
+        public void write(String path, NodeData nodeData) throws IOException {
+            Stat stat = nodeData.stat;
+            line.setLength(0);
+            line.append("{\"path\":");
+            appendString(path);
+            String text = decodeUtf8(nodeData.data);
+            if (text != null) {
+                line.append(",\"data\":");
+                appendString(text);
+            } else {
+                line.append(",\"dataHex\":\"");
+                for (byte b : nodeData.data) {
+                    line.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+                line.append('"');
+            }
+            line.append(",\"czxid\":").append(stat.getCzxid())
+                    .append(",\"mzxid\":").append(stat.getMzxid())
+                    .append(",\"pzxid\":").append(stat.getPzxid())
+                    .append(",\"ctime\":").append(stat.getCtime())
+                    .append(",\"mtime\":").append(stat.getMtime())
+                    .append(",\"version\":").append(stat.getVersion())
+                    .append(",\"cversion\":").append(stat.getCversion())
+                    .append(",\"aversion\":").append(stat.getAversion())
+                    .append(",\"ephemeralOwner\":").append(stat.getEphemeralOwner())
+                    .append(",\"dataLength\":").append(stat.getDataLength())
+                    .append(",\"numChildren\":").append(stat.getNumChildren())
+                    .append("}\n");
+            writer.write(line.toString());
+        }
+
+        private void appendString(String value) {
+            line.append('"');
+            for (int i = 0; i < value.length(); ++i) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        line.append("\\\"");
+                        break;
+                    case '\\':
+                        line.append("\\\\");
+                        break;
+                    case '\n':
+                        line.append("\\n");
+                        break;
+                    case '\r':
+                        line.append("\\r");
+                        break;
+                    case '\t':
+                        line.append("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            line.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            line.append(c);
+                        }
+                }
+            }
+            line.append('"');
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param data
+     * @return data decoded as UTF-8, null if not valid UTF-8
+     */
+    static String decodeUtf8(byte[] data) {
+        if (data == null) {
+            return "";
+        }
+        try {
+            return UTF8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(data))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            return null;
+        }
+    }
+
+    static byte[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("odd length hex data");
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; ++i) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("invalid hex data");
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * Parse a flat JSON object, values may be strings, numbers, booleans or null.
+     *
+     * @param json
+     * @return fields in order, numbers as Long or Double
+     * @throws IllegalArgumentException if not a flat JSON object
+     */
+    static Map<String, Object> parseObject(String json) {
+        Parser parser = new Parser(json);
+        Map<String, Object> fields = new LinkedHashMap<String, Object>();
+        parser.expect('{');
+        if (parser.peek() == '}') {
+            parser.expect('}');
+        } else {
+            do {
+                String name = parser.parseString();
+                parser.expect(':');
+                fields.put(name, parser.parseValue());
+            } while (parser.accept(','));
+            parser.expect('}');
+        }
+        if (parser.peek() != 0) {
+            throw new IllegalArgumentException("unexpected content after object");
+        }
+        return fields;
+    }
+
+    private static class Parser {
+        private final String json;
+        private int position;
+
+        Parser(String json) {
+            this.json = json;
+        }
+
+        char peek() {
+            while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+                position++;
+            }
+            return position < json.length() ? json.charAt(position) : 0;
+        }
+
+        boolean accept(char c) {
+            if (peek() == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!accept(c)) {
+                throw new IllegalArgumentException("expected '" + c + "' at " + position);
+            }
+        }
+
+        Object parseValue() {
+            char c = peek();
+            if (c == '"') {
+                return parseString();
+            }
+            int start = position;
+            while (position < json.length() && ",}] \t".indexOf(json.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = json.substring(start, position);
+            if ("null".equals(literal)) {
+                return null;
+            } else if ("true".equals(literal) || "false".equals(literal)) {
+                return Boolean.valueOf(literal);
+            }
+            try {
+                if (literal.indexOf('.') >= 0 || literal.indexOf('e') >= 0 || literal.indexOf('E') >= 0) {
+                    return Double.valueOf(literal);
+                }
+                return Long.valueOf(literal);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid value at " + start);
+            }
+        }
+
+        String parseString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (position < json.length()) {
+                char c = json.charAt(position++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (position >= json.length()) {
+                    break;
+                }
+                char escaped = json.charAt(position++);
+                switch (escaped) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > json.length()) {
+                            throw new IllegalArgumentException("invalid escape at " + position);
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("invalid escape at " + position);
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        sb.append(escaped);
+                }
+            }
+            throw new IllegalArgumentException("unterminated string");
+        }
+    }
+}
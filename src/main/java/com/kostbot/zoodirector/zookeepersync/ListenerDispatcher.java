@@ -0,0 +1,162 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Delivers events to a single listener on its own thread so a slow listener never holds up the sync or other
+ * listeners. Events waiting for delivery are queued according to the listener's backpressure policy.
+ */
+class ListenerDispatcher implements EventDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ListenerDispatcher.class);
+
+    private final ZookeeperSync.Listener listener;
+    private final ZookeeperSync.Backpressure backpressure;
+    private final int capacity;
+
+    // Queued events, and the queued update of each path when coalescing. Guarded by this.
+    private final ArrayDeque<ZookeeperSync.Event> queue;
+    private final Map<String, ZookeeperSync.Event> queuedUpdates;
+
+    private long delivered;
+    private long dropped;
+    private long merged;
+    private int maxLag;
+    private boolean closed;
+
+    private final Thread thread;
+
+    ListenerDispatcher(ZookeeperSync.Listener listener, ZookeeperSync.Backpressure backpressure, int capacity, String name) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.listener = listener;
+        this.backpressure = backpressure;
+        this.capacity = capacity;
+        this.queue = new ArrayDeque<ZookeeperSync.Event>();
+        this.queuedUpdates = new HashMap<String, ZookeeperSync.Event>();
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public ZookeeperSync.Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * Queue the event for delivery. Only blocks when the policy is block and the queue is full.
+     *
+     * @param event
+     */
+    @Override
+    public synchronized void offer(ZookeeperSync.Event event) {
+        if (closed) {
+            return;
+        }
+        switch (backpressure) {
+            case block:
+                while (queue.size() >= capacity && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                queue.add(event);
+                break;
+            case dropOldest:
+                if (queue.size() >= capacity) {
+                    queue.poll();
+                    dropped++;
+                }
+                queue.add(event);
+                break;
+            case coalesce:
+                coalesce(event);
+                break;
+        }
+        maxLag = Math.max(maxLag, getLag());
+        notifyAll();
+    }
+
+    /**
+     * Keep at most one queued update per path. Repeated updates collapse into the queued one, adds and deletes are
+     * queued in order so a parent is always added before its children. An update following an add or delete of its
+     * path is queued after it.
+     */
+    private void coalesce(ZookeeperSync.Event event) {
+        if (event.type == ZookeeperSync.Event.Type.update) {
+            if (queuedUpdates.containsKey(event.path)) {
+                merged++;
+                return;
+            }
+            queuedUpdates.put(event.path, event);
+        } else {
+            queuedUpdates.remove(event.path);
+        }
+        queue.add(event);
+    }
+
+    private int getLag() {
+        return queue.size();
+    }
+
+    private synchronized ZookeeperSync.Event take() throws InterruptedException {
+        while (getLag() == 0 && !closed) {
+            wait();
+        }
+        if (closed) {
+            return null;
+        }
+        ZookeeperSync.Event event = queue.poll();
+        if (queuedUpdates.get(event.path) == event) {
+            queuedUpdates.remove(event.path);
+        }
+        notifyAll();
+        return event;
+    }
+
+    private void dispatch() {
+        try {
+            ZookeeperSync.Event event;
+            while ((event = take()) != null) {
+                try {
+                    listener.process(event);
+                } catch (RuntimeException e) {
+                    logger.error("listener failed to process {} [{}]", event, e.getMessage());
+                }
+                synchronized (this) {
+                    delivered++;
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    @Override
+    public synchronized ZookeeperSync.ListenerStats getStats() {
+        return new ZookeeperSync.ListenerStats(backpressure, getLag(), maxLag, delivered, dropped, merged);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        queue.clear();
+        queuedUpdates.clear();
+        notifyAll();
+    }
+}
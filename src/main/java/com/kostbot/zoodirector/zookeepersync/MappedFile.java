@@ -0,0 +1,195 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Read only memory mapped file of any size, mapped in chunks as a single mapping is limited to 2GB. Reads are by
+ * absolute position and never move a shared position, so the file may be read from many threads.
+ * <p/>
+ * {@link Cursor} reads the big endian primitives written by jute's BinaryOutputArchive, which zookeeper uses for its
+ * snapshots and transaction logs.
+ */
+class MappedFile {
+    private static final int CHUNK_SIZE = 1 << 30;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    MappedFile(File file) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; ++i) {
+                long position = (long) i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+            }
+        } finally {
+            // Mappings stay valid once the channel is closed.
+            raf.close();
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Copy bytes starting at the given position.
+     *
+     * @param position
+     * @param bytes
+     * @param offset
+     * @param length
+     * @throws BufferUnderflowException if reading past the end of the file
+     */
+    void get(long position, byte[] bytes, int offset, int length) {
+        if (position < 0 || position + length > size) {
+            throw new BufferUnderflowException();
+        }
+        while (length > 0) {
+            ByteBuffer chunk = chunks[(int) (position / CHUNK_SIZE)].duplicate();
+            chunk.position((int) (position % CHUNK_SIZE));
+            int n = Math.min(length, chunk.remaining());
+            chunk.get(bytes, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    byte getByte(long position) {
+        if (position < 0 || position >= size) {
+            throw new BufferUnderflowException();
+        }
+        return chunks[(int) (position / CHUNK_SIZE)].get((int) (position % CHUNK_SIZE));
+    }
+
+    int getInt(long position) {
+        int offset = (int) (position % CHUNK_SIZE);
+        if (position >= 0 && position + 4 <= size && offset + 4 <= CHUNK_SIZE) {
+            return chunks[(int) (position / CHUNK_SIZE)].getInt(offset);
+        }
+        byte[] bytes = new byte[4];
+        get(position, bytes, 0, 4);
+        return ByteBuffer.wrap(bytes).getInt();
+    }
+
+    long getLong(long position) {
+        int offset = (int) (position % CHUNK_SIZE);
+        if (position >= 0 && position + 8 <= size && offset + 8 <= CHUNK_SIZE) {
+            return chunks[(int) (position / CHUNK_SIZE)].getLong(offset);
+        }
+        byte[] bytes = new byte[8];
+        get(position, bytes, 0, 8);
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+
+    Cursor cursor(long position) {
+        return new Cursor(position);
+    }
+
+    /**
+     * Sequential reader over the file. Not thread safe, each thread needs its own cursor.
+     */
+    class Cursor {
+        private long position;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        long getPosition() {
+            return position;
+        }
+
+        void setPosition(long position) {
+            this.position = position;
+        }
+
+        long remaining() {
+            return size - position;
+        }
+
+        byte readByte() {
+            return getByte(position++);
+        }
+
+        boolean readBool() {
+            return readByte() != 0;
+        }
+
+        int readInt() {
+            int value = getInt(position);
+            position += 4;
+            return value;
+        }
+
+        long readLong() {
+            long value = getLong(position);
+            position += 8;
+            return value;
+        }
+
+        /**
+         * @return string, null if written as null
+         */
+        String readString() {
+            int length = readInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = readBytes(length);
+            return new String(bytes, UTF8);
+        }
+
+        /**
+         * @return buffer, null if written as null
+         */
+        byte[] readBuffer() {
+            int length = readInt();
+            return length < 0 ? null : readBytes(length);
+        }
+
+        /**
+         * Skip a buffer without reading it.
+         *
+         * @return length of the buffer, -1 if written as null
+         */
+        int skipBuffer() {
+            int length = readInt();
+            if (length > 0) {
+                if (length > remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                position += length;
+            }
+            return length;
+        }
+
+        private byte[] readBytes(int length) {
+            if (length > remaining()) {
+                throw new BufferUnderflowException();
+            }
+            byte[] bytes = new byte[length];
+            get(position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.zookeeper.data.Stat;
+
+/**
+ * Data and Stat of a zookeeper node, read together so the Stat always describes the data.
+ */
+public class NodeData {
+    public final String path;
+    public final Stat stat;
+    public final byte[] data;
+
+    public NodeData(String path, Stat stat, byte[] data) {
+        this.path = path;
+        this.stat = stat;
+        this.data = data;
+    }
+
+    /**
+     * @return size of the data in bytes
+     */
+    public int getDataLength() {
+        return data == null ? 0 : data.length;
+    }
+}
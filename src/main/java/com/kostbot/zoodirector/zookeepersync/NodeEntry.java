@@ -0,0 +1,22 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.zookeeper.CreateMode;
+
+/**
+ * A node to be created, see {@link ZookeeperSync#createAll(java.util.Iterator, int, ZookeeperSync.CreateMonitor)}.
+ */
+public class NodeEntry {
+    public final String path;
+    public final byte[] data;
+    public final CreateMode mode;
+
+    public NodeEntry(String path, byte[] data, CreateMode mode) {
+        this.path = path;
+        this.data = data == null ? new byte[0] : data;
+        this.mode = mode == null ? CreateMode.PERSISTENT : mode;
+    }
+
+    public NodeEntry(String path, byte[] data) {
+        this(path, data, CreateMode.PERSISTENT);
+    }
+}
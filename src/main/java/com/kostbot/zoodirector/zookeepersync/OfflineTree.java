@@ -0,0 +1,548 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.data.Stat;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetACLTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read only tree of a zookeeper server's data directory, the latest snapshot with the transaction logs written since
+ * replayed on top of it, as a server does when it starts. Files are memory mapped and the snapshot is only scanned for
+ * its paths, the data and Stat of a node are read from the mapping when asked for. Only nodes changed by the logs are
+ * held in memory, so multi gigabyte snapshots can be browsed.
+ * <p/>
+ * Loading reports each node as an add event, then the replayed transactions as add, update and delete events, the same
+ * events {@link ZookeeperSync} reports for a live cluster.
+ */
+public class OfflineTree {
+    private static final Logger logger = LoggerFactory.getLogger(OfflineTree.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x5A4B534E; // ZKSN
+    private static final String SNAPSHOT_PREFIX = "snapshot.";
+    private static final long NO_OFFSET = -1L;
+
+    /**
+     * Node changed by a replayed transaction.
+     */
+    private static class ChangedNode {
+        final Stat stat;
+        byte[] data; // null while the data is unchanged from the snapshot
+
+        ChangedNode(Stat stat, byte[] data) {
+            this.stat = stat;
+            this.data = data;
+        }
+    }
+
+    private final File snapshotFile;
+    private final List<File> logFiles;
+    private final PathStore paths;
+
+    // Guarded by this. Offsets of snapshot nodes are indexed by path store node id.
+    private MappedFile snapshot;
+    private long[] offsets;
+    private final Map<String, ChangedNode> changed;
+    private final Map<Long, Set<String>> ephemerals;
+    private long lastZxid;
+
+    /**
+     * Find the files to load, the latest complete snapshot and the transaction logs which may follow it.
+     *
+     * @param dataDir zookeeper data directory, or its version-2 directory
+     * @throws IOException if the directory holds no complete snapshot
+     */
+    public OfflineTree(File dataDir) throws IOException {
+        File dir = new File(dataDir, "version-2").isDirectory() ? new File(dataDir, "version-2") : dataDir;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new IOException(dataDir + " is not a directory");
+        }
+
+        List<File> snapshots = TxnLogReader.getSortedFiles(files, SNAPSHOT_PREFIX);
+        Collections.reverse(snapshots);
+        File latest = null;
+        for (File file : snapshots) {
+            if (isCompleteSnapshot(file)) {
+                latest = file;
+                break;
+            }
+            logger.warn("skipping incomplete snapshot {}", file);
+        }
+        if (latest == null) {
+            throw new IOException("no snapshot found in " + dir);
+        }
+        snapshotFile = latest;
+
+        // Logs are named by their first zxid, the last log starting at or before the snapshot may hold later txns.
+        long snapshotZxid = TxnLogReader.getZxid(snapshotFile, SNAPSHOT_PREFIX);
+        logFiles = new ArrayList<File>();
+        for (File file : TxnLogReader.getLogFiles(files)) {
+            if (TxnLogReader.getZxid(file, TxnLogReader.LOG_PREFIX) <= snapshotZxid) {
+                logFiles.clear();
+            }
+            logFiles.add(file);
+        }
+
+        paths = new PathStore();
+        offsets = new long[0];
+        changed = new HashMap<String, ChangedNode>();
+        ephemerals = new HashMap<Long, Set<String>>();
+    }
+
+    /**
+     * A snapshot is complete if it ends with the "/" path written after the checksum.
+     *
+     * @param file
+     * @return true if the snapshot was completely written
+     * @throws IOException
+     */
+    private static boolean isCompleteSnapshot(File file) throws IOException {
+        MappedFile mappedFile = new MappedFile(file);
+        long size = mappedFile.size();
+        return size > 16 && mappedFile.getInt(0) == SNAPSHOT_MAGIC
+                && mappedFile.getInt(size - 5) == 1 && mappedFile.getByte(size - 1) == '/';
+    }
+
+    public File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * @return transaction logs replayed on top of the snapshot, oldest first
+     */
+    public List<File> getLogFiles() {
+        return Collections.unmodifiableList(logFiles);
+    }
+
+    /**
+     * Get the store of the loaded paths, updated as the tree loads.
+     *
+     * @return path store
+     */
+    public PathStore getPathStore() {
+        return paths;
+    }
+
+    /**
+     * @return zxid of the last transaction loaded
+     */
+    public synchronized long getLastZxid() {
+        return lastZxid;
+    }
+
+    /**
+     * Load the snapshot and replay the transaction logs, replacing any previously loaded tree. A transaction log ending
+     * in a partially written or corrupt transaction is replayed up to it, as zookeeper does.
+     *
+     * @param listener receives an event for each node loaded and each node changed by a transaction
+     * @return number of nodes in the tree
+     * @throws IOException          if the snapshot is not valid
+     * @throws InterruptedException if the loading thread is interrupted
+     */
+    public int load(ZookeeperSync.Listener listener) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            paths.clear();
+            changed.clear();
+            ephemerals.clear();
+            snapshot = new MappedFile(snapshotFile);
+            offsets = new long[1024];
+            lastZxid = TxnLogReader.getZxid(snapshotFile, SNAPSHOT_PREFIX);
+        }
+        try {
+            loadSnapshot(listener);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated snapshot " + snapshotFile);
+        }
+        logger.info("loaded {} nodes from {} in {}ms",
+                paths.size(), snapshotFile, System.currentTimeMillis() - start);
+
+        int replayed = 0;
+        for (File logFile : logFiles) {
+            int count = replayLog(logFile, listener);
+            if (count < 0) {
+                break;
+            }
+            replayed += count;
+        }
+        logger.info("replayed {} transactions from {} logs in {}ms, last zxid 0x{}",
+                replayed, logFiles.size(), System.currentTimeMillis() - start, Long.toHexString(getLastZxid()));
+        return paths.size();
+    }
+
+    private void loadSnapshot(ZookeeperSync.Listener listener) throws IOException, InterruptedException {
+        MappedFile.Cursor in = snapshot.cursor(0);
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException(snapshotFile + " is not a snapshot");
+        }
+        in.readInt(); // version
+        in.readLong(); // dbid
+
+        // Sessions, their ephemeral nodes are identified by the nodes' ephemeral owner.
+        for (int count = in.readInt(); count > 0; --count) {
+            in.readLong(); // session id
+            in.readInt(); // timeout
+        }
+
+        // ACL cache, nodes refer to it by id.
+        for (int count = in.readInt(); count > 0; --count) {
+            in.readLong(); // acl id
+            for (int acls = in.readInt(); acls > 0; --acls) {
+                in.readInt(); // perms
+                in.readString(); // scheme
+                in.readString(); // id
+            }
+        }
+
+        // Nodes parent first, the root as "", ending with "/".
+        String path;
+        while (!"/".equals(path = in.readString())) {
+            if (path == null) {
+                throw new IOException("corrupt snapshot " + snapshotFile);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            if (path.isEmpty()) {
+                path = "/";
+            }
+            long offset = in.getPosition();
+            in.skipBuffer(); // data
+            in.readLong(); // acl id
+            in.readLong(); // czxid
+            in.readLong(); // mzxid
+            in.readLong(); // ctime
+            in.readLong(); // mtime
+            int version = in.readInt();
+            int cversion = in.readInt();
+            in.readInt(); // aversion
+            long ephemeralOwner = in.readLong();
+            long pzxid = in.readLong();
+
+            synchronized (this) {
+                addNode(path, offset, null);
+                paths.setChildStat(path, cversion, pzxid);
+                paths.setDataStat(path, version);
+                if (ephemeralOwner != 0) {
+                    getEphemerals(ephemeralOwner).add(path);
+                }
+            }
+            listener.process(ZookeeperSync.Event.Add(path));
+        }
+    }
+
+    /**
+     * Replay the transactions of a log which follow those already loaded.
+     *
+     * @param logFile
+     * @param listener
+     * @return number of transactions replayed, -1 if the log ended in a corrupt transaction
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    private int replayLog(File logFile, ZookeeperSync.Listener listener) throws IOException, InterruptedException {
+        TxnLogReader log;
+        try {
+            log = new TxnLogReader(logFile);
+        } catch (IOException e) {
+            logger.warn("skipping {} [{}]", logFile, e.getMessage());
+            return 0;
+        }
+
+        int count = 0;
+        List<ZookeeperSync.Event> events = new ArrayList<ZookeeperSync.Event>();
+        while (log.next()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            TxnHeader header = log.getHeader();
+            if (header.getZxid() <= getLastZxid()) {
+                continue;
+            }
+            if (header.getType() == ZooDefs.OpCode.multi) {
+                for (Txn subTxn : ((MultiTxn) log.getTxn()).getTxns()) {
+                    apply(header, subTxn.getType(), TxnLogReader.readSubTxn(subTxn), events);
+                }
+            } else {
+                apply(header, header.getType(), log.getTxn(), events);
+            }
+            for (ZookeeperSync.Event event : events) {
+                listener.process(event);
+            }
+            events.clear();
+            synchronized (this) {
+                lastZxid = header.getZxid();
+            }
+            count++;
+        }
+        if (log.isCorrupt()) {
+            logger.warn("{} ends in a partially written or corrupt transaction after zxid 0x{}",
+                    logFile, Long.toHexString(getLastZxid()));
+            return -1;
+        }
+        return count;
+    }
+
+    /**
+     * Apply a transaction to the tree. Transactions already reflected in the snapshot, which was taken while
+     * transactions were being applied, fail just as they would on the server and are ignored.
+     *
+     * @param header
+     * @param type
+     * @param txn
+     * @param events receives the events of the changes made
+     */
+    private synchronized void apply(TxnHeader header, int type, Record txn, List<ZookeeperSync.Event> events) {
+        ZookeeperSync.Event event = null;
+        switch (type) {
+            case ZooDefs.OpCode.create:
+                event = applyCreate(header, (CreateTxn) txn);
+                break;
+            case ZooDefs.OpCode.delete:
+                event = applyDelete(header, ((DeleteTxn) txn).getPath());
+                break;
+            case ZooDefs.OpCode.setData:
+                SetDataTxn setData = (SetDataTxn) txn;
+                ChangedNode node = getChangedNode(setData.getPath());
+                if (node != null) {
+                    node.data = setData.getData() == null ? new byte[0] : setData.getData();
+                    node.stat.setVersion(setData.getVersion());
+                    node.stat.setMzxid(header.getZxid());
+                    node.stat.setMtime(header.getTime());
+                    paths.setDataStat(setData.getPath(), setData.getVersion());
+                    event = ZookeeperSync.Event.Update(setData.getPath());
+                }
+                break;
+            case ZooDefs.OpCode.setACL:
+                SetACLTxn setACL = (SetACLTxn) txn;
+                ChangedNode aclNode = getChangedNode(setACL.getPath());
+                if (aclNode != null) {
+                    aclNode.stat.setAversion(setACL.getVersion());
+                }
+                break;
+            case ZooDefs.OpCode.closeSession:
+                Set<String> owned = ephemerals.remove(header.getClientId());
+                if (owned != null) {
+                    for (String path : owned) {
+                        if (applyDelete(header, path) != null) {
+                            events.add(ZookeeperSync.Event.Delete(path));
+                        }
+                    }
+                }
+                break;
+        }
+        if (event != null) {
+            events.add(event);
+        }
+    }
+
+    private ZookeeperSync.Event applyCreate(TxnHeader header, CreateTxn txn) {
+        String path = txn.getPath();
+        String parent = ZookeeperSync.getParent(path);
+        ChangedNode parentNode = getChangedNode(parent);
+        if (parentNode == null) {
+            return null;
+        }
+        int parentCVersion = txn.getParentCVersion();
+        if (parentCVersion == -1) {
+            parentCVersion = parentNode.stat.getCversion() + 1;
+        }
+        if (paths.contains(path)) {
+            // Already created in the snapshot, only bring the parent's child stat up to date.
+            if (parentCVersion > parentNode.stat.getCversion()) {
+                setChildStat(parent, parentNode, parentCVersion, header.getZxid());
+            }
+            return null;
+        }
+        setChildStat(parent, parentNode, parentCVersion, header.getZxid());
+
+        long ephemeralOwner = txn.getEphemeral() ? header.getClientId() : 0;
+        byte[] data = txn.getData() == null ? new byte[0] : txn.getData();
+        Stat stat = new Stat(header.getZxid(), header.getZxid(), header.getTime(), header.getTime(), 0, 0, 0,
+                ephemeralOwner, 0, 0, header.getZxid());
+        addNode(path, NO_OFFSET, new ChangedNode(stat, data));
+        paths.setChildStat(path, 0, header.getZxid());
+        paths.setDataStat(path, 0);
+        if (ephemeralOwner != 0) {
+            getEphemerals(ephemeralOwner).add(path);
+        }
+        return ZookeeperSync.Event.Add(path);
+    }
+
+    private ZookeeperSync.Event applyDelete(TxnHeader header, String path) {
+        ChangedNode node = getChangedNode(path);
+        if (node == null) {
+            return null;
+        }
+        String parent = ZookeeperSync.getParent(path);
+        ChangedNode parentNode = getChangedNode(parent);
+        if (parentNode != null) {
+            // Deletes only move the parent's pzxid, not its cversion.
+            setChildStat(parent, parentNode, parentNode.stat.getCversion(), header.getZxid());
+        }
+        if (node.stat.getEphemeralOwner() != 0) {
+            Set<String> owned = ephemerals.get(node.stat.getEphemeralOwner());
+            if (owned != null) {
+                owned.remove(path);
+            }
+        }
+        changed.remove(path);
+        paths.remove(path);
+        return ZookeeperSync.Event.Delete(path);
+    }
+
+    private void setChildStat(String path, ChangedNode node, int cversion, long pzxid) {
+        node.stat.setCversion(cversion);
+        node.stat.setPzxid(pzxid);
+        paths.setChildStat(path, cversion, pzxid);
+    }
+
+    private Set<String> getEphemerals(long sessionId) {
+        Set<String> owned = ephemerals.get(sessionId);
+        if (owned == null) {
+            owned = new HashSet<String>();
+            ephemerals.put(sessionId, owned);
+        }
+        return owned;
+    }
+
+    /**
+     * Add a node to the path store, recording where its data is.
+     *
+     * @param path
+     * @param offset      offset of the node in the snapshot, NO_OFFSET if created by a transaction
+     * @param changedNode node created by a transaction, null if from the snapshot
+     */
+    private void addNode(String path, long offset, ChangedNode changedNode) {
+        int id;
+        synchronized (paths) {
+            paths.add(path);
+            id = paths.find(path);
+        }
+        if (id >= offsets.length) {
+            int capacity = offsets.length;
+            while (id >= capacity) {
+                capacity *= 2;
+            }
+            int previous = offsets.length;
+            offsets = Arrays.copyOf(offsets, capacity);
+            Arrays.fill(offsets, previous, capacity, NO_OFFSET);
+        }
+        // Ids of removed paths are reused.
+        offsets[id] = offset;
+        if (changedNode != null) {
+            changed.put(path, changedNode);
+        }
+    }
+
+    /**
+     * Get the node changed by transactions, reading it from the snapshot on first change.
+     *
+     * @param path
+     * @return changed node, null if the path does not exist
+     */
+    private ChangedNode getChangedNode(String path) {
+        ChangedNode node = changed.get(path);
+        if (node == null) {
+            long offset = getOffset(path);
+            if (offset == NO_OFFSET) {
+                return null;
+            }
+            node = new ChangedNode(readStat(snapshot, offset), null);
+            changed.put(path, node);
+        }
+        return node;
+    }
+
+    private long getOffset(String path) {
+        synchronized (paths) {
+            if (!paths.contains(path)) {
+                return NO_OFFSET;
+            }
+            int id = paths.find(path);
+            return id < offsets.length ? offsets[id] : NO_OFFSET;
+        }
+    }
+
+    private static Stat readStat(MappedFile snapshot, long offset) {
+        MappedFile.Cursor in = snapshot.cursor(offset);
+        int dataLength = Math.max(0, in.skipBuffer());
+        in.readLong(); // acl id
+        Stat stat = new Stat();
+        stat.setCzxid(in.readLong());
+        stat.setMzxid(in.readLong());
+        stat.setCtime(in.readLong());
+        stat.setMtime(in.readLong());
+        stat.setVersion(in.readInt());
+        stat.setCversion(in.readInt());
+        stat.setAversion(in.readInt());
+        stat.setEphemeralOwner(in.readLong());
+        stat.setPzxid(in.readLong());
+        stat.setDataLength(dataLength);
+        return stat;
+    }
+
+    /**
+     * Get the data and Stat of a loaded node.
+     *
+     * @param path
+     * @return node data, null if the node does not exist
+     */
+    public NodeData getNodeData(String path) {
+        Stat stat;
+        byte[] data;
+        long offset;
+        MappedFile mappedFile;
+        synchronized (this) {
+            ChangedNode node = changed.get(path);
+            offset = getOffset(path);
+            if (node == null && offset == NO_OFFSET) {
+                return null;
+            }
+            stat = node == null ? null : copyStat(node.stat);
+            data = node == null ? null : node.data;
+            mappedFile = snapshot;
+        }
+        if (stat == null) {
+            stat = readStat(mappedFile, offset);
+        }
+        if (data == null) {
+            data = mappedFile.cursor(offset).readBuffer();
+            if (data == null) {
+                data = new byte[0];
+            }
+        }
+        int numChildren = paths.getChildCount(path);
+        stat.setDataLength(data.length);
+        stat.setNumChildren(numChildren);
+        // Only creates are counted in the stored cversion, the server reports creates and deletes.
+        stat.setCversion(stat.getCversion() * 2 - numChildren);
+        return new NodeData(path, stat, data);
+    }
+
+    private static Stat copyStat(Stat stat) {
+        return new Stat(stat.getCzxid(), stat.getMzxid(), stat.getCtime(), stat.getMtime(), stat.getVersion(),
+                stat.getCversion(), stat.getAversion(), stat.getEphemeralOwner(), stat.getDataLength(),
+                stat.getNumChildren(), stat.getPzxid());
+    }
+}
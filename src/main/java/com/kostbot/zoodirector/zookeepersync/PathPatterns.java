@@ -0,0 +1,266 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Set of path patterns compiled for matching many paths. The literal prefixes of the patterns are held in a trie, so a
+ * single pass over a path finds the patterns it could match, and only those are run against it. Patterns without a
+ * literal prefix are run against every path.
+ * <p/>
+ * Patterns are regular expressions matched against the whole path, or globs when written as {@code glob:/a/*}. In a
+ * glob {@code *} and {@code ?} match within one path segment and {@code **} matches across segments.
+ * <p/>
+ * Immutable and thread safe, add or remove patterns by creating a new set.
+ */
+public class PathPatterns {
+    public static final String GLOB_PREFIX = "glob:";
+
+    /**
+     * A compiled pattern, counting the paths it matched.
+     */
+    public static class PathPattern {
+        private final String text;
+        private final Pattern pattern;
+        private final String prefix;
+        private final AtomicLong matchCount;
+
+        private PathPattern(String text, Pattern pattern, String prefix) {
+            this.text = text;
+            this.pattern = pattern;
+            this.prefix = prefix;
+            matchCount = new AtomicLong();
+        }
+
+        /**
+         * @return pattern as written
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return literal text every matching path starts with
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * @return number of paths matched
+         */
+        public long getMatchCount() {
+            return matchCount.get();
+        }
+
+        /**
+         * Match the path against this pattern alone, counting a match.
+         *
+         * @param path
+         * @return true if the whole path matches
+         */
+        public boolean matches(String path) {
+            if (path.startsWith(prefix) && pattern.matcher(path).matches()) {
+                matchCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Trie node of literal prefixes, keys are the next characters of the prefixes passing through.
+     */
+    private static class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private PathPattern[] patterns = new PathPattern[0];
+
+        private Node getChild(char key) {
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] == key) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrCreateChild(char key) {
+            Node child = getChild(key);
+            if (child == null) {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length + 1);
+                keys[keys.length - 1] = key;
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    private final List<PathPattern> patterns;
+    private final Node root;
+
+    public PathPatterns() {
+        this(Collections.<PathPattern>emptyList());
+    }
+
+    /**
+     * @param patterns compiled with {@link #compile(String)}
+     */
+    public PathPatterns(List<PathPattern> patterns) {
+        this.patterns = Collections.unmodifiableList(new ArrayList<PathPattern>(patterns));
+        root = new Node();
+        for (PathPattern pattern : patterns) {
+            Node node = root;
+            for (int i = 0; i < pattern.prefix.length(); ++i) {
+                node = node.getOrCreateChild(pattern.prefix.charAt(i));
+            }
+            node.patterns = Arrays.copyOf(node.patterns, node.patterns.length + 1);
+            node.patterns[node.patterns.length - 1] = pattern;
+        }
+    }
+
+    /**
+     * @return patterns in the order given
+     */
+    public List<PathPattern> getPatterns() {
+        return patterns;
+    }
+
+    public boolean isEmpty() {
+        return patterns.isEmpty();
+    }
+
+    /**
+     * Match the path against all patterns, counting a match for each one matched.
+     *
+     * @param path
+     * @return matched patterns, empty if none
+     */
+    public List<PathPattern> match(String path) {
+        List<PathPattern> matched = null;
+        Node node = root;
+        for (int i = 0; node != null; ++i) {
+            for (PathPattern pattern : node.patterns) {
+                if (pattern.pattern.matcher(path).matches()) {
+                    pattern.matchCount.incrementAndGet();
+                    if (matched == null) {
+                        matched = new ArrayList<PathPattern>(1);
+                    }
+                    matched.add(pattern);
+                }
+            }
+            node = i < path.length() ? node.getChild(path.charAt(i)) : null;
+        }
+        return matched == null ? Collections.<PathPattern>emptyList() : matched;
+    }
+
+    /**
+     * Compile a regular expression, or a glob if it starts with {@link #GLOB_PREFIX}.
+     *
+     * @param text
+     * @return compiled pattern
+     * @throws PatternSyntaxException if the pattern is invalid
+     */
+    public static PathPattern compile(String text) {
+        if (text.startsWith(GLOB_PREFIX)) {
+            String glob = text.substring(GLOB_PREFIX.length());
+            return new PathPattern(text, Pattern.compile(globToRegex(glob)), getGlobPrefix(glob));
+        }
+        return new PathPattern(text, Pattern.compile(text), getRegexPrefix(text));
+    }
+
+    private static boolean isGlobWildcard(char c) {
+        return c == '*' || c == '?';
+    }
+
+    private static String getGlobPrefix(String glob) {
+        int i = 0;
+        while (i < glob.length() && !isGlobWildcard(glob.charAt(i))) {
+            ++i;
+        }
+        return glob.substring(0, i);
+    }
+
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < glob.length(); ++i) {
+            char c = glob.charAt(i);
+            if (!isGlobWildcard(c)) {
+                continue;
+            }
+            if (i > start) {
+                regex.append(Pattern.quote(glob.substring(start, i)));
+            }
+            if (c == '?') {
+                regex.append("[^/]");
+            } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                regex.append(".*");
+                ++i;
+            } else {
+                regex.append("[^/]*");
+            }
+            start = i + 1;
+        }
+        if (start < glob.length()) {
+            regex.append(Pattern.quote(glob.substring(start)));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Get the literal text a regular expression starts with. The last literal character is left out if a quantifier
+     * follows it, and there is none if the expression has a top level alternative.
+     *
+     * @param regex
+     * @return literal prefix, empty if none
+     */
+    static String getRegexPrefix(String regex) {
+        if (hasTopLevelAlternative(regex)) {
+            return "";
+        }
+        int start = regex.startsWith("^") ? 1 : 0;
+        int i = start;
+        while (i < regex.length() && "\\^$.|?*+()[]{}".indexOf(regex.charAt(i)) < 0) {
+            ++i;
+        }
+        if (i < regex.length() && i > start && "?*{".indexOf(regex.charAt(i)) >= 0) {
+            --i;
+        }
+        return regex.substring(start, i);
+    }
+
+    private static boolean hasTopLevelAlternative(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); ++i) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                ++i;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                ++depth;
+            } else if (c == ')') {
+                --depth;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,659 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memory compact set of zookeeper paths. Path segments are interned in a reference counted dictionary and paths are
+ * stored as a parent pointer trie of int node ids held in parallel primitive arrays. Children are looked up through an
+ * open addressing hash table keyed by parent id and segment id, so a node costs a few dozen bytes no matter how deep
+ * its path is.
+ * <p/>
+ * Sequential names, such as those of lock and queue nodes, share the segment of their prefix and hold their sequence
+ * number apart, so thousands of them do not each add a name to the dictionary. Their child index key is made of the
+ * sequence number instead of the segment, a name whose sequence number is already taken among its siblings is stored
+ * as a whole.
+ * <p/>
+ * A trie node may exist without being present in the set when it is only an ancestor of present paths.
+ * <p/>
+ * Each node also records the parts of its zookeeper Stat needed to tell whether it changed since it was last synced,
+ * -1 when unknown.
+ * <p/>
+ * Thread safe, all access is synchronized on the store.
+ */
+public class PathStore {
+    public static final int ROOT = 0;
+    static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long SEQUENCE_KEY = 1L << 63;
+
+    /**
+     * Receives present paths with their recorded stat fields.
+     */
+    static interface Visitor {
+        void visit(String path, int cversion, long pzxid, int version);
+    }
+
+    // Segment dictionary
+    private final Map<String, Integer> segmentIds;
+    private String[] segments;
+    private int[] segmentRefs;
+    private int[] freeSegments;
+    private int freeSegmentCount;
+    private int segmentCount;
+
+    // Trie, indexed by node id. Free node ids are chained through nextSibling.
+    private int[] parent;
+    private int[] segment;
+    private int[] sequence; // NONE unless the segment is the prefix of a sequential name
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] prevSibling;
+    private int[] childCount;
+    private boolean[] present;
+    private int[] cversion;
+    private long[] pzxid;
+    private int[] version;
+    private int nodeCount;
+    private int freeNode;
+
+    // Child index, linear probing table of (parent id << 32 | segment id) or (SEQUENCE_KEY | parent id << 32 | sequence)
+    // -> node id
+    private long[] childKeys;
+    private int[] childValues;
+    private int childIndexSize;
+
+    private int size;
+
+    public PathStore() {
+        segmentIds = new HashMap<String, Integer>();
+        segments = new String[INITIAL_CAPACITY];
+        segmentRefs = new int[INITIAL_CAPACITY];
+        freeSegments = new int[INITIAL_CAPACITY];
+        clear();
+    }
+
+    /**
+     * Remove all paths.
+     */
+    public synchronized void clear() {
+        segmentIds.clear();
+        Arrays.fill(segments, null);
+        segmentCount = 0;
+        freeSegmentCount = 0;
+
+        parent = new int[INITIAL_CAPACITY];
+        segment = new int[INITIAL_CAPACITY];
+        sequence = new int[INITIAL_CAPACITY];
+        firstChild = new int[INITIAL_CAPACITY];
+        nextSibling = new int[INITIAL_CAPACITY];
+        prevSibling = new int[INITIAL_CAPACITY];
+        childCount = new int[INITIAL_CAPACITY];
+        present = new boolean[INITIAL_CAPACITY];
+        cversion = new int[INITIAL_CAPACITY];
+        pzxid = new long[INITIAL_CAPACITY];
+        version = new int[INITIAL_CAPACITY];
+        freeNode = NONE;
+
+        childKeys = new long[INITIAL_CAPACITY * 2];
+        childValues = new int[INITIAL_CAPACITY * 2];
+        Arrays.fill(childValues, NONE);
+        childIndexSize = 0;
+
+        // The root node always exists in the trie but is only present once added.
+        nodeCount = 1;
+        parent[ROOT] = NONE;
+        segment[ROOT] = NONE;
+        sequence[ROOT] = NONE;
+        firstChild[ROOT] = NONE;
+        nextSibling[ROOT] = NONE;
+        prevSibling[ROOT] = NONE;
+        resetStat(ROOT);
+
+        size = 0;
+    }
+
+    /**
+     * @return number of present paths
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Add the given path.
+     *
+     * @param path absolute zookeeper path
+     * @return true if the path was not already present
+     */
+    public synchronized boolean add(String path) {
+        int node = ROOT;
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = getOrCreateChild(node, path.substring(start, end));
+            start = end + 1;
+        }
+        if (present[node]) {
+            return false;
+        }
+        present[node] = true;
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove the given path. Descendants remain present.
+     *
+     * @param path absolute zookeeper path
+     * @return true if the path was present
+     */
+    public synchronized boolean remove(String path) {
+        int node = find(path);
+        if (node == NONE || !present[node]) {
+            return false;
+        }
+        present[node] = false;
+        resetStat(node);
+        size--;
+
+        // Release trie nodes no longer needed as ancestors.
+        while (node != ROOT && !present[node] && childCount[node] == 0) {
+            int p = parent[node];
+            releaseNode(node);
+            node = p;
+        }
+        return true;
+    }
+
+    /**
+     * @param path absolute zookeeper path
+     * @return true if the path is present
+     */
+    public synchronized boolean contains(String path) {
+        int node = find(path);
+        return node != NONE && present[node];
+    }
+
+    /**
+     * Get the names of the present children of the given path.
+     *
+     * @param path absolute zookeeper path
+     * @return child names in no particular order, empty if none
+     */
+    public synchronized List<String> getChildren(String path) {
+        int node = find(path);
+        if (node == NONE) {
+            return new ArrayList<String>(0);
+        }
+        List<String> children = new ArrayList<String>(childCount[node]);
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (present[child]) {
+                children.add(getName(child));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @param path absolute zookeeper path
+     * @return number of present children of the given path
+     */
+    public synchronized int getChildCount(String path) {
+        int node = find(path);
+        if (node == NONE) {
+            return 0;
+        }
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (present[child]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param path absolute zookeeper path
+     * @return true if the given path has any present children, without counting them
+     */
+    public synchronized boolean hasChildren(String path) {
+        int node = find(path);
+        if (node == NONE) {
+            return false;
+        }
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (present[child]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param path absolute zookeeper path
+     * @param name child name
+     * @return true if the named child of the given path is present
+     */
+    public synchronized boolean hasChild(String path, String name) {
+        int node = find(path);
+        if (node == NONE) {
+            return false;
+        }
+        int child = lookupChild(node, name);
+        return child != NONE && present[child];
+    }
+
+    /**
+     * Record the child version of a present path, as returned with its children listing.
+     *
+     * @param path     absolute zookeeper path
+     * @param cversion number of changes to the children of the path
+     * @param pzxid    zxid of the last change to the children of the path
+     * @return true if the path is present
+     */
+    public synchronized boolean setChildStat(String path, int cversion, long pzxid) {
+        int node = find(path);
+        if (node == NONE || !present[node]) {
+            return false;
+        }
+        this.cversion[node] = cversion;
+        this.pzxid[node] = pzxid;
+        return true;
+    }
+
+    /**
+     * Record the data version of a present path.
+     *
+     * @param path    absolute zookeeper path
+     * @param version number of changes to the data of the path
+     * @return true if the path is present
+     */
+    public synchronized boolean setDataStat(String path, int version) {
+        int node = find(path);
+        if (node == NONE || !present[node]) {
+            return false;
+        }
+        this.version[node] = version;
+        return true;
+    }
+
+    /**
+     * @param path absolute zookeeper path
+     * @return recorded child version of the path, -1 if unknown
+     */
+    public synchronized int getCversion(String path) {
+        int node = find(path);
+        return node == NONE ? -1 : cversion[node];
+    }
+
+    /**
+     * @param path absolute zookeeper path
+     * @return recorded zxid of the last change to the children of the path, -1 if unknown
+     */
+    public synchronized long getPzxid(String path) {
+        int node = find(path);
+        return node == NONE ? -1 : pzxid[node];
+    }
+
+    /**
+     * @param path absolute zookeeper path
+     * @return recorded data version of the path, -1 if unknown
+     */
+    public synchronized int getVersion(String path) {
+        int node = find(path);
+        return node == NONE ? -1 : version[node];
+    }
+
+    /**
+     * Visit all present paths in pre-order, parents before their children.
+     *
+     * @param visitor
+     */
+    synchronized void visit(Visitor visitor) {
+        if (present[ROOT]) {
+            visitor.visit("/", cversion[ROOT], pzxid[ROOT], version[ROOT]);
+        }
+        visit(ROOT, new StringBuilder(), visitor);
+    }
+
+    private void visit(int node, StringBuilder prefix, Visitor visitor) {
+        int length = prefix.length();
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            prefix.append('/').append(getName(child));
+            if (present[child]) {
+                visitor.visit(prefix.toString(), cversion[child], pzxid[child], version[child]);
+            }
+            visit(child, prefix, visitor);
+            prefix.setLength(length);
+        }
+    }
+
+    /**
+     * Get the canonical instance of the given path segment if it is in use, allowing callers holding many segment
+     * names to share the store's strings.
+     *
+     * @param name path segment
+     * @return shared instance of name, or name itself if not in use
+     */
+    public synchronized String intern(String name) {
+        Integer segmentId = segmentIds.get(name);
+        return segmentId == null ? name : segments[segmentId];
+    }
+
+    /**
+     * @return number of distinct segments in the dictionary
+     */
+    synchronized int getSegmentCount() {
+        return segmentIds.size();
+    }
+
+    /**
+     * Estimate the heap held by the store: its primitive arrays in full, and for each dictionary segment a String
+     * holding its characters as UTF-16 along with its hash map entry.
+     *
+     * @return estimated bytes held by the store
+     */
+    public synchronized long getAllocatedBytes() {
+        long bytes = parent.length * (7L * 4 + 1 + 4 + 8 + 4);
+        bytes += childKeys.length * (8L + 4);
+        bytes += segments.length * (8L + 4 + 4);
+        for (String name : segmentIds.keySet()) {
+            // String and its char array headers, map entry and boxed id.
+            bytes += 24 + 16 + 2L * name.length() + 32 + 16 + 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Get a copy of all present paths.
+     *
+     * @return set of absolute paths
+     */
+    public synchronized Set<String> toSet() {
+        Set<String> paths = new HashSet<String>(size * 2);
+        if (present[ROOT]) {
+            paths.add("/");
+        }
+        collect(ROOT, new StringBuilder(), paths);
+        return paths;
+    }
+
+    private void collect(int node, StringBuilder prefix, Set<String> paths) {
+        int length = prefix.length();
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            prefix.append('/').append(getName(child));
+            if (present[child]) {
+                paths.add(prefix.toString());
+            }
+            collect(child, prefix, paths);
+            prefix.setLength(length);
+        }
+    }
+
+    /**
+     * Find the trie node of the given path.
+     *
+     * @param path absolute zookeeper path
+     * @return node id, NONE if not in the trie
+     */
+    int find(String path) {
+        if (path == null || !path.startsWith("/")) {
+            return NONE;
+        }
+        int node = ROOT;
+        int start = 1;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            node = lookupChild(node, path.substring(start, end));
+            if (node == NONE) {
+                return NONE;
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private void resetStat(int node) {
+        cversion[node] = -1;
+        pzxid[node] = -1;
+        version[node] = -1;
+    }
+
+    /**
+     * @param node
+     * @return name of the node
+     */
+    private String getName(int node) {
+        return sequence[node] == NONE ? segments[segment[node]] :
+                SequentialNames.format(segments[segment[node]], sequence[node]);
+    }
+
+    /**
+     * @param node
+     * @param name
+     * @return id of the named child of the node, NONE if not in the trie
+     */
+    private int lookupChild(int node, String name) {
+        int sequence = SequentialNames.getSequence(name);
+        if (sequence >= 0) {
+            int child = lookupChild(sequenceKey(node, sequence));
+            if (child != NONE) {
+                String prefix = segments[segment[child]];
+                if (prefix.length() + SequentialNames.DIGITS == name.length() && name.startsWith(prefix)) {
+                    return child;
+                }
+            }
+        }
+        Integer segmentId = segmentIds.get(name);
+        return segmentId == null ? NONE : lookupChild(childKey(node, segmentId));
+    }
+
+    private int getOrCreateChild(int node, String name) {
+        int child = lookupChild(node, name);
+        if (child != NONE) {
+            return child;
+        }
+
+        child = allocateNode();
+        parent[child] = node;
+        int sequence = SequentialNames.getSequence(name);
+        if (sequence >= 0 && lookupChild(sequenceKey(node, sequence)) == NONE) {
+            segment[child] = acquireSegment(SequentialNames.getPrefix(name));
+            this.sequence[child] = sequence;
+        } else {
+            segment[child] = acquireSegment(name);
+            this.sequence[child] = NONE;
+        }
+        firstChild[child] = NONE;
+        prevSibling[child] = NONE;
+        nextSibling[child] = firstChild[node];
+        if (firstChild[node] != NONE) {
+            prevSibling[firstChild[node]] = child;
+        }
+        firstChild[node] = child;
+        childCount[node]++;
+        childCount[child] = 0;
+        present[child] = false;
+        resetStat(child);
+        insertChild(getKey(child), child);
+        return child;
+    }
+
+    private void releaseNode(int node) {
+        int p = parent[node];
+        removeChild(getKey(node));
+
+        if (prevSibling[node] != NONE) {
+            nextSibling[prevSibling[node]] = nextSibling[node];
+        } else {
+            firstChild[p] = nextSibling[node];
+        }
+        if (nextSibling[node] != NONE) {
+            prevSibling[nextSibling[node]] = prevSibling[node];
+        }
+        childCount[p]--;
+
+        releaseSegment(segment[node]);
+
+        parent[node] = NONE;
+        segment[node] = NONE;
+        sequence[node] = NONE;
+        nextSibling[node] = freeNode;
+        freeNode = node;
+    }
+
+    private int allocateNode() {
+        if (freeNode != NONE) {
+            int node = freeNode;
+            freeNode = nextSibling[node];
+            return node;
+        }
+        if (nodeCount == parent.length) {
+            int capacity = parent.length * 2;
+            parent = Arrays.copyOf(parent, capacity);
+            segment = Arrays.copyOf(segment, capacity);
+            sequence = Arrays.copyOf(sequence, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            prevSibling = Arrays.copyOf(prevSibling, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            present = Arrays.copyOf(present, capacity);
+            cversion = Arrays.copyOf(cversion, capacity);
+            pzxid = Arrays.copyOf(pzxid, capacity);
+            version = Arrays.copyOf(version, capacity);
+        }
+        return nodeCount++;
+    }
+
+    private int acquireSegment(String name) {
+        Integer segmentId = segmentIds.get(name);
+        if (segmentId != null) {
+            segmentRefs[segmentId]++;
+            return segmentId;
+        }
+        int id;
+        if (freeSegmentCount > 0) {
+            id = freeSegments[--freeSegmentCount];
+        } else {
+            if (segmentCount == segments.length) {
+                int capacity = segments.length * 2;
+                segments = Arrays.copyOf(segments, capacity);
+                segmentRefs = Arrays.copyOf(segmentRefs, capacity);
+                freeSegments = Arrays.copyOf(freeSegments, capacity);
+            }
+            id = segmentCount++;
+        }
+        segments[id] = name;
+        segmentRefs[id] = 1;
+        segmentIds.put(name, id);
+        return id;
+    }
+
+    private void releaseSegment(int id) {
+        if (--segmentRefs[id] == 0) {
+            segmentIds.remove(segments[id]);
+            segments[id] = null;
+            freeSegments[freeSegmentCount++] = id;
+        }
+    }
+
+    // Child index
+
+    private static long childKey(int node, int segmentId) {
+        return ((long) node << 32) | (segmentId & 0xFFFFFFFFL);
+    }
+
+    private static long sequenceKey(int node, int sequence) {
+        return SEQUENCE_KEY | ((long) node << 32) | (sequence & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param node
+     * @return key of the node in the child index
+     */
+    private long getKey(int node) {
+        return sequence[node] == NONE ? childKey(parent[node], segment[node]) : sequenceKey(parent[node], sequence[node]);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (childKeys.length - 1);
+    }
+
+    private int lookupChild(long key) {
+        for (int i = slot(key); childValues[i] != NONE; i = (i + 1) & (childKeys.length - 1)) {
+            if (childKeys[i] == key) {
+                return childValues[i];
+            }
+        }
+        return NONE;
+    }
+
+    private void insertChild(long key, int child) {
+        if ((childIndexSize + 1) * 2 > childKeys.length) {
+            resizeChildIndex(childKeys.length * 2);
+        }
+        int i = slot(key);
+        while (childValues[i] != NONE) {
+            i = (i + 1) & (childKeys.length - 1);
+        }
+        childKeys[i] = key;
+        childValues[i] = child;
+        childIndexSize++;
+    }
+
+    private void removeChild(long key) {
+        int mask = childKeys.length - 1;
+        int i = slot(key);
+        while (childValues[i] != NONE && childKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (childValues[i] == NONE) {
+            return;
+        }
+
+        // Backward shift deletion keeps probe sequences intact without tombstones.
+        int hole = i;
+        for (int j = (hole + 1) & mask; childValues[j] != NONE; j = (j + 1) & mask) {
+            int home = slot(childKeys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                childKeys[hole] = childKeys[j];
+                childValues[hole] = childValues[j];
+                hole = j;
+            }
+        }
+        childValues[hole] = NONE;
+        childIndexSize--;
+    }
+
+    private void resizeChildIndex(int capacity) {
+        long[] oldKeys = childKeys;
+        int[] oldValues = childValues;
+        childKeys = new long[capacity];
+        childValues = new int[capacity];
+        Arrays.fill(childValues, NONE);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldValues[i] != NONE) {
+                int j = slot(oldKeys[i]);
+                while (childValues[j] != NONE) {
+                    j = (j + 1) & (capacity - 1);
+                }
+                childKeys[j] = oldKeys[i];
+                childValues[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import java.util.Comparator;
+
+/**
+ * Names of sequential znodes, a prefix followed by the 10 digit sequence number zookeeper appends to it. Nodes created
+ * in Curator's protected mode also lead with a unique id, which is left out of the prefix their siblings are grouped
+ * by.
+ */
+public class SequentialNames {
+    public static final int DIGITS = 10;
+
+    // _c_<uuid>-
+    private static final String PROTECTED_PREFIX = "_c_";
+    private static final int PROTECTED_LENGTH = PROTECTED_PREFIX.length() + 36 + 1;
+
+    /**
+     * Orders sequential names by sequence number, which is their creation order, then by name.
+     */
+    public static final Comparator<String> ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+            int sequenceA = getSequence(a);
+            int sequenceB = getSequence(b);
+            if (sequenceA != sequenceB) {
+                return sequenceA < sequenceB ? -1 : 1;
+            }
+            return a.compareTo(b);
+        }
+    };
+
+    private SequentialNames() {
+    }
+
+    /**
+     * @param name path segment
+     * @return sequence number the name ends with, -1 if it is not sequential
+     */
+    public static int getSequence(String name) {
+        int length = name.length();
+        if (length < DIGITS) {
+            return -1;
+        }
+        long sequence = 0;
+        for (int i = length - DIGITS; i < length; ++i) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            sequence = sequence * 10 + (c - '0');
+        }
+        return sequence > Integer.MAX_VALUE ? -1 : (int) sequence;
+    }
+
+    /**
+     * @param name path segment
+     * @return true if the name ends with a sequence number
+     */
+    public static boolean isSequential(String name) {
+        return getSequence(name) >= 0;
+    }
+
+    /**
+     * @param name sequential path segment
+     * @return name without its sequence number
+     */
+    public static String getPrefix(String name) {
+        return name.substring(0, name.length() - DIGITS);
+    }
+
+    /**
+     * @param name sequential path segment
+     * @return prefix of the name without a leading Curator protection id, shared by siblings created the same way
+     */
+    public static String getRunPrefix(String name) {
+        String prefix = getPrefix(name);
+        if (prefix.startsWith(PROTECTED_PREFIX) && prefix.length() >= PROTECTED_LENGTH &&
+                prefix.charAt(PROTECTED_LENGTH - 1) == '-') {
+            return prefix.substring(PROTECTED_LENGTH);
+        }
+        return prefix;
+    }
+
+    /**
+     * @param prefix
+     * @param sequence
+     * @return prefix followed by the zero padded sequence number, as zookeeper names sequential nodes
+     */
+    public static String format(String prefix, int sequence) {
+        char[] chars = new char[prefix.length() + DIGITS];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        for (int i = chars.length - 1; i >= prefix.length(); --i) {
+            chars[i] = (char) ('0' + sequence % 10);
+            sequence /= 10;
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,174 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * File holding the paths of a {@link PathStore} with their recorded stat fields. Snapshots are read through a memory
+ * mapping, and written through a plain FileChannel so no mapping of a file is live while it is replaced.
+ * <p/>
+ * Paths are written in pre-order so that parents precede their children, each as the number of leading characters
+ * shared with the previous path followed by the UTF-8 encoded remainder:
+ * <pre>
+ * header : int magic, int version, int count
+ * record : short shared, short length, byte[length] suffix, int cversion, long pzxid, int version
+ * </pre>
+ */
+class SnapshotFile {
+    private static final int MAGIC = 0x5A445353; // ZDSS
+    private static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_FIXED_SIZE = 2 + 2 + 4 + 8 + 4;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Write all present paths of the store to the given file. The snapshot is written to a temporary file of its own
+     * first and then renamed, so an existing snapshot is never left half written and concurrent writes do not mix.
+     *
+     * @param file
+     * @param store
+     * @return number of paths written
+     * @throws IOException
+     */
+    static int write(File file, PathStore store) throws IOException {
+        File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            Writer writer = new Writer(raf.getChannel());
+            store.visit(writer);
+            writer.finish();
+            if (writer.error != null) {
+                throw writer.error;
+            }
+            raf.close();
+            if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file))) {
+                throw new IOException("failed to replace " + file);
+            }
+            return writer.count;
+        } finally {
+            raf.close();
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Read the paths of the given file, parents before their children.
+     *
+     * @param file
+     * @param visitor
+     * @return number of paths read
+     * @throws IOException if the file is missing, unreadable or not a valid snapshot
+     */
+    static int read(File file, PathStore.Visitor visitor) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("invalid snapshot size " + channel.size());
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported snapshot version " + version);
+            }
+            int count = buffer.getInt();
+
+            String path = "";
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < count; ++i) {
+                int shared = buffer.getShort() & 0xFFFF;
+                int length = buffer.getShort() & 0xFFFF;
+                if (shared > path.length()) {
+                    throw new IOException("corrupt snapshot record " + i);
+                }
+                if (length > bytes.length) {
+                    bytes = new byte[length];
+                }
+                buffer.get(bytes, 0, length);
+                path = path.substring(0, shared) + new String(bytes, 0, length, UTF8);
+                visitor.visit(path, buffer.getInt(), buffer.getLong(), buffer.getInt());
+            }
+            return count;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated snapshot " + file);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Appends records to the channel through a buffer written out whenever full.
+     */
+    private static class Writer implements PathStore.Visitor {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private String previous = "";
+        private int count;
+        private IOException error;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(0);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void visit(String path, int cversion, long pzxid, int version) {
+            if (error != null) {
+                return;
+            }
+            int shared = 0;
+            int max = Math.min(Math.min(path.length(), previous.length()), 0xFFFF);
+            while (shared < max && path.charAt(shared) == previous.charAt(shared)) {
+                shared++;
+            }
+            byte[] suffix = path.substring(shared).getBytes(UTF8);
+            try {
+                if (suffix.length > 0xFFFF) {
+                    throw new IOException("path too long " + path);
+                }
+                int size = RECORD_FIXED_SIZE + suffix.length;
+                if (buffer.remaining() < size) {
+                    flush();
+                }
+                buffer.putShort((short) shared).putShort((short) suffix.length).put(suffix)
+                        .putInt(cversion).putLong(pzxid).putInt(version);
+                previous = path;
+                count++;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        void finish() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            header.putInt(count).flip();
+            channel.write(header, 8);
+            channel.force(false);
+        }
+    }
+}
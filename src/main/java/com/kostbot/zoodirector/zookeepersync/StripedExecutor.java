@@ -0,0 +1,76 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor made up of a fixed number of single threaded lanes. Tasks are assigned a lane by the hash of their key so
+ * that all tasks for the same key run in submission order, while tasks for different keys may run in parallel.
+ */
+class StripedExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(StripedExecutor.class);
+
+    private final ThreadPoolExecutor[] lanes;
+
+    StripedExecutor(String name, int laneCount) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("lane count must be at least 1");
+        }
+        lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; ++i) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-" + i).build());
+        }
+    }
+
+    private ThreadPoolExecutor getLane(String key) {
+        return lanes[(key.hashCode() & Integer.MAX_VALUE) % lanes.length];
+    }
+
+    /**
+     * Run the task on the lane owning the given key. Tasks submitted once the executor is shut down are dropped.
+     *
+     * @param key
+     * @param task
+     */
+    void execute(final String key, final Runnable task) {
+        try {
+            getLane(key).execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        logger.error("task for {} failed [{}]", key, e.getMessage());
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("dropping task for {}, executor is shut down", key);
+        }
+    }
+
+    /**
+     * @return number of tasks waiting to run across all lanes
+     */
+    int getQueuedCount() {
+        int queued = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            queued += lane.getQueue().size();
+        }
+        return queued;
+    }
+
+    void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
+import com.netflix.curator.framework.api.transaction.CuratorTransaction;
+import com.netflix.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates many nodes, parents before children. Entries are grouped by depth and created a level at a time starting
+ * with the shallowest, each level split into multi() transactions run concurrently. A level only starts once the one
+ * above it has been created. Missing ancestors of the entries are created with empty data, those which already exist
+ * are found with pipelined background requests first.
+ * <p/>
+ * A transaction fails as a whole if any of its nodes already exists. Its nodes are then created one at a time, nodes
+ * which already exist are left as they are.
+ * <p/>
+ * Interrupting the creating thread cancels the create, transactions already committed are not undone.
+ */
+class TreeCreate {
+    private static final Logger logger = LoggerFactory.getLogger(TreeCreate.class);
+
+    private static final long CHECK_PROGRESS_INTERVAL = 1000L;
+
+    private final CuratorFramework client;
+    private final int checkConcurrency;
+    private final int createConcurrency;
+    private final int batchSize;
+    private final AtomicLong requestCount;
+    private final ZookeeperSync.CreateMonitor monitor;
+
+    TreeCreate(CuratorFramework client, int checkConcurrency, int createConcurrency, int batchSize,
+               AtomicLong requestCount, ZookeeperSync.CreateMonitor monitor) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be at least 1");
+        }
+        this.client = client;
+        this.checkConcurrency = checkConcurrency;
+        this.createConcurrency = createConcurrency;
+        this.batchSize = batchSize;
+        this.requestCount = requestCount;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Create the given entries, a later entry for the same path replaces an earlier one.
+     *
+     * @param entries
+     * @return number of nodes created, including missing ancestors
+     * @throws InterruptedException if cancelled
+     * @throws Exception            if a node could not be created
+     */
+    int create(Iterator<NodeEntry> entries) throws Exception {
+        Map<String, NodeEntry> byPath = new LinkedHashMap<String, NodeEntry>();
+        while (entries.hasNext()) {
+            NodeEntry entry = entries.next();
+            if (!ZookeeperSync.isValidPath(entry.path) || "/".equals(entry.path)) {
+                throw new IllegalArgumentException("invalid path " + entry.path);
+            }
+            byPath.put(entry.path, entry);
+        }
+
+        List<String> ancestors = new ArrayList<String>();
+        for (String path : new ArrayList<String>(byPath.keySet())) {
+            String parent = ZookeeperSync.getParent(path);
+            while (!"/".equals(parent) && !byPath.containsKey(parent)) {
+                byPath.put(parent, new NodeEntry(parent, null));
+                ancestors.add(parent);
+                parent = ZookeeperSync.getParent(parent);
+            }
+        }
+        for (String existing : getExisting(ancestors)) {
+            byPath.remove(existing);
+        }
+
+        TreeMap<Integer, List<NodeEntry>> levels = new TreeMap<Integer, List<NodeEntry>>();
+        for (NodeEntry entry : byPath.values()) {
+            int depth = getDepth(entry.path);
+            List<NodeEntry> level = levels.get(depth);
+            if (level == null) {
+                level = new ArrayList<NodeEntry>();
+                levels.put(depth, level);
+            }
+            level.add(entry);
+        }
+
+        int total = byPath.size();
+        int created = 0;
+        int existing = 0;
+        progress(created, existing, total);
+
+        ExecutorService executor = Executors.newFixedThreadPool(createConcurrency);
+        try {
+            CompletionService<int[]> completionService = new ExecutorCompletionService<int[]>(executor);
+            for (List<NodeEntry> level : levels.values()) {
+                int batches = 0;
+                for (int i = 0; i < level.size(); i += batchSize) {
+                    final List<NodeEntry> batch = level.subList(i, Math.min(level.size(), i + batchSize));
+                    completionService.submit(new Callable<int[]>() {
+                        @Override
+                        public int[] call() throws Exception {
+                            return createBatch(batch);
+                        }
+                    });
+                    batches++;
+                }
+                for (int i = 0; i < batches; ++i) {
+                    try {
+                        int[] result = completionService.take().get();
+                        created += result[0];
+                        existing += result[1];
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                    progress(created, existing, total);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return created;
+    }
+
+    private static int getDepth(String path) {
+        int depth = 0;
+        for (int i = 0; i < path.length(); ++i) {
+            if (path.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private void progress(int created, int existing, int total) {
+        if (monitor != null) {
+            monitor.progress(created, existing, total);
+        }
+    }
+
+    /**
+     * @param paths
+     * @return those of the given paths which exist
+     * @throws InterruptedException
+     */
+    private List<String> getExisting(List<String> paths) throws InterruptedException {
+        final List<String> existing = new ArrayList<String>();
+        BackgroundPipeline pipeline = new BackgroundPipeline(checkConcurrency);
+        for (final String path : paths) {
+            pipeline.submit(new BackgroundPipeline.Operation() {
+                @Override
+                public void start(BackgroundCallback callback) throws Exception {
+                    requestCount.incrementAndGet();
+                    client.checkExists().inBackground(callback).forPath(path);
+                }
+
+                @Override
+                public void complete(CuratorEvent event) {
+                    if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                        synchronized (existing) {
+                            existing.add(path);
+                        }
+                    }
+                }
+            });
+        }
+        try {
+            while (!pipeline.await(CHECK_PROGRESS_INTERVAL)) {
+                logger.debug("check {} ancestors in progress: {} done", paths.size(), pipeline.getCompletedCount());
+            }
+        } finally {
+            pipeline.cancel();
+        }
+        synchronized (existing) {
+            return existing;
+        }
+    }
+
+    /**
+     * Create the given nodes in a single transaction, falling back to creating them one at a time if the transaction
+     * fails.
+     *
+     * @param batch
+     * @return number of nodes created and number which already existed
+     * @throws Exception
+     */
+    private int[] createBatch(List<NodeEntry> batch) throws Exception {
+        CuratorTransaction transaction = client.inTransaction();
+        CuratorTransactionFinal transactionFinal = null;
+        for (NodeEntry entry : batch) {
+            transactionFinal = transaction.create().withMode(entry.mode).forPath(entry.path, entry.data).and();
+            transaction = transactionFinal;
+        }
+        try {
+            requestCount.incrementAndGet();
+            transactionFinal.commit();
+            return new int[]{batch.size(), 0};
+        } catch (KeeperException.NodeExistsException e) {
+            int created = createEach(batch);
+            return new int[]{created, batch.size() - created};
+        }
+    }
+
+    private int createEach(List<NodeEntry> batch) throws Exception {
+        logger.debug("nodes exist, creating {} nodes one at a time", batch.size());
+        int created = 0;
+        for (NodeEntry entry : batch) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            try {
+                requestCount.incrementAndGet();
+                client.create().withMode(entry.mode).forPath(entry.path, entry.data);
+                created++;
+            } catch (KeeperException.NodeExistsException e) {
+                // left as it is
+            }
+        }
+        return created;
+    }
+}
@@ -0,0 +1,247 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
+import com.netflix.curator.framework.api.transaction.CuratorTransaction;
+import com.netflix.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes a subtree leaves first. The subtree is listed with pipelined background requests, then deleted a level at a
+ * time starting with the deepest, each level split into multi() transactions run concurrently. A level only starts
+ * once the one below it is gone so no transaction deletes a parent before its children.
+ * <p/>
+ * A transaction fails as a whole if the tree changed since it was listed. Its nodes are then deleted one at a time,
+ * nodes already gone are skipped and nodes which gained children have those deleted first.
+ * <p/>
+ * The reserved {@link ZookeeperSync#ZOOKEEPER_PATH} subtree is never listed, so trimming the root deletes everything
+ * else.
+ * <p/>
+ * Interrupting the deleting thread cancels the delete, transactions already committed are not undone.
+ */
+class TreeDelete {
+    private static final Logger logger = LoggerFactory.getLogger(TreeDelete.class);
+
+    private static final int MAX_NOT_EMPTY_RETRIES = 3;
+    private static final long LIST_PROGRESS_INTERVAL = 1000L;
+
+    private final CuratorFramework client;
+    private final int listConcurrency;
+    private final int deleteConcurrency;
+    private final int batchSize;
+    private final AtomicLong requestCount;
+    private final ZookeeperSync.DeleteMonitor monitor;
+
+    TreeDelete(CuratorFramework client, int listConcurrency, int deleteConcurrency, int batchSize,
+               AtomicLong requestCount, ZookeeperSync.DeleteMonitor monitor) {
+        this.client = client;
+        this.listConcurrency = listConcurrency;
+        this.deleteConcurrency = deleteConcurrency;
+        this.batchSize = batchSize;
+        this.requestCount = requestCount;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Delete the descendants of the given path, and the path itself if includeRoot.
+     *
+     * @param path
+     * @param includeRoot
+     * @return number of nodes deleted
+     * @throws InterruptedException if cancelled
+     * @throws Exception            if a node could not be deleted
+     */
+    int delete(String path, boolean includeRoot) throws Exception {
+        List<List<String>> levels = list(path);
+        if (!includeRoot && !levels.isEmpty()) {
+            levels.get(0).clear();
+        }
+
+        int total = 0;
+        for (List<String> level : levels) {
+            total += level.size();
+        }
+        progress(0, total);
+
+        int deleted = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(deleteConcurrency);
+        try {
+            CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+            for (int depth = levels.size() - 1; depth >= 0; --depth) {
+                List<String> level = levels.get(depth);
+                int batches = 0;
+                for (int i = 0; i < level.size(); i += batchSize) {
+                    final List<String> batch = level.subList(i, Math.min(level.size(), i + batchSize));
+                    completionService.submit(new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            return deleteBatch(batch);
+                        }
+                    });
+                    batches++;
+                }
+                for (int i = 0; i < batches; ++i) {
+                    try {
+                        deleted += completionService.take().get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                    progress(deleted, total);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return deleted;
+    }
+
+    private void progress(int deleted, int total) {
+        if (monitor != null) {
+            monitor.progress(deleted, total);
+        }
+    }
+
+    /**
+     * List the subtree of the given path by depth.
+     *
+     * @param path
+     * @return paths of the subtree by depth relative to the given path, empty if the path does not exist
+     * @throws InterruptedException
+     */
+    private List<List<String>> list(String path) throws InterruptedException {
+        final List<List<String>> levels = new ArrayList<List<String>>();
+        final BackgroundPipeline pipeline = new BackgroundPipeline(listConcurrency);
+        listChildren(pipeline, levels, path, 0);
+        try {
+            while (!pipeline.await(LIST_PROGRESS_INTERVAL)) {
+                logger.debug("list {} in progress: {} requests", path, pipeline.getCompletedCount());
+            }
+        } finally {
+            pipeline.cancel();
+        }
+        return levels;
+    }
+
+    private void listChildren(final BackgroundPipeline pipeline, final List<List<String>> levels, final String path,
+                              final int depth) {
+        pipeline.submit(new BackgroundPipeline.Operation() {
+            @Override
+            public void start(BackgroundCallback callback) throws Exception {
+                requestCount.incrementAndGet();
+                client.getChildren().inBackground(callback).forPath(path);
+            }
+
+            @Override
+            public void complete(CuratorEvent event) {
+                KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                if (code == KeeperException.Code.NONODE) {
+                    return;
+                }
+                if (code != KeeperException.Code.OK) {
+                    logger.error("list {} failed [{}]", path, code);
+                    return;
+                }
+                synchronized (levels) {
+                    while (levels.size() <= depth) {
+                        levels.add(new ArrayList<String>());
+                    }
+                    levels.get(depth).add(path);
+                }
+                for (String child : event.getChildren()) {
+                    String childPath = ZookeeperSync.getChildPath(path, child);
+                    if (ZookeeperSync.ZOOKEEPER_PATH.equals(childPath)) {
+                        continue;
+                    }
+                    listChildren(pipeline, levels, childPath, depth + 1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Delete the given nodes in a single transaction, falling back to deleting them one at a time if the transaction
+     * fails.
+     *
+     * @param batch
+     * @return number of nodes in the batch
+     * @throws Exception
+     */
+    private int deleteBatch(List<String> batch) throws Exception {
+        CuratorTransaction transaction = client.inTransaction();
+        CuratorTransactionFinal transactionFinal = null;
+        for (String path : batch) {
+            transactionFinal = transaction.delete().forPath(path).and();
+            transaction = transactionFinal;
+        }
+        try {
+            requestCount.incrementAndGet();
+            transactionFinal.commit();
+        } catch (KeeperException.NoNodeException e) {
+            deleteEach(batch);
+        } catch (KeeperException.NotEmptyException e) {
+            deleteEach(batch);
+        } catch (KeeperException.BadArgumentsException e) {
+            deleteEach(batch);
+        }
+        return batch.size();
+    }
+
+    private void deleteEach(List<String> batch) throws Exception {
+        logger.debug("tree changed, deleting {} nodes one at a time", batch.size());
+        for (String path : batch) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            deleteNode(path);
+        }
+    }
+
+    /**
+     * Delete the given node, and any children created since it was listed.
+     *
+     * @param path
+     * @throws Exception
+     */
+    private void deleteNode(String path) throws Exception {
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                requestCount.incrementAndGet();
+                client.delete().forPath(path);
+                return;
+            } catch (KeeperException.NoNodeException e) {
+                return;
+            } catch (KeeperException.BadArgumentsException e) {
+                // Reserved by zookeeper.
+                logger.error(e.getMessage());
+                return;
+            } catch (KeeperException.NotEmptyException e) {
+                if (attempt == MAX_NOT_EMPTY_RETRIES) {
+                    throw e;
+                }
+                List<String> children;
+                try {
+                    requestCount.incrementAndGet();
+                    children = client.getChildren().forPath(path);
+                } catch (KeeperException.NoNodeException gone) {
+                    return;
+                }
+                for (String child : children) {
+                    deleteNode(ZookeeperSync.getChildPath(path, child));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
+import org.apache.zookeeper.KeeperException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the data and Stat of a subtree of the known nodes to a writer. Paths are walked depth first with siblings
+ * sorted, so parents precede their children and consecutive paths share long prefixes. Reads are pipelined and
+ * written in walk order as they complete, at most a window of reads and a bounded amount of data are held at once.
+ * <p/>
+ * Nodes deleted before they are read are left out. Interrupting the exporting thread cancels the export, a read which
+ * fails or cannot be started fails it.
+ */
+class TreeExport {
+    private static final long MAX_BUFFERED_BYTES = 16L * 1024 * 1024;
+
+    // Placeholder for nodes deleted before they were read.
+    private static final NodeData MISSING = new NodeData(null, null, null);
+
+    /**
+     * Receives the exported nodes in walk order.
+     */
+    static interface Writer extends Closeable {
+        /**
+         * @param path     path relative to the exported root, "/" for the root itself
+         * @param nodeData
+         * @throws IOException
+         */
+        void write(String path, NodeData nodeData) throws IOException;
+    }
+
+    private final CuratorFramework client;
+    private final OfflineTree offlineTree;
+    private final PathStore nodes;
+    private final int concurrency;
+    private final AtomicLong requestCount;
+    private final ZookeeperSync.ExportMonitor monitor;
+
+    // Read results by sequence number until written, guarded by this.
+    private final Map<Long, NodeData> ready;
+    private long submitted;
+    private long written;
+    private long bufferedBytes;
+    private Exception error;
+
+    /**
+     * @param client       client to read through, null if reading from offlineTree
+     * @param offlineTree  tree to read from, null if reading through client
+     * @param nodes
+     * @param concurrency
+     * @param requestCount
+     * @param monitor
+     */
+    TreeExport(CuratorFramework client, OfflineTree offlineTree, PathStore nodes, int concurrency,
+               AtomicLong requestCount, ZookeeperSync.ExportMonitor monitor) {
+        this.client = client;
+        this.offlineTree = offlineTree;
+        this.nodes = nodes;
+        this.concurrency = concurrency;
+        this.requestCount = requestCount;
+        this.monitor = monitor;
+        this.ready = new HashMap<Long, NodeData>();
+    }
+
+    /**
+     * Export the given path and its known descendants.
+     *
+     * @param root
+     * @param writer
+     * @return number of nodes written
+     * @throws InterruptedException if cancelled
+     * @throws Exception            if a node could not be read or written
+     */
+    int export(String root, Writer writer) throws Exception {
+        int total = count(root);
+        int exported = 0;
+        progress(exported, total);
+
+        BackgroundPipeline pipeline = new BackgroundPipeline(concurrency);
+        try {
+            Deque<Iterator<String>> stack = new ArrayDeque<Iterator<String>>();
+            Deque<String> parents = new ArrayDeque<String>();
+            String path = root;
+            while (path != null) {
+                exported += flush(writer, root, concurrency * 2);
+                progress(exported, total);
+                read(pipeline, path);
+
+                stack.push(getSortedChildren(path).iterator());
+                parents.push(path);
+                path = null;
+                while (path == null && !stack.isEmpty()) {
+                    if (stack.peek().hasNext()) {
+                        path = ZookeeperSync.getChildPath(parents.peek(), stack.peek().next());
+                    } else {
+                        stack.pop();
+                        parents.pop();
+                    }
+                }
+            }
+            exported += flush(writer, root, 0);
+            progress(exported, total);
+        } finally {
+            pipeline.cancel();
+        }
+        return exported;
+    }
+
+    private void progress(int exported, int total) {
+        if (monitor != null) {
+            monitor.progress(exported, total);
+        }
+    }
+
+    private List<String> getSortedChildren(String path) {
+        List<String> children = nodes.getChildren(path);
+        Collections.sort(children);
+        return children;
+    }
+
+    /**
+     * @param root
+     * @return number of known nodes in the subtree of the given path
+     */
+    private int count(String root) {
+        if (!nodes.contains(root)) {
+            return 0;
+        }
+        int count = 0;
+        Deque<String> pending = new ArrayDeque<String>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            String path = pending.pop();
+            count++;
+            for (String child : nodes.getChildren(path)) {
+                pending.push(ZookeeperSync.getChildPath(path, child));
+            }
+        }
+        return count;
+    }
+
+    private void read(BackgroundPipeline pipeline, final String path) {
+        final long sequence;
+        synchronized (this) {
+            sequence = submitted++;
+        }
+        if (offlineTree != null) {
+            NodeData nodeData = offlineTree.getNodeData(path);
+            synchronized (this) {
+                if (nodeData != null) {
+                    bufferedBytes += nodeData.getDataLength();
+                }
+                ready.put(sequence, nodeData == null ? MISSING : nodeData);
+            }
+            return;
+        }
+        pipeline.submit(new BackgroundPipeline.Operation() {
+            @Override
+            public void start(BackgroundCallback callback) throws Exception {
+                requestCount.incrementAndGet();
+                try {
+                    client.getData().inBackground(callback).forPath(path);
+                } catch (Exception e) {
+                    // The pipeline never completes an operation which failed to start, fail the export rather than
+                    // wait for it.
+                    fail(e);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void complete(CuratorEvent event) {
+                KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                synchronized (TreeExport.this) {
+                    if (code == KeeperException.Code.OK) {
+                        NodeData nodeData = new NodeData(path, event.getStat(), event.getData());
+                        bufferedBytes += nodeData.getDataLength();
+                        ready.put(sequence, nodeData);
+                    } else if (code == KeeperException.Code.NONODE) {
+                        ready.put(sequence, MISSING);
+                    } else if (error == null) {
+                        error = KeeperException.create(code, path);
+                    }
+                    TreeExport.this.notifyAll();
+                }
+            }
+        });
+    }
+
+    private synchronized void fail(Exception e) {
+        if (error == null) {
+            error = e;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Write completed reads in order until no more than maxPending reads and the maximum buffered data remain.
+     *
+     * @param writer
+     * @param root
+     * @param maxPending
+     * @return number of nodes written
+     * @throws Exception
+     */
+    private int flush(Writer writer, String root, long maxPending) throws Exception {
+        int count = 0;
+        List<NodeData> taken;
+        while (!(taken = take(maxPending)).isEmpty()) {
+            for (NodeData nodeData : taken) {
+                String path = root.equals(nodeData.path) ? "/"
+                        : "/".equals(root) ? nodeData.path : nodeData.path.substring(root.length());
+                writer.write(path, nodeData);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Take the completed reads which are next in order, waiting for them while over the limits.
+     *
+     * @param maxPending
+     * @return reads to write, empty once within the limits
+     * @throws Exception
+     */
+    private synchronized List<NodeData> take(long maxPending) throws Exception {
+        while (true) {
+            if (error != null) {
+                throw error;
+            }
+            List<NodeData> taken = new ArrayList<NodeData>();
+            NodeData nodeData;
+            while ((nodeData = ready.remove(written)) != null) {
+                written++;
+                bufferedBytes -= nodeData.getDataLength();
+                if (nodeData != MISSING) {
+                    taken.add(nodeData);
+                }
+            }
+            if (!taken.isEmpty() || (submitted - written <= maxPending && bufferedBytes <= MAX_BUFFERED_BYTES)) {
+                return taken;
+            }
+            wait();
+        }
+    }
+}
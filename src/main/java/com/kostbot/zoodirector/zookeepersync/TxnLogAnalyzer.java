@@ -0,0 +1,403 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.MultiTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.apache.zookeeper.txn.TxnHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates the writes of zookeeper transaction logs by path prefix and by time bucket, to find the clients driving
+ * an ensemble's write load. Logs are read sequentially from memory mappings in a single pass. Memory is bounded no
+ * matter how large the logs are: prefixes beyond the maximum are counted under {@link #OTHER_PREFIX} and the bucket
+ * size doubles whenever the buckets would exceed {@link #MAX_BUCKETS}.
+ * <p/>
+ * Bytes are the size of the log entries, the write volume the ensemble has to replicate. The operations of a multi
+ * are counted individually, each with the size of its own part of the entry. Ephemeral nodes deleted by closing
+ * sessions are not logged by path so are not counted.
+ */
+public class TxnLogAnalyzer {
+    private static final Logger logger = LoggerFactory.getLogger(TxnLogAnalyzer.class);
+
+    public static final int DEFAULT_PREFIX_DEPTH = 2;
+    public static final long DEFAULT_BUCKET_MILLIS = 60 * 1000L;
+    public static final int DEFAULT_MAX_PREFIXES = 10000;
+    public static final int MAX_BUCKETS = 10000;
+    public static final String OTHER_PREFIX = "(other)";
+
+    /**
+     * Receives the progress of an analysis.
+     */
+    public static interface ProgressMonitor {
+        /**
+         * Called from the analyzing thread as logs are read.
+         *
+         * @param read  bytes of the logs read so far
+         * @param total total size of the logs in bytes
+         */
+        public void progress(long read, long total);
+    }
+
+    /**
+     * Write counts of a prefix or time bucket.
+     */
+    public static class Counts {
+        private long creates;
+        private long sets;
+        private long deletes;
+        private long bytes;
+
+        public long getCreates() {
+            return creates;
+        }
+
+        public long getSets() {
+            return sets;
+        }
+
+        public long getDeletes() {
+            return deletes;
+        }
+
+        /**
+         * @return creates, sets and deletes
+         */
+        public long getWrites() {
+            return creates + sets + deletes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        void add(int type, long bytes) {
+            switch (type) {
+                case ZooDefs.OpCode.create:
+                    creates++;
+                    break;
+                case ZooDefs.OpCode.setData:
+                    sets++;
+                    break;
+                case ZooDefs.OpCode.delete:
+                    deletes++;
+                    break;
+            }
+            this.bytes += bytes;
+        }
+
+        void add(Counts counts) {
+            creates += counts.creates;
+            sets += counts.sets;
+            deletes += counts.deletes;
+            bytes += counts.bytes;
+        }
+    }
+
+    /**
+     * Writes under a path prefix, with the highest write rate seen in a time bucket.
+     */
+    public static class PrefixCounts extends Counts {
+        private final String prefix;
+        private long bucket = -1;
+        private long bucketWrites;
+        private double peakRate;
+
+        PrefixCounts(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * @return highest writes per second over a time bucket
+         */
+        public double getPeakRate() {
+            return peakRate;
+        }
+
+        void add(int type, long bytes, long bucket, long bucketMillis) {
+            add(type, bytes);
+            if (bucket != this.bucket) {
+                this.bucket = bucket;
+                bucketWrites = 0;
+            }
+            bucketWrites++;
+            peakRate = Math.max(peakRate, bucketWrites * 1000.0 / bucketMillis);
+        }
+    }
+
+    /**
+     * Writes within a time bucket.
+     */
+    public static class BucketCounts extends Counts {
+        private final long start;
+
+        BucketCounts(long start) {
+            this.start = start;
+        }
+
+        /**
+         * @return start of the bucket in milliseconds since the epoch
+         */
+        public long getStart() {
+            return start;
+        }
+    }
+
+    private final int prefixDepth;
+    private final int maxPrefixes;
+    private long bucketMillis;
+
+    private final Map<String, PrefixCounts> prefixes;
+    private final TreeMap<Long, BucketCounts> buckets;
+    private final Counts totals;
+    private long transactionCount;
+    private int corruptLogCount;
+
+    public TxnLogAnalyzer() {
+        this(DEFAULT_PREFIX_DEPTH, DEFAULT_BUCKET_MILLIS, DEFAULT_MAX_PREFIXES);
+    }
+
+    /**
+     * @param prefixDepth  number of leading path segments writes are grouped by
+     * @param bucketMillis initial size of a time bucket in milliseconds
+     * @param maxPrefixes  maximum number of prefixes counted separately
+     */
+    public TxnLogAnalyzer(int prefixDepth, long bucketMillis, int maxPrefixes) {
+        if (prefixDepth < 1 || bucketMillis < 1 || maxPrefixes < 1) {
+            throw new IllegalArgumentException("prefix depth, bucket size and maximum prefixes must be positive");
+        }
+        this.prefixDepth = prefixDepth;
+        this.bucketMillis = bucketMillis;
+        this.maxPrefixes = maxPrefixes;
+        prefixes = new HashMap<String, PrefixCounts>();
+        buckets = new TreeMap<Long, BucketCounts>();
+        totals = new Counts();
+    }
+
+    /**
+     * Get the transaction logs of a zookeeper data directory.
+     *
+     * @param dataDir zookeeper data directory, or its version-2 directory
+     * @return logs ordered by the zxid they start with
+     */
+    public static List<File> getLogFiles(File dataDir) {
+        File dir = new File(dataDir, "version-2").isDirectory() ? new File(dataDir, "version-2") : dataDir;
+        File[] files = dir.listFiles();
+        return files == null ? new ArrayList<File>() : TxnLogReader.getLogFiles(files);
+    }
+
+    /**
+     * Read the given logs, adding their writes to the counts.
+     *
+     * @param logFiles
+     * @param monitor  receives the progress of the analysis, may be null
+     * @return number of transactions read
+     * @throws IOException          if a transaction could not be decoded
+     * @throws InterruptedException if the analyzing thread is interrupted
+     */
+    public synchronized long analyze(List<File> logFiles, ProgressMonitor monitor)
+            throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        long total = 0;
+        for (File logFile : logFiles) {
+            total += logFile.length();
+        }
+        long done = 0;
+        long read = 0;
+        for (File logFile : logFiles) {
+            TxnLogReader log;
+            try {
+                log = new TxnLogReader(logFile);
+            } catch (IOException e) {
+                logger.warn("skipping {} [{}]", logFile, e.getMessage());
+                done += logFile.length();
+                continue;
+            }
+            while (log.next()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+                add(log.getHeader(), log.getTxn(), log.getLength());
+                read++;
+                if (monitor != null && (read & 0xFFF) == 0) {
+                    monitor.progress(done + log.getPosition(), total);
+                }
+            }
+            if (log.isCorrupt()) {
+                logger.warn("{} ends in a partially written or corrupt transaction", logFile);
+                corruptLogCount++;
+            }
+            done += log.size();
+            if (monitor != null) {
+                monitor.progress(done, total);
+            }
+        }
+        transactionCount += read;
+        logger.info("analyzed {} transactions from {} logs in {}ms",
+                read, logFiles.size(), System.currentTimeMillis() - startTime);
+        return read;
+    }
+
+    private void add(TxnHeader header, Record txn, int length) throws IOException {
+        if (header.getType() == ZooDefs.OpCode.multi) {
+            for (Txn subTxn : ((MultiTxn) txn).getTxns()) {
+                add(header, subTxn.getType(), TxnLogReader.readSubTxn(subTxn), subTxn.getData().length);
+            }
+        } else {
+            add(header, header.getType(), txn, length);
+        }
+    }
+
+    private void add(TxnHeader header, int type, Record txn, long bytes) {
+        String path;
+        switch (type) {
+            case ZooDefs.OpCode.create:
+                path = ((CreateTxn) txn).getPath();
+                break;
+            case ZooDefs.OpCode.setData:
+                path = ((SetDataTxn) txn).getPath();
+                break;
+            case ZooDefs.OpCode.delete:
+                path = ((DeleteTxn) txn).getPath();
+                break;
+            default:
+                return;
+        }
+
+        long bucket = getBucket(header.getTime());
+        getPrefixCounts(getPrefix(path)).add(type, bytes, bucket, bucketMillis);
+        BucketCounts bucketCounts = buckets.get(bucket);
+        if (bucketCounts == null) {
+            bucketCounts = new BucketCounts(bucket);
+            buckets.put(bucket, bucketCounts);
+        }
+        bucketCounts.add(type, bytes);
+        totals.add(type, bytes);
+    }
+
+    private long getBucket(long time) {
+        long bucket = time - time % bucketMillis;
+        while (buckets.size() >= MAX_BUCKETS && !buckets.containsKey(bucket)) {
+            coarsen();
+            bucket = time - time % bucketMillis;
+        }
+        return bucket;
+    }
+
+    /**
+     * Double the size of the time buckets, merging the existing buckets in pairs.
+     */
+    private void coarsen() {
+        bucketMillis *= 2;
+        Collection<BucketCounts> previous = new ArrayList<BucketCounts>(buckets.values());
+        buckets.clear();
+        for (BucketCounts counts : previous) {
+            long bucket = counts.start - counts.start % bucketMillis;
+            BucketCounts merged = buckets.get(bucket);
+            if (merged == null) {
+                merged = new BucketCounts(bucket);
+                buckets.put(bucket, merged);
+            }
+            merged.add(counts);
+        }
+        logger.debug("time buckets coarsened to {}ms", bucketMillis);
+    }
+
+    private PrefixCounts getPrefixCounts(String prefix) {
+        PrefixCounts counts = prefixes.get(prefix);
+        if (counts == null) {
+            if (prefixes.size() >= maxPrefixes) {
+                prefix = OTHER_PREFIX;
+                counts = prefixes.get(prefix);
+            }
+            if (counts == null) {
+                counts = new PrefixCounts(prefix);
+                prefixes.put(prefix, counts);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @param path
+     * @return the leading path segments of the given path, up to the prefix depth
+     */
+    String getPrefix(String path) {
+        int end = 0;
+        for (int depth = 0; depth < prefixDepth; ++depth) {
+            end = path.indexOf('/', end + 1);
+            if (end < 0) {
+                return path;
+            }
+        }
+        return path.substring(0, end);
+    }
+
+    /**
+     * Get the prefixes with the most writes.
+     *
+     * @param limit maximum number of prefixes returned
+     * @return prefixes ordered by writes, then bytes, descending
+     */
+    public synchronized List<PrefixCounts> getTopWriters(int limit) {
+        List<PrefixCounts> sorted = new ArrayList<PrefixCounts>(prefixes.values());
+        Collections.sort(sorted, new Comparator<PrefixCounts>() {
+            @Override
+            public int compare(PrefixCounts a, PrefixCounts b) {
+                if (a.getWrites() != b.getWrites()) {
+                    return a.getWrites() > b.getWrites() ? -1 : 1;
+                }
+                return a.getBytes() > b.getBytes() ? -1 : a.getBytes() == b.getBytes() ? 0 : 1;
+            }
+        });
+        return sorted.size() > limit ? new ArrayList<PrefixCounts>(sorted.subList(0, limit)) : sorted;
+    }
+
+    /**
+     * @return time buckets with writes in time order
+     */
+    public synchronized List<BucketCounts> getBuckets() {
+        return new ArrayList<BucketCounts>(buckets.values());
+    }
+
+    /**
+     * @return current size of a time bucket in milliseconds
+     */
+    public synchronized long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public synchronized Counts getTotals() {
+        return totals;
+    }
+
+    public synchronized long getTransactionCount() {
+        return transactionCount;
+    }
+
+    /**
+     * @return number of logs which ended in a partially written or corrupt transaction
+     */
+    public synchronized int getCorruptLogCount() {
+        return corruptLogCount;
+    }
+}
@@ -0,0 +1,222 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.jute.BinaryInputArchive;
+import org.apache.jute.Record;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.server.util.SerializeUtils;
+import org.apache.zookeeper.txn.CreateTxn;
+import org.apache.zookeeper.txn.DeleteTxn;
+import org.apache.zookeeper.txn.SetDataTxn;
+import org.apache.zookeeper.txn.Txn;
+import org.apache.zookeeper.txn.TxnHeader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Adler32;
+
+/**
+ * Sequential reader of a memory mapped zookeeper transaction log:
+ * <pre>
+ * header : int magic, int version, long dbid
+ * entry  : long checksum, int length, byte[length] txn, byte 0x42
+ * </pre>
+ * Logs are preallocated with zeros, a zero length marks the end. A txn is a TxnHeader followed by the record of its
+ * type.
+ */
+class TxnLogReader {
+    static final String LOG_PREFIX = "log.";
+
+    private static final int LOG_MAGIC = 0x5A4B4C47; // ZKLG
+    private static final byte END_OF_RECORD = 0x42;
+
+    private final File file;
+    private final MappedFile log;
+    private final MappedFile.Cursor in;
+    private final Adler32 checksum;
+
+    private TxnHeader header;
+    private Record txn;
+    private int length;
+    private boolean corrupt;
+
+    /**
+     * @param file
+     * @throws IOException if the file is not a transaction log
+     */
+    TxnLogReader(File file) throws IOException {
+        this.file = file;
+        log = new MappedFile(file);
+        in = log.cursor(0);
+        if (log.size() < 16 || in.readInt() != LOG_MAGIC) {
+            throw new IOException(file + " is not a transaction log");
+        }
+        in.readInt(); // version
+        in.readLong(); // dbid
+        checksum = new Adler32();
+    }
+
+    /**
+     * Get the transaction logs of a zookeeper data directory.
+     *
+     * @param files files of the directory
+     * @return logs ordered by the zxid they start with
+     */
+    static List<File> getLogFiles(File[] files) {
+        return getSortedFiles(files, LOG_PREFIX);
+    }
+
+    /**
+     * @param files
+     * @param prefix
+     * @return files named prefix followed by a hex zxid, ordered by the zxid
+     */
+    static List<File> getSortedFiles(File[] files, final String prefix) {
+        List<File> sorted = new ArrayList<File>();
+        for (File file : files) {
+            if (file.isFile() && getZxid(file, prefix) >= 0) {
+                sorted.add(file);
+            }
+        }
+        Collections.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long zxidA = getZxid(a, prefix);
+                long zxidB = getZxid(b, prefix);
+                return zxidA < zxidB ? -1 : zxidA == zxidB ? 0 : 1;
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @param file
+     * @param prefix
+     * @return zxid the file is named after, -1 if not a file of the given kind
+     */
+    static long getZxid(File file, String prefix) {
+        String name = file.getName();
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return size of the log file in bytes, including preallocated space
+     */
+    long size() {
+        return log.size();
+    }
+
+    /**
+     * @return offset of the next entry
+     */
+    long getPosition() {
+        return in.getPosition();
+    }
+
+    /**
+     * Read the next transaction.
+     *
+     * @return false at the end of the log, or at a partially written or corrupt entry, see {@link #isCorrupt()}
+     * @throws IOException if a transaction with a valid checksum cannot be decoded
+     */
+    boolean next() throws IOException {
+        header = null;
+        txn = null;
+        if (corrupt || in.remaining() < 12) {
+            return false;
+        }
+        long crc = in.readLong();
+        int entryLength = log.getInt(in.getPosition());
+        if (entryLength == 0) {
+            return false;
+        }
+        byte[] entry;
+        try {
+            entry = entryLength < 0 ? null : in.readBuffer();
+            if (entry == null || in.readByte() != END_OF_RECORD) {
+                throw new BufferUnderflowException();
+            }
+        } catch (BufferUnderflowException e) {
+            corrupt = true;
+            return false;
+        }
+        checksum.reset();
+        checksum.update(entry, 0, entry.length);
+        if (checksum.getValue() != crc) {
+            corrupt = true;
+            return false;
+        }
+
+        header = new TxnHeader();
+        txn = SerializeUtils.deserializeTxn(entry, header);
+        length = entry.length;
+        return true;
+    }
+
+    /**
+     * @return true if the log ended in a partially written or corrupt entry
+     */
+    boolean isCorrupt() {
+        return corrupt;
+    }
+
+    TxnHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * @return record of the transaction, null for transactions without one such as closeSession
+     */
+    Record getTxn() {
+        return txn;
+    }
+
+    /**
+     * @return length of the transaction's log entry
+     */
+    int getLength() {
+        return length;
+    }
+
+    /**
+     * Decode a transaction of a multi. Only the types which change nodes are decoded.
+     *
+     * @param txn
+     * @return record of the transaction, null for checks and errors
+     * @throws IOException
+     */
+    static Record readSubTxn(Txn txn) throws IOException {
+        Record record;
+        switch (txn.getType()) {
+            case ZooDefs.OpCode.create:
+                record = new CreateTxn();
+                break;
+            case ZooDefs.OpCode.delete:
+                record = new DeleteTxn();
+                break;
+            case ZooDefs.OpCode.setData:
+                record = new SetDataTxn();
+                break;
+            default:
+                return null;
+        }
+        record.deserialize(BinaryInputArchive.getArchive(new ByteArrayInputStream(txn.getData())), "txn");
+        return record;
+    }
+}
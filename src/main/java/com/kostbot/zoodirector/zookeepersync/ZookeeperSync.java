@@ -1,20 +1,32 @@
 package com.kostbot.zoodirector.zookeepersync;
 
 import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.api.BackgroundCallback;
+import com.netflix.curator.framework.api.CuratorEvent;
 import com.netflix.curator.framework.api.CuratorWatcher;
+import org.apache.zookeeper.AsyncCallback;
 import org.apache.zookeeper.CreateMode;
 import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.common.PathUtils;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class used to synchronize all node created, deleted, child changed and updated events for a Zookeeper cluster. It
@@ -24,28 +36,150 @@ import java.util.Set;
 public class ZookeeperSync {
     private static final Logger logger = LoggerFactory.getLogger(ZookeeperSync.class);
 
+    public static final int DEFAULT_CRAWL_CONCURRENCY = 200;
+    public static final int DEFAULT_SYNC_LANES = 4;
+    public static final int DEFAULT_LISTENER_CAPACITY = 100000;
+    public static final long DEFAULT_DATA_CACHE_BYTES = 16L * 1024 * 1024;
+    public static final int DEFAULT_TRANSACTION_CONCURRENCY = 4;
+    public static final int DEFAULT_DELETE_BATCH_SIZE = 100;
+    public static final int DEFAULT_CREATE_BATCH_SIZE = 100;
+
+    /**
+     * Node reserved by Zookeeper for its own use, it and its descendants cannot be deleted.
+     */
+    public static final String ZOOKEEPER_PATH = "/zookeeper";
+
+    private static final long CRAWL_PROGRESS_INTERVAL = 1000L;
+
     public static interface Listener {
         public void process(ZookeeperSync.Event e);
     }
 
+    /**
+     * Receives the progress of a subtree delete, see {@link #delete(String, DeleteMonitor)}.
+     */
+    public static interface DeleteMonitor {
+        /**
+         * Called from the deleting thread once the subtree has been listed and after every deleted batch.
+         *
+         * @param deleted number of nodes deleted so far
+         * @param total   number of nodes listed for deletion
+         */
+        public void progress(int deleted, int total);
+    }
+
+    /**
+     * Receives the progress of a bulk create, see {@link #createAll(Iterator, int, CreateMonitor)}.
+     */
+    public static interface CreateMonitor {
+        /**
+         * Called from the creating thread once the entries have been read and after every created batch.
+         *
+         * @param created  number of nodes created so far
+         * @param existing number of nodes skipped so far as they already existed
+         * @param total    number of nodes to create, including missing ancestors of the entries
+         */
+        public void progress(int created, int existing, int total);
+    }
+
+    /**
+     * Receives the progress of an export, see {@link #export(String, File, ExportFormat, ExportMonitor)}.
+     */
+    public static interface ExportMonitor {
+        /**
+         * Called from the exporting thread as nodes are written.
+         *
+         * @param exported number of nodes written so far
+         * @param total    number of known nodes in the exported subtree
+         */
+        public void progress(int exported, int total);
+    }
+
+    /**
+     * File formats of an export.
+     */
+    public static enum ExportFormat {
+        /**
+         * Gzip compressed JSON lines, which can be imported, see {@link JsonLinesFile}.
+         */
+        jsonLines,
+        /**
+         * Compact binary records with prefix compressed paths.
+         */
+        binary
+    }
+
+    /**
+     * Receives events in coalesced batches, see {@link #addBatchListener(BatchListener, long, int)}.
+     */
+    public static interface BatchListener {
+        public void process(List<ZookeeperSync.Event> events);
+    }
+
+    /**
+     * How events are queued for a listener which falls behind.
+     */
+    public static enum Backpressure {
+        /**
+         * Block event processing while the listener's queue is full.
+         */
+        block,
+        /**
+         * Discard the oldest queued event when the listener's queue is full.
+         */
+        dropOldest,
+        /**
+         * Keep at most one queued update for each path, repeated updates are merged. Adds and deletes are queued in
+         * order.
+         */
+        coalesce
+    }
+
+    /**
+     * Snapshot of a listener's delivery counters.
+     */
+    public static class ListenerStats {
+        public final Backpressure backpressure;
+        public final int lag;
+        public final int maxLag;
+        public final long delivered;
+        public final long dropped;
+        public final long coalesced;
+
+        ListenerStats(Backpressure backpressure, int lag, int maxLag, long delivered, long dropped, long coalesced) {
+            this.backpressure = backpressure;
+            this.lag = lag;
+            this.maxLag = maxLag;
+            this.delivered = delivered;
+            this.dropped = dropped;
+            this.coalesced = coalesced;
+        }
+
+        @Override
+        public String toString() {
+            return backpressure + " lag=" + lag + " maxLag=" + maxLag + " delivered=" + delivered +
+                    " dropped=" + dropped + " coalesced=" + coalesced;
+        }
+    }
+
     public static class Event {
         public final Type type;
         public final String path;
 
-        private Event(Type type, String path) {
+        public Event(Type type, String path) {
             this.type = type;
             this.path = path;
         }
 
-        private static Event Add(String path) {
+        static Event Add(String path) {
             return new Event(Type.add, path);
         }
 
-        private static Event Update(String path) {
+        static Event Update(String path) {
             return new Event(Type.update, path);
         }
 
-        private static Event Delete(String path) {
+        static Event Delete(String path) {
             return new Event(Type.delete, path);
         }
 
@@ -100,7 +234,11 @@ public class ZookeeperSync {
     }
 
     /**
-     * Simple watcher used to map Zookeeper events to only 3 node event types: creates, updates, and deletes.
+     * Simple watcher used to map Zookeeper events to only 3 node event types: creates, updates, and deletes. Runs on
+     * the Zookeeper event thread so it only hands events off to the sync executor, keyed by path to keep the handling
+     * of each path in order. Node deletion requires no round trip and is applied immediately, which also keeps the
+     * deletes of a subtree reported in the order Zookeeper delivered them. Data watches are re-registered immediately
+     * with a non-blocking asynchronous request to keep the window for missed updates as small as possible.
      */
     private class NodeWatcher implements CuratorWatcher {
         ZookeeperSync zookeeperSync;
@@ -111,14 +249,19 @@ public class ZookeeperSync {
 
         @Override
         public void process(WatchedEvent event) throws Exception {
-            String path = event.getPath();
+            final String path = event.getPath();
 
             switch (event.getType()) {
                 case NodeDeleted:
                     zookeeperSync.handleNodeDeletedEvent(path);
                     break;
                 case NodeCreated:
-                    zookeeperSync.handleNodeCreatedEvent(path);
+                    syncExecutor.execute(path, new Runnable() {
+                        @Override
+                        public void run() {
+                            zookeeperSync.handleNodeCreatedEvent(path);
+                        }
+                    });
                     break;
                 case NodeDataChanged:
                     // Note: updates are missed if they occur immediately after node creation because of the latency
@@ -126,38 +269,534 @@ public class ZookeeperSync {
                     zookeeperSync.handleNodeDataChangedEvent(path);
                     break;
                 case NodeChildrenChanged:
-                    zookeeperSync.handleNodeChildrenChangedEvent(path);
+                    syncExecutor.execute(path, new Runnable() {
+                        @Override
+                        public void run() {
+                            zookeeperSync.handleNodeChildrenChangedEvent(path);
+                        }
+                    });
                     break;
             }
         }
     }
 
-    private final List<Listener> listeners; // Need to synchronize access
+    /**
+     * Pipelined crawl of one or more subtrees. Each visited node costs two background requests, an exists check which
+     * sets the node watch and a children listing which sets the child watch. Requests for a parent are always issued
+     * before those of its children, and Zookeeper answers requests in order, so add events are still reported parent
+     * first.
+     * <p/>
+     * A reconciling crawl revisits known nodes as well, to set their watches again, and removes known nodes which no
+     * longer exist. Known children are only compared against a listing if the parent's cversion or pzxid changed.
+     * <p/>
+     * A resync crawl is for known nodes which are still watched. It only checks their stats, listing the children of
+     * parents whose cversion or pzxid changed, and only visits children which are not known. Known nodes are checked
+     * in breadth first order.
+     */
+    private static enum CrawlMode {
+        crawl, reconcile, resync
+    }
+
+    private class Crawl {
+        private final BackgroundPipeline pipeline;
+        private final CrawlMode mode;
+        private final AtomicLong discovered;
+        private final long startTime;
+        private int outstanding; // operations of this crawl not yet completed, guarded by this
+
+        Crawl(int concurrency) {
+            this(concurrency, CrawlMode.crawl);
+        }
+
+        Crawl(int concurrency, CrawlMode mode) {
+            this(new BackgroundPipeline(concurrency), mode);
+        }
+
+        /**
+         * @param pipeline pipeline to issue requests through, may be shared with other crawls
+         * @param mode
+         */
+        Crawl(BackgroundPipeline pipeline, CrawlMode mode) {
+            this.mode = mode;
+            this.pipeline = pipeline;
+            discovered = new AtomicLong();
+            startTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Submit an operation of this crawl, counted until it completes.
+         *
+         * @param operation
+         */
+        private void submit(final BackgroundPipeline.Operation operation) {
+            synchronized (this) {
+                outstanding++;
+            }
+            pipeline.submit(new BackgroundPipeline.Operation() {
+                @Override
+                public void start(BackgroundCallback callback) throws Exception {
+                    try {
+                        operation.start(callback);
+                    } catch (Exception e) {
+                        // Never completed by the pipeline.
+                        finished();
+                        throw e;
+                    }
+                }
+
+                @Override
+                public void complete(CuratorEvent event) throws Exception {
+                    try {
+                        operation.complete(event);
+                    } finally {
+                        finished();
+                    }
+                }
+            });
+        }
+
+        private synchronized void finished() {
+            if (--outstanding == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Wait for the operations of this crawl, including those submitted as it progresses, to complete. Unlike
+         * {@link #await(String)} operations of other crawls sharing the pipeline are not waited for.
+         *
+         * @throws InterruptedException
+         */
+        synchronized void awaitOwn() throws InterruptedException {
+            while (outstanding > 0 && !pipeline.isCancelled()) {
+                wait(CRAWL_PROGRESS_INTERVAL);
+            }
+        }
+
+        /**
+         * Visit the given node and all of its descendants.
+         *
+         * @param path
+         */
+        void visit(final String path) {
+            submit(new BackgroundPipeline.Operation() {
+                @Override
+                public void start(BackgroundCallback callback) throws Exception {
+                    requestCount.incrementAndGet();
+                    client.checkExists().usingWatcher(watcher).inBackground(callback).forPath(path);
+                }
+
+                @Override
+                public void complete(CuratorEvent event) {
+                    if (event.getResultCode() == KeeperException.Code.OK.intValue()) {
+                        discovered.incrementAndGet();
+                        addNode(path, event.getStat());
+                    } else if (event.getResultCode() == KeeperException.Code.NONODE.intValue()) {
+                        if (mode != CrawlMode.crawl) {
+                            removeTree(path);
+                        } else {
+                            logger.error("{} deleted before its time", path);
+                        }
+                    } else {
+                        logger.error("exists {} failed [{}]", path, KeeperException.Code.get(event.getResultCode()));
+                    }
+                }
+            });
+            visitChildren(path);
+        }
+
+        /**
+         * Visit all children of the given node which are not already known, and their descendants. Known children and
+         * their subtrees are already watched so are skipped, unless reconciling or resyncing. Children which have gone
+         * away are left to their own NodeDeleted watches, unless reconciling or resyncing.
+         *
+         * @param path
+         */
+        void visitChildren(final String path) {
+            submit(new BackgroundPipeline.Operation() {
+                @Override
+                public void start(BackgroundCallback callback) throws Exception {
+                    requestCount.incrementAndGet();
+                    client.getChildren().usingWatcher(watcher).inBackground(callback).forPath(path);
+                }
+
+                @Override
+                public void complete(CuratorEvent event) {
+                    KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                    switch (code) {
+                        case OK:
+                            Stat stat = event.getStat();
+                            if (mode != CrawlMode.crawl) {
+                                if (stat == null || hasChildrenChanged(path, stat)) {
+                                    removeMissingChildren(path, event.getChildren());
+                                }
+                                for (String child : event.getChildren()) {
+                                    String childPath = getChildPath(path, child);
+                                    if (mode == CrawlMode.resync && nodes.contains(childPath)) {
+                                        check(childPath);
+                                    } else {
+                                        visit(childPath);
+                                    }
+                                }
+                            } else {
+                                for (String child : getUnknownChildren(path, event.getChildren())) {
+                                    visit(getChildPath(path, child));
+                                }
+                            }
+                            if (stat != null) {
+                                nodes.setChildStat(path, stat.getCversion(), stat.getPzxid());
+                            }
+                            break;
+                        case NONODE:
+                            // node may have been deleted
+                            break;
+                        case NOAUTH:
+                            logger.error("Ignoring no auth: {}", path); // No stack trace.
+                            break;
+                        default:
+                            logger.error("get children {} failed [{}]", path, code);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Check a known, still watched, node and its known descendants. Its children are only listed if they changed.
+         *
+         * @param path
+         */
+        void check(final String path) {
+            submit(new BackgroundPipeline.Operation() {
+                @Override
+                public void start(BackgroundCallback callback) throws Exception {
+                    requestCount.incrementAndGet();
+                    client.checkExists().usingWatcher(watcher).inBackground(callback).forPath(path);
+                }
+
+                @Override
+                public void complete(CuratorEvent event) {
+                    KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                    switch (code) {
+                        case OK:
+                            discovered.incrementAndGet();
+                            if (hasChildrenChanged(path, event.getStat())) {
+                                visitChildren(path);
+                            } else {
+                                for (String child : nodes.getChildren(path)) {
+                                    check(getChildPath(path, child));
+                                }
+                            }
+                            break;
+                        case NONODE:
+                            removeTree(path);
+                            break;
+                        default:
+                            logger.error("exists {} failed [{}]", path, code);
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return nodes discovered per second since the crawl started
+         */
+        double getRate() {
+            long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+            return discovered.get() * 1000.0 / elapsed;
+        }
+
+        /**
+         * Wait for the crawl to finish, logging progress periodically.
+         *
+         * @param name name used when logging progress
+         * @throws InterruptedException
+         */
+        void await(String name) throws InterruptedException {
+            while (!pipeline.await(CRAWL_PROGRESS_INTERVAL)) {
+                logger.info("crawl {} in progress: {} nodes ({} nodes/s)",
+                        name, discovered.get(), String.format("%.0f", getRate()));
+            }
+            logger.info("crawl {} complete: {} nodes in {}ms ({} nodes/s)",
+                    name, discovered.get(), System.currentTimeMillis() - startTime, String.format("%.0f", getRate()));
+        }
+    }
+
+    private final List<EventDispatcher> listeners; // Copy on write, iterated without locking
 
-    private final Set<String> nodes; // Need to synchronize access
+    private final PathStore nodes; // Need to synchronize access, events are notified from the zookeeper event thread only
+    private final DataCache dataCache; // Invalidated by watch events, only holds known nodes
     private final NodeWatcher watcher;
+    private final Watcher dataWatcher;
+    private final StripedExecutor syncExecutor;
+    private final BackgroundPipeline eventPipeline; // shared by the crawls of watch events, caps their requests in flight
 
     private final CuratorFramework client;
+    private final OfflineTree offlineTree; // null unless browsing a data directory
+
+    private volatile int crawlConcurrency;
+    private volatile double lastCrawlRate;
+    private volatile long watchedSessionId; // session the known nodes are watched in
+    private final AtomicLong requestCount;
 
     public ZookeeperSync(CuratorFramework client) {
+        this(client, DEFAULT_SYNC_LANES);
+    }
+
+    /**
+     * @param client
+     * @param syncLanes number of threads used for handling watch events
+     */
+    public ZookeeperSync(CuratorFramework client, int syncLanes) {
+        this(client, null, syncLanes);
+    }
+
+    /**
+     * Read only sync of a zookeeper data directory, no cluster is needed. {@link #watch()} loads the tree, reporting
+     * the same events as for a live cluster, and reads are served from the data files. Writes throw
+     * IllegalStateException.
+     *
+     * @param offlineTree
+     */
+    public ZookeeperSync(OfflineTree offlineTree) {
+        this(null, offlineTree, DEFAULT_SYNC_LANES);
+    }
+
+    private ZookeeperSync(CuratorFramework client, OfflineTree offlineTree, int syncLanes) {
         this.client = client;
+        this.offlineTree = offlineTree;
 
         watcher = new NodeWatcher(this);
-        nodes = new HashSet<String>(100);
-        listeners = new ArrayList<Listener>();
+        dataWatcher = new Watcher() {
+            @Override
+            public void process(WatchedEvent event) {
+                try {
+                    watcher.process(event);
+                } catch (Exception e) {
+                    logger.error("watch {} {} failed [{}]", event.getType(), event.getPath(), e.getMessage());
+                }
+            }
+        };
+        syncExecutor = new StripedExecutor("zookeeper-sync", syncLanes);
+        eventPipeline = new BackgroundPipeline(DEFAULT_CRAWL_CONCURRENCY);
+        nodes = offlineTree == null ? new PathStore() : offlineTree.getPathStore();
+        dataCache = new DataCache(DEFAULT_DATA_CACHE_BYTES);
+        requestCount = new AtomicLong();
+        listeners = new CopyOnWriteArrayList<EventDispatcher>();
+        crawlConcurrency = DEFAULT_CRAWL_CONCURRENCY;
+    }
+
+    /**
+     * @return true if browsing a data directory, see {@link #ZookeeperSync(OfflineTree)}
+     */
+    public boolean isReadOnly() {
+        return offlineTree != null;
+    }
+
+    private void checkWritable() {
+        if (offlineTree != null) {
+            throw new IllegalStateException("read only, browsing " + offlineTree.getSnapshotFile().getParent());
+        }
+    }
+
+    /**
+     * Get the path of the named child of the given parent path.
+     *
+     * @param parent
+     * @param child
+     * @return child path
+     */
+    public static String getChildPath(String parent, String child) {
+        return ("/".equals(parent) ? "/" : parent + "/") + child;
+    }
+
+    /**
+     * Set the maximum number of background requests kept in flight while crawling the cluster. The crawls of watch
+     * events share a single limit, however many events arrive.
+     *
+     * @param crawlConcurrency
+     */
+    public void setCrawlConcurrency(int crawlConcurrency) {
+        if (crawlConcurrency < 1) {
+            throw new IllegalArgumentException("crawl concurrency must be at least 1");
+        }
+        this.crawlConcurrency = crawlConcurrency;
+        eventPipeline.setMaxInFlight(crawlConcurrency);
+    }
+
+    public int getCrawlConcurrency() {
+        return crawlConcurrency;
     }
 
     /**
-     * Add listener for sync events.
+     * Get the discovery rate of the last completed initial load.
+     *
+     * @return nodes discovered per second, 0 if no load has completed
+     */
+    public double getLastCrawlRate() {
+        return lastCrawlRate;
+    }
+
+    /**
+     * Add listener for sync events. Events are delivered in order on a thread dedicated to the listener, blocking event
+     * processing only if the listener falls DEFAULT_LISTENER_CAPACITY events behind.
      *
      * @param listener
      */
     public void addListener(Listener listener) {
-        synchronized (listeners) {
-            if (!listeners.contains(listener)) {
-                listeners.add(listener);
+        addListener(listener, Backpressure.block, DEFAULT_LISTENER_CAPACITY);
+    }
+
+    /**
+     * Add listener for sync events. Events are delivered in order on a thread dedicated to the listener.
+     *
+     * @param listener
+     * @param backpressure how to queue events while the listener is behind
+     * @param capacity     maximum number of queued events, ignored when coalescing
+     */
+    public synchronized void addListener(Listener listener, Backpressure backpressure, int capacity) {
+        if (getDispatcher(listener) == null) {
+            listeners.add(new ListenerDispatcher(listener, backpressure, capacity,
+                    "zookeeper-sync-listener-" + listeners.size()));
+        }
+    }
+
+    /**
+     * Add listener for batches of sync events. A batch is delivered once the window has passed since its first event or
+     * once it holds maxBatchSize events. Events for the same path within a batch are coalesced into their net change,
+     * so an add followed by a delete is never delivered. Batches are delivered in order on a thread dedicated to the
+     * listener.
+     *
+     * @param listener
+     * @param window       maximum time in milliseconds an event is held back
+     * @param maxBatchSize maximum number of events in a batch
+     */
+    public synchronized void addBatchListener(BatchListener listener, long window, int maxBatchSize) {
+        if (getDispatcher(listener) == null) {
+            listeners.add(new BatchDispatcher(listener, window, maxBatchSize,
+                    "zookeeper-sync-listener-" + listeners.size()));
+        }
+    }
+
+    /**
+     * Remove listener, dropping any events not yet delivered to it.
+     *
+     * @param listener
+     */
+    public void removeListener(Listener listener) {
+        removeDispatcher(listener);
+    }
+
+    /**
+     * Remove batch listener, dropping any events not yet delivered to it.
+     *
+     * @param listener
+     */
+    public void removeBatchListener(BatchListener listener) {
+        removeDispatcher(listener);
+    }
+
+    /**
+     * Get the delivery counters of the given listener.
+     *
+     * @param listener
+     * @return listener stats, null if not a registered listener
+     */
+    public ListenerStats getListenerStats(Listener listener) {
+        EventDispatcher dispatcher = getDispatcher(listener);
+        return dispatcher == null ? null : dispatcher.getStats();
+    }
+
+    /**
+     * Get the delivery counters of the given batch listener. Coalesced counts events merged into or cancelled by other
+     * events of the same batch.
+     *
+     * @param listener
+     * @return listener stats, null if not a registered batch listener
+     */
+    public ListenerStats getBatchListenerStats(BatchListener listener) {
+        EventDispatcher dispatcher = getDispatcher(listener);
+        return dispatcher == null ? null : dispatcher.getStats();
+    }
+
+    private synchronized void removeDispatcher(Object listener) {
+        EventDispatcher dispatcher = getDispatcher(listener);
+        if (dispatcher != null) {
+            listeners.remove(dispatcher);
+            dispatcher.close();
+        }
+    }
+
+    private EventDispatcher getDispatcher(Object listener) {
+        for (EventDispatcher dispatcher : listeners) {
+            if (dispatcher.getListener() == listener) {
+                return dispatcher;
             }
         }
+        return null;
+    }
+
+    /**
+     * Get the number of background requests issued while crawling the cluster.
+     *
+     * @return request count
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Filter a children listing down to the children not yet known for the given parent.
+     *
+     * @param parent
+     * @param listed children returned by zookeeper
+     * @return listed children that are not known nodes
+     */
+    private List<String> getUnknownChildren(String parent, List<String> listed) {
+        List<String> unknown = new ArrayList<String>();
+        synchronized (nodes) {
+            for (String child : listed) {
+                if (!nodes.hasChild(parent, child)) {
+                    unknown.add(child);
+                }
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * @param path
+     * @param stat current stat of the node
+     * @return true if the children of the node changed since it was last listed
+     */
+    private boolean hasChildrenChanged(String path, Stat stat) {
+        return stat.getCversion() != nodes.getCversion(path) || stat.getPzxid() != nodes.getPzxid(path);
+    }
+
+    /**
+     * Remove the known children of the given parent which are missing from its listing, along with their subtrees.
+     *
+     * @param parent
+     * @param listed children returned by zookeeper
+     */
+    private void removeMissingChildren(String parent, List<String> listed) {
+        Set<String> current = new HashSet<String>(listed);
+        for (String child : nodes.getChildren(parent)) {
+            if (!current.contains(child)) {
+                removeTree(getChildPath(parent, child));
+            }
+        }
+    }
+
+    /**
+     * Remove the given node and all known descendants, notifying deletes children first.
+     *
+     * @param path
+     */
+    private void removeTree(String path) {
+        for (String child : nodes.getChildren(path)) {
+            removeTree(getChildPath(path, child));
+        }
+        handleNodeDeletedEvent(path);
     }
 
     /**
@@ -166,47 +805,70 @@ public class ZookeeperSync {
      * @return a read-only copy of the node set
      */
     public Set<String> getNodes() {
-        synchronized (nodes) {
-            return Collections.unmodifiableSet(nodes);
-        }
+        return Collections.unmodifiableSet(nodes.toSet());
     }
 
     /**
-     * Handle NodeCreated event for the given path.
+     * Get the live store of all current nodes. Intended for read access, the store is updated as events occur.
+     *
+     * @return node store
+     */
+    public PathStore getPathStore() {
+        return nodes;
+    }
+
+    /**
+     * Record the given path as an existing node, notifying listeners if it is new.
      *
      * @param path
-     * @throws Exception
+     * @param stat stat of the node, may be null
      */
-    private void handleNodeCreatedEvent(String path) throws Exception {
-        try {
-            client.checkExists().usingWatcher(watcher).forPath(path);
-            synchronized (nodes) {
-                if (nodes.add(path)) {
-                    notify(Event.Add(path));
-                }
+    private void addNode(String path, Stat stat) {
+        boolean changed;
+        synchronized (nodes) {
+            changed = nodes.add(path);
+            if (stat != null) {
+                nodes.setDataStat(path, stat.getVersion());
             }
-        } catch (KeeperException.NoNodeException e) {
-            logger.error("{} deleted before its time", path);
         }
+        if (changed) {
+            notify(Event.Add(path));
+        }
+    }
 
-        handleNodeChildrenChangedEvent(path);
+    /**
+     * Handle NodeCreated event for the given path.
+     *
+     * @param path
+     */
+    private void handleNodeCreatedEvent(String path) {
+        Crawl crawl = new Crawl(eventPipeline, CrawlMode.crawl);
+        crawl.visit(path);
+        awaitEventCrawl(crawl);
     }
 
     /**
      * Handle NodeChildrenChanged event for the given path.
      *
      * @param path
-     * @throws Exception
      */
-    private void handleNodeChildrenChangedEvent(String path) throws Exception {
+    private void handleNodeChildrenChangedEvent(String path) {
+        Crawl crawl = new Crawl(eventPipeline, CrawlMode.crawl);
+        crawl.visitChildren(path);
+        awaitEventCrawl(crawl);
+    }
+
+    /**
+     * Hold the sync lane until the crawl of an event is done, so the next event of the same path is handled after it.
+     *
+     * @param crawl
+     */
+    private void awaitEventCrawl(Crawl crawl) {
         try {
-            for (String child : client.getChildren().usingWatcher(watcher).forPath(path)) {
-                handleNodeCreatedEvent((path.equals("/") ? "/" : path + "/") + child);
-            }
-        } catch (KeeperException.NoNodeException e) {
-            // node may have been deleted
-        } catch (KeeperException.NoAuthException e) {
-        	logger.error("Ignoring no auth: " + e); // No stack trace.
+            crawl.awaitOwn();
+        } catch (InterruptedException e) {
+            // closed
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -215,13 +877,30 @@ public class ZookeeperSync {
      *
      * @param path
      */
-    private void handleNodeDataChangedEvent(String path) throws Exception {
+    private void handleNodeDataChangedEvent(final String path) {
+        dataCache.invalidate(path);
         try {
-            client.checkExists().usingWatcher(watcher).forPath(path);
-        } catch (KeeperException.NoNodeException e) {
-            // node may have been deleted
+            // Curator queues background operations on its own thread, go straight to zookeeper to avoid the delay.
+            client.getZookeeperClient().getZooKeeper().exists(path, dataWatcher, new AsyncCallback.StatCallback() {
+                @Override
+                public void processResult(int rc, String path, Object ctx, Stat stat) {
+                    if (stat != null) {
+                        // Updates made before the watch was set again fire no event of their own, drop anything
+                        // cached in between.
+                        int previous = nodes.getVersion(path);
+                        if (previous >= 0 && stat.getVersion() > previous + 1) {
+                            dataCache.invalidate(path);
+                        }
+                        nodes.setDataStat(path, stat.getVersion());
+                    }
+                    // node may have been deleted, still report the update that triggered the watch
+                    ZookeeperSync.this.notify(Event.Update(path));
+                }
+            }, null);
+        } catch (Exception e) {
+            logger.error("exists {} failed [{}]", path, e.getMessage());
+            notify(Event.Update(path));
         }
-        notify(Event.Update(path));
     }
 
     /**
@@ -230,24 +909,25 @@ public class ZookeeperSync {
      * @param path
      */
     private void handleNodeDeletedEvent(String path) {
+        dataCache.invalidate(path);
+        boolean changed;
         synchronized (nodes) {
-            if (nodes.remove(path)) {
-                notify(Event.Delete(path));
-            }
+            changed = nodes.remove(path);
+        }
+        if (changed) {
+            notify(Event.Delete(path));
         }
     }
 
     /**
-     * Generic notification interface.
+     * Generic notification interface. Only queues the event with each listener's dispatcher.
      *
      * @param event
      */
     private void notify(Event event) {
-        synchronized (listeners) {
-            logger.debug("notify [{}] {}", event.type, event.path);
-            for (Listener listener : listeners) {
-                listener.process(event);
-            }
+        logger.debug("notify [{}] {}", event.type, event.path);
+        for (EventDispatcher listener : listeners) {
+            listener.offer(event);
         }
     }
 
@@ -260,6 +940,7 @@ public class ZookeeperSync {
      * @throws Exception
      */
     public boolean create(String path, CreateMode createMode) throws Exception {
+        checkWritable();
         if (client.checkExists().forPath(path) == null) {
             client.create().creatingParentsIfNeeded().withMode(createMode).forPath(path);
             return true;
@@ -278,6 +959,78 @@ public class ZookeeperSync {
         return create(path, CreateMode.PERSISTENT);
     }
 
+    /**
+     * Export the data and Stat of the given node and its known descendants to a file, parents first with siblings
+     * sorted and paths relative to the given node. Reads are pipelined keeping up to the crawl concurrency in flight,
+     * nodes are written as they are read so memory use does not grow with the size of the subtree. Nodes deleted
+     * before they are read are left out.
+     *
+     * @param path
+     * @param file
+     * @param format
+     * @param monitor receives the progress of the export, may be null
+     * @return number of nodes exported
+     * @throws InterruptedException if the calling thread is interrupted, cancelling the export
+     * @throws Exception
+     */
+    public int export(String path, File file, ExportFormat format, ExportMonitor monitor) throws Exception {
+        long start = System.currentTimeMillis();
+        TreeExport.Writer writer = format == ExportFormat.binary
+                ? new ExportFile.Writer(file) : new JsonLinesFile.Writer(file);
+        int exported;
+        try {
+            exported = new TreeExport(client, offlineTree, nodes, crawlConcurrency, requestCount, monitor)
+                    .export(path, writer);
+            writer.close();
+        } catch (Exception e) {
+            try {
+                writer.close();
+            } catch (IOException closeException) {
+                // the export failed anyway
+            }
+            if (!file.delete()) {
+                logger.warn("failed to delete incomplete export {}", file);
+            }
+            throw e;
+        }
+        logger.info("export {} complete: {} nodes in {}ms", path, exported, System.currentTimeMillis() - start);
+        return exported;
+    }
+
+    /**
+     * Create many nodes, see {@link #createAll(Iterator, int, CreateMonitor)}.
+     *
+     * @param entries
+     * @return number of nodes created
+     * @throws Exception
+     */
+    public int createAll(Iterator<NodeEntry> entries) throws Exception {
+        return createAll(entries, DEFAULT_CREATE_BATCH_SIZE, null);
+    }
+
+    /**
+     * Create many nodes, parents before children, including all non-existent ancestors. Creates are batched into
+     * transactions with a bounded number in flight, see {@link #DEFAULT_TRANSACTION_CONCURRENCY}. Nodes which already
+     * exist are left as they are. All entries are read before any node is created.
+     *
+     * @param entries   nodes to create, a later entry for the same path replaces an earlier one
+     * @param batchSize maximum number of creates per transaction
+     * @param monitor   receives the progress of the create, may be null
+     * @return number of nodes created
+     * @throws IllegalArgumentException if an entry has an invalid path
+     * @throws InterruptedException     if the calling thread is interrupted, cancelling the create
+     * @throws Exception
+     */
+    public int createAll(Iterator<NodeEntry> entries, int batchSize, CreateMonitor monitor) throws Exception {
+        checkWritable();
+        long start = System.currentTimeMillis();
+        TreeCreate treeCreate = new TreeCreate(client, crawlConcurrency, DEFAULT_TRANSACTION_CONCURRENCY, batchSize,
+                requestCount, monitor);
+        int created = treeCreate.create(entries);
+        logger.info("create complete: {} nodes in {}ms", created, System.currentTimeMillis() - start);
+        return created;
+    }
+
     /**
      * Delete the given node, its descendants, and any node ancestors with only a single child.
      *
@@ -285,9 +1038,23 @@ public class ZookeeperSync {
      * @throws Exception
      */
     public String prune(String path) throws Exception {
+        return prune(path, null);
+    }
+
+    /**
+     * Delete the given node, its descendants and all of its ancestors which have no other children.
+     *
+     * @param path
+     * @param monitor receives the progress of deleting the subtree, may be null
+     * @return oldest ancestor which was not deleted, null if the node does not exist
+     * @throws InterruptedException if the calling thread is interrupted, cancelling the delete
+     * @throws Exception
+     */
+    public String prune(String path, DeleteMonitor monitor) throws Exception {
         if ("/".equals(path)) {
             throw new IllegalArgumentException("cannot prune root node");
         }
+        checkWritable();
 
         if (client.checkExists().forPath(path) == null) {
             return null;
@@ -300,7 +1067,7 @@ public class ZookeeperSync {
             path = parent;
         }
 
-        delete(path);
+        delete(path, monitor);
 
         return parent;
     }
@@ -312,32 +1079,59 @@ public class ZookeeperSync {
      * @throws Exception
      */
     public void delete(String path) throws Exception {
+        delete(path, null);
+    }
+
+    /**
+     * Delete the given node and all its descendants, leaves first. Deletes are batched into transactions with a
+     * bounded number in flight, see {@link #DEFAULT_DELETE_BATCH_SIZE} and {@link #DEFAULT_TRANSACTION_CONCURRENCY}.
+     * Nodes deleted or created by others while deleting are tolerated.
+     *
+     * @param path
+     * @param monitor receives the progress of the delete, may be null
+     * @return number of nodes deleted
+     * @throws InterruptedException if the calling thread is interrupted, cancelling the delete
+     * @throws Exception
+     */
+    public int delete(String path, DeleteMonitor monitor) throws Exception {
         if ("/".equals(path)) {
             throw new IllegalArgumentException("cannot delete root node");
         }
-
-        // Delete children
-        trim(path);
-
-        if (client.checkExists() != null) {
-            client.delete().forPath(path);
-        }
+        return deleteTree(path, true, monitor);
     }
 
     /**
-     * Delete all of the node's children and their ancestors.
+     * Delete all of the node's children and their descendants.
      *
      * @param path
      * @throws Exception
      */
     public void trim(String path) throws Exception {
-        for (String child : client.getChildren().forPath(path)) {
-            try {
-                delete(("/".equals(path) ? "/" : path + "/") + child);
-            } catch (KeeperException.BadArgumentsException e) {
-                logger.error(e.getMessage());
-            }
-        }
+        trim(path, null);
+    }
+
+    /**
+     * Delete all of the node's children and their descendants, see {@link #delete(String, DeleteMonitor)}.
+     *
+     * @param path
+     * @param monitor receives the progress of the delete, may be null
+     * @return number of nodes deleted
+     * @throws InterruptedException if the calling thread is interrupted, cancelling the delete
+     * @throws Exception
+     */
+    public int trim(String path, DeleteMonitor monitor) throws Exception {
+        return deleteTree(path, false, monitor);
+    }
+
+    private int deleteTree(String path, boolean includeRoot, DeleteMonitor monitor) throws Exception {
+        checkWritable();
+        long start = System.currentTimeMillis();
+        TreeDelete treeDelete = new TreeDelete(client, crawlConcurrency, DEFAULT_TRANSACTION_CONCURRENCY,
+                DEFAULT_DELETE_BATCH_SIZE, requestCount, monitor);
+        int deleted = treeDelete.delete(path, includeRoot);
+        logger.info("{} {} complete: {} nodes in {}ms",
+                includeRoot ? "delete" : "trim", path, deleted, System.currentTimeMillis() - start);
+        return deleted;
     }
 
     /**
@@ -348,6 +1142,10 @@ public class ZookeeperSync {
      * @throws Exception
      */
     public Stat getStat(String path) throws Exception {
+        if (offlineTree != null) {
+            NodeData nodeData = offlineTree.getNodeData(path);
+            return nodeData == null ? null : nodeData.stat;
+        }
         return client.checkExists().forPath(path);
     }
 
@@ -359,30 +1157,286 @@ public class ZookeeperSync {
      * @throws Exception
      */
     public byte[] getData(String path) throws Exception {
+        if (offlineTree != null) {
+            NodeData nodeData = offlineTree.getNodeData(path);
+            if (nodeData == null) {
+                throw new KeeperException.NoNodeException(path);
+            }
+            return nodeData.data;
+        }
         return client.getData().forPath(path);
     }
 
+    /**
+     * Get data and Stat of the given path in a single request, or from the data cache. Only watched nodes are cached,
+     * their entries are invalidated by the data changed and deleted events of the watches. The returned data is
+     * shared with the cache and must not be modified.
+     *
+     * @param path
+     * @return node data, null if the node does not exist
+     * @throws Exception
+     */
+    public NodeData getNodeData(String path) throws Exception {
+        if (offlineTree != null) {
+            return offlineTree.getNodeData(path);
+        }
+        NodeData nodeData = dataCache.get(path);
+        if (nodeData != null) {
+            return nodeData;
+        }
+        long generation = dataCache.getGeneration();
+        Stat stat = new Stat();
+        try {
+            byte[] data = client.getData().storingStatIn(stat).forPath(path);
+            nodeData = new NodeData(path, stat, data);
+        } catch (KeeperException.NoNodeException e) {
+            return null;
+        }
+        cacheNodeData(nodeData, generation);
+        return nodeData;
+    }
+
+    private void cacheNodeData(NodeData nodeData, long generation) {
+        if (nodes.contains(nodeData.path)) {
+            dataCache.put(nodeData, generation);
+        }
+    }
+
+    /**
+     * Get data and Stat of many paths. Cached paths are served from the data cache, requests for the others are
+     * pipelined keeping up to the crawl concurrency in flight.
+     *
+     * @param paths
+     * @return node data by path in the given order, null for nodes which do not exist or could not be read
+     * @throws InterruptedException
+     */
+    public Map<String, NodeData> getNodeData(Collection<String> paths) throws InterruptedException {
+        final Map<String, NodeData> result = new LinkedHashMap<String, NodeData>(paths.size() * 2);
+        for (String path : paths) {
+            result.put(path, null);
+        }
+        if (offlineTree != null) {
+            for (String path : result.keySet()) {
+                result.put(path, offlineTree.getNodeData(path));
+            }
+            return result;
+        }
+
+        final long generation = dataCache.getGeneration();
+        BackgroundPipeline pipeline = new BackgroundPipeline(crawlConcurrency);
+        for (final String path : new ArrayList<String>(result.keySet())) {
+            NodeData cached = dataCache.get(path);
+            if (cached != null) {
+                synchronized (result) {
+                    result.put(path, cached);
+                }
+                continue;
+            }
+            pipeline.submit(new BackgroundPipeline.Operation() {
+                @Override
+                public void start(BackgroundCallback callback) throws Exception {
+                    requestCount.incrementAndGet();
+                    client.getData().inBackground(callback).forPath(path);
+                }
+
+                @Override
+                public void complete(CuratorEvent event) {
+                    KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                    if (code == KeeperException.Code.OK) {
+                        NodeData nodeData = new NodeData(path, event.getStat(), event.getData());
+                        cacheNodeData(nodeData, generation);
+                        synchronized (result) {
+                            result.put(path, nodeData);
+                        }
+                    } else if (code != KeeperException.Code.NONODE) {
+                        logger.error("get data {} failed [{}]", path, code);
+                    }
+                }
+            });
+        }
+        while (!pipeline.await(CRAWL_PROGRESS_INTERVAL)) {
+            logger.debug("get data in progress: {} of {} paths", pipeline.getCompletedCount(), result.size());
+        }
+        synchronized (result) {
+            return result;
+        }
+    }
+
     /**
      * Set data for the given path.
      *
      * @param path
      * @param data
+     * @return Stat of the node after the update
      * @throws Exception
      */
-    public void setData(String path, int version, byte[] data) throws Exception {
-        client.setData().withVersion(version).forPath(path, data);
+    public Stat setData(String path, int version, byte[] data) throws Exception {
+        checkWritable();
+        Stat stat = client.setData().withVersion(version).forPath(path, data);
+        dataCache.invalidate(path);
+        return stat;
+    }
+
+    /**
+     * Set the maximum total size of the data cache, evicting least recently used entries as needed.
+     *
+     * @param bytes maximum size in bytes, 0 disables caching
+     */
+    public void setDataCacheSize(long bytes) {
+        dataCache.setMaxBytes(bytes);
+    }
+
+    /**
+     * @return number of node data reads served from the data cache
+     */
+    public long getDataCacheHitCount() {
+        return dataCache.getHitCount();
+    }
+
+    /**
+     * @return number of node data reads which had to go to zookeeper
+     */
+    public long getDataCacheMissCount() {
+        return dataCache.getMissCount();
+    }
+
+    /**
+     * Get the number of watch events waiting to be handled.
+     *
+     * @return queued watch event count
+     */
+    public int getPendingEventCount() {
+        return syncExecutor.getQueuedCount();
+    }
+
+    /**
+     * Stop handling watch events. Should be called once the underlying client has been closed.
+     */
+    public void close() {
+        syncExecutor.shutdown();
+        eventPipeline.cancel();
+        dataCache.clear();
+        for (EventDispatcher listener : listeners) {
+            listener.close();
+        }
     }
 
     /**
      * Begin watching the zookeeper cluster. Starts by loading the cluster from its root. This will trigger add events
-     * for each node found while initializing the cluster sync.
+     * for each node found while initializing the cluster sync. Returns once the initial load has completed.
+     * <p/>
+     * When browsing a data directory the snapshot is loaded and the transaction logs replayed instead.
      *
      * @throws Exception
      */
     public void watch() throws Exception {
-        synchronized (nodes) {
-            nodes.clear();
+        if (offlineTree != null) {
+            load();
+            return;
+        }
+        watchedSessionId = getSessionId();
+        dataCache.clear();
+        nodes.clear();
+        Crawl crawl = new Crawl(crawlConcurrency);
+        crawl.visit("/");
+        crawl.await("/");
+        lastCrawlRate = crawl.getRate();
+    }
+
+    /**
+     * Bring the known nodes up to date with the zookeeper cluster and watch them. Unlike {@link #watch()} the known
+     * nodes are kept, listeners are only notified of the nodes added and deleted since they were last synced.
+     *
+     * @throws Exception
+     */
+    public void reconcile() throws Exception {
+        if (offlineTree != null) {
+            load();
+            return;
+        }
+        watchedSessionId = getSessionId();
+        // Without watches in this session no invalidations were received.
+        dataCache.clear();
+        Crawl crawl = new Crawl(crawlConcurrency, CrawlMode.reconcile);
+        crawl.visit("/");
+        crawl.await("/ (reconcile)");
+        lastCrawlRate = crawl.getRate();
+    }
+
+    /**
+     * Bring the known nodes up to date after the connection to the cluster was reestablished. If the session survived,
+     * zookeeper restores its watches, so known nodes are only checked and the children of parents which changed
+     * listed again. Otherwise all known nodes are reconciled. Either way listeners are only notified of the nodes added
+     * and deleted while disconnected.
+     *
+     * @throws Exception
+     */
+    public void resync() throws Exception {
+        if (offlineTree != null) {
+            return;
         }
-        handleNodeCreatedEvent("/");
+        if (watchedSessionId == 0 || watchedSessionId != getSessionId()) {
+            logger.info("session changed, reconciling all nodes");
+            reconcile();
+            return;
+        }
+        Crawl crawl = new Crawl(crawlConcurrency, CrawlMode.resync);
+        crawl.check("/");
+        crawl.await("/ (resync)");
+    }
+
+    private void load() throws Exception {
+        dataCache.clear();
+        long startTime = System.currentTimeMillis();
+        int count = offlineTree.load(new Listener() {
+            @Override
+            public void process(Event e) {
+                ZookeeperSync.this.notify(e);
+            }
+        });
+        lastCrawlRate = count * 1000.0 / Math.max(1L, System.currentTimeMillis() - startTime);
+    }
+
+    private long getSessionId() throws Exception {
+        return client.getZookeeperClient().getZooKeeper().getSessionId();
+    }
+
+    /**
+     * Replace the known nodes with those of a snapshot, notifying listeners of each as an add. Intended for startup,
+     * before watching, so nodes can be shown before the cluster has been crawled. Follow up with {@link #reconcile()}
+     * to bring the nodes up to date, also if loading fails part way.
+     *
+     * @param file snapshot written by {@link #saveSnapshot(File)}
+     * @return number of nodes loaded
+     * @throws IOException if the snapshot could not be read
+     */
+    public int loadSnapshot(File file) throws IOException {
+        dataCache.clear();
+        nodes.clear();
+        long startTime = System.currentTimeMillis();
+        int count = SnapshotFile.read(file, new PathStore.Visitor() {
+            @Override
+            public void visit(String path, int cversion, long pzxid, int version) {
+                addNode(path, null);
+                nodes.setChildStat(path, cversion, pzxid);
+                nodes.setDataStat(path, version);
+            }
+        });
+        logger.info("loaded {} nodes from snapshot {} in {}ms", count, file, System.currentTimeMillis() - startTime);
+        return count;
+    }
+
+    /**
+     * Write the known nodes to a snapshot file.
+     *
+     * @param file
+     * @return number of nodes written
+     * @throws IOException
+     */
+    public int saveSnapshot(File file) throws IOException {
+        long startTime = System.currentTimeMillis();
+        int count = SnapshotFile.write(file, nodes);
+        logger.info("saved {} nodes to snapshot {} in {}ms", count, file, System.currentTimeMillis() - startTime);
+        return count;
     }
 }
@@ -177,4 +177,44 @@ public class ZooDirectorConfigTest {
 
         ensureConfigFileExists(true);
     }
+
+    @Test
+    public void testGetWatchMaxRefreshRate() throws Exception {
+        ZooDirectorConfig zooDirectorConfig = new ZooDirectorConfig(configFilePath);
+
+        // Check default
+        Assert.assertEquals(ZooDirectorConfig.DEFAULT_WATCHES_MAX_REFRESH_RATE, zooDirectorConfig.getWatchMaxRefreshRate());
+
+        ensureConfigFileExists(false);
+    }
+
+    @Test
+    public void testSetWatchMaxRefreshRate() throws Exception {
+        ZooDirectorConfig zooDirectorConfig = new ZooDirectorConfig(configFilePath);
+
+        int maxRefreshRate = 3;
+
+        zooDirectorConfig.setWatchMaxRefreshRate(maxRefreshRate);
+
+        // Check value is set
+        Assert.assertEquals(maxRefreshRate, zooDirectorConfig.getWatchMaxRefreshRate());
+
+        // Check persistence
+        Assert.assertEquals(maxRefreshRate, new ZooDirectorConfig(configFilePath).getWatchMaxRefreshRate());
+
+        ensureConfigFileExists(true);
+    }
+
+    @Test
+    public void testGetSnapshotFile() throws Exception {
+        ZooDirectorConfig zooDirectorConfig = new ZooDirectorConfig(configFilePath);
+
+        File snapshotFile = zooDirectorConfig.getSnapshotFile("localhost:2181,other:2181/chroot");
+
+        Assert.assertEquals("snapshot should be kept next to the configuration file",
+                new File(configFilePath).getAbsoluteFile().getParentFile(), snapshotFile.getParentFile());
+        Assert.assertEquals("zoodirector-localhost_2181_other_2181_chroot.snapshot", snapshotFile.getName());
+
+        ensureConfigFileExists(false);
+    }
 }
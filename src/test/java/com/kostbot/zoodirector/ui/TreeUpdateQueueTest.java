@@ -0,0 +1,105 @@
+package com.kostbot.zoodirector.ui;
+
+import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class TreeUpdateQueueTest {
+
+    private static ZookeeperSync.Event event(ZookeeperSync.Event.Type type, String path) {
+        return new ZookeeperSync.Event(type, path);
+    }
+
+    private static void awaitApplied(TreeUpdateQueue queue, long count) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getAppliedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, queue.getAppliedCount());
+        // Counted before the callback runs, let the frame finish.
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        final List<Collection<String>> frames = new ArrayList<Collection<String>>();
+        final Set<String> selected = new HashSet<String>();
+        TreeUpdateQueue queue = new TreeUpdateQueue(new TreeUpdateQueue.Callback() {
+            @Override
+            public void apply(Collection<String> paths, Collection<String> select) {
+                Assert.assertTrue(SwingUtilities.isEventDispatchThread());
+                frames.add(new ArrayList<String>(paths));
+                selected.addAll(select);
+            }
+        });
+
+        queue.offer(Arrays.asList(
+                event(ZookeeperSync.Event.Type.add, "/a"),
+                event(ZookeeperSync.Event.Type.add, "/b"),
+                event(ZookeeperSync.Event.Type.update, "/a"),
+                event(ZookeeperSync.Event.Type.delete, "/b"),
+                event(ZookeeperSync.Event.Type.delete, "/c"),
+                event(ZookeeperSync.Event.Type.add, "/c"),
+                event(ZookeeperSync.Event.Type.add, "/d")), new boolean[]{false, true, false, false, false, false, true});
+
+        Assert.assertEquals(3, queue.getQueueDepth());
+        awaitApplied(queue, 3);
+
+        Assert.assertEquals(Arrays.<Collection<String>>asList(Arrays.asList("/a", "/c", "/d")), frames);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("/d")), selected);
+        Assert.assertEquals(3, queue.getSkippedCount());
+        Assert.assertEquals(0, queue.getQueueDepth());
+        Assert.assertEquals(1, queue.getFrameCount());
+    }
+
+    @Test
+    public void testDeleteAddDelete() throws Exception {
+        final List<Collection<String>> frames = new ArrayList<Collection<String>>();
+        TreeUpdateQueue queue = new TreeUpdateQueue(new TreeUpdateQueue.Callback() {
+            @Override
+            public void apply(Collection<String> paths, Collection<String> select) {
+                frames.add(new ArrayList<String>(paths));
+            }
+        });
+
+        // Batches of a single frame, the path was in the tree before it.
+        queue.offer(Arrays.asList(
+                event(ZookeeperSync.Event.Type.delete, "/a"),
+                event(ZookeeperSync.Event.Type.add, "/a")), new boolean[]{false, false});
+        queue.offer(event(ZookeeperSync.Event.Type.delete, "/a"), false);
+
+        Assert.assertEquals("deleted path should still be applied", 1, queue.getQueueDepth());
+        awaitApplied(queue, 1);
+        Assert.assertEquals(Arrays.<Collection<String>>asList(Arrays.asList("/a")), frames);
+    }
+
+    @Test
+    public void testOneFramePerDrain() throws Exception {
+        final int count = 100000;
+        TreeUpdateQueue queue = new TreeUpdateQueue(new TreeUpdateQueue.Callback() {
+            @Override
+            public void apply(Collection<String> paths, Collection<String> selected) {
+            }
+        });
+
+        for (int i = 0; i < count; ++i) {
+            queue.offer(event(ZookeeperSync.Event.Type.add, "/n" + i), false);
+        }
+        awaitApplied(queue, count);
+
+        Assert.assertTrue("events should be applied in few frames", queue.getFrameCount() < 100);
+        Assert.assertTrue(queue.getMaxQueueDepth() > 0);
+    }
+}
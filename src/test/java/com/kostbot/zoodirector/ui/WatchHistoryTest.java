@@ -0,0 +1,107 @@
+package com.kostbot.zoodirector.ui;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class WatchHistoryTest {
+
+    private static Stat stat(int version, long mtime) {
+        Stat stat = new Stat();
+        stat.setVersion(version);
+        stat.setMtime(mtime);
+        stat.setMzxid(100 + version);
+        return stat;
+    }
+
+    @Test
+    public void testRingBuffer() {
+        WatchHistory history = new WatchHistory(4, 0);
+
+        for (int version = 0; version < 6; ++version) {
+            history.record("/a", stat(version, version * 1000L), Integer.toString(version).getBytes());
+        }
+        history.record("/b", stat(7, 0L), "b".getBytes());
+
+        Assert.assertEquals(4, history.size("/a"));
+        List<WatchHistory.Entry> entries = history.getEntries("/a");
+        Assert.assertEquals("newest first, oldest dropped", 5, entries.get(0).version);
+        Assert.assertEquals(2, entries.get(3).version);
+        Assert.assertEquals(5000L, entries.get(0).mtime);
+        Assert.assertNull("data not recorded", entries.get(0).data);
+        Assert.assertFalse(entries.get(0).digest == entries.get(1).digest);
+        Assert.assertEquals(1, history.size("/b"));
+        Assert.assertEquals(0, history.size("/c"));
+    }
+
+    @Test
+    public void testRecordOnlyChanges() {
+        WatchHistory history = new WatchHistory(8, 0);
+
+        history.record("/a", null, null);
+        Assert.assertEquals("delete of a node never seen is not recorded", 0, history.size("/a"));
+
+        history.record("/a", stat(1, 0L), "1".getBytes());
+        history.record("/a", stat(1, 0L), "1".getBytes());
+        Assert.assertEquals("reload of the same stat is not recorded", 1, history.size("/a"));
+
+        history.record("/a", null, null);
+        history.record("/a", null, null);
+        Assert.assertEquals(2, history.size("/a"));
+        Assert.assertTrue(history.getEntries("/a").get(0).isDeleted());
+
+        history.record("/a", stat(0, 0L), "recreated".getBytes());
+        Assert.assertEquals(3, history.size("/a"));
+    }
+
+    @Test
+    public void testDataLimit() {
+        WatchHistory history = new WatchHistory(8, 3);
+
+        history.record("/a", stat(1, 0L), "abcdef".getBytes());
+        Assert.assertEquals("abc", new String(history.getEntries("/a").get(0).data));
+
+        history.setDataLimit(0);
+        Assert.assertNull(history.getEntries("/a").get(0).data);
+    }
+
+    @Test
+    public void testChangeCounts() {
+        WatchHistory history = new WatchHistory(16, 0);
+        long now = 100000L;
+
+        history.record("/a", stat(1, now - 50000L), null);
+        // Versions 2 to 4 coalesced into one load.
+        history.record("/a", stat(4, now - 2500L), null);
+        history.record("/a", stat(5, now - 500L), null);
+        history.record("/a", null, null);
+
+        int[] counts = history.getChangeCounts("/a", now, 1000L, 3);
+        Assert.assertEquals("delete seen now, version 5 in the last second", Arrays.toString(new int[]{3, 0, 2}),
+                Arrays.toString(counts));
+        Assert.assertEquals(Arrays.toString(new int[3]), Arrays.toString(history.getChangeCounts("/b", now, 1000L, 3)));
+    }
+
+    @Test
+    public void testRemoveReusesSlot() {
+        WatchHistory history = new WatchHistory(4, 0);
+        for (int i = 0; i < 100; ++i) {
+            history.record("/" + i, stat(1, 0L), null);
+        }
+        long allocated = history.getAllocatedBytes();
+
+        for (int i = 0; i < 50; ++i) {
+            history.remove("/" + i);
+        }
+        for (int i = 100; i < 150; ++i) {
+            history.record("/" + i, stat(2, 0L), null);
+        }
+        Assert.assertEquals("removed slots should be reused", allocated, history.getAllocatedBytes());
+        Assert.assertEquals(0, history.size("/0"));
+        Assert.assertEquals(1, history.size("/149"));
+        Assert.assertEquals(2, history.getEntries("/149").get(0).version);
+    }
+}
@@ -0,0 +1,106 @@
+package com.kostbot.zoodirector.ui;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class WatchRefresherTest {
+    private List<String> loads;
+    private WatchRefresher refresher;
+
+    @Before
+    public void setUp() {
+        loads = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() {
+        refresher.close();
+    }
+
+    private WatchRefresher newRefresher(int maxRefreshRate) {
+        return new WatchRefresher(new WatchRefresher.Loader() {
+            @Override
+            public void load(String path) {
+                loads.add(path);
+            }
+        }, maxRefreshRate);
+    }
+
+    @Test
+    public void testOneLoadInFlight() {
+        refresher = newRefresher(0);
+
+        refresher.refresh("/a");
+        refresher.refresh("/b");
+        for (int i = 0; i < 100; ++i) {
+            refresher.refresh("/a");
+        }
+        Assert.assertEquals("one load per path in flight", 2, loads.size());
+        Assert.assertEquals(99, refresher.getCoalescedCount());
+
+        refresher.loaded("/a");
+        Assert.assertEquals("one trailing load for the updates meanwhile", 3, loads.size());
+        refresher.loaded("/a");
+        refresher.loaded("/b");
+        Assert.assertEquals(3, loads.size());
+
+        refresher.refresh("/a");
+        Assert.assertEquals(4, loads.size());
+        Assert.assertEquals(4, refresher.getLoadCount());
+    }
+
+    @Test
+    public void testMaxRefreshRate() throws InterruptedException {
+        refresher = newRefresher(5);
+
+        refresher.refresh("/a");
+        refresher.loaded("/a");
+        refresher.refresh("/a");
+        refresher.refresh("/a");
+        Assert.assertEquals("next load waits for the refresh interval", 1, loads.size());
+
+        Thread.sleep(400);
+        Assert.assertEquals(2, loads.size());
+        refresher.loaded("/a");
+        Thread.sleep(400);
+        Assert.assertEquals("scheduled load covered both updates", 2, loads.size());
+    }
+
+    @Test
+    public void testRemove() throws InterruptedException {
+        refresher = newRefresher(5);
+
+        refresher.refresh("/a");
+        refresher.loaded("/a");
+        refresher.refresh("/a");
+        refresher.remove("/a");
+        Thread.sleep(400);
+        Assert.assertEquals("scheduled load of a removed path is dropped", 1, loads.size());
+    }
+
+    @Test
+    public void testSampleRates() {
+        refresher = newRefresher(0);
+
+        refresher.sampleRates();
+        for (int i = 0; i < 50; ++i) {
+            refresher.refresh("/a");
+        }
+        refresher.refresh("/b");
+        Map<String, Integer> rates = refresher.sampleRates();
+        Assert.assertEquals(2, rates.size());
+        Assert.assertTrue(rates.get("/a") > rates.get("/b"));
+
+        rates = refresher.sampleRates();
+        Assert.assertEquals("both rates dropped to 0", 2, rates.size());
+        Assert.assertEquals(0, (int) rates.get("/a"));
+        Assert.assertTrue("unchanged rates are left out", refresher.sampleRates().isEmpty());
+    }
+}
@@ -0,0 +1,205 @@
+package com.kostbot.zoodirector.ui;
+
+import org.apache.zookeeper.data.Stat;
+import org.joda.time.LocalDateTime;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class WatchTableModelTest {
+    private WatchTableModel model;
+    private List<String> events;
+
+    @Before
+    public void setUp() {
+        model = new WatchTableModel();
+        events = new ArrayList<String>();
+        model.addTableModelListener(new TableModelListener() {
+            @Override
+            public void tableChanged(TableModelEvent e) {
+                String type = e.getType() == TableModelEvent.INSERT ? "inserted" :
+                        e.getType() == TableModelEvent.DELETE ? "deleted" : "updated";
+                events.add(type + " " + e.getFirstRow() + "-" + e.getLastRow());
+            }
+        });
+    }
+
+    private static Stat stat(int version, long ephemeralOwner) {
+        Stat stat = new Stat();
+        stat.setVersion(version);
+        stat.setCtime(1000L);
+        stat.setMtime(2000L + version);
+        stat.setEphemeralOwner(ephemeralOwner);
+        return stat;
+    }
+
+    private static List<String> paths(int count) {
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < count; ++i) {
+            paths.add("/n" + i);
+        }
+        return paths;
+    }
+
+    @Test
+    public void testAddRemove() {
+        Assert.assertEquals(100, model.addPaths(paths(100)));
+        Assert.assertEquals(0, model.addPaths(Arrays.asList("/n1", "/n2")));
+        Assert.assertEquals(Arrays.asList("inserted 0-99"), events);
+        Assert.assertEquals(100, model.getRowCount());
+        Assert.assertEquals(42, model.getRow("/n42"));
+        Assert.assertNull(model.getValueAt(42, WatchTableModel.VERSION_COLUMN));
+
+        events.clear();
+        List<String> removed = model.removeRows(new int[]{50, 10, 11, 12, 99});
+        Assert.assertEquals(Arrays.asList("deleted 99-99", "deleted 50-50", "deleted 10-12"), events);
+        Assert.assertEquals(Arrays.asList("/n99", "/n50", "/n10", "/n11", "/n12"), removed);
+        Assert.assertEquals(95, model.getRowCount());
+        Assert.assertEquals(-1, model.getRow("/n11"));
+        Assert.assertEquals(10, model.getRow("/n13"));
+        Assert.assertEquals("/n13", model.getPath(10));
+        Assert.assertEquals(94, model.getRow("/n98"));
+
+        Assert.assertTrue(model.remove("/n0"));
+        Assert.assertFalse(model.remove("/n0"));
+        Assert.assertEquals("/n1", model.getPath(0));
+        Assert.assertEquals(93, model.getRow("/n98"));
+    }
+
+    @Test
+    public void testUpdate() {
+        model.addPaths(paths(3));
+        events.clear();
+
+        model.update("/n1", stat(1, 0), "one".getBytes());
+        model.update("/n1", stat(2, 7), "two".getBytes());
+        model.update("/missing", stat(1, 0), "x".getBytes());
+        model.applyUpdates();
+
+        Assert.assertEquals("only the latest update applied", Arrays.asList("updated 1-1"), events);
+        Assert.assertEquals(1, model.getAppliedCount());
+        Assert.assertEquals(2, model.getValueAt(1, WatchTableModel.VERSION_COLUMN));
+        Assert.assertEquals(true, model.getValueAt(1, WatchTableModel.EPHEMERAL_COLUMN));
+        Assert.assertEquals(new LocalDateTime(1000L), model.getValueAt(1, WatchTableModel.CREATED_COLUMN));
+        Assert.assertEquals(new LocalDateTime(2002L), model.getValueAt(1, WatchTableModel.MODIFIED_COLUMN));
+        Assert.assertEquals("two", model.getValueAt(1, WatchTableModel.DATA_COLUMN));
+
+        model.update("/n1", null, "gone".getBytes());
+        model.applyUpdates();
+        Assert.assertNull(model.getValueAt(1, WatchTableModel.EPHEMERAL_COLUMN));
+        Assert.assertNull(model.getValueAt(1, WatchTableModel.DATA_COLUMN));
+    }
+
+    @Test
+    public void testOutOfOrderUpdates() {
+        model.addPaths(paths(1));
+
+        Stat older = stat(1, 0);
+        older.setMzxid(10);
+        Stat newer = stat(2, 0);
+        newer.setMzxid(20);
+
+        // Within a frame.
+        model.update("/n0", newer, "new".getBytes());
+        model.update("/n0", older, "old".getBytes());
+        model.applyUpdates();
+        Assert.assertEquals("new", model.getValueAt(0, WatchTableModel.DATA_COLUMN));
+
+        // Across frames.
+        model.update("/n0", older, "old".getBytes());
+        model.applyUpdates();
+        Assert.assertEquals("new", model.getValueAt(0, WatchTableModel.DATA_COLUMN));
+        Assert.assertEquals(1, model.getAppliedCount());
+
+        // A load from before the delete does not bring the node back.
+        model.update("/n0", null, null);
+        model.applyUpdates();
+        model.update("/n0", newer, "new".getBytes());
+        model.applyUpdates();
+        Assert.assertNull(model.getValueAt(0, WatchTableModel.VERSION_COLUMN));
+
+        Stat created = stat(0, 0);
+        created.setMzxid(30);
+        model.update("/n0", created, "created".getBytes());
+        model.applyUpdates();
+        Assert.assertEquals("created", model.getValueAt(0, WatchTableModel.DATA_COLUMN));
+    }
+
+    @Test
+    public void testUpdateRates() {
+        model.addPaths(paths(3));
+        events.clear();
+
+        Map<String, Integer> rates = new HashMap<String, Integer>();
+        rates.put("/n2", 250);
+        rates.put("/missing", 1);
+        model.setUpdateRates(rates);
+        Assert.assertEquals(Arrays.asList("updated 2-2"), events);
+        Assert.assertEquals(250, model.getValueAt(2, WatchTableModel.UPDATE_RATE_COLUMN));
+        Assert.assertEquals(0, model.getValueAt(1, WatchTableModel.UPDATE_RATE_COLUMN));
+
+        // Rows added in place of removed ones start out empty.
+        model.remove("/n2");
+        model.addPaths(Arrays.asList("/new"));
+        Assert.assertEquals(0, model.getValueAt(2, WatchTableModel.UPDATE_RATE_COLUMN));
+    }
+
+    @Test
+    public void testHistory() {
+        model.addPaths(paths(2));
+        WatchHistory history = model.getHistory();
+
+        Stat stat = stat(1, 0);
+        stat.setMzxid(10);
+        model.update("/n0", stat, "one".getBytes());
+        model.applyUpdates();
+        model.update("/n0", stat, "one".getBytes());
+        model.applyUpdates();
+        Assert.assertEquals("reload is not a change", 1, history.size("/n0"));
+
+        model.update("/n0", null, null);
+        model.update("/n1", null, null);
+        model.applyUpdates();
+        Assert.assertEquals(2, history.size("/n0"));
+        Assert.assertEquals("never loaded", 0, history.size("/n1"));
+
+        int[] counts = (int[]) model.getValueAt(0, WatchTableModel.HISTORY_COLUMN);
+        Assert.assertEquals(WatchTableModel.HISTORY_BUCKETS, counts.length);
+        Assert.assertEquals("delete seen just now", 1, counts[counts.length - 1]);
+
+        model.remove("/n0");
+        Assert.assertEquals(0, history.size("/n0"));
+    }
+
+    @Test
+    public void testBatchedUpdateEvents() {
+        model.addPaths(paths(1000));
+        events.clear();
+
+        // Two runs of rows, one event each.
+        for (int i = 10; i < 20; ++i) {
+            model.update("/n" + i, stat(i, 0), null);
+        }
+        model.update("/n500", stat(1, 0), null);
+        model.applyUpdates();
+        Assert.assertEquals(Arrays.asList("updated 10-19", "updated 500-500"), events);
+
+        // Scattered rows, one event spanning them.
+        events.clear();
+        for (int i = 0; i < 1000; i += 10) {
+            model.update("/n" + i, stat(i, 0), null);
+        }
+        model.applyUpdates();
+        Assert.assertEquals(Arrays.asList("updated 0-990"), events);
+        Assert.assertEquals(111, model.getAppliedCount());
+        Assert.assertEquals(3, model.getEventCount());
+    }
+}
@@ -1,75 +1,59 @@
 package com.kostbot.zoodirector.ui;
 
+import com.kostbot.zoodirector.zookeepersync.PathStore;
 import org.junit.Assert;
 import org.junit.Test;
 
-import javax.swing.tree.*;
-import java.util.Enumeration;
-
 public class ZooDirectorNavPanelTest {
 
     /**
-     * Test that the tree has exactly the expected node count, excluding the root node.
+     * Test that the tree has exactly the expected node count, excluding the root node. All nodes are loaded.
      *
-     * @param root
+     * @param model
      * @param expectedCount
      */
-    private void testTreeNodeCount(DefaultMutableTreeNode root, int expectedCount) {
-        if (!root.isRoot()) {
-            throw new IllegalArgumentException("root must be the root node");
-        }
-
-        Enumeration<DefaultMutableTreeNode> nodes = root.depthFirstEnumeration();
-
-        int count = 0;
+    private void testTreeNodeCount(ZookeeperTreeModel model, int expectedCount) {
+        Assert.assertEquals(expectedCount, count(model, model.getRoot()) - 1);
+    }
 
-        while (nodes.hasMoreElements()) {
-            nodes.nextElement();
-            count++;
+    private int count(ZookeeperTreeModel model, Object node) {
+        int count = 1;
+        for (int i = 0; i < model.getChildCount(node); ++i) {
+            count += count(model, model.getChild(node, i));
         }
-
-        Assert.assertEquals(expectedCount, count - 1);
+        return count;
     }
 
     /**
-     * Test the path exists given the root node. Also tests that all paths contain the correct zookeeper path and name
+     * Test the path exists given the tree model. Also tests that all paths contain the correct zookeeper path and name
      * along the way.
      *
-     * @param root
+     * @param model
      * @param path
      */
-    private void testPathExists(DefaultMutableTreeNode root, String path) {
-        if (!root.isRoot()) {
-            throw new IllegalArgumentException("root must be the root node");
-        }
-
+    private void testPathExists(ZookeeperTreeModel model, String path) {
         if (!path.startsWith("/")) {
             throw new IllegalArgumentException("path must be absolute. received: " + path);
         }
 
         String[] segments = path.substring(1).split("/");
         String subPath = "";
-        DefaultMutableTreeNode parent = root;
+        Object parent = model.getRoot();
 
         for (int i = 0; i < segments.length; ++i) {
 
             String segment = segments[i];
             subPath += "/" + segment;
 
-            DefaultMutableTreeNode node = null;
+            ZookeeperTreeModel.Node node = null;
 
-            for (int j = 0; j < parent.getChildCount(); ++j) {
-                DefaultMutableTreeNode child = (DefaultMutableTreeNode) parent.getChildAt(j);
+            for (int j = 0; j < model.getChildCount(parent); ++j) {
+                ZookeeperTreeModel.Node child = (ZookeeperTreeModel.Node) model.getChild(parent, j);
                 if (segment.equals(child.toString())) {
-                    node = (DefaultMutableTreeNode) parent.getChildAt(j);
+                    node = child;
 
                     Assert.assertEquals(subPath, ZooDirectorNavPanel.getZookeeperNodePath(node));
 
-                    if (i == segments.length) {
-                        // The path exists!
-                        return;
-                    }
-
                     // The path continues to exist!
                     break;
                 }
@@ -82,47 +66,73 @@ public class ZooDirectorNavPanelTest {
 
     }
 
+    /**
+     * Add the path and all its ancestors to the store, as the sync does before reporting them.
+     *
+     * @param paths
+     * @param path
+     */
+    private static void addPath(PathStore paths, String path) {
+        for (int end = path.indexOf('/', 1); end > 0; end = path.indexOf('/', end + 1)) {
+            paths.add(path.substring(0, end));
+        }
+        paths.add(path);
+    }
+
     @Test
     public void testAddNodeToTree() {
         ZooDirectorNavPanel zooDirectorNavPanel = new ZooDirectorNavPanel(new ZooDirectorPanel("localhost", 1000));
+        PathStore paths = new PathStore();
+        zooDirectorNavPanel.setPathStore(paths);
 
         String path1 = "/test/all/path/segments/are/added/to/tree";
         String path2 = path1 + "/but/only/once";
 
+        addPath(paths, path1);
         zooDirectorNavPanel.addNodeToTree(path1, true);
+        addPath(paths, path2);
         zooDirectorNavPanel.addNodeToTree(path2, false);
 
-        DefaultMutableTreeNode root = zooDirectorNavPanel.rootNode;
+        ZookeeperTreeModel model = zooDirectorNavPanel.treeModel;
 
-        testPathExists(root, path1);
-        Assert.assertEquals(path1, ZooDirectorNavPanel.getZookeeperNodePath((DefaultMutableTreeNode) zooDirectorNavPanel.tree.getSelectionPath().getLastPathComponent()));
+        testPathExists(model, path1);
+        Assert.assertEquals(path1, ZooDirectorNavPanel.getZookeeperNodePath((ZookeeperTreeModel.Node) zooDirectorNavPanel.tree.getSelectionPath().getLastPathComponent()));
 
-        testPathExists(root, path2);
-        testTreeNodeCount(root, 11);
+        testPathExists(model, path2);
+        testTreeNodeCount(model, 11);
     }
 
     @Test
     public void testRemoveNodeFromTree() {
         ZooDirectorNavPanel zooDirectorNavPanel = new ZooDirectorNavPanel(new ZooDirectorPanel("localhost", 1000));
+        PathStore paths = new PathStore();
+        zooDirectorNavPanel.setPathStore(paths);
 
         String base = "/test/delete/removes";
         String path = base + "/all";
 
+        addPath(paths, path + "/child/segments");
         zooDirectorNavPanel.addNodeToTree(path + "/child/segments", false);
 
-        DefaultMutableTreeNode root = zooDirectorNavPanel.rootNode;
+        ZookeeperTreeModel model = zooDirectorNavPanel.treeModel;
 
         // Cannot remove root
         zooDirectorNavPanel.removeNodeFromTree("/");
-        testTreeNodeCount(root, 6);
+        testTreeNodeCount(model, 6);
 
         // Removes children
+        paths.remove(path + "/child/segments");
+        paths.remove(path + "/child");
+        paths.remove(path);
         zooDirectorNavPanel.removeNodeFromTree(path);
-        testPathExists(root, base);
-        testTreeNodeCount(root, 3);
+        testPathExists(model, base);
+        testTreeNodeCount(model, 3);
 
         // Removes all
+        paths.remove(base);
+        paths.remove("/test/delete");
+        paths.remove("/test");
         zooDirectorNavPanel.removeNodeFromTree("/test");
-        testTreeNodeCount(root, 0);
+        testTreeNodeCount(model, 0);
     }
 }
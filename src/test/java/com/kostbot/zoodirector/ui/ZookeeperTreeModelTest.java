@@ -0,0 +1,378 @@
+package com.kostbot.zoodirector.ui;
+
+import com.kostbot.zoodirector.zookeepersync.PathStore;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class ZookeeperTreeModelTest {
+    private static final Logger logger = LoggerFactory.getLogger(ZookeeperTreeModelTest.class);
+
+    private static final int SIBLING_COUNT = 100000;
+
+    private PathStore paths;
+    private ZookeeperTreeModel model;
+    private List<String> events;
+
+    @Before
+    public void before() {
+        paths = new PathStore();
+        for (String path : new String[]{"/", "/a", "/a/b", "/a/b/c", "/c"}) {
+            paths.add(path);
+        }
+        listen(new ZookeeperTreeModel(paths));
+    }
+
+    private void listen(ZookeeperTreeModel model) {
+        this.model = model;
+        events = new ArrayList<String>();
+        model.addTreeModelListener(new TreeModelListener() {
+            @Override
+            public void treeNodesChanged(TreeModelEvent e) {
+                events.add("changed " + describe(e));
+            }
+
+            @Override
+            public void treeNodesInserted(TreeModelEvent e) {
+                events.add("inserted " + describe(e));
+            }
+
+            @Override
+            public void treeNodesRemoved(TreeModelEvent e) {
+                events.add("removed " + describe(e));
+            }
+
+            @Override
+            public void treeStructureChanged(TreeModelEvent e) {
+                events.add("structure " + describe(e));
+            }
+        });
+    }
+
+    private static String describe(TreeModelEvent e) {
+        String parent = ((ZookeeperTreeModel.Node) e.getTreePath().getLastPathComponent()).getPath();
+        int[] indices = e.getChildIndices();
+        return indices == null || indices.length == 0 ? parent : parent + " " + Arrays.toString(indices);
+    }
+
+    @Test
+    public void testChildrenAreLoadedOnDemand() {
+        ZookeeperTreeModel.Node root = model.getRoot();
+        Assert.assertFalse(root.isLoaded());
+        Assert.assertFalse(model.isLeaf(root));
+        Assert.assertNull(model.getNode("/a"));
+
+        Assert.assertEquals(2, model.getChildCount(root));
+        ZookeeperTreeModel.Node a = (ZookeeperTreeModel.Node) model.getChild(root, 0);
+        ZookeeperTreeModel.Node c = (ZookeeperTreeModel.Node) model.getChild(root, 1);
+        Assert.assertEquals("/a", a.getPath());
+        Assert.assertEquals("/c", c.getPath());
+        Assert.assertSame(a, model.getNode("/a"));
+        Assert.assertEquals(1, model.getIndexOfChild(root, c));
+
+        // Leaves are told from the store without loading children.
+        Assert.assertFalse(model.isLeaf(a));
+        Assert.assertTrue(model.isLeaf(c));
+        Assert.assertFalse(a.isLoaded());
+        Assert.assertFalse(c.isLoaded());
+        Assert.assertNull(model.getNode("/a/b"));
+
+        ZookeeperTreeModel.Node node = model.loadNode("/a/b/c");
+        Assert.assertEquals("/a/b/c", node.getPath());
+        Assert.assertEquals(4, node.getTreePath().getPathCount());
+        Assert.assertTrue(a.isLoaded());
+        Assert.assertNull(model.loadNode("/a/missing"));
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testEventsOnlyForLoadedParents() {
+        model.getChildCount(model.getRoot());
+
+        paths.add("/b");
+        model.pathChanged("/b");
+        Assert.assertEquals(Arrays.asList("inserted / [1]"), events);
+        model.pathChanged("/b");
+        Assert.assertEquals(1, events.size());
+
+        // The children of /a are not loaded, only its handle may change.
+        events.clear();
+        paths.add("/a/x");
+        model.pathChanged("/a/x");
+        paths.add("/a/x/y");
+        model.pathChanged("/a/x/y");
+        Assert.assertEquals(Arrays.asList("changed / [0]"), events);
+        Assert.assertFalse(model.getNode("/a").isLoaded());
+
+        // Paths no longer in the store are not added.
+        events.clear();
+        model.pathChanged("/d");
+        Assert.assertTrue(events.isEmpty());
+
+        paths.remove("/c");
+        model.pathChanged("/c");
+        Assert.assertEquals(Arrays.asList("removed / [2]"), events);
+        Assert.assertNull(model.getNode("/c"));
+
+        // Paths still in the store are not removed.
+        events.clear();
+        model.pathChanged("/b");
+        Assert.assertTrue(events.isEmpty());
+        model.pathChanged("/");
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testBatchedEvents() {
+        model.getChildCount(model.getRoot());
+        model.loadNode("/a/b/c");
+
+        paths.add("/e");
+        paths.add("/b");
+        paths.add("/d");
+        paths.remove("/c");
+        paths.add("/a/b/c/d");
+        paths.add("/a/x");
+        paths.add("/a/x/y");
+        paths.add("/a/x/y/z");
+        model.pathsChanged(Arrays.asList("/e", "/b", "/gone", "/c", "/d", "/a/b/c/d", "/a/x", "/a/x/y/z", "/a/x/y"));
+
+        // One event per parent, a path added and removed again is skipped.
+        Assert.assertEquals(Arrays.asList(
+                "removed / [1]",
+                "inserted / [1, 2, 3]",
+                "inserted /a [1]",
+                "changed /a/b [0]"), events);
+        Assert.assertEquals("/d", ((ZookeeperTreeModel.Node) model.getChild(model.getRoot(), 2)).getPath());
+
+        // Removing a parent and its children only removes the parent.
+        events.clear();
+        paths.remove("/a/x/y/z");
+        paths.remove("/a/x/y");
+        paths.remove("/a/x");
+        model.loadNode("/a/x/y");
+        model.pathsChanged(Arrays.asList("/a/x/y/z", "/a/x", "/a/x/y"));
+        Assert.assertEquals(Arrays.asList("removed /a [1]"), events);
+    }
+
+    @Test
+    public void testUnload() {
+        ZookeeperTreeModel.Node a = model.loadNode("/a/b").getParent();
+        Assert.assertTrue(a.isLoaded());
+
+        model.unload(a);
+        Assert.assertFalse(a.isLoaded());
+        Assert.assertEquals(Arrays.asList("structure /a"), events);
+        Assert.assertNull(model.getNode("/a/b"));
+
+        model.setPathStore(new PathStore());
+        Assert.assertEquals(0, model.getChildCount(model.getRoot()));
+    }
+
+    @Test
+    public void testSiblingsAreSorted() {
+        model.getChildCount(model.getRoot());
+        for (String name : new String[]{"b", "0", "z", "ab"}) {
+            paths.add("/" + name);
+            model.pathChanged("/" + name);
+        }
+        ZookeeperTreeModel.Node root = model.getRoot();
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < model.getChildCount(root); ++i) {
+            ZookeeperTreeModel.Node child = (ZookeeperTreeModel.Node) model.getChild(root, i);
+            names.add(child.getName());
+            Assert.assertEquals(i, model.getIndexOfChild(root, child));
+        }
+        Assert.assertEquals(Arrays.asList("0", "a", "ab", "b", "c", "z"), names);
+        Assert.assertEquals(-1, model.getIndexOfChild(model.getNode("/a"), model.getNode("/b")));
+    }
+
+    @Test
+    public void testPaging() {
+        paths.add("/q");
+        for (int i = 0; i < 50; i += 2) {
+            paths.add(String.format("/q/item-%04d", i));
+        }
+        listen(new ZookeeperTreeModel(paths, 10));
+        ZookeeperTreeModel.Node q = model.loadNode("/q");
+        Assert.assertFalse(model.isPaged(q));
+
+        // Only the page is loaded, between two placeholders.
+        Assert.assertEquals(12, model.getChildCount(q));
+        Assert.assertTrue(model.isPaged(q));
+        ZookeeperTreeModel.Node previous = (ZookeeperTreeModel.Node) model.getChild(q, 0);
+        ZookeeperTreeModel.Placeholder next = (ZookeeperTreeModel.Placeholder) model.getChild(q, 11);
+        Assert.assertTrue(previous instanceof ZookeeperTreeModel.Placeholder);
+        Assert.assertTrue(model.isLeaf(next));
+        Assert.assertEquals("/q/item-0000", ((ZookeeperTreeModel.Node) model.getChild(q, 1)).getPath());
+        Assert.assertEquals("/q/item-0018", ((ZookeeperTreeModel.Node) model.getChild(q, 10)).getPath());
+        Assert.assertEquals(11, model.getIndexOfChild(q, next));
+        Assert.assertEquals(10, model.getIndexOfChild(q, model.getNode("/q/item-0018")));
+        Assert.assertNull(model.getNode("/q/item-0020"));
+        Assert.assertEquals("1-10 of 25 children", previous.toString());
+        Assert.assertEquals("next 10 of 15 more", next.toString());
+
+        // Children added within the page are inserted, others only counted.
+        paths.add("/q/item-0001");
+        paths.add("/q/item-0031");
+        model.pathsChanged(Arrays.asList("/q/item-0001", "/q/item-0031"));
+        Assert.assertEquals(Arrays.asList("inserted /q [2]", "changed /q [0, 12]"), events);
+        Assert.assertEquals("1-11 of 27 children", previous.toString());
+        Assert.assertEquals("next 10 of 16 more", next.toString());
+
+        events.clear();
+        Assert.assertTrue(model.showPage(next));
+        Assert.assertEquals(Arrays.asList("structure /q"), events);
+        Assert.assertEquals("/q/item-0020", ((ZookeeperTreeModel.Node) model.getChild(q, 1)).getPath());
+        Assert.assertEquals("previous 10 | 12-21 of 27 children", previous.toString());
+        Assert.assertTrue(model.showPage((ZookeeperTreeModel.Placeholder) previous));
+        Assert.assertFalse(model.showPage((ZookeeperTreeModel.Placeholder) previous));
+
+        model.setFilter(q, "3");
+        Assert.assertEquals("3", model.getFilter(q));
+        Assert.assertEquals(8, model.getChildCount(q));
+        Assert.assertEquals("1-6 of 6 children matching \"3\"", previous.toString());
+        Assert.assertEquals("end", next.toString());
+
+        // Loading a path moves to its page, dropping a filter it does not match.
+        ZookeeperTreeModel.Node last = model.loadNode("/q/item-0048");
+        Assert.assertEquals("", model.getFilter(q));
+        Assert.assertEquals(7, model.getIndexOfChild(q, last));
+        Assert.assertEquals("previous 10 | 21-27 of 27 children", previous.toString());
+
+        events.clear();
+        paths.remove("/q/item-0048");
+        paths.remove("/q/item-0000");
+        model.pathsChanged(Arrays.asList("/q/item-0048", "/q/item-0000"));
+        Assert.assertEquals(Arrays.asList("removed /q [7]", "changed /q [0, 7]"), events);
+        Assert.assertEquals("previous 10 | 20-25 of 25 children", previous.toString());
+    }
+
+    @Test
+    public void testPagedOnceTooManyChildren() {
+        paths.add("/q");
+        for (int i = 0; i < 10; ++i) {
+            paths.add("/q/" + i);
+        }
+        listen(new ZookeeperTreeModel(paths, 10));
+        ZookeeperTreeModel.Node q = model.loadNode("/q");
+        Assert.assertEquals(10, model.getChildCount(q));
+
+        paths.add("/q/x");
+        model.pathChanged("/q/x");
+        Assert.assertEquals(Arrays.asList("structure /q"), events);
+        Assert.assertEquals(12, model.getChildCount(q));
+        Assert.assertTrue(model.isPaged(q));
+
+        // Paging stops once the children fit a page again.
+        paths.remove("/q/x");
+        model.unload(q);
+        Assert.assertEquals(10, model.getChildCount(q));
+        Assert.assertFalse(model.isPaged(q));
+    }
+
+    @Test
+    public void testGroupSequential() {
+        String protectedName = "_c_1b4e28ba-2fa1-11d2-883f-0016d3cca427-lock-0000000105";
+        paths.add("/locks");
+        for (int i = 100; i < 105; ++i) {
+            paths.add(String.format("/locks/lock-%010d", i));
+        }
+        paths.add("/locks/" + protectedName);
+        paths.add("/locks/other");
+        paths.add("/locks/q-0000000001");
+
+        model.setGroupSequential(true);
+        Assert.assertEquals(Arrays.asList("structure /"), events);
+        ZookeeperTreeModel.Node locks = model.loadNode("/locks");
+        Assert.assertEquals(3, model.getChildCount(locks));
+        ZookeeperTreeModel.Range range = (ZookeeperTreeModel.Range) model.getChild(locks, 0);
+        Assert.assertEquals("lock-[0000000100..0000000105] (6)", range.toString());
+        Assert.assertEquals("/locks", range.getPath());
+        Assert.assertFalse(range.isZookeeperNode());
+        Assert.assertFalse(model.isLeaf(range));
+        Assert.assertEquals("other", ((ZookeeperTreeModel.Node) model.getChild(locks, 1)).getName());
+        Assert.assertEquals("q-", ((ZookeeperTreeModel.Range) model.getChild(locks, 2)).getPrefix());
+
+        // Grouped nodes are in sequence order, whatever their name.
+        ZookeeperTreeModel.Node node = model.loadNode("/locks/" + protectedName);
+        Assert.assertEquals("/locks/" + protectedName, node.getPath());
+        Assert.assertSame(range, node.getParent());
+        Assert.assertEquals(5, model.getIndexOfChild(range, node));
+        Assert.assertEquals("/locks/lock-0000000100", ((ZookeeperTreeModel.Node) model.getChild(range, 0)).getPath());
+
+        events.clear();
+        paths.add("/locks/lock-0000000099");
+        paths.remove("/locks/q-0000000001");
+        model.pathsChanged(Arrays.asList("/locks/lock-0000000099", "/locks/q-0000000001"));
+        Assert.assertEquals(Arrays.asList("inserted /locks [0]", "removed /locks [2]", "changed /locks [0]"), events);
+        Assert.assertEquals("lock-[0000000099..0000000105] (7)", range.toString());
+        Assert.assertEquals(2, model.getChildCount(locks));
+
+        model.setGroupSequential(false);
+        Assert.assertEquals(8, model.getChildCount(model.loadNode("/locks")));
+    }
+
+    /**
+     * Broker registry style parent, siblings reported in no particular order as when crawled.
+     */
+    @Test
+    public void testSiblingBenchmark() {
+        List<String> names = new ArrayList<String>(SIBLING_COUNT);
+        for (int i = 0; i < SIBLING_COUNT; ++i) {
+            names.add("broker-" + i);
+        }
+        Collections.shuffle(names, new Random(42));
+
+        paths.add("/brokers");
+        paths.add("/brokers/ids");
+        // Paging is off, so every sibling is a row of the parent.
+        ZookeeperTreeModel model = new ZookeeperTreeModel(paths, Integer.MAX_VALUE);
+        ZookeeperTreeModel.Node parent = model.loadNode("/brokers/ids");
+        Assert.assertEquals(0, model.getChildCount(parent));
+
+        // Only the tree is timed, the sync has already stored the paths when it reports them.
+        for (String name : names) {
+            paths.add("/brokers/ids/" + name);
+        }
+        long start = System.currentTimeMillis();
+        for (String name : names) {
+            model.pathChanged("/brokers/ids/" + name);
+        }
+        long addMillis = System.currentTimeMillis() - start;
+        Assert.assertEquals(SIBLING_COUNT, model.getChildCount(parent));
+
+        start = System.currentTimeMillis();
+        for (String name : names) {
+            Assert.assertNotNull(model.getNode("/brokers/ids/" + name));
+        }
+        long findMillis = System.currentTimeMillis() - start;
+
+        for (String name : names) {
+            paths.remove("/brokers/ids/" + name);
+        }
+        start = System.currentTimeMillis();
+        for (String name : names) {
+            model.pathChanged("/brokers/ids/" + name);
+        }
+        long removeMillis = System.currentTimeMillis() - start;
+        Assert.assertEquals(0, model.getChildCount(parent));
+
+        logger.info("{} siblings: added in {}ms, found in {}ms, removed in {}ms",
+                SIBLING_COUNT, addMillis, findMillis, removeMillis);
+
+        // A linear scan per sibling takes minutes.
+        Assert.assertTrue("adding siblings should not be quadratic", addMillis < 10000);
+        Assert.assertTrue("removing siblings should not be quadratic", removeMillis < 10000);
+    }
+}
@@ -0,0 +1,66 @@
+package com.kostbot.zoodirector.ui.workers;
+
+import com.kostbot.zoodirector.zookeepersync.NodeData;
+import com.kostbot.zoodirector.zookeepersync.ZookeeperSync;
+import com.kostbot.zoodirector.zookeepersync.ZookeeperTestBase;
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryOneTime;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class BulkLoadDataWorkerTest extends ZookeeperTestBase {
+
+    @Test
+    public void testChunkedLoad() throws Exception {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(server.getConnectString(), new RetryOneTime(1000));
+        client.start();
+        try {
+            int count = BulkLoadDataWorker.CHUNK_SIZE * 2 + 5;
+            final List<String> paths = new ArrayList<String>();
+            for (int i = 0; i < count; ++i) {
+                String path = "/bulk/" + i;
+                client.create().creatingParentsIfNeeded().forPath(path, Integer.toString(i).getBytes());
+                paths.add(path);
+            }
+
+            final List<String> loadedPaths = Collections.synchronizedList(new ArrayList<String>());
+            final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+            final int[] completed = {-1};
+            final CountDownLatch done = new CountDownLatch(1);
+
+            new BulkLoadDataWorker(new ZookeeperSync(client), paths, new BulkLoadDataWorker.Callback() {
+                @Override
+                public void onProgress(Map<String, NodeData> nodeData, int loaded, int total) {
+                    for (Map.Entry<String, NodeData> entry : nodeData.entrySet()) {
+                        Assert.assertEquals(entry.getKey(), "/bulk/" + new String(entry.getValue().data));
+                        loadedPaths.add(entry.getKey());
+                    }
+                    progress.add(loaded);
+                }
+
+                @Override
+                public void onComplete(int loaded) {
+                    completed[0] = loaded;
+                    done.countDown();
+                }
+            }).execute();
+
+            Assert.assertTrue("load should complete", done.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals("all chunks reported before completion", paths, loadedPaths);
+            Assert.assertEquals(3, progress.size());
+            Assert.assertEquals(BulkLoadDataWorker.CHUNK_SIZE, (int) progress.get(0));
+            Assert.assertEquals(count, (int) progress.get(2));
+            Assert.assertEquals(count, completed[0]);
+        } finally {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BatchDispatcherTest {
+
+    private static class RecordingListener implements ZookeeperSync.BatchListener {
+        final List<List<ZookeeperSync.Event>> batches =
+                Collections.synchronizedList(new ArrayList<List<ZookeeperSync.Event>>());
+
+        @Override
+        public void process(List<ZookeeperSync.Event> events) {
+            batches.add(events);
+        }
+    }
+
+    private static void awaitBatches(final RecordingListener listener, final int count) {
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return listener.batches.size() == count;
+            }
+        });
+        Assert.assertEquals(count, listener.batches.size());
+    }
+
+    private static void assertEvent(ZookeeperSync.Event event, ZookeeperSync.Event.Type type, String path) {
+        Assert.assertEquals(type, event.type);
+        Assert.assertEquals(path, event.path);
+    }
+
+    @Test
+    public void testCoalesceWithinWindow() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        BatchDispatcher dispatcher = new BatchDispatcher(listener, 500L, 1000, "test-batch");
+
+        dispatcher.offer(ZookeeperSync.Event.Add("/transient"));
+        dispatcher.offer(ZookeeperSync.Event.Add("/added"));
+        dispatcher.offer(ZookeeperSync.Event.Update("/added"));
+        dispatcher.offer(ZookeeperSync.Event.Update("/updated"));
+        dispatcher.offer(ZookeeperSync.Event.Update("/updated"));
+        dispatcher.offer(ZookeeperSync.Event.Delete("/recreated"));
+        dispatcher.offer(ZookeeperSync.Event.Add("/recreated"));
+        dispatcher.offer(ZookeeperSync.Event.Update("/deleted"));
+        dispatcher.offer(ZookeeperSync.Event.Delete("/transient"));
+        dispatcher.offer(ZookeeperSync.Event.Delete("/deleted/child"));
+        dispatcher.offer(ZookeeperSync.Event.Delete("/deleted"));
+
+        awaitBatches(listener, 1);
+
+        List<ZookeeperSync.Event> batch = listener.batches.get(0);
+        Assert.assertEquals("add followed by delete should cancel out", 5, batch.size());
+        assertEvent(batch.get(0), ZookeeperSync.Event.Type.add, "/added");
+        assertEvent(batch.get(1), ZookeeperSync.Event.Type.update, "/updated");
+        assertEvent(batch.get(2), ZookeeperSync.Event.Type.update, "/recreated");
+        assertEvent(batch.get(3), ZookeeperSync.Event.Type.delete, "/deleted/child");
+        assertEvent(batch.get(4), ZookeeperSync.Event.Type.delete, "/deleted");
+
+        Assert.assertEquals(11, dispatcher.getStats().delivered + dispatcher.getStats().coalesced);
+        dispatcher.close();
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        BatchDispatcher dispatcher = new BatchDispatcher(listener, 60000L, 10, "test-batch");
+
+        for (int i = 0; i < 25; ++i) {
+            dispatcher.offer(ZookeeperSync.Event.Add("/" + i));
+        }
+
+        awaitBatches(listener, 2);
+        Assert.assertEquals(10, listener.batches.get(0).size());
+        Assert.assertEquals(10, listener.batches.get(1).size());
+        assertEvent(listener.batches.get(1).get(0), ZookeeperSync.Event.Type.add, "/10");
+        Assert.assertEquals("remainder should wait for the window", 5, dispatcher.getStats().lag);
+        dispatcher.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DataCacheTest {
+
+    private static NodeData nodeData(String path, int size) {
+        return new NodeData(path, new Stat(), new byte[size]);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        NodeData a = nodeData("/a", 1000);
+        NodeData b = nodeData("/b", 1000);
+        NodeData c = nodeData("/c", 1000);
+
+        // Room for two of the entries.
+        DataCache cache = new DataCache(2500);
+        Assert.assertTrue(cache.put(a, cache.getGeneration()));
+        Assert.assertTrue(cache.put(b, cache.getGeneration()));
+        Assert.assertSame(a, cache.get("/a"));
+
+        cache.put(c, cache.getGeneration());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNull("least recently used entry should be evicted", cache.get("/b"));
+        Assert.assertSame(a, cache.get("/a"));
+        Assert.assertSame(c, cache.get("/c"));
+
+        cache.setMaxBytes(1500);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertSame(c, cache.get("/c"));
+
+        Assert.assertFalse("entry larger than the cache should not be cached",
+                cache.put(nodeData("/big", 2000), cache.getGeneration()));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        DataCache cache = new DataCache(10000);
+        cache.put(nodeData("/a", 10), cache.getGeneration());
+        long bytes = cache.getBytes();
+
+        cache.put(nodeData("/b", 10), cache.getGeneration());
+        cache.invalidate("/b");
+        Assert.assertNull(cache.get("/b"));
+        Assert.assertEquals(bytes, cache.getBytes());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testReadRacingInvalidation() {
+        DataCache cache = new DataCache(10000);
+
+        long generation = cache.getGeneration();
+        // Node changes while its data is being read.
+        cache.invalidate("/a");
+        Assert.assertFalse("stale read should not be cached", cache.put(nodeData("/a", 10), generation));
+        Assert.assertNull(cache.get("/a"));
+
+        Assert.assertTrue(cache.put(nodeData("/a", 10), cache.getGeneration()));
+    }
+
+    @Test
+    public void testHitMissCount() {
+        DataCache cache = new DataCache(10000);
+        cache.get("/a");
+        cache.put(nodeData("/a", 10), cache.getGeneration());
+        cache.get("/a");
+        cache.get("/a");
+
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+}
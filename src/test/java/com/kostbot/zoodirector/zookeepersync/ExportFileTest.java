@@ -0,0 +1,80 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExportFileTest {
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("zoodirector-", ".zdex");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    private static List<NodeData> read(File file) throws IOException {
+        final List<NodeData> nodes = new ArrayList<NodeData>();
+        ExportFile.read(file, new ExportFile.Visitor() {
+            @Override
+            public void visit(NodeData nodeData) {
+                nodes.add(nodeData);
+            }
+        });
+        return nodes;
+    }
+
+    private void write(int count) throws IOException {
+        ExportFile.Writer writer = new ExportFile.Writer(file);
+        writer.write("/", new NodeData("/base", new Stat(), new byte[0]));
+        for (int i = 1; i < count; ++i) {
+            Stat stat = new Stat(i, i + 1, i + 2, i + 3, i, 0, 0, 0, 0, 0, i + 4);
+            writer.write("/service/été-" + i, new NodeData("/base/service/été-" + i, stat, new byte[i % 7]));
+        }
+        writer.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        write(1000);
+
+        List<NodeData> nodes = read(file);
+        Assert.assertEquals(1000, nodes.size());
+        Assert.assertEquals("/", nodes.get(0).path);
+
+        NodeData node = nodes.get(123);
+        Assert.assertEquals("/service/été-123", node.path);
+        Assert.assertEquals(123 % 7, node.data.length);
+        Assert.assertEquals(node.data.length, node.stat.getDataLength());
+        Assert.assertEquals(123, node.stat.getCzxid());
+        Assert.assertEquals(124, node.stat.getMzxid());
+        Assert.assertEquals(125, node.stat.getCtime());
+        Assert.assertEquals(126, node.stat.getMtime());
+        Assert.assertEquals(127, node.stat.getPzxid());
+        Assert.assertEquals(123, node.stat.getVersion());
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedExport() throws Exception {
+        write(100);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() / 2);
+        raf.close();
+
+        read(file);
+    }
+}
@@ -0,0 +1,104 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.apache.zookeeper.CreateMode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+public class JsonLinesFileTest {
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("zoodirector-", ".jsonl");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    private static List<NodeEntry> read(File file, String basePath) throws IOException {
+        List<NodeEntry> entries = new ArrayList<NodeEntry>();
+        JsonLinesFile.Reader reader = new JsonLinesFile.Reader(file, basePath);
+        try {
+            while (reader.hasNext()) {
+                entries.add(reader.next());
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    private void write(String content, boolean gzip) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        out.write(content.getBytes("UTF-8"));
+        out.close();
+    }
+
+    @Test
+    public void testParseObject() {
+        Map<String, Object> fields = JsonLinesFile.parseObject(
+                " {\"path\" : \"/a\\\"b\\u00e9\\n\", \"n\":-12, \"d\":1.5e3, \"t\":true, \"z\":null} ");
+        Assert.assertEquals("/a\"bé\n", fields.get("path"));
+        Assert.assertEquals(-12L, fields.get("n"));
+        Assert.assertEquals(1500.0, fields.get("d"));
+        Assert.assertEquals(Boolean.TRUE, fields.get("t"));
+        Assert.assertTrue(fields.containsKey("z"));
+        Assert.assertNull(fields.get("z"));
+
+        Assert.assertTrue(JsonLinesFile.parseObject("{}").isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseNestedObject() {
+        JsonLinesFile.parseObject("{\"stat\":{\"version\":1}}");
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        for (boolean gzip : new boolean[]{false, true}) {
+            write("{\"path\":\"/\",\"data\":\"root\"}\n" +
+                    "{\"path\":\"/a\",\"data\":\"été\",\"mode\":\"persistent\",\"version\":3}\n" +
+                    "\n" +
+                    "{\"path\":\"/a/b\",\"dataHex\":\"00ff\",\"mode\":\"EPHEMERAL\"}\n", gzip);
+
+            List<NodeEntry> entries = read(file, "/base");
+            Assert.assertEquals("root entry should be skipped", 2, entries.size());
+            Assert.assertEquals("/base/a", entries.get(0).path);
+            Assert.assertEquals("été", new String(entries.get(0).data, "UTF-8"));
+            Assert.assertEquals(CreateMode.PERSISTENT, entries.get(0).mode);
+            Assert.assertEquals("/base/a/b", entries.get(1).path);
+            Assert.assertArrayEquals(new byte[]{0, (byte) 0xff}, entries.get(1).data);
+            Assert.assertEquals(CreateMode.EPHEMERAL, entries.get(1).mode);
+
+            Assert.assertEquals("/a/b", read(file, "/").get(1).path);
+        }
+    }
+
+    @Test
+    public void testReadInvalidLine() throws Exception {
+        write("{\"path\":\"/a\"}\n{\"path\":\"a/\"}\n", false);
+        try {
+            read(file, "/");
+            Assert.fail("invalid path should be rejected");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("line 2"));
+        }
+    }
+}
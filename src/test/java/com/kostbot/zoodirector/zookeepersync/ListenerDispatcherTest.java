@@ -0,0 +1,126 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+public class ListenerDispatcherTest {
+
+    /**
+     * Listener which holds up delivery of the first event until released.
+     */
+    private static class GatedListener implements ZookeeperSync.Listener {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final List<ZookeeperSync.Event> received = Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+
+        @Override
+        public void process(ZookeeperSync.Event e) {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(e);
+        }
+    }
+
+    private static ListenerDispatcher blockFirst(GatedListener listener, ZookeeperSync.Backpressure backpressure,
+                                                 int capacity) throws InterruptedException {
+        ListenerDispatcher dispatcher = new ListenerDispatcher(listener, backpressure, capacity, "test-listener");
+        dispatcher.offer(ZookeeperSync.Event.Add("/first"));
+        listener.started.await();
+        return dispatcher;
+    }
+
+    private static void awaitReceived(final GatedListener listener, final int count) throws Exception {
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return listener.received.size() == count;
+            }
+        });
+        Assert.assertEquals(count, listener.received.size());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        GatedListener listener = new GatedListener();
+        ListenerDispatcher dispatcher = blockFirst(listener, ZookeeperSync.Backpressure.dropOldest, 2);
+
+        for (int i = 0; i < 5; ++i) {
+            dispatcher.offer(ZookeeperSync.Event.Add("/" + i));
+        }
+
+        ZookeeperSync.ListenerStats stats = dispatcher.getStats();
+        Assert.assertEquals(2, stats.lag);
+        Assert.assertEquals(3, stats.dropped);
+
+        listener.gate.countDown();
+        awaitReceived(listener, 3);
+
+        Assert.assertEquals("/first", listener.received.get(0).path);
+        Assert.assertEquals("/3", listener.received.get(1).path);
+        Assert.assertEquals("/4", listener.received.get(2).path);
+        dispatcher.close();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        GatedListener listener = new GatedListener();
+        ListenerDispatcher dispatcher = blockFirst(listener, ZookeeperSync.Backpressure.coalesce, 1);
+
+        dispatcher.offer(ZookeeperSync.Event.Update("/a"));
+        for (int i = 0; i < 10; ++i) {
+            dispatcher.offer(ZookeeperSync.Event.Update("/b"));
+        }
+        dispatcher.offer(ZookeeperSync.Event.Delete("/a"));
+        dispatcher.offer(ZookeeperSync.Event.Add("/a"));
+        dispatcher.offer(ZookeeperSync.Event.Add("/a/c"));
+        dispatcher.offer(ZookeeperSync.Event.Update("/a"));
+
+        ZookeeperSync.ListenerStats stats = dispatcher.getStats();
+        Assert.assertEquals("one queued update per path", 6, stats.lag);
+        Assert.assertEquals(9, stats.coalesced);
+        Assert.assertEquals(0, stats.dropped);
+
+        listener.gate.countDown();
+        awaitReceived(listener, 7);
+
+        List<String> received = new ArrayList<String>();
+        for (ZookeeperSync.Event event : listener.received.subList(1, 7)) {
+            received.add(event.type + " " + event.path);
+        }
+        Assert.assertEquals("adds and deletes should keep their order, an update after a re-add is kept",
+                Arrays.asList("update /a", "update /b", "delete /a", "add /a", "add /a/c", "update /a"), received);
+        dispatcher.close();
+    }
+
+    @Test
+    public void testSlowListenerDoesNotBlockOffer() throws Exception {
+        GatedListener listener = new GatedListener();
+        final ListenerDispatcher dispatcher = blockFirst(listener, ZookeeperSync.Backpressure.block, 1000);
+
+        for (int i = 0; i < 1000; ++i) {
+            dispatcher.offer(ZookeeperSync.Event.Update("/" + i));
+        }
+        Assert.assertEquals(1000, dispatcher.getStats().maxLag);
+
+        listener.gate.countDown();
+        awaitReceived(listener, 1001);
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return dispatcher.getStats().delivered == 1001;
+            }
+        });
+        Assert.assertEquals(1001, dispatcher.getStats().delivered);
+        dispatcher.close();
+    }
+}
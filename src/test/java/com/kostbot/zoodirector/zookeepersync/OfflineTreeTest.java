@@ -0,0 +1,177 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryOneTime;
+import com.netflix.curator.test.InstanceSpec;
+import com.netflix.curator.test.TestingServer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.data.Stat;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class OfflineTreeTest {
+    private File dataDir;
+    private InstanceSpec spec;
+
+    @Before
+    public void before() throws IOException {
+        dataDir = File.createTempFile("zoodirector-", "-data");
+        Assert.assertTrue(dataDir.delete() && dataDir.mkdir());
+        spec = new InstanceSpec(dataDir, InstanceSpec.getRandomPort(), -1, -1, false, -1);
+    }
+
+    @After
+    public void after() {
+        delete(dataDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private CuratorFramework newClient() {
+        CuratorFramework client = CuratorFrameworkFactory.newClient(spec.getConnectString(), new RetryOneTime(1000));
+        client.start();
+        return client;
+    }
+
+    /**
+     * Write a data directory with a snapshot followed by a transaction log.
+     *
+     * @return data and Stat of all nodes as last seen by the server
+     */
+    private Map<String, NodeData> writeDataDir() throws Exception {
+        TestingServer server = new TestingServer(spec);
+        CuratorFramework client = newClient();
+        client.create().forPath("/a", "1".getBytes());
+        client.create().forPath("/a/b", "snapshot".getBytes());
+        client.create().forPath("/c", "deleted later".getBytes());
+        client.create().withMode(CreateMode.EPHEMERAL).forPath("/eph");
+        client.close();
+        server.close();
+
+        // The server takes a snapshot when it starts, everything from here on is only in the log.
+        server = new TestingServer(spec);
+        client = newClient();
+        client.setData().forPath("/a", "2".getBytes());
+        client.create().forPath("/a/new");
+        client.delete().forPath("/c");
+        client.inTransaction()
+                .create().forPath("/m1").and()
+                .create().forPath("/m1/m2", "multi".getBytes()).and()
+                .commit();
+        client.create().withMode(CreateMode.EPHEMERAL_SEQUENTIAL).forPath("/a/b/eph-");
+
+        CuratorFramework closed = newClient();
+        closed.create().withMode(CreateMode.EPHEMERAL).forPath("/closed");
+        closed.close();
+
+        Map<String, NodeData> expected = new HashMap<String, NodeData>();
+        collect(client, "/", expected);
+        // Stop without closing the client, its ephemeral node outlives the server.
+        server.close();
+        client.close();
+        return expected;
+    }
+
+    private static void collect(CuratorFramework client, String path, Map<String, NodeData> nodes)
+            throws Exception {
+        Stat stat = new Stat();
+        byte[] data = client.getData().storingStatIn(stat).forPath(path);
+        nodes.put(path, new NodeData(path, stat, data));
+        for (String child : client.getChildren().forPath(path)) {
+            collect(client, ZookeeperSync.getChildPath(path, child), nodes);
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        Map<String, NodeData> expected = writeDataDir();
+        Assert.assertFalse(expected.containsKey("/c"));
+        Assert.assertFalse(expected.containsKey("/eph"));
+        Assert.assertFalse(expected.containsKey("/closed"));
+
+        OfflineTree tree = new OfflineTree(dataDir);
+        Assert.assertFalse(tree.getLogFiles().isEmpty());
+
+        final List<String> events = new ArrayList<String>();
+        int count = tree.load(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                events.add(e.toString());
+            }
+        });
+
+        Assert.assertEquals(expected.size(), count);
+        Assert.assertEquals(expected.keySet(), tree.getPathStore().toSet());
+        for (NodeData node : expected.values()) {
+            NodeData loaded = tree.getNodeData(node.path);
+            Assert.assertNotNull(node.path, loaded);
+            Assert.assertEquals(node.path, node.stat, loaded.stat);
+            Assert.assertArrayEquals(node.path, node.data, loaded.data);
+        }
+        Assert.assertNull(tree.getNodeData("/c"));
+
+        // Snapshot nodes first, then the changes of the log.
+        Assert.assertEquals("add /", events.get(0));
+        Assert.assertTrue(events.indexOf("add /c") < events.indexOf("update /a"));
+        Assert.assertTrue(events.indexOf("update /a") < events.indexOf("delete /c"));
+        Assert.assertTrue(events.indexOf("add /m1") < events.indexOf("add /m1/m2"));
+        Assert.assertTrue(events.indexOf("add /closed") < events.indexOf("delete /closed"));
+        Assert.assertFalse(events.contains("add /eph"));
+    }
+
+    @Test
+    public void testZookeeperSync() throws Exception {
+        Map<String, NodeData> expected = writeDataDir();
+
+        ZookeeperSync zookeeperSync = new ZookeeperSync(new OfflineTree(dataDir));
+        final List<ZookeeperSync.Event> events = new ArrayList<ZookeeperSync.Event>();
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                synchronized (events) {
+                    events.add(e);
+                }
+            }
+        });
+        zookeeperSync.watch();
+
+        Assert.assertTrue(zookeeperSync.isReadOnly());
+        Assert.assertEquals(expected.keySet(), zookeeperSync.getNodes());
+        Assert.assertEquals("2", new String(zookeeperSync.getData("/a")));
+        Assert.assertEquals(expected.get("/a/b").stat, zookeeperSync.getStat("/a/b"));
+        Assert.assertEquals(expected.size(), zookeeperSync.getNodeData(expected.keySet()).size());
+
+        try {
+            zookeeperSync.setData("/a", -1, "3".getBytes());
+            Assert.fail("should be read only");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        File export = File.createTempFile("zoodirector-", ".zdex");
+        try {
+            Assert.assertEquals(4, zookeeperSync.export("/a", export, ZookeeperSync.ExportFormat.binary, null));
+        } finally {
+            export.delete();
+        }
+        zookeeperSync.close();
+    }
+}
@@ -0,0 +1,81 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class PathPatternsTest {
+
+    @Test
+    public void testRegexPrefix() {
+        Assert.assertEquals("/a/b/", PathPatterns.getRegexPrefix("/a/b/.*"));
+        Assert.assertEquals("/a/b", PathPatterns.getRegexPrefix("^/a/b$"));
+        Assert.assertEquals("/a/", PathPatterns.getRegexPrefix("/a/b?"));
+        Assert.assertEquals("/a/", PathPatterns.getRegexPrefix("/a/b*"));
+        Assert.assertEquals("/a/", PathPatterns.getRegexPrefix("/a/b{0,2}"));
+        Assert.assertEquals("/a/b", PathPatterns.getRegexPrefix("/a/b+"));
+        Assert.assertEquals("/a/", PathPatterns.getRegexPrefix("/a/(b|c)"));
+        Assert.assertEquals("", PathPatterns.getRegexPrefix("/a/b|/c"));
+        Assert.assertEquals("/a/", PathPatterns.getRegexPrefix("/a/[b|c]"));
+        Assert.assertEquals("", PathPatterns.getRegexPrefix(".*/b"));
+    }
+
+    @Test
+    public void testGlob() {
+        PathPatterns.PathPattern pattern = PathPatterns.compile("glob:/a/*/c");
+        Assert.assertEquals("/a/", pattern.getPrefix());
+        Assert.assertTrue(pattern.matches("/a/b/c"));
+        Assert.assertFalse(pattern.matches("/a/b/b/c"));
+        Assert.assertFalse(pattern.matches("/a/b/cc"));
+
+        pattern = PathPatterns.compile("glob:/a/**/c");
+        Assert.assertTrue(pattern.matches("/a/b/b/c"));
+        Assert.assertFalse(pattern.matches("/b/b/c"));
+
+        pattern = PathPatterns.compile("glob:/a.b/lock-?");
+        Assert.assertTrue(pattern.matches("/a.b/lock-1"));
+        Assert.assertFalse("dot should be literal", pattern.matches("/aXb/lock-1"));
+        Assert.assertFalse(pattern.matches("/a.b/lock-/"));
+    }
+
+    @Test
+    public void testMatch() {
+        List<PathPatterns.PathPattern> compiled = new ArrayList<PathPatterns.PathPattern>();
+        for (int i = 0; i < 100; ++i) {
+            compiled.add(PathPatterns.compile("/service" + i + "/.*"));
+        }
+        PathPatterns.PathPattern anywhere = PathPatterns.compile(".*/config");
+        PathPatterns.PathPattern glob = PathPatterns.compile("glob:/service1*/config");
+        compiled.add(anywhere);
+        compiled.add(glob);
+        PathPatterns patterns = new PathPatterns(compiled);
+
+        Assert.assertEquals(102, patterns.getPatterns().size());
+        Assert.assertTrue(patterns.match("/other/node").isEmpty());
+        Assert.assertEquals(1, patterns.match("/service1/node").size());
+        Assert.assertEquals(compiled.get(42), patterns.match("/service42/node").get(0));
+
+        List<PathPatterns.PathPattern> matched = patterns.match("/service12/config");
+        Assert.assertEquals(3, matched.size());
+        Assert.assertTrue(matched.contains(compiled.get(12)));
+        Assert.assertTrue(matched.contains(anywhere));
+        Assert.assertTrue(matched.contains(glob));
+
+        Assert.assertEquals(1, patterns.match("/config").size());
+
+        Assert.assertEquals(1, compiled.get(1).getMatchCount());
+        Assert.assertEquals(1, compiled.get(12).getMatchCount());
+        Assert.assertEquals(0, compiled.get(99).getMatchCount());
+        Assert.assertEquals(2, anywhere.getMatchCount());
+        Assert.assertEquals(1, glob.getMatchCount());
+    }
+
+    @Test
+    public void testEmpty() {
+        PathPatterns patterns = new PathPatterns();
+        Assert.assertTrue(patterns.isEmpty());
+        Assert.assertTrue(patterns.match("/a").isEmpty());
+    }
+}
@@ -0,0 +1,250 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class PathStoreTest {
+    private static final Logger logger = LoggerFactory.getLogger(PathStoreTest.class);
+
+    private static final int FOOTPRINT_NODE_COUNT = 1000000;
+
+    /**
+     * Service discovery style path, 1000 services with 1000 instances each.
+     */
+    private static String discoveryPath(int i) {
+        return "/discovery/production/us-east-1/service-" + (i / 1000) + "/instances/instance-" + (i % 1000);
+    }
+
+    private static List<String> sorted(List<String> values) {
+        Collections.sort(values);
+        return values;
+    }
+
+    @Test
+    public void testAddRemoveContains() {
+        PathStore store = new PathStore();
+
+        Assert.assertFalse(store.contains("/"));
+        Assert.assertTrue(store.add("/"));
+        Assert.assertTrue(store.add("/a"));
+        Assert.assertTrue(store.add("/a/b"));
+        Assert.assertFalse("path should only be added once", store.add("/a/b"));
+        Assert.assertEquals(3, store.size());
+
+        Assert.assertTrue(store.contains("/"));
+        Assert.assertTrue(store.contains("/a/b"));
+        Assert.assertFalse(store.contains("/a/c"));
+        Assert.assertFalse(store.contains("/b"));
+
+        Assert.assertTrue(store.remove("/a/b"));
+        Assert.assertFalse("path should only be removed once", store.remove("/a/b"));
+        Assert.assertFalse(store.contains("/a/b"));
+        Assert.assertTrue(store.contains("/a"));
+        Assert.assertEquals(2, store.size());
+    }
+
+    @Test
+    public void testAncestorsAreNotImplicitlyPresent() {
+        PathStore store = new PathStore();
+
+        store.add("/a/b/c");
+
+        Assert.assertEquals(1, store.size());
+        Assert.assertFalse(store.contains("/a"));
+        Assert.assertFalse(store.contains("/a/b"));
+        Assert.assertEquals("intermediate nodes are not children", 0, store.getChildCount("/"));
+        Assert.assertFalse(store.hasChildren("/a"));
+
+        store.remove("/a/b/c");
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(-1, store.find("/a"));
+    }
+
+    @Test
+    public void testRemovedParentKeepsPresentChildren() {
+        PathStore store = new PathStore();
+
+        store.add("/a");
+        store.add("/a/b");
+        store.remove("/a");
+
+        Assert.assertFalse(store.contains("/a"));
+        Assert.assertTrue(store.contains("/a/b"));
+        Assert.assertEquals(Arrays.asList("b"), store.getChildren("/a"));
+    }
+
+    @Test
+    public void testChildren() {
+        PathStore store = new PathStore();
+
+        store.add("/");
+        store.add("/p");
+        for (int i = 0; i < 100; ++i) {
+            store.add("/p/" + i);
+        }
+
+        Assert.assertEquals(100, store.getChildCount("/p"));
+        Assert.assertTrue(store.hasChild("/p", "42"));
+        Assert.assertFalse(store.hasChild("/p", "100"));
+        Assert.assertFalse(store.hasChild("/q", "42"));
+        Assert.assertTrue(store.hasChildren("/p"));
+        Assert.assertFalse(store.hasChildren("/p/42"));
+        Assert.assertFalse(store.hasChildren("/q"));
+
+        for (int i = 0; i < 100; i += 2) {
+            store.remove("/p/" + i);
+        }
+
+        List<String> children = store.getChildren("/p");
+        Assert.assertEquals(50, children.size());
+        for (String child : children) {
+            Assert.assertEquals(1, Integer.parseInt(child) % 2);
+        }
+        Assert.assertEquals(sorted(Arrays.asList("p")), sorted(store.getChildren("/")));
+        Assert.assertTrue(store.getChildren("/missing").isEmpty());
+    }
+
+    @Test
+    public void testToSet() {
+        PathStore store = new PathStore();
+
+        Set<String> expected = new HashSet<String>();
+        expected.add("/");
+        for (int i = 0; i < 2000; ++i) {
+            expected.add(discoveryPath(i));
+        }
+        expected.add("/discovery");
+
+        for (String path : expected) {
+            store.add(path);
+        }
+
+        Assert.assertEquals(expected, store.toSet());
+    }
+
+    @Test
+    public void testSegmentsAreShared() {
+        PathStore store = new PathStore();
+
+        store.add("/a/name");
+        store.add("/b/name");
+
+        String name = new String("name");
+        Assert.assertNotSame(name, store.intern(name));
+        Assert.assertEquals(name, store.intern(name));
+
+        store.remove("/a/name");
+        store.remove("/b/name");
+        Assert.assertSame("unused segments should be released", name, store.intern(name));
+    }
+
+    @Test
+    public void testSequentialNames() {
+        PathStore store = new PathStore();
+
+        Set<String> expected = new LinkedHashSet<String>();
+        for (int i = 0; i < 1000; ++i) {
+            expected.add(String.format("lock-%010d", i));
+        }
+        // Names ending in taken sequence numbers, and sequence numbers which overflow
+        expected.add("lock-");
+        expected.add("other0000000001");
+        expected.add("9999999999");
+        for (String name : expected) {
+            Assert.assertTrue(store.add("/locks/" + name));
+        }
+        // locks, lock-, other0000000001 and 9999999999
+        Assert.assertEquals("sequential names should share their prefix", 4, store.getSegmentCount());
+
+        Assert.assertEquals(expected, new HashSet<String>(store.getChildren("/locks")));
+        for (String name : expected) {
+            Assert.assertTrue(store.contains("/locks/" + name));
+            Assert.assertTrue(store.hasChild("/locks", name));
+        }
+        Assert.assertFalse(store.contains("/locks/lock-0000001000"));
+        Assert.assertFalse(store.contains("/locks/other0000000002"));
+        Assert.assertFalse(store.contains("/locks/lock0000000001"));
+
+        Assert.assertTrue(store.remove("/locks/lock-0000000001"));
+        Assert.assertFalse(store.contains("/locks/lock-0000000001"));
+        Assert.assertTrue(store.contains("/locks/other0000000001"));
+        Assert.assertTrue(store.remove("/locks/other0000000001"));
+        Assert.assertTrue(store.add("/locks/other0000000001"));
+        Assert.assertTrue(store.contains("/locks/other0000000001"));
+
+        store.add("/locks/lock-0000000002/child");
+        Assert.assertTrue(store.toSet().contains("/locks/lock-0000000002/child"));
+    }
+
+    @Test
+    public void testNodeReuseAfterRemoval() {
+        PathStore store = new PathStore();
+
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < 1000; ++i) {
+                store.add("/r/" + round + "/" + i);
+            }
+            for (int i = 0; i < 1000; ++i) {
+                Assert.assertTrue(store.remove("/r/" + round + "/" + i));
+            }
+            Assert.assertEquals(0, store.size());
+            Assert.assertEquals(-1, store.find("/r"));
+        }
+    }
+
+    @Test
+    public void testStat() {
+        PathStore store = new PathStore();
+
+        Assert.assertFalse("stats are only kept for present paths", store.setChildStat("/a", 1, 2L));
+        store.add("/a");
+        Assert.assertEquals(-1, store.getCversion("/a"));
+        Assert.assertEquals(-1, store.getVersion("/a"));
+
+        Assert.assertTrue(store.setChildStat("/a", 1, 2L));
+        Assert.assertTrue(store.setDataStat("/a", 3));
+        Assert.assertEquals(1, store.getCversion("/a"));
+        Assert.assertEquals(2L, store.getPzxid("/a"));
+        Assert.assertEquals(3, store.getVersion("/a"));
+
+        store.remove("/a");
+        store.add("/a");
+        Assert.assertEquals("stats should be reset when a path is removed", -1, store.getCversion("/a"));
+    }
+
+    /**
+     * Smallest heap a HashSet<String> could hold the path in: String and byte array headers with one byte per
+     * character, a hash map node and a compressed table reference at the default load factor.
+     */
+    private static long hashSetMinBytes(String path) {
+        return 24 + 16 + path.length() + 32 + 4 * 2;
+    }
+
+    @Test
+    public void testHeapFootprint() {
+        PathStore store = new PathStore();
+        long hashSetBytes = 0;
+        for (int i = 0; i < FOOTPRINT_NODE_COUNT; ++i) {
+            String path = discoveryPath(i);
+            store.add(path);
+            hashSetBytes += hashSetMinBytes(path);
+        }
+        Assert.assertEquals(FOOTPRINT_NODE_COUNT, store.size());
+        long storeBytes = store.getAllocatedBytes();
+
+        logger.info("{} paths: HashSet<String> at least {} bytes/path, PathStore {} bytes/path",
+                FOOTPRINT_NODE_COUNT, hashSetBytes / FOOTPRINT_NODE_COUNT, storeBytes / FOOTPRINT_NODE_COUNT);
+
+        Assert.assertTrue("path store should use well under the heap of a HashSet<String>",
+                storeBytes * 3 < hashSetBytes * 2);
+    }
+}
@@ -0,0 +1,144 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SnapshotFileTest {
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("zoodirector-", ".snapshot");
+        file.deleteOnExit();
+    }
+
+    @After
+    public void after() {
+        file.delete();
+    }
+
+    private static class Record {
+        final String path;
+        final int cversion;
+        final long pzxid;
+        final int version;
+
+        Record(String path, int cversion, long pzxid, int version) {
+            this.path = path;
+            this.cversion = cversion;
+            this.pzxid = pzxid;
+            this.version = version;
+        }
+    }
+
+    private static List<Record> read(File file) throws IOException {
+        final List<Record> records = new ArrayList<Record>();
+        SnapshotFile.read(file, new PathStore.Visitor() {
+            @Override
+            public void visit(String path, int cversion, long pzxid, int version) {
+                records.add(new Record(path, cversion, pzxid, version));
+            }
+        });
+        return records;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        PathStore store = new PathStore();
+        store.add("/");
+        store.add("/a");
+        store.add("/a/b");
+        store.add("/a/b/été");
+        store.add("/c");
+        store.setChildStat("/a", 3, 0x100000001L);
+        store.setDataStat("/a", 7);
+
+        Assert.assertEquals(5, SnapshotFile.write(file, store));
+
+        List<Record> records = read(file);
+        Assert.assertEquals(5, records.size());
+        Assert.assertEquals("/", records.get(0).path);
+
+        List<String> seen = new ArrayList<String>();
+        for (Record record : records) {
+            String parent = ZookeeperSync.getParent(record.path);
+            Assert.assertTrue(record.path + " should follow its parent", parent == null || seen.contains(parent));
+            seen.add(record.path);
+
+            if ("/a".equals(record.path)) {
+                Assert.assertEquals(3, record.cversion);
+                Assert.assertEquals(0x100000001L, record.pzxid);
+                Assert.assertEquals(7, record.version);
+            } else {
+                Assert.assertEquals(-1, record.cversion);
+            }
+        }
+        Assert.assertTrue(seen.contains("/a/b/été"));
+    }
+
+    @Test
+    public void testSpansMappedChunks() throws Exception {
+        PathStore store = new PathStore();
+        for (int i = 0; i < 300000; ++i) {
+            store.add("/service-" + (i / 1000) + "/instance-" + i);
+        }
+
+        SnapshotFile.write(file, store);
+
+        PathStore loaded = new PathStore();
+        List<Record> records = read(file);
+        for (Record record : records) {
+            loaded.add(record.path);
+        }
+        Assert.assertEquals(store.toSet(), loaded.toSet());
+    }
+
+    @Test
+    public void testRewriteReplacesSnapshot() throws Exception {
+        PathStore store = new PathStore();
+        for (int i = 0; i < 100; ++i) {
+            store.add("/" + i);
+        }
+        SnapshotFile.write(file, store);
+
+        store.clear();
+        store.add("/only");
+        SnapshotFile.write(file, store);
+
+        List<Record> records = read(file);
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals("/only", records.get(0).path);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedSnapshot() throws Exception {
+        PathStore store = new PathStore();
+        for (int i = 0; i < 100; ++i) {
+            store.add("/" + i);
+        }
+        SnapshotFile.write(file, store);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() / 2);
+        raf.close();
+
+        read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotASnapshot() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.writeBytes("<configuration/>");
+        raf.close();
+
+        read(file);
+    }
+}
@@ -0,0 +1,72 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StripedExecutorTest {
+
+    @Test
+    public void testTasksForSameKeyRunInOrder() {
+        StripedExecutor executor = new StripedExecutor("test", 4);
+
+        final Map<String, List<Integer>> executed = new HashMap<String, List<Integer>>();
+        final String[] keys = {"/a", "/b", "/c", "/d", "/e"};
+
+        for (String key : keys) {
+            executed.put(key, Collections.synchronizedList(new ArrayList<Integer>()));
+        }
+
+        for (int i = 0; i < 100; ++i) {
+            for (final String key : keys) {
+                final int value = i;
+                executor.execute(key, new Runnable() {
+                    @Override
+                    public void run() {
+                        executed.get(key).add(value);
+                    }
+                });
+            }
+        }
+
+        Assert.assertTrue("all tasks should run", ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                for (List<Integer> values : executed.values()) {
+                    if (values.size() != 100) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }));
+
+        for (String key : keys) {
+            List<Integer> values = executed.get(key);
+            for (int i = 0; i < values.size(); ++i) {
+                Assert.assertEquals("tasks for " + key + " should run in submission order", i, (int) values.get(i));
+            }
+        }
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testExecuteAfterShutdownIsDropped() {
+        StripedExecutor executor = new StripedExecutor("test", 2);
+        executor.shutdown();
+
+        executor.execute("/a", new Runnable() {
+            @Override
+            public void run() {
+                Assert.fail("task should not run once shut down");
+            }
+        });
+        Assert.assertEquals(0, executor.getQueuedCount());
+    }
+}
@@ -0,0 +1,133 @@
+package com.kostbot.zoodirector.zookeepersync;
+
+import com.netflix.curator.framework.CuratorFramework;
+import com.netflix.curator.framework.CuratorFrameworkFactory;
+import com.netflix.curator.retry.RetryOneTime;
+import com.netflix.curator.test.InstanceSpec;
+import com.netflix.curator.test.TestingServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+public class TxnLogAnalyzerTest {
+    private File dataDir;
+
+    @Before
+    public void before() throws Exception {
+        dataDir = File.createTempFile("zoodirector-", "-data");
+        Assert.assertTrue(dataDir.delete() && dataDir.mkdir());
+
+        InstanceSpec spec = new InstanceSpec(dataDir, InstanceSpec.getRandomPort(), -1, -1, false, -1);
+        TestingServer server = new TestingServer(spec);
+        CuratorFramework client = CuratorFrameworkFactory.newClient(spec.getConnectString(), new RetryOneTime(1000));
+        client.start();
+        client.create().creatingParentsIfNeeded().forPath("/svc/a/x");
+        for (int i = 0; i < 20; ++i) {
+            client.setData().forPath("/svc/a/x", ("" + i).getBytes());
+        }
+        client.create().forPath("/svc/b");
+        client.setData().forPath("/svc/b", "1".getBytes());
+        client.delete().forPath("/svc/b");
+        client.inTransaction()
+                .create().forPath("/m").and()
+                .setData().forPath("/m", "1".getBytes()).and()
+                .commit();
+        client.close();
+        server.close();
+    }
+
+    @After
+    public void after() {
+        delete(dataDir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testGetPrefix() {
+        TxnLogAnalyzer analyzer = new TxnLogAnalyzer(2, 1000, 10);
+        Assert.assertEquals("/", analyzer.getPrefix("/"));
+        Assert.assertEquals("/a", analyzer.getPrefix("/a"));
+        Assert.assertEquals("/a/b", analyzer.getPrefix("/a/b"));
+        Assert.assertEquals("/a/b", analyzer.getPrefix("/a/b/c/d"));
+        Assert.assertEquals("/a", new TxnLogAnalyzer(1, 1000, 10).getPrefix("/a/b/c"));
+    }
+
+    @Test
+    public void testAnalyze() throws IOException, InterruptedException {
+        List<File> logFiles = TxnLogAnalyzer.getLogFiles(dataDir);
+        Assert.assertFalse(logFiles.isEmpty());
+
+        final long[] progress = new long[2];
+        TxnLogAnalyzer analyzer = new TxnLogAnalyzer();
+        long read = analyzer.analyze(logFiles, new TxnLogAnalyzer.ProgressMonitor() {
+            @Override
+            public void progress(long read, long total) {
+                progress[0] = read;
+                progress[1] = total;
+            }
+        });
+
+        Assert.assertEquals(read, analyzer.getTransactionCount());
+        Assert.assertEquals(progress[1], progress[0]);
+        Assert.assertEquals(0, analyzer.getCorruptLogCount());
+
+        List<TxnLogAnalyzer.PrefixCounts> top = analyzer.getTopWriters(10);
+        Assert.assertEquals("/svc/a", top.get(0).getPrefix());
+        Assert.assertEquals(2, top.get(0).getCreates());
+        Assert.assertEquals(20, top.get(0).getSets());
+        Assert.assertEquals(0, top.get(0).getDeletes());
+        Assert.assertTrue(top.get(0).getBytes() > 0);
+        Assert.assertTrue(top.get(0).getPeakRate() > 0);
+
+        Assert.assertEquals("/svc/b", top.get(1).getPrefix());
+        Assert.assertEquals(3, top.get(1).getWrites());
+        Assert.assertEquals(1, top.get(1).getDeletes());
+
+        // The operations of a multi are counted individually.
+        Assert.assertEquals("/m", top.get(2).getPrefix());
+        Assert.assertEquals(1, top.get(2).getCreates());
+        Assert.assertEquals(1, top.get(2).getSets());
+
+        // creatingParentsIfNeeded creates /svc
+        Assert.assertEquals("/svc", top.get(3).getPrefix());
+        Assert.assertEquals(4, top.size());
+        Assert.assertEquals(1, analyzer.getTopWriters(1).size());
+
+        long writes = 0;
+        for (TxnLogAnalyzer.BucketCounts bucket : analyzer.getBuckets()) {
+            writes += bucket.getWrites();
+        }
+        Assert.assertEquals(28, analyzer.getTotals().getWrites());
+        Assert.assertEquals(analyzer.getTotals().getWrites(), writes);
+    }
+
+    @Test
+    public void testBoundedMemory() throws IOException, InterruptedException {
+        TxnLogAnalyzer analyzer = new TxnLogAnalyzer(2, 1, 2);
+        analyzer.analyze(TxnLogAnalyzer.getLogFiles(dataDir), null);
+
+        List<TxnLogAnalyzer.PrefixCounts> top = analyzer.getTopWriters(10);
+        Assert.assertEquals(3, top.size());
+        Assert.assertEquals(28, top.get(0).getWrites() + top.get(1).getWrites() + top.get(2).getWrites());
+        boolean other = false;
+        for (TxnLogAnalyzer.PrefixCounts counts : top) {
+            other |= TxnLogAnalyzer.OTHER_PREFIX.equals(counts.getPrefix());
+        }
+        Assert.assertTrue(other);
+        Assert.assertTrue(analyzer.getBuckets().size() <= TxnLogAnalyzer.MAX_BUCKETS);
+    }
+}
@@ -1,12 +1,19 @@
 package com.kostbot.zoodirector.zookeepersync;
 
+import com.netflix.curator.test.KillSession;
 import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
 import org.apache.zookeeper.data.Stat;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class ZookeeperSyncTest extends ZookeeperTestBase {
@@ -182,6 +189,102 @@ public class ZookeeperSyncTest extends ZookeeperTestBase {
         Assert.assertEquals(data, new String(zookeeperSync.getData(path)));
     }
 
+    @Test
+    public void testGetNodeData() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+
+        String path = "/test/all/parent/paths/are/created";
+
+        zookeeperSync.create(path);
+        Stat saved = zookeeperSync.setData(path, 0, "data!".getBytes());
+
+        NodeData nodeData = zookeeperSync.getNodeData(path);
+        Assert.assertEquals(path, nodeData.path);
+        Assert.assertEquals("data!", new String(nodeData.data));
+        Assert.assertEquals("stat should describe the data returned", 1, nodeData.stat.getVersion());
+        Assert.assertEquals(saved, nodeData.stat);
+        Assert.assertEquals(5, nodeData.getDataLength());
+
+        Assert.assertNull("missing node should have no data", zookeeperSync.getNodeData("/missing"));
+    }
+
+    @Test
+    public void testGetNodeDataBulk() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        zookeeperSync.setCrawlConcurrency(7);
+
+        List<String> paths = new ArrayList<String>();
+        for (int i = 0; i < 50; ++i) {
+            String path = "/bulk/" + i;
+            client.create().creatingParentsIfNeeded().forPath(path, Integer.toString(i).getBytes());
+            paths.add(path);
+        }
+        paths.add(25, "/bulk/missing");
+
+        long requestCount = zookeeperSync.getRequestCount();
+        Map<String, NodeData> nodeData = zookeeperSync.getNodeData(paths);
+        Assert.assertEquals("one request per path", 51, zookeeperSync.getRequestCount() - requestCount);
+
+        Assert.assertEquals("results should be in request order", paths, new ArrayList<String>(nodeData.keySet()));
+        Assert.assertNull(nodeData.get("/bulk/missing"));
+        for (int i = 0; i < 50; ++i) {
+            NodeData data = nodeData.get("/bulk/" + i);
+            Assert.assertEquals(Integer.toString(i), new String(data.data));
+            Assert.assertEquals(data.data.length, data.stat.getDataLength());
+        }
+    }
+
+    @Test
+    public void testDataCache() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        client.create().creatingParentsIfNeeded().forPath("/cached/node", "initial".getBytes());
+        client.create().forPath("/cached/other", "other".getBytes());
+        zookeeperSync.watch();
+
+        final List<ZookeeperSync.Event> receivedEventList =
+                Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                receivedEventList.add(e);
+            }
+        });
+
+        NodeData nodeData = zookeeperSync.getNodeData("/cached/node");
+        Assert.assertSame("second read should be served from the cache", nodeData,
+                zookeeperSync.getNodeData("/cached/node"));
+        Assert.assertEquals(1, zookeeperSync.getDataCacheMissCount());
+        Assert.assertEquals(1, zookeeperSync.getDataCacheHitCount());
+
+        long requestCount = zookeeperSync.getRequestCount();
+        Map<String, NodeData> bulk = zookeeperSync.getNodeData(Arrays.asList("/cached/node", "/cached/other"));
+        Assert.assertSame(nodeData, bulk.get("/cached/node"));
+        Assert.assertEquals("only the miss should be requested", 1, zookeeperSync.getRequestCount() - requestCount);
+
+        // A change made outside of the sync is seen through its watch.
+        client.setData().forPath("/cached/node", "changed".getBytes());
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 1;
+            }
+        });
+        Assert.assertEquals("changed", new String(zookeeperSync.getNodeData("/cached/node").data));
+
+        zookeeperSync.setData("/cached/node", 1, "set".getBytes());
+        Assert.assertEquals("set", new String(zookeeperSync.getNodeData("/cached/node").data));
+
+        zookeeperSync.getNodeData("/cached/other");
+        client.delete().forPath("/cached/other");
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 3;
+            }
+        });
+        Assert.assertNull(zookeeperSync.getNodeData("/cached/other"));
+    }
+
     @Test
     public void testGetStat() throws Exception {
         ZookeeperSync zookeeperSync = new ZookeeperSync(client);
@@ -220,6 +323,196 @@ public class ZookeeperSyncTest extends ZookeeperTestBase {
         Assert.assertEquals("children should be deleted", 0, client.getChildren().forPath(path).size());
     }
 
+    @Test
+    public void testTrimRoot() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+
+        zookeeperSync.create("/a/1");
+        zookeeperSync.create("/b");
+
+        zookeeperSync.trim("/");
+        Assert.assertEquals("all but the zookeeper node should be deleted",
+                Arrays.asList("zookeeper"), client.getChildren().forPath("/"));
+        Assert.assertNotNull(client.checkExists().forPath("/zookeeper/quota"));
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        for (int i = 0; i < 20; ++i) {
+            client.create().creatingParentsIfNeeded().forPath("/export/" + (i % 3) + "/" + i, ("node " + i).getBytes());
+        }
+        client.setData().forPath("/export/1", new byte[]{0, (byte) 0xff});
+        client.create().withMode(CreateMode.EPHEMERAL).forPath("/export/ephemeral", new byte[0]);
+        client.create().forPath("/exported", new byte[0]);
+        zookeeperSync.watch();
+
+        File file = File.createTempFile("zoodirector-", ".jsonl.gz");
+        file.deleteOnExit();
+        try {
+            final List<Integer> progress = new ArrayList<Integer>();
+            int exported = zookeeperSync.export("/export", file, ZookeeperSync.ExportFormat.jsonLines,
+                    new ZookeeperSync.ExportMonitor() {
+                        @Override
+                        public void progress(int exported, int total) {
+                            Assert.assertEquals(25, total);
+                            progress.add(exported);
+                        }
+                    });
+            Assert.assertEquals(25, exported);
+            Assert.assertEquals(25, (int) progress.get(progress.size() - 1));
+
+            // An export can be imported elsewhere.
+            JsonLinesFile.Reader reader = new JsonLinesFile.Reader(file, "/imported");
+            try {
+                Assert.assertEquals("descendants and the missing /imported", 25, zookeeperSync.createAll(reader));
+            } finally {
+                reader.close();
+            }
+            Assert.assertEquals("node 13", new String(client.getData().forPath("/imported/1/13")));
+            Assert.assertArrayEquals(new byte[]{0, (byte) 0xff}, client.getData().forPath("/imported/1"));
+            Assert.assertEquals("ephemeral nodes should be imported as persistent",
+                    0, client.checkExists().forPath("/imported/ephemeral").getEphemeralOwner());
+
+            zookeeperSync.export("/export", file, ZookeeperSync.ExportFormat.binary, null);
+            final List<String> paths = new ArrayList<String>();
+            ExportFile.read(file, new ExportFile.Visitor() {
+                @Override
+                public void visit(NodeData nodeData) {
+                    paths.add(nodeData.path);
+                    if ("/2/8".equals(nodeData.path)) {
+                        Assert.assertEquals("node 8", new String(nodeData.data));
+                        Assert.assertEquals(6, nodeData.stat.getDataLength());
+                    }
+                }
+            });
+            Assert.assertEquals(25, paths.size());
+            Assert.assertEquals("/", paths.get(0));
+            Assert.assertEquals("siblings should be sorted, children following their parent",
+                    Arrays.asList("/0", "/0/0", "/0/12", "/0/15", "/0/18", "/0/3", "/0/6", "/0/9", "/1"),
+                    paths.subList(1, 10));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testCreateAll() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        zookeeperSync.create("/seed/existing");
+
+        List<NodeEntry> entries = new ArrayList<NodeEntry>();
+        for (int i = 0; i < 250; ++i) {
+            // Children listed before their parents.
+            entries.add(new NodeEntry("/seed/config/" + (i % 10) + "/" + i, Integer.toString(i).getBytes()));
+        }
+        for (int i = 0; i < 10; ++i) {
+            entries.add(new NodeEntry("/seed/config/" + i, ("parent " + i).getBytes()));
+        }
+        entries.add(new NodeEntry("/seed/existing", "ignored".getBytes()));
+        entries.add(new NodeEntry("/seed/ephemeral", null, CreateMode.EPHEMERAL));
+
+        final int[] last = new int[3];
+        long requestCount = zookeeperSync.getRequestCount();
+        int created = zookeeperSync.createAll(entries.iterator(), 50, new ZookeeperSync.CreateMonitor() {
+            @Override
+            public void progress(int created, int existing, int total) {
+                last[0] = created;
+                last[1] = existing;
+                last[2] = total;
+            }
+        });
+
+        Assert.assertEquals("entries and the missing /seed/config", 262, created);
+        Assert.assertArrayEquals(new int[]{262, 1, 263}, last);
+        Assert.assertTrue("creates should be batched", zookeeperSync.getRequestCount() - requestCount < 30);
+
+        Assert.assertEquals(10, client.getChildren().forPath("/seed/config").size());
+        Assert.assertEquals("parent 3", new String(client.getData().forPath("/seed/config/3")));
+        Assert.assertEquals("42", new String(client.getData().forPath("/seed/config/2/42")));
+        Assert.assertEquals(0, client.getData().forPath("/seed/config").length);
+        Assert.assertEquals("existing node should be left as it is", 0,
+                client.getChildren().forPath("/seed/existing").size());
+        Assert.assertTrue(client.checkExists().forPath("/seed/ephemeral").getEphemeralOwner() != 0);
+    }
+
+    @Test
+    public void testDeleteLargeTree() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        for (int i = 0; i < 10; ++i) {
+            for (int j = 0; j < 30; ++j) {
+                zookeeperSync.create("/large/" + i + "/" + j + "/leaf");
+            }
+        }
+
+        final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+        long requestCount = zookeeperSync.getRequestCount();
+        int deleted = zookeeperSync.delete("/large", new ZookeeperSync.DeleteMonitor() {
+            @Override
+            public void progress(int deleted, int total) {
+                Assert.assertEquals(611, total);
+                progress.add(deleted);
+            }
+        });
+
+        Assert.assertEquals(611, deleted);
+        Assert.assertNull("all children should be deleted", client.checkExists().forPath("/large"));
+        Assert.assertEquals(0, (int) progress.get(0));
+        Assert.assertEquals(611, (int) progress.get(progress.size() - 1));
+        Assert.assertTrue("deletes should be batched", zookeeperSync.getRequestCount() - requestCount < 611 * 2);
+    }
+
+    @Test
+    public void testDeleteWhileTreeChanges() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        for (int i = 0; i < 5; ++i) {
+            zookeeperSync.create("/changing/" + i + "/leaf");
+        }
+
+        int deleted = zookeeperSync.trim("/changing", new ZookeeperSync.DeleteMonitor() {
+            @Override
+            public void progress(int deleted, int total) {
+                if (deleted == 0) {
+                    // Change the tree after it was listed.
+                    try {
+                        client.delete().forPath("/changing/1/leaf");
+                        client.create().forPath("/changing/2/late");
+                        client.create().forPath("/changing/3/leaf/late");
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        });
+
+        Assert.assertEquals(10, deleted);
+        Assert.assertNotNull("trimmed node should remain", client.checkExists().forPath("/changing"));
+        Assert.assertEquals(0, client.getChildren().forPath("/changing").size());
+    }
+
+    @Test
+    public void testDeleteCancelled() throws Exception {
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        zookeeperSync.create("/cancelled/parent/leaf");
+
+        try {
+            zookeeperSync.delete("/cancelled", new ZookeeperSync.DeleteMonitor() {
+                @Override
+                public void progress(int deleted, int total) {
+                    if (deleted > 0) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            Assert.fail("delete should be cancelled");
+        } catch (InterruptedException e) {
+            // expected
+        }
+
+        Assert.assertNull(client.checkExists().forPath("/cancelled/parent/leaf"));
+        Assert.assertNotNull("delete should stop once cancelled", client.checkExists().forPath("/cancelled"));
+    }
+
     @Test
     public void testPrune() throws Exception {
         ZookeeperSync zookeeperSync = new ZookeeperSync(client);
@@ -273,6 +566,52 @@ public class ZookeeperSyncTest extends ZookeeperTestBase {
         Assert.assertTrue(nodes.contains("/zookeeper/quota"));
     }
 
+    @Test
+    public void testAddEventsOnPipelinedLoad() throws Exception {
+
+        for (int i = 0; i < 10; ++i) {
+            for (int j = 0; j < 10; ++j) {
+                client.create().creatingParentsIfNeeded().forPath("/crawl/" + i + "/" + j);
+            }
+        }
+
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        zookeeperSync.setCrawlConcurrency(7);
+
+        final List<ZookeeperSync.Event> receivedEventList =
+                Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                receivedEventList.add(e);
+            }
+        });
+
+        zookeeperSync.watch();
+
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 114;
+            }
+        });
+
+        // 3 initial nodes, /crawl, 10 parents and 100 children
+        Assert.assertEquals("listener should receive events for all nodes", 114, receivedEventList.size());
+        Assert.assertEquals("sync should contain all nodes", 114, zookeeperSync.getNodes().size());
+
+        Set<String> added = new HashSet<String>();
+        for (ZookeeperSync.Event e : receivedEventList) {
+            Assert.assertEquals(ZookeeperSync.Event.Type.add, e.type);
+            String parent = ZookeeperSync.getParent(e.path);
+            Assert.assertTrue(e.path + " should be added after its parent", parent == null || added.contains(parent));
+            added.add(e.path);
+        }
+
+        Assert.assertTrue("crawl rate should be reported", zookeeperSync.getLastCrawlRate() > 0);
+    }
+
     @Test
     public void testAddEvent() throws Exception {
 
@@ -316,6 +655,81 @@ public class ZookeeperSyncTest extends ZookeeperTestBase {
         Assert.assertTrue(nodes.contains("/test/all/parent/events/received"));
     }
 
+    @Test
+    public void testChildrenChangedOnlyCrawlsAddedChildren() throws Exception {
+
+        for (int i = 0; i < 50; ++i) {
+            client.create().creatingParentsIfNeeded().forPath("/parent/" + i + "/child");
+        }
+
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+
+        final List<ZookeeperSync.Event> receivedEventList =
+                Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+
+        zookeeperSync.watch();
+
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                receivedEventList.add(e);
+            }
+        });
+
+        long requestCount = zookeeperSync.getRequestCount();
+
+        client.create().forPath("/parent/new");
+
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 1;
+            }
+        });
+
+        Assert.assertEquals("listener should receive events", 1, receivedEventList.size());
+        assertEvent(receivedEventList.get(0), ZookeeperSync.Event.Type.add, "/parent/new");
+
+        // Relisting /parent plus an exists and children listing for the new node only.
+        Assert.assertEquals("only the new child should be crawled", 3, zookeeperSync.getRequestCount() - requestCount);
+    }
+
+    @Test
+    public void testEventCrawlsShareConcurrency() throws Exception {
+
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        zookeeperSync.setCrawlConcurrency(1);
+
+        final List<ZookeeperSync.Event> receivedEventList =
+                Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+
+        zookeeperSync.watch();
+
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                receivedEventList.add(e);
+            }
+        });
+
+        // Every create fires its own children changed event, all crawled through one request at a time.
+        client.create().forPath("/mass");
+        for (int i = 0; i < 100; ++i) {
+            client.create().forPath("/mass/" + i);
+        }
+
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 101;
+            }
+        });
+
+        Assert.assertEquals("listener should receive events for all nodes", 101, receivedEventList.size());
+        assertEvent(receivedEventList.get(0), ZookeeperSync.Event.Type.add, "/mass");
+        Assert.assertEquals(104, zookeeperSync.getNodes().size());
+    }
+
     @Test
     public void testUpdateEvent() throws Exception {
 
@@ -410,4 +824,170 @@ public class ZookeeperSyncTest extends ZookeeperTestBase {
 
         Assert.assertEquals("sync should only contain initial nodes", 3, zookeeperSync.getNodes().size());
     }
+
+    @Test
+    public void testReconcileFromSnapshot() throws Exception {
+
+        client.create().creatingParentsIfNeeded().forPath("/snap/keep/a");
+        client.create().creatingParentsIfNeeded().forPath("/snap/gone/x/y");
+
+        File snapshot = File.createTempFile("zoodirector-", ".snapshot");
+        snapshot.deleteOnExit();
+
+        ZookeeperSync previous = new ZookeeperSync(client);
+        previous.watch();
+        Assert.assertEquals(9, previous.saveSnapshot(snapshot));
+        previous.close();
+
+        // Changes made while not connected.
+        client.delete().forPath("/snap/gone/x/y");
+        client.delete().forPath("/snap/gone/x");
+        client.delete().forPath("/snap/gone");
+        client.create().forPath("/snap/new");
+
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+
+        final List<ZookeeperSync.Event> receivedEventList =
+                Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                receivedEventList.add(e);
+            }
+        });
+
+        Assert.assertEquals(9, zookeeperSync.loadSnapshot(snapshot));
+        Assert.assertTrue(zookeeperSync.getNodes().contains("/snap/gone/x/y"));
+
+        zookeeperSync.reconcile();
+
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 13;
+            }
+        });
+
+        Assert.assertEquals("listener should receive snapshot adds then deltas", 13, receivedEventList.size());
+        for (int i = 0; i < 9; ++i) {
+            Assert.assertEquals(ZookeeperSync.Event.Type.add, receivedEventList.get(i).type);
+        }
+        List<ZookeeperSync.Event> deltas = new ArrayList<ZookeeperSync.Event>(receivedEventList.subList(9, 13));
+        assertEvent(deltas.get(0), ZookeeperSync.Event.Type.delete, "/snap/gone/x/y");
+        assertEvent(deltas.get(1), ZookeeperSync.Event.Type.delete, "/snap/gone/x");
+        assertEvent(deltas.get(2), ZookeeperSync.Event.Type.delete, "/snap/gone");
+        assertEvent(deltas.get(3), ZookeeperSync.Event.Type.add, "/snap/new");
+
+        Set<String> nodes = zookeeperSync.getNodes();
+        Assert.assertEquals(7, nodes.size());
+        Assert.assertFalse(nodes.contains("/snap/gone"));
+
+        // Known nodes should be watched again.
+        client.create().forPath("/snap/keep/b");
+
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 14;
+            }
+        });
+        assertEvent(receivedEventList.get(13), ZookeeperSync.Event.Type.add, "/snap/keep/b");
+
+        snapshot.delete();
+    }
+
+    @Test
+    public void testResyncOnlyChecksUnchangedNodes() throws Exception {
+
+        for (int i = 0; i < 10; ++i) {
+            client.create().creatingParentsIfNeeded().forPath("/resync/" + i);
+        }
+
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        zookeeperSync.watch();
+
+        final List<ZookeeperSync.Event> receivedEventList =
+                Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                receivedEventList.add(e);
+            }
+        });
+
+        long requestCount = zookeeperSync.getRequestCount();
+        zookeeperSync.resync();
+        Assert.assertEquals("only one exists check per node", 14, zookeeperSync.getRequestCount() - requestCount);
+
+        // Pretend a change to the children of /resync was missed.
+        zookeeperSync.getPathStore().setChildStat("/resync", -1, -1L);
+
+        requestCount = zookeeperSync.getRequestCount();
+        zookeeperSync.resync();
+        Assert.assertEquals("only the changed parent should be listed", 15,
+                zookeeperSync.getRequestCount() - requestCount);
+
+        Assert.assertTrue("resync should not report unchanged nodes", receivedEventList.isEmpty());
+    }
+
+    @Test
+    public void testResyncAfterSessionExpired() throws Exception {
+
+        client.create().creatingParentsIfNeeded().forPath("/expire/keep");
+        client.create().creatingParentsIfNeeded().forPath("/expire/gone");
+
+        ZookeeperSync zookeeperSync = new ZookeeperSync(client);
+        zookeeperSync.watch();
+
+        final List<ZookeeperSync.Event> receivedEventList =
+                Collections.synchronizedList(new ArrayList<ZookeeperSync.Event>());
+
+        zookeeperSync.addListener(new ZookeeperSync.Listener() {
+            @Override
+            public void process(ZookeeperSync.Event e) {
+                receivedEventList.add(e);
+            }
+        });
+
+        KillSession.kill(client.getZookeeperClient().getZooKeeper(), server.getConnectString());
+
+        // Changes made in the new session are not seen by the watches of the expired one.
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                client.delete().forPath("/expire/gone");
+                break;
+            } catch (KeeperException.ConnectionLossException e) {
+                if (attempt == 10) {
+                    throw e;
+                }
+            }
+        }
+        client.create().forPath("/expire/new");
+
+        zookeeperSync.resync();
+
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 2;
+            }
+        });
+
+        Assert.assertEquals("only deltas should be reported", 2, receivedEventList.size());
+        assertEvent(receivedEventList.get(0), ZookeeperSync.Event.Type.delete, "/expire/gone");
+        assertEvent(receivedEventList.get(1), ZookeeperSync.Event.Type.add, "/expire/new");
+
+        // Watches should be set in the new session.
+        client.create().forPath("/expire/keep/child");
+
+        ConditionRetry.checkCondition(new ConditionRetry.Condition() {
+            @Override
+            public boolean check() {
+                return receivedEventList.size() == 3;
+            }
+        });
+        assertEvent(receivedEventList.get(2), ZookeeperSync.Event.Type.add, "/expire/keep/child");
+    }
 }